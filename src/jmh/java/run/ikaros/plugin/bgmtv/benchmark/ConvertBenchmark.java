@@ -0,0 +1,118 @@
+package run.ikaros.plugin.bgmtv.benchmark;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import run.ikaros.api.core.subject.Episode;
+import run.ikaros.plugin.bgmtv.BgmTvModelMapper;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvPagingData;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步条目时把 bgm.tv 模型转换为 ikaros 模型的吞吐量，一次操作转换 1000 个剧集，
+ * 配合 -prof gc 查看每次操作分配的字节数.
+ *
+ * <ul>
+ *     <li>legacyAirTime: 旧实现，每次调用构建格式化器，yyyy-MM 和空日期靠捕获异常返回 null</li>
+ *     <li>airTime: {@link BgmTvModelMapper#convertAirTime}，按字符解析，不抛出异常</li>
+ * </ul>
+ *
+ * <p>fixture 的剧集中有 yyyy-MM 和空的放送日期.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConvertBenchmark {
+    private static final int EPISODES = 1000;
+    private static final Integer[] TYPES = {1, 2, 3, 4, 6, null};
+
+    private List<BgmTvEpisode> episodes;
+    private List<BgmTvEpisode> musicEpisodes;
+    private String[] airDates;
+
+    @Setup
+    public void setup() {
+        episodes = decodeEpisodes();
+        musicEpisodes = decodeEpisodes();
+        for (int i = 0; i < musicEpisodes.size(); i++) {
+            musicEpisodes.get(i).setDisc(String.valueOf(i / 20 + 1));
+        }
+        airDates = episodes.stream().map(BgmTvEpisode::getAirDate).toArray(String[]::new);
+    }
+
+    private static List<BgmTvEpisode> decodeEpisodes() {
+        BgmTvPagingData<BgmTvEpisode> page = JsonUtils.bytes2obj(Fixtures.episodePage(EPISODES),
+            JsonUtils.constructParametricType(BgmTvPagingData.class, BgmTvEpisode.class));
+        return page.getData();
+    }
+
+    @Benchmark
+    public List<Episode> episodes() {
+        return BgmTvModelMapper.convertEpisodes(2, episodes);
+    }
+
+    @Benchmark
+    public List<Episode> musicEpisodes() {
+        return BgmTvModelMapper.convertEpisodes(3, musicEpisodes);
+    }
+
+    @Benchmark
+    public void legacyAirTime(Blackhole blackhole) {
+        for (String airDate : airDates) {
+            blackhole.consume(legacyConvertAirTime(airDate));
+        }
+    }
+
+    @Benchmark
+    public void airTime(Blackhole blackhole) {
+        for (String airDate : airDates) {
+            blackhole.consume(BgmTvModelMapper.convertAirTime(airDate));
+        }
+    }
+
+    @Benchmark
+    public void type(Blackhole blackhole) {
+        for (int i = 0; i < EPISODES; i++) {
+            blackhole.consume(BgmTvModelMapper.convertType(TYPES[i % TYPES.length],
+                (i & 1) == 0 ? "TV" : "小说"));
+        }
+    }
+
+    private static LocalDateTime legacyConvertAirTime(String date) {
+        if (StringUtils.isBlank(date)) {
+            return null;
+        }
+        final DateTimeFormatter formatter = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd")
+            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+            .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+            .parseDefaulting(ChronoField.MILLI_OF_SECOND, 0)
+            .toFormatter();
+        try {
+            return LocalDateTime.parse(date, formatter);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package run.ikaros.plugin.bgmtv.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 读取 src/test/resources/fixtures 下的 bgm.tv 响应.
+ *
+ * <p>这些响应按 API 的格式手工构造，字段取值参考真实条目.</p>
+ */
+public final class Fixtures {
+    public static final String SUBJECT = "/fixtures/subject-899.json";
+    public static final String EPISODES = "/fixtures/episodes-899.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    public static byte[] read(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Fixture not found: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把 fixture 中的剧集分页按顺序重复到指定的剧集数，ID、话数和排序依次递增，其余字段保持原样.
+     */
+    public static byte[] episodePage(int size) {
+        try {
+            ObjectNode fixture = (ObjectNode) MAPPER.readTree(read(EPISODES));
+            ArrayNode fixtureData = (ArrayNode) fixture.get("data");
+            ArrayNode data = MAPPER.createArrayNode();
+            for (int i = 0; i < size; i++) {
+                ObjectNode episode = fixtureData.get(i % fixtureData.size()).deepCopy();
+                episode.put("id", 7553 + i);
+                if (episode.get("ep").asInt() > 0) {
+                    episode.put("ep", i + 1);
+                    episode.put("sort", i + 1);
+                }
+                data.add(episode);
+            }
+            fixture.set("data", data);
+            fixture.put("total", size);
+            fixture.put("limit", size);
+            return MAPPER.writeValueAsBytes(fixture);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
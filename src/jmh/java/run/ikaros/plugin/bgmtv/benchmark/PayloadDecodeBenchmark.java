@@ -0,0 +1,91 @@
+package run.ikaros.plugin.bgmtv.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvPagingData;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fixture 响应的解析吞吐量，配合 -prof gc 查看 gc.alloc.rate.norm（每次解析分配的字节数）.
+ *
+ * <ul>
+ *     <li>subject: 条目详情，infobox 有 40 项，其中几项为多值</li>
+ *     <li>episodePage: 一页剧集，与仓库解析剧集分页的方式相同</li>
+ *     <li>episodesObj2Arr: 已解析为 Map 的剧集经 {@link JsonUtils#obj2Arr} 转为对象数组，
+ *     即先序列化再解析一次</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadDecodeBenchmark {
+    private static final JavaType EPISODE_PAGING_TYPE =
+        JsonUtils.constructParametricType(BgmTvPagingData.class, BgmTvEpisode.class);
+    private static final TypeReference<BgmTvEpisode[]> EPISODE_ARRAY_TYPE =
+        new TypeReference<>() {
+        };
+
+    private byte[] subject;
+
+    /**
+     * 剧集分页的响应，只有剧集相关的基准使用.
+     */
+    @State(Scope.Benchmark)
+    public static class EpisodePage {
+        /**
+         * 一页的剧集数，长篇动画一次拉取全部剧集时为 1000.
+         */
+        @Param({"100", "1000"})
+        private int episodes;
+
+        private byte[] bytes;
+        private List<Map<String, Object>> maps;
+
+        @Setup
+        @SuppressWarnings("unchecked")
+        public void setup() {
+            bytes = Fixtures.episodePage(episodes);
+            maps = (List<Map<String, Object>>) JsonUtils.bytes2obj(bytes, Map.class).get("data");
+        }
+    }
+
+    @Setup
+    public void setup() {
+        subject = Fixtures.read(Fixtures.SUBJECT);
+    }
+
+    @Benchmark
+    public BgmTvSubject subject() {
+        return JsonUtils.bytes2obj(subject, BgmTvSubject.class);
+    }
+
+    @Benchmark
+    public BgmTvPagingData<BgmTvEpisode> episodePage(EpisodePage page) {
+        return JsonUtils.bytes2obj(page.bytes, EPISODE_PAGING_TYPE);
+    }
+
+    @Benchmark
+    public BgmTvEpisode[] episodesObj2Arr(EpisodePage page) {
+        return JsonUtils.obj2Arr(page.maps, EPISODE_ARRAY_TYPE);
+    }
+}
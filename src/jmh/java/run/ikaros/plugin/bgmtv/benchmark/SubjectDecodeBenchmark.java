@@ -0,0 +1,137 @@
+package run.ikaros.plugin.bgmtv.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 条目详情解析耗时与分配对比，配合 -prof gc 查看 gc.alloc.rate.norm（每次解析分配的字节数）.
+ *
+ * <ul>
+ *     <li>legacy: 旧实现，先解析成 Map，移除 infobox 后重新序列化再解析，
+ *     infobox 再序列化一次并用新的 ObjectMapper 读成树后拼接</li>
+ *     <li>streaming: 直接从响应字节解析，infobox 由 BgmTvInfoboxDeserializer 边读边拼接</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubjectDecodeBenchmark {
+
+    /**
+     * infobox 的条目数，真实条目一般在 10 到 60 之间.
+     */
+    @Param({"10", "60"})
+    private int infoboxSize;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        StringBuilder infobox = new StringBuilder();
+        for (int i = 0; i < infoboxSize; i++) {
+            if (i > 0) {
+                infobox.append(',');
+            }
+            if (i % 3 == 0) {
+                infobox.append("{\"key\":\"别名").append(i).append("\",\"value\":[")
+                    .append("{\"v\":\"Alias A ").append(i).append("\"},")
+                    .append("{\"k\":\"罗马字\",\"v\":\"Alias B ").append(i).append("\"}]}");
+            } else {
+                infobox.append("{\"key\":\"制作").append(i)
+                    .append("\",\"value\":\"スタッフ ").append(i).append("\"}");
+            }
+        }
+        String json = """
+            {
+              "id": 2716,
+              "type": 2,
+              "name": "けいおん！",
+              "name_cn": "轻音少女",
+              "summary": "%s",
+              "nsfw": false,
+              "locked": false,
+              "date": "2009-04-02",
+              "platform": "TV",
+              "images": {
+                "large": "https://lain.bgm.tv/pic/cover/l/c2/0a/2716_4ctvo.jpg",
+                "common": "https://lain.bgm.tv/r/400/pic/cover/l/c2/0a/2716_4ctvo.jpg",
+                "medium": "https://lain.bgm.tv/r/800/pic/cover/l/c2/0a/2716_4ctvo.jpg",
+                "small": "https://lain.bgm.tv/r/200/pic/cover/l/c2/0a/2716_4ctvo.jpg",
+                "grid": "https://lain.bgm.tv/r/100/pic/cover/l/c2/0a/2716_4ctvo.jpg"
+              },
+              "infobox": [%s],
+              "volumes": 0,
+              "eps": 13,
+              "total_episodes": 14,
+              "rating": {"rank": 150, "total": 20000, "count": {"10": 3000}, "score": 8.0},
+              "collection": {"wish": 3000, "collect": 20000, "doing": 1500,
+                "on_hold": 500, "dropped": 300},
+              "tags": [{"name": "京阿尼", "count": 5000}, {"name": "音乐", "count": 3000}]
+            }
+            """.formatted("樱丘高中的新生平泽唯……".repeat(20), infobox);
+        payload = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public BgmTvSubject legacy() throws Exception {
+        String result = new String(payload, StandardCharsets.UTF_8);
+        Map map = JsonUtils.json2obj(result, Map.class);
+        Object infobox = map.remove("infobox");
+        BgmTvSubject bgmTvSubject =
+            JsonUtils.json2obj(JsonUtils.obj2Json(map), BgmTvSubject.class);
+        if (Objects.nonNull(infobox)) {
+            bgmTvSubject.setInfobox(legacyConvertInfoBox(JsonUtils.obj2Json(infobox)));
+        }
+        return bgmTvSubject;
+    }
+
+    @Benchmark
+    public BgmTvSubject streaming() {
+        return JsonUtils.bytes2obj(payload, BgmTvSubject.class);
+    }
+
+    private static String legacyConvertInfoBox(String originalStr) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode jsonNode = objectMapper.readTree(originalStr);
+        StringBuilder result = new StringBuilder();
+        for (JsonNode node : jsonNode) {
+            String key = node.get("key").asText();
+            JsonNode valueNode = node.get("value");
+            String value;
+            if (valueNode.isArray()) {
+                StringBuilder valueBuilder = new StringBuilder();
+                for (JsonNode subNode : valueNode) {
+                    if (subNode.has("v")) {
+                        valueBuilder.append(subNode.get("v").asText()).append(" ");
+                    }
+                }
+                value = valueBuilder.toString().trim();
+            } else {
+                value = valueNode.asText();
+            }
+            result.append(key).append(": ").append(value).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+}
@@ -1,12 +1,10 @@
 package run.ikaros.plugin.bgmtv;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
-import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.pf4j.Extension;
@@ -14,31 +12,31 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import run.ikaros.api.core.meta.DelegateMetaService;
 import run.ikaros.api.core.meta.MetaInfoExtensionPoint;
-import run.ikaros.api.core.subject.Episode;
 import run.ikaros.api.core.subject.Subject;
 import run.ikaros.api.core.subject.SubjectRecord;
 import run.ikaros.api.core.subject.SubjectSync;
 import run.ikaros.api.core.tag.Tag;
 import run.ikaros.api.infra.utils.UuidV7Utils;
-import run.ikaros.api.store.enums.EpisodeGroup;
 import run.ikaros.api.store.enums.SubjectSyncPlatform;
-import run.ikaros.api.store.enums.SubjectType;
 import run.ikaros.api.store.enums.TagType;
-import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
-import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
 import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
 import run.ikaros.plugin.bgmtv.model.BgmTvTag;
-import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
+import run.ikaros.plugin.bgmtv.repository.BgmTvReactiveRepository;
+import run.ikaros.plugin.bgmtv.search.BgmTvSearchTokenizer;
+import run.ikaros.plugin.bgmtv.search.BgmTvSubjectSearchIndex;
 import run.ikaros.plugin.bgmtv.utils.AssertUtils;
 
 @Slf4j
 @Extension
 public class BgmTvMetaService implements MetaInfoExtensionPoint {
 
-    private final BgmTvRepository bgmTvRepository;
+    private final BgmTvReactiveRepository bgmTvReactiveRepository;
+    private final BgmTvSubjectSearchIndex searchIndex;
 
-    public BgmTvMetaService(BgmTvRepository bgmTvRepository) {
-        this.bgmTvRepository = bgmTvRepository;
+    public BgmTvMetaService(BgmTvReactiveRepository bgmTvReactiveRepository,
+                            BgmTvSubjectSearchIndex searchIndex) {
+        this.bgmTvReactiveRepository = bgmTvReactiveRepository;
+        this.searchIndex = searchIndex;
     }
 
     @Override
@@ -55,30 +53,54 @@ public class BgmTvMetaService implements MetaInfoExtensionPoint {
             .setSyncTime(LocalDateTime.now());
     }
 
+    /**
+     * 先查本地索引，结果排在前面，再追加接口返回的其余条目.
+     *
+     * <p>接口不支持中文日文查询，包含这些字符的关键词只查本地索引；
+     * 本地已有名称与关键词完全相同的条目时也不再请求. 本地结果不含 infobox 和标签，
+     * 见 {@link BgmTvSubjectSearchIndex}.</p>
+     */
     @Override
     public Flux<SubjectRecord> searchSubjects(String keyword) {
-        List<BgmTvSubject> bgmTvSubjects = bgmTvRepository.searchSubjectWithOldApi(keyword, 2);
-        if (bgmTvSubjects != null && !bgmTvSubjects.isEmpty()) {
-            return Flux.fromIterable(bgmTvSubjects)
-                .map(this::convertSubject);
-        }
-        return Flux.empty();
+        return Flux.defer(() -> {
+            List<BgmTvSubject> localResults = searchIndex.search(keyword,
+                BgmTvSubjectSearchIndex.ANIME, BgmTvSubjectSearchIndex.DEFAULT_LIMIT);
+            if (BgmTvSearchTokenizer.containsCjk(keyword)
+                || searchIndex.hasExactMatch(keyword, BgmTvSubjectSearchIndex.ANIME)) {
+                return Flux.fromIterable(localResults);
+            }
+            Set<Integer> localIds = localResults.stream()
+                .map(BgmTvSubject::getId)
+                .collect(Collectors.toSet());
+            Flux<BgmTvSubject> remoteResults = bgmTvReactiveRepository
+                .searchSubjectWithOldApi(keyword, BgmTvSubjectSearchIndex.ANIME)
+                .doOnNext(searchIndex::index)
+                .filter(subject -> !localIds.contains(subject.getId()));
+            if (!localResults.isEmpty()) {
+                // 已有本地结果时接口失败不影响返回
+                remoteResults = remoteResults.onErrorResume(e -> {
+                    log.warn("Search subjects with keyword [{}] fail, "
+                        + "return local results only.", keyword, e);
+                    return Flux.empty();
+                });
+            }
+            return Flux.concat(Flux.fromIterable(localResults), remoteResults);
+        }).map(this::convertSubject);
     }
 
     @Override
     public Mono<SubjectRecord> getSubjectByPlatformId(String platformId) {
-        BgmTvSubject bgmTvSubject = bgmTvRepository.getSubject(Long.parseLong(platformId));
-        if (bgmTvSubject != null) {
-            return Mono.just(convertSubject(bgmTvSubject));
-        }
-        return Mono.empty();
+        return Mono.fromCallable(() -> Long.parseLong(platformId))
+            .flatMap(bgmTvReactiveRepository::getSubject)
+            .map(this::convertSubject);
     }
 
 
     private SubjectRecord convertSubject(BgmTvSubject bgmTvSubject) {
         Subject subject = new Subject()
             .setId(UuidV7Utils.generateUuid())
-            .setType(convertType(bgmTvSubject.getType(), bgmTvSubject.getPlatform()))
+            .setType(BgmTvModelMapper.convertType(bgmTvSubject.getType(),
+                bgmTvSubject.getPlatform()))
             .setName(bgmTvSubject.getName())
             .setNameCn(StringUtils.isNotBlank(bgmTvSubject.getNameCn())
                 ? bgmTvSubject.getNameCn() : bgmTvSubject.getName())
@@ -101,107 +123,4 @@ public class BgmTvMetaService implements MetaInfoExtensionPoint {
         return new SubjectRecord(subject, null, tags, subjectSyncs, null);
     }
 
-    private Episode convertEpisode(BgmTvEpisode bgmTvEpisode) {
-        log.debug("Pull episode:[{}] form by platform:[{}]",
-            bgmTvEpisode.getName(), getPlatform());
-        return new Episode()
-            .setName(bgmTvEpisode.getName())
-            .setNameCn(bgmTvEpisode.getNameCn())
-            .setDescription(bgmTvEpisode.getDesc())
-            .setAirTime(convertAirTime(bgmTvEpisode.getAirDate()))
-            .setGroup(convertEpisodeType(bgmTvEpisode.getType()))
-            .setSequence((Objects.nonNull(bgmTvEpisode.getSort())
-                ? bgmTvEpisode.getSort().floatValue() : bgmTvEpisode.getEp()));
-    }
-
-    private Episode convertMusicEpisode(BgmTvEpisode bgmTvEpisode) {
-        log.debug("Pull episode:[{}] form by platform:[{}]",
-            bgmTvEpisode.getName(), getPlatform());
-        float originalSeq = Objects.nonNull(bgmTvEpisode.getSort())
-            ? bgmTvEpisode.getSort().floatValue() : bgmTvEpisode.getEp();
-        originalSeq = Float.parseFloat(bgmTvEpisode.getDisc() + originalSeq);
-        return new Episode()
-            .setName(bgmTvEpisode.getName())
-            .setNameCn(bgmTvEpisode.getNameCn())
-            .setDescription(bgmTvEpisode.getDesc())
-            .setAirTime(convertAirTime(bgmTvEpisode.getAirDate()))
-            .setGroup(convertEpisodeType(bgmTvEpisode.getType()))
-            .setSequence(originalSeq);
-    }
-
-    private LocalDateTime convertAirTime(String date) {
-        if (StringUtils.isBlank(date)) {
-            return null;
-        }
-        final DateTimeFormatter formatter = new DateTimeFormatterBuilder()
-            .appendPattern("yyyy-MM-dd")
-            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
-            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
-            .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
-            .parseDefaulting(ChronoField.MILLI_OF_SECOND, 0)
-            .toFormatter();
-        LocalDateTime dateTime;
-        try {
-            dateTime = LocalDateTime.parse(date, formatter);
-        } catch (Exception e) {
-            log.warn("convert air time fail:", e);
-            dateTime = null;
-        }
-        return dateTime;
-    }
-
-    private SubjectType convertType(Integer type, String platform) {
-        if (Objects.isNull(type)) {
-            return SubjectType.OTHER;
-        }
-        switch (type) {
-            case 1 -> {
-                return (StringUtils.isNotBlank(platform) && "小说".equalsIgnoreCase(platform))
-                    ? SubjectType.NOVEL : SubjectType.COMIC;
-            }
-            case 2 -> {
-                return SubjectType.ANIME;
-            }
-            case 3 -> {
-                return SubjectType.MUSIC;
-            }
-            case 4 -> {
-                return SubjectType.GAME;
-            }
-            case 6 -> {
-                return SubjectType.REAL;
-            }
-            default -> {
-                return SubjectType.OTHER;
-            }
-        }
-    }
-
-
-    private EpisodeGroup convertEpisodeType(BgmTvEpisodeType type) {
-        if (Objects.isNull(type)) {
-            return EpisodeGroup.OTHER;
-        }
-
-        switch (type) {
-            case POSITIVE -> {
-                return EpisodeGroup.MAIN;
-            }
-            case SPECIAL, MAD -> {
-                return EpisodeGroup.SPECIAL_PROMOTION;
-            }
-            case OP -> {
-                return EpisodeGroup.OPENING_SONG;
-            }
-            case ED -> {
-                return EpisodeGroup.ENDING_SONG;
-            }
-            case PV -> {
-                return EpisodeGroup.PROMOTION_VIDEO;
-            }
-            default -> {
-                return EpisodeGroup.OTHER;
-            }
-        }
-    }
 }
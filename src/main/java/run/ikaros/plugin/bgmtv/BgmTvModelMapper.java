@@ -0,0 +1,215 @@
+package run.ikaros.plugin.bgmtv;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import lombok.extern.slf4j.Slf4j;
+import run.ikaros.api.core.subject.Episode;
+import run.ikaros.api.store.enums.EpisodeGroup;
+import run.ikaros.api.store.enums.SubjectType;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+
+/**
+ * bgm.tv 模型到 ikaros 模型的转换，{@link BgmTvMetaService} 和 {@link BgmTvSubjectSynchronizer} 共用.
+ *
+ * <p>批量同步时每个剧集都会经过这里，类型和分组用预先构建的表查找，
+ * 放送日期按字符直接解析 yyyy-MM-dd、yyyy-MM 和 yyyy，不创建格式化器也不抛出异常.</p>
+ */
+@Slf4j
+public final class BgmTvModelMapper {
+    /**
+     * 条目类型，下标为 bgm.tv 的类型编号，1 书籍中的小说单独判断.
+     */
+    private static final SubjectType[] SUBJECT_TYPES = {
+        SubjectType.OTHER, SubjectType.COMIC, SubjectType.ANIME, SubjectType.MUSIC,
+        SubjectType.GAME, SubjectType.OTHER, SubjectType.REAL
+    };
+    private static final int BOOK = 1;
+    private static final int MUSIC = 3;
+    private static final String NOVEL_PLATFORM = "小说";
+
+    private static final Map<BgmTvEpisodeType, EpisodeGroup> EPISODE_GROUPS =
+        new EnumMap<>(BgmTvEpisodeType.class);
+
+    static {
+        for (BgmTvEpisodeType type : BgmTvEpisodeType.values()) {
+            EPISODE_GROUPS.put(type, switch (type) {
+                case POSITIVE -> EpisodeGroup.MAIN;
+                case SPECIAL, MAD -> EpisodeGroup.SPECIAL_PROMOTION;
+                case OP -> EpisodeGroup.OPENING_SONG;
+                case ED -> EpisodeGroup.ENDING_SONG;
+                case PV -> EpisodeGroup.PROMOTION_VIDEO;
+                default -> EpisodeGroup.OTHER;
+            });
+        }
+    }
+
+    /**
+     * 不符合快速解析格式的日期使用，与原来的解析方式一致.
+     */
+    private static final DateTimeFormatter AIR_TIME_FORMATTER = new DateTimeFormatterBuilder()
+        .appendPattern("yyyy-MM-dd")
+        .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+        .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+        .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+        .parseDefaulting(ChronoField.MILLI_OF_SECOND, 0)
+        .toFormatter();
+    private static final int NOT_DIGITS = -1;
+
+    private BgmTvModelMapper() {
+    }
+
+    @Nonnull
+    public static SubjectType convertType(@Nullable Integer type, @Nullable String platform) {
+        if (type == null || type < 0 || type >= SUBJECT_TYPES.length) {
+            return SubjectType.OTHER;
+        }
+        if (type == BOOK && NOVEL_PLATFORM.equals(platform)) {
+            return SubjectType.NOVEL;
+        }
+        return SUBJECT_TYPES[type];
+    }
+
+    @Nonnull
+    public static EpisodeGroup convertEpisodeType(@Nullable BgmTvEpisodeType type) {
+        return type == null ? EpisodeGroup.OTHER : EPISODE_GROUPS.get(type);
+    }
+
+    /**
+     * 解析放送日期，只有年月时为当月第一天，只有年时为当年第一天.
+     *
+     * @return 为空或者无法解析时返回 null
+     */
+    @Nullable
+    public static LocalDateTime convertAirTime(@Nullable String date) {
+        if (date == null || date.isEmpty()) {
+            return null;
+        }
+        LocalDate localDate = parseDate(date);
+        if (localDate != null) {
+            return localDate.atStartOfDay();
+        }
+        if (date.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(date, AIR_TIME_FORMATTER);
+        } catch (DateTimeParseException e) {
+            log.debug("Ignore invalid air time [{}].", date);
+            return null;
+        }
+    }
+
+    /**
+     * 解析 yyyy-MM-dd、yyyy-MM 和 yyyy，日期超出当月天数时取当月最后一天，与
+     * {@link java.time.format.ResolverStyle#SMART} 一致.
+     *
+     * @return 不是这三种格式或者月日超出范围时返回 null
+     */
+    @Nullable
+    static LocalDate parseDate(String date) {
+        int length = date.length();
+        if (length != 4 && length != 7 && length != 10) {
+            return null;
+        }
+        int year = digits(date, 0, 4);
+        int month = length == 4 ? 1 : digits(date, 5, 7);
+        int day = length == 10 ? digits(date, 8, 10) : 1;
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31
+            || (length >= 7 && date.charAt(4) != '-')
+            || (length == 10 && date.charAt(7) != '-')) {
+            return null;
+        }
+        int monthLength = Month.of(month).length(Year.isLeap(year));
+        return LocalDate.of(year, month, Math.min(day, monthLength));
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_DIGITS;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    @Nonnull
+    public static Episode convertEpisode(@Nonnull BgmTvEpisode bgmTvEpisode) {
+        return new Episode()
+            .setName(bgmTvEpisode.getName())
+            .setNameCn(bgmTvEpisode.getNameCn())
+            .setDescription(bgmTvEpisode.getDesc())
+            .setAirTime(convertAirTime(bgmTvEpisode.getAirDate()))
+            .setGroup(convertEpisodeType(bgmTvEpisode.getType()))
+            .setSequence((Objects.nonNull(bgmTvEpisode.getSort())
+                ? bgmTvEpisode.getSort().floatValue() : bgmTvEpisode.getEp()));
+    }
+
+    /**
+     * 音乐条目的序号在曲目序号前拼上碟片数，例如第 2 张碟的第 3 首为 23.
+     */
+    @Nonnull
+    public static Episode convertMusicEpisode(@Nonnull BgmTvEpisode bgmTvEpisode) {
+        float originalSeq = Objects.nonNull(bgmTvEpisode.getSort())
+            ? bgmTvEpisode.getSort().floatValue() : bgmTvEpisode.getEp();
+        return new Episode()
+            .setName(bgmTvEpisode.getName())
+            .setNameCn(bgmTvEpisode.getNameCn())
+            .setDescription(bgmTvEpisode.getDesc())
+            .setAirTime(convertAirTime(bgmTvEpisode.getAirDate()))
+            .setGroup(convertEpisodeType(bgmTvEpisode.getType()))
+            .setSequence(musicSequence(bgmTvEpisode.getDisc(), originalSeq));
+    }
+
+    private static float musicSequence(String disc, float seq) {
+        int discNumber = disc == null || disc.isEmpty() || disc.length() > 3
+            ? NOT_DIGITS : digits(disc, 0, disc.length());
+        // 整数序号直接计算，其余情况按字符串拼接后解析
+        if (discNumber != NOT_DIGITS && seq >= 0 && seq < 1_000_000 && seq == (int) seq) {
+            int intSeq = (int) seq;
+            int scale = 10;
+            while (scale <= intSeq) {
+                scale *= 10;
+            }
+            return (float) ((long) discNumber * scale + intSeq);
+        }
+        return Float.parseFloat(disc + seq);
+    }
+
+    /**
+     * 按条目类型批量转换剧集，音乐条目使用 {@link #convertMusicEpisode}.
+     *
+     * @param subjectType bgm.tv 的条目类型编号
+     */
+    @Nonnull
+    public static List<Episode> convertEpisodes(@Nullable Integer subjectType,
+                                                @Nullable List<BgmTvEpisode> bgmTvEpisodes) {
+        if (bgmTvEpisodes == null || bgmTvEpisodes.isEmpty()) {
+            return List.of();
+        }
+        boolean music = Objects.equals(subjectType, MUSIC);
+        List<Episode> episodes = new ArrayList<>(bgmTvEpisodes.size());
+        for (BgmTvEpisode bgmTvEpisode : bgmTvEpisodes) {
+            episodes.add(music ? convertMusicEpisode(bgmTvEpisode)
+                : convertEpisode(bgmTvEpisode));
+        }
+        return Collections.unmodifiableList(episodes);
+    }
+}
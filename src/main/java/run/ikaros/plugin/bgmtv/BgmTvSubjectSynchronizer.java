@@ -1,17 +1,27 @@
 package run.ikaros.plugin.bgmtv;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
-import java.time.temporal.ChronoField;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.pf4j.Extension;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import run.ikaros.api.core.attachment.AttachmentOperate;
 import run.ikaros.api.core.character.Character;
 import run.ikaros.api.core.person.Person;
@@ -19,12 +29,13 @@ import run.ikaros.api.core.subject.Episode;
 import run.ikaros.api.core.subject.Subject;
 import run.ikaros.api.core.subject.SubjectSynchronizer;
 import run.ikaros.api.core.tag.Tag;
+import run.ikaros.api.infra.exception.NotFoundException;
 import run.ikaros.api.infra.utils.UuidV7Utils;
-import run.ikaros.api.store.enums.EpisodeGroup;
 import run.ikaros.api.store.enums.SubjectSyncPlatform;
-import run.ikaros.api.store.enums.SubjectType;
+import run.ikaros.plugin.bgmtv.constants.BgmTvApiConst;
+import run.ikaros.plugin.bgmtv.model.BgmTvCharacter;
 import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
-import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+import run.ikaros.plugin.bgmtv.model.BgmTvPerson;
 import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
 import run.ikaros.plugin.bgmtv.model.BgmTvTag;
 import run.ikaros.plugin.bgmtv.model.EpisodeGroupSequence;
@@ -34,10 +45,34 @@ import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
 @Extension
 public class BgmTvSubjectSynchronizer implements SubjectSynchronizer {
 
+    /**
+     * 同步一个条目时，条目详情、剧集和标签的拉取共用同一组请求，拉取上下文在该时间后失效.
+     */
+    static final Duration FETCH_CONTEXT_TTL = Duration.ofMinutes(1);
+
     private final BgmTvRepository bgmTvRepository;
     private final AttachmentOperate attachmentOperate;
+    private final Map<String, FetchContext> fetchContexts = new ConcurrentHashMap<>();
+    /**
+     * 下一次清理其它条目过期上下文的时间，{@link System#nanoTime()}.
+     */
+    private volatile long nextSweepAt = System.nanoTime();
 
-    private ThreadLocal<BgmTvSubject> subjectThreadLocal = new ThreadLocal<>();
+    /**
+     * 一个条目的拉取上下文，条目详情、剧集、关联人物和关联角色列表都在第一次拉取时才请求，
+     * 之后的拉取方等待同一组结果.
+     *
+     * @param expireAt 失效时间，{@link System#nanoTime()}
+     */
+    private record FetchContext(Mono<BgmTvSubject> subject,
+                                Mono<List<BgmTvEpisode>> episodes,
+                                Mono<List<BgmTvPerson>> persons,
+                                Mono<List<BgmTvCharacter>> characters,
+                                long expireAt) {
+        private boolean isExpired(long now) {
+            return now - expireAt >= 0;
+        }
+    }
 
     public BgmTvSubjectSynchronizer(BgmTvRepository bgmTvRepository,
                                     AttachmentOperate attachmentOperate) {
@@ -53,39 +88,196 @@ public class BgmTvSubjectSynchronizer implements SubjectSynchronizer {
 
     @Override
     public Subject fetchSubjectWithPlatformId(String platformId) {
-        BgmTvSubject bgmTvSubject = bgmTvRepository.getSubject(Long.valueOf(platformId));
-        subjectThreadLocal.set(bgmTvSubject);
+        FetchContext context = fetchContext(platformId);
+        BgmTvSubject bgmTvSubject = join(platformId, context, context.subject());
         if (Objects.isNull(bgmTvSubject)) {
             return null;
         }
+        return convertSubject(bgmTvSubject);
+    }
+
+    @Override
+    public List<Episode> fetchEpisodesWithPlatformId(String platformId) {
+        FetchContext context = fetchContext(platformId);
+        // 剧集的转换依赖条目类型，两个请求并行发出，都完成后再转换
+        CompletableFuture<List<BgmTvEpisode>> episodes = context.episodes().toFuture();
+        CompletableFuture<BgmTvSubject> subject = context.subject().toFuture();
+        List<BgmTvEpisode> bgmTvEpisodes = join(platformId, context, episodes);
+        BgmTvSubject bgmTvSubject = join(platformId, context, subject);
+        if (Objects.isNull(bgmTvSubject)) {
+            return List.of();
+        }
+        return BgmTvModelMapper.convertEpisodes(bgmTvSubject.getType(), bgmTvEpisodes);
+    }
+
+    @Override
+    public List<Tag> fetchTagsWithPlatformId(String platformId) {
+        FetchContext context = fetchContext(platformId);
+        BgmTvSubject bgmTvSubject = join(platformId, context, context.subject());
+        if (Objects.isNull(bgmTvSubject)) {
+            return List.of();
+        }
+        return convertTags(bgmTvSubject);
+    }
+
+    /**
+     * 获取条目的拉取上下文，可以在任意线程上与同一条目的其它拉取并行调用.
+     */
+    private FetchContext fetchContext(String platformId) {
+        long now = System.nanoTime();
+        sweepExpired(now);
+        // 本条目的过期上下文在访问时替换
+        return fetchContexts.compute(platformId, (key, existing) -> {
+            if (existing != null && !existing.isExpired(now)) {
+                return existing;
+            }
+            Long subjectId = Long.valueOf(platformId);
+            return new FetchContext(
+                fetchLazily(() -> bgmTvRepository.getSubject(subjectId)),
+                fetchLazily(() -> bgmTvRepository.findAllEpisodesBySubjectId(subjectId, null)),
+                fetchLazily(() -> bgmTvRepository.findPersonsBySubjectId(subjectId)),
+                fetchLazily(() -> bgmTvRepository.findCharactersBySubjectId(subjectId)),
+                now + FETCH_CONTEXT_TTL.toNanos());
+        });
+    }
+
+    /**
+     * 不再被访问的条目的上下文每个有效期最多清理一次，不必每次拉取都遍历.
+     */
+    private void sweepExpired(long now) {
+        long sweepAt = nextSweepAt;
+        if (now - sweepAt < 0) {
+            return;
+        }
+        nextSweepAt = now + FETCH_CONTEXT_TTL.toNanos();
+        fetchContexts.values().removeIf(context -> context.isExpired(now));
+    }
+
+    private <T> T join(String platformId, FetchContext context, Mono<T> mono) {
+        return join(platformId, context, mono.toFuture());
+    }
+
+    private <T> T join(String platformId, FetchContext context, CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 失败的结果不保留，下次拉取重新请求
+            fetchContexts.remove(platformId, context);
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 条目不存在时为 {@link Optional#empty()}.
+     */
+    private Mono<Optional<BgmTvSubject>> fetchSubject(Long subjectId) {
+        return Mono.fromCallable(() -> Optional.ofNullable(bgmTvRepository.getSubject(subjectId)))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 第一次订阅时才发起请求，之后的订阅共用同一个结果，返回 null 时为空.
+     */
+    private <T> Mono<T> fetchLazily(Callable<T> callable) {
+        return Mono.fromCallable(callable)
+            .subscribeOn(Schedulers.boundedElastic())
+            .cache();
+    }
+
+    private Mono<List<BgmTvEpisode>> fetchEpisodes(Long subjectId) {
+        return Mono.fromCallable(() -> bgmTvRepository.findAllEpisodesBySubjectId(subjectId, null))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 按默认并行数批量同步条目.
+     *
+     * @see #syncSubjectsWithPlatformIds(Collection, int)
+     */
+    public Flux<SyncResult> syncSubjectsWithPlatformIds(Collection<String> platformIds) {
+        return syncSubjectsWithPlatformIds(platformIds, BgmTvApiConst.SUBJECT_SYNC_CONCURRENCY);
+    }
+
+    /**
+     * 批量同步条目，用于导入整个番剧库.
+     *
+     * <p>每个条目同时拉取详情和剧集，条目之间最多 concurrency 个并行，
+     * 阻塞的请求在 boundedElastic 线程上执行，请求速率由共用的限流器控制.
+     * 结果按完成顺序返回，单个条目失败只体现在对应的结果中，不会中断整个批次.</p>
+     *
+     * @param platformIds bgm.tv 条目ID
+     * @param concurrency 同时同步的条目数
+     */
+    public Flux<SyncResult> syncSubjectsWithPlatformIds(Collection<String> platformIds,
+                                                        int concurrency) {
+        Assert.notNull(platformIds, "'platformIds' must not null.");
+        Assert.isTrue(concurrency > 0, "'concurrency' must > 0.");
+        return Flux.fromIterable(new LinkedHashSet<>(platformIds))
+            .flatMap(platformId -> Mono.defer(() -> syncSubject(platformId))
+                .onErrorResume(e -> {
+                    log.warn("Sync subject fail for platform id [{}].", platformId, e);
+                    return Mono.just(SyncResult.failure(platformId, e));
+                }), concurrency);
+    }
+
+    private Mono<SyncResult> syncSubject(String platformId) {
+        Long subjectId = Long.valueOf(platformId);
+        // 条目详情和剧集列表同时请求，都返回后再按条目类型转换剧集
+        return Mono.zip(fetchSubject(subjectId), fetchEpisodes(subjectId))
+            .map(tuple -> {
+                BgmTvSubject bgmTvSubject = tuple.getT1().orElse(null);
+                if (Objects.isNull(bgmTvSubject)) {
+                    return SyncResult.failure(platformId,
+                        new NotFoundException("Not found bgmtv subject for id: " + platformId));
+                }
+                return new SyncResult(platformId, convertSubject(bgmTvSubject),
+                    BgmTvModelMapper.convertEpisodes(bgmTvSubject.getType(), tuple.getT2()),
+                    convertTags(bgmTvSubject),
+                    null);
+            });
+    }
+
+    /**
+     * 单个条目的同步结果.
+     *
+     * @param error 同步失败的原因，成功时为 null
+     */
+    public record SyncResult(String platformId, Subject subject, List<Episode> episodes,
+                             List<Tag> tags, Throwable error) {
+        static SyncResult failure(String platformId, Throwable error) {
+            return new SyncResult(platformId, null, List.of(), List.of(), error);
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    private Subject convertSubject(BgmTvSubject bgmTvSubject) {
         return new Subject()
             .setId(UuidV7Utils.generateUuid())
-            .setType(convertType(bgmTvSubject.getType(), bgmTvSubject.getPlatform()))
+            .setType(BgmTvModelMapper.convertType(bgmTvSubject.getType(),
+                bgmTvSubject.getPlatform()))
             .setName(bgmTvSubject.getName())
             .setNameCn(StringUtils.isNotBlank(bgmTvSubject.getNameCn())
                 ? bgmTvSubject.getNameCn() : bgmTvSubject.getName())
             .setInfobox(bgmTvSubject.getInfobox())
             .setSummary(bgmTvSubject.getSummary())
             .setNsfw(bgmTvSubject.getNsfw())
-            .setAirTime(convertAirTime(
+            .setAirTime(BgmTvModelMapper.convertAirTime(
                 Objects.nonNull(bgmTvSubject.getDate()) ? bgmTvSubject.getDate() : "1999-09-09"))
-            .setCover(bgmTvSubject.getImages().getLarge());
-    }
-
-    @Override
-    public List<Episode> fetchEpisodesWithPlatformId(String platformId) {
-        BgmTvSubject bgmTvSubject = subjectThreadLocal.get();
-        return bgmTvRepository.findEpisodesBySubjectId(Long.valueOf(platformId), null,
-                null, null)
-            .stream()
-            .map(bgmTvEpisode -> bgmTvSubject.getType() == 3 ?
-                convertMusicEpisode(bgmTvEpisode) : convertEpisode(bgmTvEpisode))
-            .toList();
+            // 数据存档中的条目没有封面
+            .setCover(Objects.nonNull(bgmTvSubject.getImages())
+                ? bgmTvSubject.getImages().getLarge() : null);
     }
 
-    @Override
-    public List<Tag> fetchTagsWithPlatformId(String platformId) {
-        BgmTvSubject bgmTvSubject = subjectThreadLocal.get();
+    private List<Tag> convertTags(BgmTvSubject bgmTvSubject) {
+        if (Objects.isNull(bgmTvSubject.getTags())) {
+            return List.of();
+        }
         return bgmTvSubject.getTags().stream()
             .map(BgmTvTag::getName)
             .map(name -> Tag.builder()
@@ -94,16 +286,61 @@ public class BgmTvSubjectSynchronizer implements SubjectSynchronizer {
             .toList();
     }
 
+    /**
+     * 拉取条目的关联人物，人物详情经共用的缓存获取，批量同步时同一人物只请求一次.
+     */
     @Override
     public List<Person> fetchPersonsWithPlatformId(String platformId) {
-        // TODO 条目人物相关
-        return List.of();
+        FetchContext context = fetchContext(platformId);
+        List<BgmTvPerson> persons = join(platformId, context, context.persons());
+        return fetchDetails(persons, BgmTvPerson::getId, bgmTvRepository::getPerson)
+            .map(person -> new Person()
+                .setName(person.getName())
+                .setInfobox(person.getInfobox())
+                .setSummary(person.getSummary()))
+            .collectList()
+            .block();
     }
 
+    /**
+     * 拉取条目的关联角色，角色详情经共用的缓存获取.
+     */
     @Override
     public List<Character> fetchCharactersWithPlatformId(String platformId) {
-        // TODO 条目角色相关
-        return List.of();
+        FetchContext context = fetchContext(platformId);
+        List<BgmTvCharacter> characters = join(platformId, context, context.characters());
+        return fetchDetails(characters, BgmTvCharacter::getId, bgmTvRepository::getCharacter)
+            .map(character -> new Character()
+                .setName(character.getName())
+                .setInfobox(character.getInfobox())
+                .setSummary(character.getSummary()))
+            .collectList()
+            .block();
+    }
+
+    /**
+     * 按ID去重后并发拉取详情，保持列表顺序，详情不存在时使用列表中的简要信息.
+     */
+    private <T> Flux<T> fetchDetails(List<T> related, Function<T, Integer> idGetter,
+                                     Function<Long, T> detailGetter) {
+        Map<Integer, T> distinct = new LinkedHashMap<>();
+        for (T item : related) {
+            Integer id = idGetter.apply(item);
+            if (id != null) {
+                distinct.putIfAbsent(id, item);
+            }
+        }
+        return Flux.fromIterable(distinct.entrySet())
+            .flatMapSequential(entry -> Mono.fromCallable(() ->
+                        Optional.ofNullable(detailGetter.apply(entry.getKey().longValue())))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .map(detail -> detail.orElse(entry.getValue()))
+                    .onErrorResume(e -> {
+                        log.warn("Fetch detail fail for id [{}], use the related item instead.",
+                            entry.getKey(), e);
+                        return Mono.just(entry.getValue());
+                    }),
+                BgmTvApiConst.DETAIL_FETCH_CONCURRENCY);
     }
 
     private Subject mergeBgmTvSubject(Subject subject, BgmTvSubject bgmTvSubject) {
@@ -111,14 +348,15 @@ public class BgmTvSubjectSynchronizer implements SubjectSynchronizer {
             return subject;
         }
         return subject
-            .setType(convertType(bgmTvSubject.getType(), bgmTvSubject.getPlatform()))
+            .setType(BgmTvModelMapper.convertType(bgmTvSubject.getType(),
+                bgmTvSubject.getPlatform()))
             .setName(bgmTvSubject.getName())
             .setNameCn(StringUtils.isNotBlank(bgmTvSubject.getNameCn())
                 ? bgmTvSubject.getNameCn() : bgmTvSubject.getName())
             .setInfobox(bgmTvSubject.getInfobox())
             .setSummary(bgmTvSubject.getSummary())
             .setNsfw(bgmTvSubject.getNsfw())
-            .setAirTime(convertAirTime(bgmTvSubject.getDate()));
+            .setAirTime(BgmTvModelMapper.convertAirTime(bgmTvSubject.getDate()));
     }
 
 
@@ -162,109 +400,4 @@ public class BgmTvSubjectSynchronizer implements SubjectSynchronizer {
         return subject;
     }
 
-    private Episode convertEpisode(BgmTvEpisode bgmTvEpisode) {
-        log.debug("Pull episode:[{}] form by platform:[{}]",
-            bgmTvEpisode.getName(), getSyncPlatform());
-        return new Episode()
-            .setName(bgmTvEpisode.getName())
-            .setNameCn(bgmTvEpisode.getNameCn())
-            .setDescription(bgmTvEpisode.getDesc())
-            .setAirTime(convertAirTime(bgmTvEpisode.getAirDate()))
-            .setGroup(convertEpisodeType(bgmTvEpisode.getType()))
-            .setSequence((Objects.nonNull(bgmTvEpisode.getSort())
-                ? bgmTvEpisode.getSort().floatValue() : bgmTvEpisode.getEp()));
-    }
-
-    private Episode convertMusicEpisode(BgmTvEpisode bgmTvEpisode) {
-        log.debug("Pull episode:[{}] form by platform:[{}]",
-            bgmTvEpisode.getName(), getSyncPlatform());
-        float originalSeq = Objects.nonNull(bgmTvEpisode.getSort())
-            ? bgmTvEpisode.getSort().floatValue() : bgmTvEpisode.getEp();
-        originalSeq = Float.parseFloat(bgmTvEpisode.getDisc() + originalSeq);
-        return new Episode()
-            .setName(bgmTvEpisode.getName())
-            .setNameCn(bgmTvEpisode.getNameCn())
-            .setDescription(bgmTvEpisode.getDesc())
-            .setAirTime(convertAirTime(bgmTvEpisode.getAirDate()))
-            .setGroup(convertEpisodeType(bgmTvEpisode.getType()))
-            .setSequence(originalSeq);
-    }
-
-
-    private LocalDateTime convertAirTime(String date) {
-        if (StringUtils.isBlank(date)) {
-            return null;
-        }
-        final DateTimeFormatter formatter = new DateTimeFormatterBuilder()
-            .appendPattern("yyyy-MM-dd")
-            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
-            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
-            .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
-            .parseDefaulting(ChronoField.MILLI_OF_SECOND, 0)
-            .toFormatter();
-        LocalDateTime dateTime;
-        try {
-            dateTime = LocalDateTime.parse(date, formatter);
-        } catch (Exception e) {
-            log.warn("convert air time fail:", e);
-            dateTime = null;
-        }
-        return dateTime;
-    }
-
-    private SubjectType convertType(Integer type, String platform) {
-        if (Objects.isNull(type)) {
-            return SubjectType.OTHER;
-        }
-        switch (type) {
-            case 1 -> {
-                return (StringUtils.isNotBlank(platform) && "小说".equalsIgnoreCase(platform))
-                    ? SubjectType.NOVEL : SubjectType.COMIC;
-            }
-            case 2 -> {
-                return SubjectType.ANIME;
-            }
-            case 3 -> {
-                return SubjectType.MUSIC;
-            }
-            case 4 -> {
-                return SubjectType.GAME;
-            }
-            case 6 -> {
-                return SubjectType.REAL;
-            }
-            default -> {
-                return SubjectType.OTHER;
-            }
-        }
-    }
-
-
-    private EpisodeGroup convertEpisodeType(BgmTvEpisodeType type) {
-        if (Objects.isNull(type)) {
-            return EpisodeGroup.OTHER;
-        }
-
-        switch (type) {
-            case POSITIVE -> {
-                return EpisodeGroup.MAIN;
-            }
-            case SPECIAL, MAD -> {
-                return EpisodeGroup.SPECIAL_PROMOTION;
-            }
-            case OP -> {
-                return EpisodeGroup.OPENING_SONG;
-            }
-            case ED -> {
-                return EpisodeGroup.ENDING_SONG;
-            }
-            case PV -> {
-                return EpisodeGroup.PROMOTION_VIDEO;
-            }
-            default -> {
-                return EpisodeGroup.OTHER;
-            }
-        }
-    }
-
 }
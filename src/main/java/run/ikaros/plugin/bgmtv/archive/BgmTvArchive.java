@@ -0,0 +1,567 @@
+package run.ikaros.plugin.bgmtv.archive;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettings;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 番组计划数据存档（Bangumi Archive）的本地索引.
+ *
+ * <p>存档以 jsonlines 发布，每周一份完整快照. 导入时逐行读取 subject.jsonlines 和 episode.jsonlines，
+ * 转换成接口返回的格式后写入按条目ID排序的 {@link BgmTvArchiveTable}，之后按条目ID查找时只读取
+ * 映射到内存中的索引和对应的记录. 每个存档文件的大小和修改时间（zip 中为 CRC）记录在 manifest 中，
+ * 没有变化的文件不会重新导入，有变化的文件导入到新的一代索引文件中，导入完成后再替换.</p>
+ *
+ * @see BgmTvArchiveMode
+ */
+@Slf4j
+@Component
+public class BgmTvArchive implements DisposableBean {
+    public static final Path DEFAULT_DIRECTORY =
+        Path.of(System.getProperty("java.io.tmpdir"), "ikaros-plugin-bgmtv", "archive");
+    public static final String SUBJECT_FILE = "subject.jsonlines";
+    public static final String EPISODE_FILE = "episode.jsonlines";
+
+    private static final String SUBJECTS = "subjects";
+    private static final String EPISODES = "episodes";
+    private static final String MANIFEST = "manifest.properties";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /**
+     * 条目类型到平台编码和名称的对应，见 bangumi/server 的 subject_platforms.yml.
+     */
+    private static final Map<Integer, Map<String, String>> PLATFORM_NAMES = Map.of(
+        1, Map.of("1001", "漫画", "1002", "小说", "1003", "画集"),
+        2, Map.of("1", "TV", "2", "OVA", "3", "剧场版", "5", "WEB"));
+
+    private final BgmTvSettingsHolder settingsHolder;
+    private final Path directory;
+    private final Map<String, BgmTvArchiveTable> tables = new ConcurrentHashMap<>();
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private volatile boolean opened;
+    /**
+     * 最近一次由配置触发的后台导入.
+     */
+    private volatile CompletableFuture<IngestResult> settingsIngest =
+        CompletableFuture.completedFuture(null);
+
+    /**
+     * @param subjects 导入的条目数，文件未变化或不存在时为 -1
+     * @param episodes 导入的剧集数，文件未变化或不存在时为 -1
+     */
+    public record IngestResult(long subjects, long episodes) {
+    }
+
+    /**
+     * 存档中的一个文件.
+     *
+     * @param signature 用于判断文件是否变化
+     */
+    private record Source(String signature, SourceOpener opener) {
+    }
+
+    @FunctionalInterface
+    private interface SourceOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * 把一行 JSON 转换成写入索引的记录.
+     *
+     * @param key 条目ID
+     */
+    private record Record(int key, byte[] json) {
+    }
+
+    public BgmTvArchive(BgmTvSettingsHolder settingsHolder) {
+        this(settingsHolder, DEFAULT_DIRECTORY);
+    }
+
+    public BgmTvArchive(@Nonnull BgmTvSettingsHolder settingsHolder, @Nonnull Path directory) {
+        Assert.notNull(settingsHolder, "'settingsHolder' must not null.");
+        Assert.notNull(directory, "'directory' must not null.");
+        this.settingsHolder = settingsHolder;
+        this.directory = directory;
+        // 启动时配置可能已经加载完成，此时注册会立即以当前配置触发导入
+        settingsHolder.addListener(this::onSettingsChanged);
+    }
+
+    private void onSettingsChanged(BgmTvSettings settings) {
+        if (!settings.isArchiveEnabled()) {
+            return;
+        }
+        Path archivePath = settings.archivePath();
+        settingsIngest = Mono.fromCallable(() -> ingest(archivePath))
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnNext(result -> log.info("Ingest bgm.tv archive [{}] result: {}.",
+                archivePath, result))
+            .doOnError(e -> log.error("Ingest bgm.tv archive [{}] fail.", archivePath, e))
+            .toFuture();
+    }
+
+    /**
+     * 最近一次由配置触发的后台导入，没有时为已完成的 null.
+     */
+    CompletableFuture<IngestResult> settingsIngest() {
+        return settingsIngest;
+    }
+
+    /**
+     * 开启了数据存档.
+     */
+    public boolean isEnabled() {
+        return settingsHolder.get().isArchiveEnabled();
+    }
+
+    /**
+     * 开启了离线模式，条目和剧集只从存档中读取.
+     */
+    public boolean isOffline() {
+        BgmTvSettings settings = settingsHolder.get();
+        return settings.isArchiveEnabled() && settings.archiveMode() == BgmTvArchiveMode.OFFLINE;
+    }
+
+    /**
+     * 从存档中获取条目，未开启存档或存档中没有时返回 null.
+     */
+    @Nullable
+    public BgmTvSubject getSubject(long subjectId) {
+        if (subjectId <= 0 || subjectId > Integer.MAX_VALUE) {
+            return null;
+        }
+        BgmTvArchiveTable subjects = acquire(SUBJECTS);
+        if (subjects == null) {
+            return null;
+        }
+        try {
+            byte[] record = subjects.get((int) subjectId);
+            return record == null ? null : JsonUtils.bytes2obj(record, BgmTvSubject.class);
+        } catch (UncheckedIOException e) {
+            log.warn("Read subject [{}] from bgm.tv archive fail.", subjectId, e);
+            return null;
+        } finally {
+            subjects.release();
+        }
+    }
+
+    /**
+     * 从存档中获取条目的所有剧集，按存档中的顺序排列.
+     *
+     * @return 未开启存档或存档中没有该条目时返回 null，条目没有剧集时返回空列表
+     */
+    @Nullable
+    public List<BgmTvEpisode> findEpisodes(long subjectId) {
+        if (subjectId <= 0 || subjectId > Integer.MAX_VALUE) {
+            return null;
+        }
+        BgmTvArchiveTable episodes = acquire(EPISODES);
+        BgmTvArchiveTable subjects = acquire(SUBJECTS);
+        try {
+            if (episodes == null && subjects == null) {
+                return null;
+            }
+            List<byte[]> records = episodes == null ? List.of() : episodes.getAll((int) subjectId);
+            if (records.isEmpty()) {
+                return subjects != null && subjects.contains((int) subjectId) ? List.of() : null;
+            }
+            List<BgmTvEpisode> result = new ArrayList<>(records.size());
+            for (byte[] record : records) {
+                BgmTvEpisode episode = JsonUtils.bytes2obj(record, BgmTvEpisode.class);
+                if (episode != null) {
+                    result.add(episode);
+                }
+            }
+            return result;
+        } catch (UncheckedIOException e) {
+            log.warn("Read episodes of subject [{}] from bgm.tv archive fail.", subjectId, e);
+            return null;
+        } finally {
+            if (episodes != null) {
+                episodes.release();
+            }
+            if (subjects != null) {
+                subjects.release();
+            }
+        }
+    }
+
+    /**
+     * 当前条目索引的代数，每次重新导入条目后变化，未开启存档或未导入时为 0.
+     */
+    public long getSubjectsGeneration() {
+        return table(SUBJECTS) == null ? 0 : generations.getOrDefault(SUBJECTS, 0L);
+    }
+
+    /**
+     * 按条目ID顺序遍历存档中的所有条目，未开启存档时不遍历.
+     */
+    public void forEachSubject(@Nonnull Consumer<BgmTvSubject> consumer) {
+        Assert.notNull(consumer, "'consumer' must not null.");
+        BgmTvArchiveTable subjects = acquire(SUBJECTS);
+        if (subjects == null) {
+            return;
+        }
+        try {
+            subjects.forEach((subjectId, record) -> {
+                BgmTvSubject subject = JsonUtils.bytes2obj(record, BgmTvSubject.class);
+                if (subject != null) {
+                    consumer.accept(subject);
+                }
+            });
+        } finally {
+            subjects.release();
+        }
+    }
+
+    @Nullable
+    private BgmTvArchiveTable table(String name) {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (!opened) {
+            openTables();
+        }
+        return tables.get(name);
+    }
+
+    /**
+     * 获取表并增加引用，用完后调用 {@link BgmTvArchiveTable#release()}，
+     * 查找期间重新导入替换了该表时，旧表在查找结束后才关闭.
+     */
+    @Nullable
+    private BgmTvArchiveTable acquire(String name) {
+        while (true) {
+            BgmTvArchiveTable table = table(name);
+            if (table == null || table.retain()) {
+                return table;
+            }
+            // 取到的表刚被替换并关闭，重新读取
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 打开 manifest 中记录的上一次导入的索引.
+     */
+    private synchronized void openTables() {
+        if (opened) {
+            return;
+        }
+        Properties manifest = readManifest();
+        for (String name : List.of(SUBJECTS, EPISODES)) {
+            String generation = manifest.getProperty(name + ".generation");
+            if (generation == null || tables.containsKey(name)) {
+                continue;
+            }
+            try {
+                tables.put(name, BgmTvArchiveTable.open(indexFile(name, generation),
+                    dataFile(name, generation)));
+                generations.put(name, NumberUtils.toLong(generation));
+            } catch (IOException e) {
+                log.warn("Open bgm.tv archive table [{}] fail, ingest again to rebuild it.",
+                    name, e);
+            }
+        }
+        opened = true;
+    }
+
+    /**
+     * 导入存档，同一时间只有一个导入在执行，没有变化的文件直接跳过.
+     *
+     * @param archivePath 解压后的存档目录，或者存档 zip 文件
+     */
+    public synchronized IngestResult ingest(@Nonnull Path archivePath) throws IOException {
+        Assert.notNull(archivePath, "'archivePath' must not null.");
+        Files.createDirectories(directory);
+        openTables();
+        if (Files.isDirectory(archivePath)) {
+            return new IngestResult(
+                ingestTable(SUBJECTS, directorySource(archivePath, SUBJECT_FILE),
+                    BgmTvArchive::subjectRecord),
+                ingestTable(EPISODES, directorySource(archivePath, EPISODE_FILE),
+                    BgmTvArchive::episodeRecord));
+        }
+        try (ZipFile zipFile = new ZipFile(archivePath.toFile(), StandardCharsets.UTF_8)) {
+            return new IngestResult(
+                ingestTable(SUBJECTS, zipSource(zipFile, SUBJECT_FILE),
+                    BgmTvArchive::subjectRecord),
+                ingestTable(EPISODES, zipSource(zipFile, EPISODE_FILE),
+                    BgmTvArchive::episodeRecord));
+        }
+    }
+
+    @Nullable
+    private static Source directorySource(Path archiveDirectory, String fileName)
+        throws IOException {
+        Path file = archiveDirectory.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return new Source(Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis(),
+            () -> Files.newInputStream(file));
+    }
+
+    @Nullable
+    private static Source zipSource(ZipFile zipFile, String fileName) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()
+                && (entry.getName().equals(fileName)
+                || entry.getName().endsWith("/" + fileName))) {
+                return new Source(entry.getSize() + ":" + Long.toHexString(entry.getCrc()),
+                    () -> zipFile.getInputStream(entry));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 逐行导入一个存档文件到新一代索引，完成后替换当前的索引.
+     *
+     * @return 导入的记录数，文件不存在或未变化时返回 -1
+     */
+    private long ingestTable(String name, @Nullable Source source,
+                             Function<String, Record> converter) throws IOException {
+        if (source == null) {
+            log.warn("Skip bgm.tv archive table [{}] because the file does not exist.", name);
+            return -1;
+        }
+        Properties manifest = readManifest();
+        if (source.signature().equals(manifest.getProperty(name + ".signature"))
+            && tables.containsKey(name)) {
+            log.debug("Skip unchanged bgm.tv archive table [{}].", name);
+            return -1;
+        }
+        String oldGeneration = manifest.getProperty(name + ".generation");
+        String generation = String.valueOf(Math.max(System.currentTimeMillis(),
+            NumberUtils.toLong(oldGeneration) + 1));
+        Path indexFile = indexFile(name, generation);
+        Path dataFile = dataFile(name, generation);
+        long count;
+        long skipped = 0;
+        try (BgmTvArchiveTableWriter writer = new BgmTvArchiveTableWriter(indexFile, dataFile);
+             InputStream inputStream = source.opener().open();
+             BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                Record record = converter.apply(line);
+                if (record == null) {
+                    skipped++;
+                    continue;
+                }
+                writer.add(record.key(), record.json());
+            }
+            count = writer.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(dataFile);
+            throw e;
+        }
+        if (skipped > 0) {
+            log.warn("Skip [{}] invalid lines of bgm.tv archive table [{}].", skipped, name);
+        }
+
+        BgmTvArchiveTable table = BgmTvArchiveTable.open(indexFile, dataFile);
+        manifest.setProperty(name + ".generation", generation);
+        manifest.setProperty(name + ".signature", source.signature());
+        manifest.setProperty(name + ".count", String.valueOf(count));
+        writeManifest(manifest);
+        BgmTvArchiveTable old = tables.put(name, table);
+        generations.put(name, NumberUtils.toLong(generation));
+        if (old != null) {
+            old.close();
+        }
+        if (oldGeneration != null && !oldGeneration.equals(generation)) {
+            deleteQuietly(indexFile(name, oldGeneration));
+            deleteQuietly(dataFile(name, oldGeneration));
+        }
+        return count;
+    }
+
+    @Nullable
+    private static Record subjectRecord(String line) {
+        BgmTvSubject subject = parseLine(line, BgmTvSubject.class);
+        if (subject == null || subject.getId() == null || subject.getId() <= 0) {
+            return null;
+        }
+        // 存档中的 platform 是数字编码，转换成接口返回的平台名称
+        subject.setPlatform(platformName(subject.getType(), subject.getPlatform()));
+        subject.setInfobox(wikiToInfobox(subject.getInfobox()));
+        return new Record(subject.getId(),
+            JsonUtils.obj2Json(subject).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 把存档中的平台编码转换成接口返回的平台名称，条目类型转换只用到书籍的平台，
+     * 这里只转换书籍和动画的常用平台，其余编码不保留.
+     */
+    @Nullable
+    static String platformName(@Nullable Integer type, @Nullable String platform) {
+        if (type == null || platform == null) {
+            return null;
+        }
+        return PLATFORM_NAMES.getOrDefault(type, Map.of()).get(platform);
+    }
+
+    @Nullable
+    private static Record episodeRecord(String line) {
+        BgmTvArchiveEpisode episode = parseLine(line, BgmTvArchiveEpisode.class);
+        if (episode == null || episode.getSubjectId() == null || episode.getSubjectId() <= 0) {
+            return null;
+        }
+        return new Record(episode.getSubjectId(),
+            JsonUtils.obj2Json(episode).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析存档中的一行，格式不正确的行返回 null，由调用方计入跳过的行数.
+     */
+    @Nullable
+    private static <T> T parseLine(String line, Class<T> clazz) {
+        try {
+            return JsonUtils.bytes2obj(line.getBytes(StandardCharsets.UTF_8), clazz);
+        } catch (UncheckedIOException e) {
+            log.debug("Skip malformed bgm.tv archive line: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 把存档中的维基文本转换成与 {@link run.ikaros.plugin.bgmtv.model.BgmTvInfoboxDeserializer}
+     * 相同的 key: value 多行文本，多值字段的值以空格拼接.
+     *
+     * <pre>
+     * {{Infobox animanga/TVAnime
+     * |中文名= 进击的巨人
+     * |别名={
+     * [Attack on Titan]
+     * [英文|Attack on Titan]
+     * }
+     * }}
+     * </pre>
+     */
+    @Nullable
+    static String wikiToInfobox(@Nullable String wiki) {
+        if (wiki == null || !wiki.stripLeading().startsWith("{{")) {
+            return wiki;
+        }
+        StringBuilder result = new StringBuilder();
+        String key = null;
+        StringBuilder values = null;
+        for (String rawLine : wiki.split("\\R")) {
+            String line = rawLine.trim();
+            if (values != null) {
+                if (line.equals("}")) {
+                    result.append(key).append(": ").append(values.toString().trim())
+                        .append(LINE_SEPARATOR);
+                    values = null;
+                } else if (line.startsWith("[") && line.endsWith("]")) {
+                    String value = line.substring(1, line.length() - 1);
+                    int separator = value.indexOf('|');
+                    values.append(' ')
+                        .append(separator < 0 ? value : value.substring(separator + 1));
+                }
+                continue;
+            }
+            int equals = line.indexOf('=');
+            if (!line.startsWith("|") || equals < 0) {
+                continue;
+            }
+            key = line.substring(1, equals).trim();
+            String value = line.substring(equals + 1).trim();
+            if (value.equals("{")) {
+                values = new StringBuilder();
+            } else {
+                result.append(key).append(": ").append(value).append(LINE_SEPARATOR);
+            }
+        }
+        return result.toString();
+    }
+
+    private Path indexFile(String name, String generation) {
+        return directory.resolve(name + "-" + generation + ".idx");
+    }
+
+    private Path dataFile(String name, String generation) {
+        return directory.resolve(name + "-" + generation + ".dat");
+    }
+
+    private Properties readManifest() {
+        Properties manifest = new Properties();
+        Path file = directory.resolve(MANIFEST);
+        if (Files.isRegularFile(file)) {
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                manifest.load(inputStream);
+            } catch (IOException e) {
+                log.warn("Ignore unreadable bgm.tv archive manifest [{}].", file, e);
+            }
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Properties manifest) throws IOException {
+        Path tempFile = Files.createTempFile(directory, "manifest", ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+            manifest.store(outputStream, null);
+        }
+        Files.move(tempFile, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // 某些系统上仍被映射的文件无法删除，不影响使用
+            log.debug("Delete old bgm.tv archive file [{}] fail.", file, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // 先移出再关闭，查找不会取到已关闭的表
+        for (String name : List.copyOf(tables.keySet())) {
+            BgmTvArchiveTable table = tables.remove(name);
+            if (table != null) {
+                table.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package run.ikaros.plugin.bgmtv.archive;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+
+/**
+ * 数据存档 episode.jsonlines 中的剧集，比接口返回的多了所属条目ID，简介字段名为 description.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class BgmTvArchiveEpisode extends BgmTvEpisode {
+    @JsonProperty("subject_id")
+    private Integer subjectId;
+
+    public Integer getSubjectId() {
+        return subjectId;
+    }
+
+    public BgmTvArchiveEpisode setSubjectId(Integer subjectId) {
+        this.subjectId = subjectId;
+        return this;
+    }
+
+    @JsonProperty("description")
+    public void setDescription(String description) {
+        setDesc(description);
+    }
+}
@@ -0,0 +1,37 @@
+package run.ikaros.plugin.bgmtv.archive;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 数据存档的使用方式.
+ */
+public enum BgmTvArchiveMode {
+    /**
+     * 不使用数据存档
+     */
+    DISABLED,
+
+    /**
+     * 优先从数据存档读取条目和剧集，存档中没有时再请求 bgm.tv
+     */
+    PREFERRED,
+
+    /**
+     * 只从数据存档读取，不访问 bgm.tv
+     */
+    OFFLINE;
+
+    /**
+     * 忽略大小写解析，缺失或非法的值为 {@link #DISABLED}.
+     */
+    @Nonnull
+    public static BgmTvArchiveMode of(@Nullable String value) {
+        if (StringUtils.isBlank(value)) {
+            return DISABLED;
+        }
+        return EnumUtils.getEnumIgnoreCase(BgmTvArchiveMode.class, value.trim(), DISABLED);
+    }
+}
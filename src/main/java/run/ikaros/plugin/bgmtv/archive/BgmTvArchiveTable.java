@@ -0,0 +1,191 @@
+package run.ikaros.plugin.bgmtv.archive;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 数据存档的只读索引表，由 {@link BgmTvArchiveTableWriter} 生成.
+ *
+ * <p>表由两个文件组成：.dat 依次存放每条记录的 JSON，.idx 存放按键排序的定长索引项
+ * （4 字节键、8 字节偏移、4 字节长度），同一个键的多条记录按写入顺序相邻存放.
+ * 索引文件整体映射到内存中二分查找，记录按偏移从数据文件中读取，查找不占用堆内存.</p>
+ *
+ * <p>重新导入时旧表会被替换并关闭，查找前用 {@link #retain()} 增加引用，结束后 {@link #release()}，
+ * 关闭只释放创建时的引用，正在进行的查找结束后才真正关闭数据文件.</p>
+ */
+public class BgmTvArchiveTable implements Closeable {
+    static final int MAGIC = 0x42474D41;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 16;
+
+    private final FileChannel data;
+    private final MappedByteBuffer index;
+    private final int size;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private BgmTvArchiveTable(FileChannel data, MappedByteBuffer index, int size) {
+        this.data = data;
+        this.index = index;
+        this.size = size;
+    }
+
+    public static BgmTvArchiveTable open(@Nonnull Path indexFile, @Nonnull Path dataFile)
+        throws IOException {
+        Assert.notNull(indexFile, "'indexFile' must not null.");
+        Assert.notNull(dataFile, "'dataFile' must not null.");
+        MappedByteBuffer index;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (index.capacity() < HEADER_BYTES || index.getInt(0) != MAGIC
+            || index.getInt(4) != VERSION) {
+            throw new IOException("Not a bgm.tv archive index: " + indexFile);
+        }
+        long size = index.getLong(8);
+        if (size < 0 || HEADER_BYTES + size * ENTRY_BYTES != index.capacity()) {
+            throw new IOException("Truncated bgm.tv archive index: " + indexFile);
+        }
+        return new BgmTvArchiveTable(FileChannel.open(dataFile, StandardOpenOption.READ),
+            index, (int) size);
+    }
+
+    /**
+     * 索引项数.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int key) {
+        int position = lowerBound(key);
+        return position < size && keyAt(position) == key;
+    }
+
+    /**
+     * 获取键对应的第一条记录，不存在时返回 null.
+     */
+    @Nullable
+    public byte[] get(int key) {
+        int position = lowerBound(key);
+        if (position >= size || keyAt(position) != key) {
+            return null;
+        }
+        return read(position);
+    }
+
+    /**
+     * 按写入顺序获取键对应的所有记录.
+     */
+    public List<byte[]> getAll(int key) {
+        List<byte[]> records = new ArrayList<>();
+        for (int position = lowerBound(key);
+             position < size && keyAt(position) == key; position++) {
+            records.add(read(position));
+        }
+        return records;
+    }
+
+    /**
+     * 按键的顺序遍历所有记录.
+     */
+    public void forEach(@Nonnull BiConsumer<Integer, byte[]> consumer) {
+        Assert.notNull(consumer, "'consumer' must not null.");
+        for (int position = 0; position < size; position++) {
+            consumer.accept(keyAt(position), read(position));
+        }
+    }
+
+    private int lowerBound(int key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int keyAt(int position) {
+        return index.getInt(HEADER_BYTES + position * ENTRY_BYTES);
+    }
+
+    private byte[] read(int position) {
+        int entry = HEADER_BYTES + position * ENTRY_BYTES;
+        long offset = index.getLong(entry + 4);
+        int length = index.getInt(entry + 12);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            // 按位置读取不改变通道的当前位置，可以并发调用
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Truncated bgm.tv archive data at " + offset);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 增加一个引用，表已经真正关闭时返回 false.
+     */
+    boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时关闭数据文件.
+     */
+    void release() {
+        if (references.decrementAndGet() != 0) {
+            return;
+        }
+        try {
+            // 映射的索引由 GC 回收
+            data.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                release();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
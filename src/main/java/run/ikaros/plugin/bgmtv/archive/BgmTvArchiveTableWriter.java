@@ -0,0 +1,195 @@
+package run.ikaros.plugin.bgmtv.archive;
+
+import jakarta.annotation.Nonnull;
+import org.springframework.util.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 流式生成 {@link BgmTvArchiveTable}.
+ *
+ * <p>记录直接追加到数据文件，内存中只缓冲固定数量的索引项，缓冲满时排序后写出到临时的有序分段，
+ * 完成时多路归并所有分段生成索引文件，整个过程的内存占用与存档大小无关.
+ * 同一个键的记录保持写入顺序.</p>
+ */
+public class BgmTvArchiveTableWriter implements Closeable {
+    public static final int DEFAULT_RUN_SIZE = 1 << 16;
+
+    private final Path indexFile;
+    private final Path workDirectory;
+    private final DataOutputStream data;
+    private final int runSize;
+    /**
+     * 高 32 位为键，低 32 位为缓冲中的下标，排序后键相同的按写入顺序排列.
+     */
+    private final long[] sortKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final List<Path> runs = new ArrayList<>();
+    private int buffered;
+    private long dataOffset;
+    private long count;
+    private boolean finished;
+
+    public BgmTvArchiveTableWriter(@Nonnull Path indexFile, @Nonnull Path dataFile)
+        throws IOException {
+        this(indexFile, dataFile, DEFAULT_RUN_SIZE);
+    }
+
+    BgmTvArchiveTableWriter(@Nonnull Path indexFile, @Nonnull Path dataFile, int runSize)
+        throws IOException {
+        Assert.notNull(indexFile, "'indexFile' must not null.");
+        Assert.notNull(dataFile, "'dataFile' must not null.");
+        Assert.isTrue(runSize > 0, "'runSize' must be positive");
+        this.indexFile = indexFile;
+        this.workDirectory = Files.createTempDirectory(indexFile.getParent(), "runs");
+        this.data = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(dataFile)));
+        this.runSize = runSize;
+        this.sortKeys = new long[runSize];
+        this.offsets = new long[runSize];
+        this.lengths = new int[runSize];
+    }
+
+    /**
+     * 追加一条记录.
+     *
+     * @param key 非负的键，例如条目ID
+     */
+    public void add(int key, @Nonnull byte[] record) throws IOException {
+        Assert.isTrue(key >= 0, "'key' must not be negative");
+        Assert.notNull(record, "'record' must not null.");
+        Assert.state(!finished, "writer is finished");
+        data.write(record);
+        sortKeys[buffered] = ((long) key << 32) | buffered;
+        offsets[buffered] = dataOffset;
+        lengths[buffered] = record.length;
+        dataOffset += record.length;
+        buffered++;
+        count++;
+        if (buffered == runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * 写出剩余的数据并生成索引文件.
+     *
+     * @return 记录数
+     */
+    public long finish() throws IOException {
+        Assert.state(!finished, "writer is finished");
+        finished = true;
+        data.close();
+        if (buffered > 0 || runs.isEmpty()) {
+            spill();
+        }
+        merge();
+        return count;
+    }
+
+    private void spill() throws IOException {
+        Arrays.sort(sortKeys, 0, buffered);
+        Path run = workDirectory.resolve("run-" + runs.size());
+        try (DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(run)))) {
+            for (int i = 0; i < buffered; i++) {
+                int slot = (int) sortKeys[i];
+                output.writeInt((int) (sortKeys[i] >>> 32));
+                output.writeLong(offsets[slot]);
+                output.writeInt(lengths[slot]);
+            }
+        }
+        runs.add(run);
+        buffered = 0;
+    }
+
+    private void merge() throws IOException {
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>(Comparator
+            .comparingInt(RunCursor::key)
+            .thenComparingInt(RunCursor::order));
+        List<RunCursor> cursors = new ArrayList<>(runs.size());
+        try (OutputStream outputStream = Files.newOutputStream(indexFile);
+             DataOutputStream output =
+                 new DataOutputStream(new BufferedOutputStream(outputStream))) {
+            for (int i = 0; i < runs.size(); i++) {
+                RunCursor cursor = new RunCursor(runs.get(i), i);
+                cursors.add(cursor);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            output.writeInt(BgmTvArchiveTable.MAGIC);
+            output.writeInt(BgmTvArchiveTable.VERSION);
+            output.writeLong(count);
+            RunCursor cursor;
+            while ((cursor = queue.poll()) != null) {
+                output.writeInt(cursor.key());
+                output.writeLong(cursor.offset);
+                output.writeInt(cursor.length);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (RunCursor cursor : cursors) {
+                cursor.input.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        Files.deleteIfExists(workDirectory);
+    }
+
+    private static final class RunCursor {
+        private final DataInputStream input;
+        private final int order;
+        private int key;
+        private long offset;
+        private int length;
+
+        private RunCursor(Path run, int order) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            this.order = order;
+        }
+
+        private boolean next() throws IOException {
+            try {
+                key = input.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            offset = input.readLong();
+            length = input.readInt();
+            return true;
+        }
+
+        private int key() {
+            return key;
+        }
+
+        private int order() {
+            return order;
+        }
+    }
+}
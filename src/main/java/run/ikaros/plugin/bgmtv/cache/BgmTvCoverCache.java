@@ -0,0 +1,460 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 封面磁盘缓存.
+ *
+ * <p>图片按内容的 SHA-256 存放在 blobs 目录，相同内容只存一份；refs 目录按地址的 SHA-256
+ * 记录地址对应的图片以及 ETag、Last-Modified，超过有效期后由调用方带上条件请求头重新校验，
+ * 服务端返回 304 时只刷新校验时间.</p>
+ *
+ * <p>图片总大小超过上限时按校验时间从旧到新删除地址记录，不再被引用的图片随之删除；
+ * 首次写入时还会清理上次运行遗留的、没有地址引用的图片.</p>
+ */
+@Slf4j
+@Component
+public class BgmTvCoverCache {
+    public static final Path DEFAULT_DIRECTORY =
+        Path.of(System.getProperty("java.io.tmpdir"), "ikaros-plugin-bgmtv", "covers");
+    /**
+     * 单张封面的大小上限，超过时中止下载.
+     */
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    /**
+     * 所有封面的总大小上限.
+     */
+    public static final long DEFAULT_MAX_TOTAL_BYTES = 512L * 1024 * 1024;
+    public static final Duration DEFAULT_TTL = Duration.ofDays(7);
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String SHA256 = "sha256";
+    private static final String CHECKED_AT = "checkedAt";
+    private static final String REF_SUFFIX = ".properties";
+
+    private final Path blobs;
+    private final Path refs;
+    private final Path temp;
+    private final long maxBytes;
+    private final long maxTotalBytes;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * 写入时持有读锁，清理时持有写锁，避免刚移入、还没有写地址记录的图片被当作无引用删除.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * 图片总大小的估计值，清理时按磁盘重新统计，首次清理前为 -1.
+     */
+    private final AtomicLong storedBytes = new AtomicLong(-1);
+
+    /**
+     * @param file         缓存的图片文件
+     * @param etag         响应头 ETag，可能为空
+     * @param lastModified 响应头 Last-Modified，可能为空
+     * @param checkedAt    最近一次下载或校验的时间戳，单位毫秒
+     */
+    public record Entry(@Nonnull Path file, @Nonnull String sha256, @Nullable String etag,
+                        @Nullable String lastModified, long checkedAt) {
+    }
+
+    public BgmTvCoverCache() {
+        this(DEFAULT_DIRECTORY, DEFAULT_MAX_BYTES, DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    public BgmTvCoverCache(@Nonnull Path directory, long maxBytes, @Nonnull Duration ttl,
+                           @Nonnull Clock clock) {
+        this(directory, maxBytes, Math.max(maxBytes, DEFAULT_MAX_TOTAL_BYTES), ttl, clock);
+    }
+
+    /**
+     * @param maxTotalBytes 所有封面的总大小上限，不能小于单张封面的上限
+     */
+    public BgmTvCoverCache(@Nonnull Path directory, long maxBytes, long maxTotalBytes,
+                           @Nonnull Duration ttl, @Nonnull Clock clock) {
+        Assert.notNull(directory, "'directory' must not null.");
+        Assert.isTrue(maxBytes > 0, "'maxBytes' must be positive");
+        Assert.isTrue(maxTotalBytes >= maxBytes, "'maxTotalBytes' must not less than maxBytes");
+        Assert.notNull(ttl, "'ttl' must not null.");
+        Assert.notNull(clock, "'clock' must not null.");
+        this.blobs = directory.resolve("blobs");
+        this.refs = directory.resolve("refs");
+        this.temp = directory.resolve("tmp");
+        this.maxBytes = maxBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 获取地址对应的缓存，包括需要重新校验的，图片文件已被删除时返回 null.
+     */
+    @Nullable
+    public Entry get(@Nonnull String url) {
+        Assert.hasText(url, "'url' must has text.");
+        String key = sha256Hex(url.getBytes(StandardCharsets.UTF_8));
+        Entry entry = entries.computeIfAbsent(key, this::readRef);
+        if (entry != null && !Files.isRegularFile(entry.file())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    public boolean isFresh(@Nonnull Entry entry) {
+        return clock.millis() - entry.checkedAt() < ttlMillis;
+    }
+
+    /**
+     * 条件请求返回 304 时调用，刷新校验时间.
+     */
+    public Entry revalidated(@Nonnull String url, @Nonnull Entry entry) {
+        Entry updated = new Entry(entry.file(), entry.sha256(), entry.etag(),
+            entry.lastModified(), clock.millis());
+        lock.readLock().lock();
+        try {
+            writeRef(url, updated);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return updated;
+    }
+
+    /**
+     * 新建下载用的临时文件，下载完成后交给 {@link #put}，失败时由调用方删除.
+     */
+    public Path createTempFile() {
+        try {
+            Files.createDirectories(temp);
+            return Files.createTempFile(temp, "cover", ".tmp");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把下载完成的临时文件移入缓存.
+     *
+     * @param sha256 临时文件内容的 SHA-256，十六进制
+     */
+    public Entry put(@Nonnull String url, @Nonnull Path tempFile, @Nonnull String sha256,
+                     @Nullable String etag, @Nullable String lastModified) {
+        Assert.hasText(url, "'url' must has text.");
+        Assert.notNull(tempFile, "'tempFile' must not null.");
+        Assert.hasText(sha256, "'sha256' must has text.");
+        Path blob = blobs.resolve(sha256.substring(0, 2)).resolve(sha256);
+        Entry entry = new Entry(blob, sha256, etag, lastModified, clock.millis());
+        long added = 0;
+        lock.readLock().lock();
+        try {
+            Files.createDirectories(blob.getParent());
+            if (Files.exists(blob)) {
+                Files.delete(tempFile);
+            } else {
+                moveAtomically(tempFile, blob);
+                added = Files.size(blob);
+            }
+            writeRef(url, entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        long stored = storedBytes.get() < 0 ? -1 : storedBytes.addAndGet(added);
+        if (stored < 0 || stored > maxTotalBytes) {
+            prune();
+        }
+        return entry;
+    }
+
+    /**
+     * 删除没有地址引用的图片和图片已丢失的地址记录，总大小超过上限时按校验时间从旧到新淘汰.
+     */
+    public void prune() {
+        lock.writeLock().lock();
+        try {
+            storedBytes.set(pruneLocked());
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Prune cover cache fail in [{}].", blobs.getParent(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private record Blob(Path file, long size) {
+    }
+
+    private record Ref(String key, Path file, Entry entry) {
+    }
+
+    private long pruneLocked() throws IOException {
+        Map<String, Blob> blobFiles = new HashMap<>();
+        if (Files.isDirectory(blobs)) {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(blobs)) {
+                files = paths.filter(Files::isRegularFile).toList();
+            }
+            for (Path file : files) {
+                blobFiles.put(file.getFileName().toString(), new Blob(file, Files.size(file)));
+            }
+        }
+        List<Ref> liveRefs = new ArrayList<>();
+        Map<String, Integer> refCounts = new HashMap<>();
+        if (Files.isDirectory(refs)) {
+            List<Path> files;
+            try (Stream<Path> paths = Files.list(refs)) {
+                files = paths.filter(path -> path.getFileName().toString().endsWith(REF_SUFFIX))
+                    .toList();
+            }
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String key = fileName.substring(0, fileName.length() - REF_SUFFIX.length());
+                Entry entry = readRef(key);
+                if (entry == null || !blobFiles.containsKey(entry.sha256())) {
+                    removeRef(key, file);
+                    continue;
+                }
+                liveRefs.add(new Ref(key, file, entry));
+                refCounts.merge(entry.sha256(), 1, Integer::sum);
+            }
+        }
+        long total = 0;
+        for (Map.Entry<String, Blob> blob : blobFiles.entrySet()) {
+            if (refCounts.containsKey(blob.getKey())) {
+                total += blob.getValue().size();
+            } else {
+                // 上次运行写入图片后没来得及写地址记录，或者记录已被淘汰
+                Files.deleteIfExists(blob.getValue().file());
+            }
+        }
+        if (total <= maxTotalBytes) {
+            return total;
+        }
+        liveRefs.sort(Comparator.comparingLong(ref -> ref.entry().checkedAt()));
+        for (Ref ref : liveRefs) {
+            if (total <= maxTotalBytes) {
+                break;
+            }
+            removeRef(ref.key(), ref.file());
+            String sha256 = ref.entry().sha256();
+            if (refCounts.merge(sha256, -1, Integer::sum) == 0) {
+                Blob blob = blobFiles.get(sha256);
+                Files.deleteIfExists(blob.file());
+                total -= blob.size();
+            }
+        }
+        log.debug("Pruned cover cache to [{}] bytes.", total);
+        return total;
+    }
+
+    private void removeRef(String key, Path ref) throws IOException {
+        Files.deleteIfExists(ref);
+        entries.remove(key);
+    }
+
+    /**
+     * 把下载的响应体边读边写入缓存，超过大小上限时中止并删除已写入的部分.
+     *
+     * @param responseHeaders 响应头，用于提前检查 Content-Length 和记录 ETag、Last-Modified
+     * @throws DataBufferLimitException 超过大小上限
+     */
+    public Entry store(@Nonnull String url, @Nonnull InputStream body,
+                       @Nonnull HttpHeaders responseHeaders) throws IOException {
+        checkContentLength(url, responseHeaders);
+        Path tempFile = createTempFile();
+        MessageDigest digest = newDigest();
+        try (InputStream inputStream = body;
+             OutputStream outputStream = Files.newOutputStream(tempFile)) {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw tooLarge(url);
+                }
+                digest.update(buffer, 0, read);
+                outputStream.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return put(url, tempFile, HexFormat.of().formatHex(digest.digest()),
+            responseHeaders.getETag(), responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    /**
+     * 响应式版本的 {@link #store(String, InputStream, HttpHeaders)}，数据块直接写入文件通道，
+     * 文件操作在 boundedElastic 线程上执行.
+     */
+    public Mono<Entry> store(@Nonnull String url, @Nonnull Flux<DataBuffer> body,
+                             @Nonnull HttpHeaders responseHeaders) {
+        try {
+            checkContentLength(url, responseHeaders);
+        } catch (DataBufferLimitException e) {
+            // 未读取的响应体由 WebClient 释放
+            return Mono.error(e);
+        }
+        return Mono.fromCallable(this::createTempFile)
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(tempFile -> {
+                MessageDigest digest = newDigest();
+                long[] total = new long[1];
+                Flux<DataBuffer> guarded = body.doOnNext(buffer -> {
+                    total[0] += buffer.readableByteCount();
+                    if (total[0] > maxBytes) {
+                        DataBufferUtils.release(buffer);
+                        throw tooLarge(url);
+                    }
+                    try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                        while (iterator.hasNext()) {
+                            digest.update(iterator.next());
+                        }
+                    }
+                });
+                return DataBufferUtils.write(guarded, tempFile)
+                    .then(Mono.fromCallable(() -> put(url, tempFile,
+                            HexFormat.of().formatHex(digest.digest()),
+                            responseHeaders.getETag(),
+                            responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED)))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                    .onErrorResume(e -> Mono.fromCallable(() -> Files.deleteIfExists(tempFile))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .then(Mono.error(e)));
+            });
+    }
+
+    private void checkContentLength(String url, HttpHeaders responseHeaders) {
+        if (responseHeaders.getContentLength() > maxBytes) {
+            throw tooLarge(url);
+        }
+    }
+
+    private DataBufferLimitException tooLarge(String url) {
+        return new DataBufferLimitException(
+            "Cover exceeds the limit of " + maxBytes + " bytes: " + url);
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        } catch (FileAlreadyExistsException e) {
+            // 相同内容同时被其它下载写入
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Nullable
+    private Entry readRef(String key) {
+        Path ref = refs.resolve(key + REF_SUFFIX);
+        if (!Files.isRegularFile(ref)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(ref)) {
+            properties.load(inputStream);
+        } catch (IOException e) {
+            log.warn("Ignore unreadable cover cache ref [{}].", ref, e);
+            return null;
+        }
+        String sha256 = properties.getProperty(SHA256);
+        if (sha256 == null || sha256.length() < 2) {
+            return null;
+        }
+        long checkedAt;
+        try {
+            checkedAt = Long.parseLong(properties.getProperty(CHECKED_AT, "0"));
+        } catch (NumberFormatException e) {
+            log.warn("Ignore malformed cover cache ref [{}].", ref, e);
+            return null;
+        }
+        return new Entry(blobs.resolve(sha256.substring(0, 2)).resolve(sha256), sha256,
+            properties.getProperty(ETAG), properties.getProperty(LAST_MODIFIED), checkedAt);
+    }
+
+    private void writeRef(String url, Entry entry) {
+        String key = sha256Hex(url.getBytes(StandardCharsets.UTF_8));
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        properties.setProperty(SHA256, entry.sha256());
+        properties.setProperty(CHECKED_AT, String.valueOf(entry.checkedAt()));
+        if (entry.etag() != null) {
+            properties.setProperty(ETAG, entry.etag());
+        }
+        if (entry.lastModified() != null) {
+            properties.setProperty(LAST_MODIFIED, entry.lastModified());
+        }
+        try {
+            Files.createDirectories(refs);
+            Path tempRef = createTempFile();
+            try (OutputStream outputStream = Files.newOutputStream(tempRef)) {
+                properties.store(outputStream, null);
+            }
+            Files.move(tempRef, refs.resolve(key + REF_SUFFIX),
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // 索引写入失败只影响下次启动后的复用
+            log.warn("Write cover cache ref fail for url [{}].", url, e);
+        }
+        entries.put(key, entry);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String sha256Hex(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+}
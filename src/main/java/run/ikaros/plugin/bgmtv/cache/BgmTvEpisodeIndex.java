@@ -0,0 +1,113 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import jakarta.annotation.Nonnull;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 条目剧集的序号到番组计划剧集ID的索引，只保存两个按序号排序的基本类型数组.
+ *
+ * <p>序号按 float 比较，与伊卡洛斯剧集的 sequence 类型一致，
+ * 因此 12.5 这类小数序号也能精确匹配.</p>
+ */
+public final class BgmTvEpisodeIndex {
+    public static final int NOT_FOUND = -1;
+
+    private final float[] sorts;
+    private final int[] episodeIds;
+
+    private BgmTvEpisodeIndex(float[] sorts, int[] episodeIds) {
+        this.sorts = sorts;
+        this.episodeIds = episodeIds;
+    }
+
+    /**
+     * 构建索引，没有序号或ID的剧集会被忽略，序号重复时保留第一个.
+     */
+    @Nonnull
+    public static BgmTvEpisodeIndex of(@Nonnull List<BgmTvEpisode> episodes) {
+        long[] packed = new long[episodes.size()];
+        int count = 0;
+        for (int i = 0; i < episodes.size(); i++) {
+            BgmTvEpisode episode = episodes.get(i);
+            if (episode.getSort() == null || episode.getId() == null) {
+                continue;
+            }
+            float sort = episode.getSort().floatValue();
+            // 高位存放可按整数比较的序号，低位存放原始位置，排序后保持相同序号的先后顺序
+            packed[count++] = ((long) sortableBits(sort) << 32) | i;
+        }
+        Arrays.sort(packed, 0, count);
+
+        float[] sorts = new float[count];
+        int[] episodeIds = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            BgmTvEpisode episode = episodes.get((int) packed[i]);
+            float sort = episode.getSort().floatValue();
+            if (size > 0 && Float.compare(sorts[size - 1], sort) == 0) {
+                continue;
+            }
+            sorts[size] = sort;
+            episodeIds[size] = episode.getId();
+            size++;
+        }
+        return new BgmTvEpisodeIndex(Arrays.copyOf(sorts, size), Arrays.copyOf(episodeIds, size));
+    }
+
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    /**
+     * @return 番组计划剧集ID，不存在时返回 {@link #NOT_FOUND}
+     */
+    public int findEpisodeId(float sort) {
+        int index = Arrays.binarySearch(sorts, sort);
+        return index < 0 ? NOT_FOUND : episodeIds[index];
+    }
+
+    /**
+     * 批量匹配，找不到的序号会被忽略.
+     *
+     * @return 去重后的番组计划剧集ID，顺序与序号一致
+     */
+    @Nonnull
+    public List<Integer> findEpisodeIds(@Nonnull Collection<Float> sorts) {
+        List<Integer> ids = new ArrayList<>(sorts.size());
+        Set<Integer> seen = new HashSet<>(sorts.size() * 2);
+        for (Float sort : sorts) {
+            if (sort == null) {
+                continue;
+            }
+            int episodeId = findEpisodeId(sort);
+            if (episodeId != NOT_FOUND && seen.add(episodeId)) {
+                ids.add(episodeId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 所有序号都能匹配到剧集时返回 true.
+     */
+    public boolean containsAll(@Nonnull Collection<Float> sorts) {
+        for (Float sort : sorts) {
+            if (sort != null && findEpisodeId(sort) == NOT_FOUND) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return sorts.length;
+    }
+}
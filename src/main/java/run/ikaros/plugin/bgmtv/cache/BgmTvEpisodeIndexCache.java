@@ -0,0 +1,125 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按条目缓存剧集序号索引，同步播放进度时每次只需一次 PUT 请求，
+ * 不必每个剧集都重新拉取整个剧集列表.
+ *
+ * <p>缓存的索引可能早于新剧集的发布，找不到序号时允许重新拉取，但每个条目在一个有效期内最多一次，
+ * 服务端本来就没有的序号（例如 SP、总集篇）不会让每个事件都重新下载剧集列表.</p>
+ *
+ * @see BgmTvEpisodeIndex
+ */
+@Component
+public class BgmTvEpisodeIndexCache {
+    public static final int DEFAULT_MAX_SIZE = 500;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<Long, Entry> entries;
+    /**
+     * 每个条目最近一次因为找不到序号而重新拉取的时间.
+     */
+    private final Map<Long, Long> missRefetchedAt;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private record Entry(BgmTvEpisodeIndex index, long expireAt) {
+    }
+
+    public BgmTvEpisodeIndexCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    BgmTvEpisodeIndexCache(int maxSize, @Nonnull Duration ttl, @Nonnull Clock clock) {
+        Assert.isTrue(maxSize > 0, "'maxSize' must be positive");
+        Assert.notNull(ttl, "'ttl' must not null.");
+        Assert.notNull(clock, "'clock' must not null.");
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > BgmTvEpisodeIndexCache.this.maxSize;
+            }
+        };
+        this.missRefetchedAt = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > BgmTvEpisodeIndexCache.this.maxSize;
+            }
+        };
+    }
+
+    @Nullable
+    public synchronized BgmTvEpisodeIndex get(long subjectId) {
+        Entry entry = entries.get(subjectId);
+        if (entry == null || entry.expireAt() <= clock.millis()) {
+            if (entry != null) {
+                entries.remove(subjectId);
+            }
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return entry.index();
+    }
+
+    public synchronized void put(long subjectId, @Nonnull BgmTvEpisodeIndex index) {
+        Assert.notNull(index, "'index' must not null.");
+        entries.put(subjectId, new Entry(index, clock.millis() + ttlMillis));
+    }
+
+    /**
+     * 缓存的索引中找不到序号时调用，判断是否重新拉取剧集列表.
+     *
+     * @return 有效期内还没有因为找不到序号重新拉取过时返回 true，并记录本次拉取
+     */
+    public synchronized boolean tryMissRefetch(long subjectId) {
+        long now = clock.millis();
+        Long last = missRefetchedAt.get(subjectId);
+        if (last != null && now - last < ttlMillis) {
+            return false;
+        }
+        missRefetchedAt.put(subjectId, now);
+        return true;
+    }
+
+    /**
+     * 剧集发生变化时（例如服务端返回剧集不存在）显式失效.
+     */
+    public synchronized void invalidate(long subjectId) {
+        entries.remove(subjectId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        missRefetchedAt.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+}
@@ -0,0 +1,222 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import run.ikaros.plugin.bgmtv.model.BgmTvCharacter;
+import run.ikaros.plugin.bgmtv.model.BgmTvPerson;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * 人物和角色详情缓存，按ID缓存，容量有上限并按最近最少使用淘汰.
+ *
+ * <p>同一批声优和制作人员会出现在大量条目中，批量同步时每个人物只需要请求一次：
+ * 缓存的是加载结果的 future，并发获取同一个ID时只有第一个调用方执行加载，其余调用方等待同一个结果.
+ * 加载失败或者不存在（返回 null）时不缓存.</p>
+ */
+@Component
+public class BgmTvPersonCache {
+    public static final int DEFAULT_MAX_SIZE = 5000;
+    public static final Duration DEFAULT_TTL = Duration.ofDays(1);
+
+    private final Store<BgmTvPerson> persons;
+    private final Store<BgmTvCharacter> characters;
+    private final Clock clock;
+    private final long ttlMillis;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+
+    /**
+     * @param personSize    当前缓存的人物数
+     * @param characterSize 当前缓存的角色数
+     * @param hitCount      命中缓存或等待进行中加载的次数
+     * @param loadCount     实际加载的次数
+     */
+    public record Stats(int personSize, int characterSize, long hitCount, long loadCount) {
+    }
+
+    /**
+     * @param expireAt 过期时间戳，单位毫秒
+     */
+    private record Entry<T>(CompletableFuture<T> value, long expireAt) {
+    }
+
+    public BgmTvPersonCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    BgmTvPersonCache(int maxSize, @Nonnull Duration ttl, @Nonnull Clock clock) {
+        Assert.isTrue(maxSize > 0, "'maxSize' must be positive");
+        Assert.notNull(ttl, "'ttl' must not null.");
+        Assert.notNull(clock, "'clock' must not null.");
+        this.clock = clock;
+        this.ttlMillis = ttl.toMillis();
+        this.persons = new Store<>(maxSize);
+        this.characters = new Store<>(maxSize);
+    }
+
+    /**
+     * 获取人物详情，未缓存或已过期时在调用线程上执行 loader.
+     */
+    @Nullable
+    public BgmTvPerson getPerson(long personId, @Nonnull LongFunction<BgmTvPerson> loader) {
+        return persons.get(personId, loader);
+    }
+
+    /**
+     * 获取角色详情，未缓存或已过期时在调用线程上执行 loader.
+     */
+    @Nullable
+    public BgmTvCharacter getCharacter(long characterId,
+                                       @Nonnull LongFunction<BgmTvCharacter> loader) {
+        return characters.get(characterId, loader);
+    }
+
+    /**
+     * 响应式版本的 {@link #getPerson(long, LongFunction)}，未缓存或已过期时订阅 loader.
+     */
+    public Mono<BgmTvPerson> getPersonAsync(long personId,
+                                            @Nonnull LongFunction<Mono<BgmTvPerson>> loader) {
+        return persons.getAsync(personId, loader);
+    }
+
+    /**
+     * 响应式版本的 {@link #getCharacter(long, LongFunction)}.
+     */
+    public Mono<BgmTvCharacter> getCharacterAsync(
+        long characterId, @Nonnull LongFunction<Mono<BgmTvCharacter>> loader) {
+        return characters.getAsync(characterId, loader);
+    }
+
+    public void clear() {
+        persons.clear();
+        characters.clear();
+    }
+
+    public Stats stats() {
+        return new Stats(persons.size(), characters.size(), hitCount.sum(), loadCount.sum());
+    }
+
+    private final class Store<T> {
+        private final Map<Long, Entry<T>> entries;
+
+        private Store(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private T get(long id, LongFunction<T> loader) {
+            Assert.notNull(loader, "'loader' must not null.");
+            Entry<T> entry = entryToLoad(id);
+            if (entry == null) {
+                return join(lookup(id));
+            }
+            T value;
+            try {
+                value = loader.apply(id);
+            } catch (RuntimeException e) {
+                loaded(id, entry, null, e);
+                throw e;
+            }
+            loaded(id, entry, value, null);
+            return value;
+        }
+
+        private Mono<T> getAsync(long id, LongFunction<Mono<T>> loader) {
+            Assert.notNull(loader, "'loader' must not null.");
+            // 加载由所有调用方共用，单个调用方取消订阅只是不再等待，不会中断加载
+            return Mono.defer(() -> {
+                Entry<T> entry = entryToLoad(id);
+                if (entry == null) {
+                    return Mono.fromFuture(lookup(id), true);
+                }
+                Mono<T> source;
+                try {
+                    source = loader.apply(id);
+                } catch (RuntimeException e) {
+                    loaded(id, entry, null, e);
+                    throw e;
+                }
+                source.toFuture().whenComplete((value, e) -> loaded(id, entry, value, e));
+                return Mono.fromFuture(entry.value(), true);
+            });
+        }
+
+        /**
+         * 需要加载时占位并返回新的缓存项，已缓存或正在加载时返回 null.
+         */
+        @Nullable
+        private synchronized Entry<T> entryToLoad(long id) {
+            long now = clock.millis();
+            Entry<T> entry = entries.get(id);
+            // 加载中的不判断过期，避免重复加载
+            if (entry != null && (!entry.value().isDone() || entry.expireAt() > now)) {
+                return null;
+            }
+            entry = new Entry<>(new CompletableFuture<>(), now + ttlMillis);
+            entries.put(id, entry);
+            loadCount.increment();
+            return entry;
+        }
+
+        private CompletableFuture<T> lookup(long id) {
+            hitCount.increment();
+            Entry<T> entry;
+            synchronized (this) {
+                entry = entries.get(id);
+            }
+            // 在占位和查找之间被淘汰的极少数情况下按不存在处理
+            return entry == null ? CompletableFuture.completedFuture(null) : entry.value();
+        }
+
+        private void loaded(long id, Entry<T> entry, @Nullable T value,
+                            @Nullable Throwable error) {
+            if (error != null || value == null) {
+                remove(id, entry);
+            }
+            if (error != null) {
+                entry.value().completeExceptionally(error);
+            } else {
+                entry.value().complete(value);
+            }
+        }
+
+        private synchronized void remove(long id, Entry<T> entry) {
+            entries.remove(id, entry);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private T join(CompletableFuture<T> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.search.BgmTvSearchTokenizer;
+import run.ikaros.plugin.bgmtv.utils.SingleFlight;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 缓存旧版搜索接口的结果，控制台搜索和扫描媒体库匹配元数据时会反复搜索相同的关键词.
+ *
+ * <p>按归一化后的关键词和条目类型缓存，大小写和全角半角不同的关键词共用结果.
+ * 相同的搜索并发执行时只请求一次 bgm.tv，其余调用等待并共用结果，出错时不缓存.</p>
+ */
+@Component
+public class BgmTvSearchCache {
+    public static final int DEFAULT_MAX_SIZE = 200;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<Key, Entry> entries;
+    private final SingleFlight<Key, List<BgmTvSubject>> inFlight = new SingleFlight<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private record Key(String keyword, Integer type) {
+    }
+
+    private record Entry(List<BgmTvSubject> subjects, long expireAt) {
+    }
+
+    public BgmTvSearchCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    BgmTvSearchCache(int maxSize, @Nonnull Duration ttl, @Nonnull Clock clock) {
+        Assert.isTrue(maxSize > 0, "'maxSize' must be positive");
+        Assert.notNull(ttl, "'ttl' must not null.");
+        Assert.notNull(clock, "'clock' must not null.");
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > BgmTvSearchCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 命中缓存时直接返回，否则在当前线程执行搜索或等待相同的搜索结束.
+     *
+     * @param loader 请求 bgm.tv 的搜索
+     */
+    @Nonnull
+    public List<BgmTvSubject> search(@Nonnull String keyword, @Nullable Integer type,
+                                     @Nonnull Supplier<List<BgmTvSubject>> loader) {
+        Assert.hasText(keyword, "'keyword' must has text");
+        Assert.notNull(loader, "'loader' must not null.");
+        Key key = key(keyword, type);
+        List<BgmTvSubject> cached = get(key, true);
+        if (cached != null) {
+            return cached;
+        }
+        List<BgmTvSubject> subjects = inFlight.execute(key, () -> {
+            // 两次检查之间相同的搜索可能刚结束并写入缓存
+            List<BgmTvSubject> loaded = get(key, false);
+            return loaded != null ? loaded : put(key, loader.get());
+        });
+        return subjects == null ? List.of() : subjects;
+    }
+
+    /**
+     * 响应式版本的 {@link #search(String, Integer, Supplier)}.
+     */
+    @Nonnull
+    public Mono<List<BgmTvSubject>> searchAsync(
+        @Nonnull String keyword, @Nullable Integer type,
+        @Nonnull Supplier<Mono<List<BgmTvSubject>>> loader) {
+        Assert.hasText(keyword, "'keyword' must has text");
+        Assert.notNull(loader, "'loader' must not null.");
+        Key key = key(keyword, type);
+        return Mono.defer(() -> {
+            List<BgmTvSubject> cached = get(key, true);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return inFlight.executeMono(key, () -> {
+                List<BgmTvSubject> loaded = get(key, false);
+                if (loaded != null) {
+                    return Mono.just(loaded);
+                }
+                return loader.get().map(subjects -> put(key, subjects));
+            });
+        }).defaultIfEmpty(List.of());
+    }
+
+    private static Key key(String keyword, Integer type) {
+        return new Key(BgmTvSearchTokenizer.normalize(keyword), type);
+    }
+
+    @Nullable
+    private synchronized List<BgmTvSubject> get(Key key, boolean record) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expireAt() <= clock.millis()) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            if (record) {
+                missCount.increment();
+            }
+            return null;
+        }
+        if (record) {
+            hitCount.increment();
+        }
+        return entry.subjects();
+    }
+
+    private synchronized List<BgmTvSubject> put(Key key, @Nullable List<BgmTvSubject> subjects) {
+        List<BgmTvSubject> copy = subjects == null ? List.of() : List.copyOf(subjects);
+        entries.put(key, new Entry(copy, clock.millis() + ttlMillis));
+        return copy;
+    }
+
+    /**
+     * 令牌变化后搜索结果可能不同（例如 R18 条目是否可见），需要清空.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 等待并共用执行中搜索的次数.
+     */
+    public long getCoalescedCount() {
+        return inFlight.getCoalescedCount();
+    }
+}
@@ -0,0 +1,165 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 条目详情缓存，按条目ID缓存，容量有上限并按最近最少使用淘汰.
+ *
+ * <p>过期的条目不会立刻删除，而是保留其 ETag 和 Last-Modified，
+ * 以便下次请求时带上 If-None-Match/If-Modified-Since 进行条件请求，
+ * 服务端返回 304 时只刷新过期时间，无需重新下载和解析响应体.</p>
+ */
+@Slf4j
+@Component
+public class BgmTvSubjectCache {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<Long, Entry> entries;
+    private final List<Consumer<BgmTvSubject>> putListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder revalidatedCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param expireAt     过期时间戳，单位毫秒
+     * @param etag         响应头 ETag，可能为空
+     * @param lastModified 响应头 Last-Modified，可能为空
+     */
+    public record Entry(@Nonnull BgmTvSubject subject,
+                        @Nullable String etag,
+                        @Nullable String lastModified,
+                        long expireAt) {
+        public boolean isRevalidatable() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    /**
+     * @param size             当前缓存条目数
+     * @param hitCount         未过期直接命中的次数
+     * @param missCount        未命中或已过期的次数
+     * @param revalidatedCount 过期后经条件请求 304 续期的次数
+     * @param evictionCount    因容量上限被淘汰的次数
+     */
+    public record Stats(int size, long hitCount, long missCount,
+                        long revalidatedCount, long evictionCount) {
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+    }
+
+    public BgmTvSubjectCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    BgmTvSubjectCache(int maxSize, @Nonnull Duration ttl, @Nonnull Clock clock) {
+        Assert.isTrue(maxSize > 0, "'maxSize' must be positive");
+        Assert.notNull(ttl, "'ttl' must not null.");
+        Assert.notNull(clock, "'clock' must not null.");
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                boolean evict = size() > BgmTvSubjectCache.this.maxSize;
+                if (evict) {
+                    evictionCount.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * 获取未过期的条目，计入命中或未命中.
+     */
+    @Nullable
+    public BgmTvSubject getIfFresh(long subjectId) {
+        Entry entry = getEntry(subjectId);
+        if (entry != null && entry.expireAt() > clock.millis()) {
+            hitCount.increment();
+            return entry.subject();
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 获取缓存项，包含已过期的，用于构造条件请求，不计入统计.
+     */
+    @Nullable
+    public synchronized Entry getEntry(long subjectId) {
+        return entries.get(subjectId);
+    }
+
+    public void put(long subjectId, @Nonnull BgmTvSubject subject,
+                    @Nullable String etag, @Nullable String lastModified) {
+        Assert.notNull(subject, "'subject' must not null.");
+        synchronized (this) {
+            entries.put(subjectId,
+                new Entry(subject, etag, lastModified, clock.millis() + ttlMillis));
+        }
+        for (Consumer<BgmTvSubject> listener : putListeners) {
+            listener.accept(subject);
+        }
+    }
+
+    /**
+     * 注册从 bgm.tv 拉取到条目时的监听器，304 续期时不会调用.
+     */
+    public void addPutListener(@Nonnull Consumer<BgmTvSubject> listener) {
+        Assert.notNull(listener, "'listener' must not null.");
+        putListeners.add(listener);
+    }
+
+    /**
+     * 条件请求返回 304 时调用，续期并返回缓存的条目.
+     */
+    @Nullable
+    public synchronized BgmTvSubject revalidated(long subjectId) {
+        Entry entry = entries.get(subjectId);
+        if (entry == null) {
+            return null;
+        }
+        revalidatedCount.increment();
+        entries.put(subjectId, new Entry(entry.subject(), entry.etag(), entry.lastModified(),
+            clock.millis() + ttlMillis));
+        log.debug("Revalidated subject cache for subjectId={}", subjectId);
+        return entry.subject();
+    }
+
+    public synchronized void invalidate(long subjectId) {
+        entries.remove(subjectId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), hitCount.sum(), missCount.sum(),
+            revalidatedCount.sum(), evictionCount.sum());
+    }
+}
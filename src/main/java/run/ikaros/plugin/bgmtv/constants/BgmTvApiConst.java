@@ -1,24 +1,53 @@
 package run.ikaros.plugin.bgmtv.constants;
 
+import org.apache.commons.lang3.StringUtils;
+
 /**
  * @see <a href="https://github.com/bangumi/api">bangumi/api</a>
  */
 public interface BgmTvApiConst {
-    String BASE = "https://api.bgm.tv";
-    String SUBJECTS = BASE + "/v0/subjects";
-    String EPISODES = BASE + "/v0/episodes";
+    String DEFAULT_BASE = "https://api.bgm.tv";
+    /**
+     * 指向镜像或本地替身服务的系统属性，在构建客户端时读取
+     */
+    String BASE_PROPERTY = "bgmtv.api.base";
+    // 以下接口路径相对于 base()，由客户端拼接
+    String SUBJECTS = "/v0/subjects";
+    String EPISODES = "/v0/episodes";
+    String PERSONS = "/v0/persons";
+    String CHARACTERS = "/v0/characters";
     /**
      * 实测不支持中文日文查询
      */
-    String OLD_SEARCH_SUBJECT = BASE + "/search/subject";
+    String OLD_SEARCH_SUBJECT = "/search/subject";
     /**
      * 实测不支持中文日文查询
      */
-    String NEXT_SEARCH_SUBJECTS = BASE + "/v0/search/subjects";
-    String ME = BASE + "/v0/me";
+    String NEXT_SEARCH_SUBJECTS = "/v0/search/subjects";
+    String ME = "/v0/me";
 
-    String USER_COLLECTIONS_SUBJECT= BASE + "/v0/users/-/collections";
+    String USER_COLLECTIONS_SUBJECT= "/v0/users/-/collections";
 
     Integer DEFAULT_OFFSET = 0;
     Integer DEFAULT_LIMIT = 100;
+    /**
+     * 分页拉取全部剧集时同时进行的请求数
+     */
+    Integer EPISODE_PAGE_CONCURRENCY = 4;
+    /**
+     * 批量同步条目时同时同步的条目数
+     */
+    Integer SUBJECT_SYNC_CONCURRENCY = 4;
+    /**
+     * 同步条目人物和角色时同时拉取的详情数
+     */
+    Integer DETAIL_FETCH_CONCURRENCY = 4;
+
+    /**
+     * 当前的接口地址，没有设置 {@link #BASE_PROPERTY} 时为 {@link #DEFAULT_BASE}.
+     */
+    static String base() {
+        return StringUtils.removeEnd(
+            System.getProperty(BASE_PROPERTY, DEFAULT_BASE).trim(), "/");
+    }
 }
@@ -2,90 +2,109 @@ package run.ikaros.plugin.bgmtv.listener;
 
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 import run.ikaros.api.core.collection.SubjectCollection;
 import run.ikaros.api.core.collection.SubjectCollectionOperate;
 import run.ikaros.api.core.collection.event.EpisodeCollectionFinishChangeEvent;
-import run.ikaros.api.core.setting.ConfigMap;
 import run.ikaros.api.core.subject.Episode;
 import run.ikaros.api.core.subject.EpisodeOperate;
-import run.ikaros.api.core.subject.Subject;
 import run.ikaros.api.core.subject.SubjectOperate;
 import run.ikaros.api.core.subject.SubjectSync;
 import run.ikaros.api.core.subject.SubjectSyncOperate;
-import run.ikaros.api.custom.ReactiveCustomClient;
-import run.ikaros.api.infra.exception.NotFoundException;
 import run.ikaros.api.store.enums.CollectionType;
 import run.ikaros.api.store.enums.EpisodeGroup;
 import run.ikaros.api.store.enums.SubjectSyncPlatform;
-import run.ikaros.plugin.bgmtv.BgmTvPlugin;
-import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+import run.ikaros.plugin.bgmtv.repository.BgmTvEpisodeCollectionBatcher;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettings;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+import run.ikaros.plugin.bgmtv.utils.KeyedSerialExecutor;
 
 @Slf4j
 @Component
 public class EpisodeCollectionFinishChangeListener {
+    /**
+     * 每个 (用户, 条目) 排队中和处理中的事件上限，整季批量标记也不会超过.
+     */
+    static final int MAX_PENDING_EVENTS_PER_KEY = 256;
+
     private final SubjectOperate subjectOperate;
-    private final BgmTvRepository bgmTvRepository;
-    private final ReactiveCustomClient customClient;
+    private final BgmTvEpisodeCollectionBatcher episodeCollectionBatcher;
+    private final BgmTvSettingsHolder settingsHolder;
     private final SubjectCollectionOperate subjectCollectionOperate;
     private final EpisodeOperate episodeOperate;
     private final SubjectSyncOperate subjectSyncOperate;
+    private final KeyedSerialExecutor<EventKey> executor =
+        new KeyedSerialExecutor<>("episode-collection-finish", MAX_PENDING_EVENTS_PER_KEY);
+    private final BgmTvMetrics.ListenerMetrics listenerMetrics;
+
+    private record EventKey(UUID userId, UUID subjectId) {
+    }
 
     public EpisodeCollectionFinishChangeListener(SubjectOperate subjectOperate,
-                                                 BgmTvRepository bgmTvRepository,
-                                                 ReactiveCustomClient customClient,
+                                                 BgmTvEpisodeCollectionBatcher
+                                                     episodeCollectionBatcher,
+                                                 BgmTvSettingsHolder settingsHolder,
                                                  SubjectCollectionOperate subjectCollectionOperate,
                                                  EpisodeOperate episodeOperate,
-                                                 SubjectSyncOperate subjectSyncOperate) {
+                                                 SubjectSyncOperate subjectSyncOperate,
+                                                 BgmTvMetrics metrics) {
         this.subjectOperate = subjectOperate;
-        this.bgmTvRepository = bgmTvRepository;
-        this.customClient = customClient;
+        this.episodeCollectionBatcher = episodeCollectionBatcher;
+        this.settingsHolder = settingsHolder;
         this.subjectCollectionOperate = subjectCollectionOperate;
         this.episodeOperate = episodeOperate;
         this.subjectSyncOperate = subjectSyncOperate;
+        this.listenerMetrics = metrics.listener("episode_collection_finish");
     }
 
-    public Mono<Boolean> getConfigMapIsSync() {
-        return getConfigMap("syncCollectionAndEpisodeFinish");
-    }
-
-    public Mono<Boolean> getConfigMapNsfwIsPrivate() {
-        return getConfigMap("nsfwPrivate");
-    }
-
-    private Mono<Boolean> getConfigMap(String key) {
-        return customClient.findOne(ConfigMap.class, BgmTvPlugin.NAME)
-            .onErrorResume(NotFoundException.class, e -> Mono.empty())
-            .map(ConfigMap::getData)
-            .map(configMap ->
-                StringUtils.isNotBlank(configMap.get(key))
-                    && Boolean.TRUE.toString()
-                    .equalsIgnoreCase(configMap.get(key)));
-    }
-
+    /**
+     * 同一用户同一条目的事件按顺序处理，不同条目之间并行.
+     */
     @EventListener(EpisodeCollectionFinishChangeEvent.class)
-    public synchronized void onApplicationReadyEvent(EpisodeCollectionFinishChangeEvent event) {
+    public void onApplicationReadyEvent(EpisodeCollectionFinishChangeEvent event) {
         log.debug("Receive EpisodeCollectionFinishChangeEvent: {}", event);
+        listenerMetrics.received();
         final UUID episodeId = event.getEpisodeId();
         final boolean finish = event.isFinish();
         final UUID subjectId = event.getSubjectId();
         final UUID userId = event.getUserId();
 
-        getConfigMapIsSync()
-            .filter(isSync -> isSync)
-            .flatMap(isSync -> getDoingBgmDoTvSubId(subjectId, userId))
-            .subscribe(bgmTvSub -> getSubjectEpsSeq(episodeId, subjectId)
-                .subscribe(seq -> getConfigMapNsfwIsPrivate()
-                    .flatMap(nsfwPrivate -> subjectOperate.findById(subjectId)
-                        .map(Subject::getNsfw)
-                        .map(nsfw -> nsfw && nsfwPrivate))
-                    .subscribe(
-                        isPrivate ->
-                            bgmTvRepository.putUserEpisodeCollection(bgmTvSub, seq,
-                                finish, isPrivate))));
+        final BgmTvSettings settings = settingsHolder.get();
+        if (!settings.syncCollectionAndEpisodeFinish()) {
+            listenerMetrics.skipped();
+            return;
+        }
+
+        boolean accepted = executor.submit(new EventKey(userId, subjectId), () ->
+            getDoingBgmDoTvSubId(subjectId, userId)
+                .flatMap(bgmTvSub -> getSubjectEpsSeq(episodeId, subjectId)
+                    .flatMap(seq -> subjectOperate.findById(subjectId)
+                        .map(subject -> settings.isPrivate(subject.getNsfw()))
+                        // 推送结果在批次的 PATCH 完成后记录
+                        .doOnNext(isPrivate -> episodeCollectionBatcher.submit(bgmTvSub, seq,
+                            finish, isPrivate, settings.episodeSyncWindow(),
+                            listenerMetrics))))
+                // 条目不是在看、未关联 bgm.tv 或者剧集不是正片时不推送
+                .switchIfEmpty(Mono.fromRunnable(listenerMetrics::skipped))
+                .onErrorResume(e -> {
+                    log.error("Sync episode finish to bgmtv fail, "
+                        + "subject[{}] episode[{}].", subjectId, episodeId, e);
+                    listenerMetrics.failed();
+                    return Mono.empty();
+                }));
+        if (!accepted) {
+            listenerMetrics.failed();
+        }
+    }
+
+    /**
+     * 正在处理事件的 (用户, 条目) 数量.
+     */
+    public int activeEventKeys() {
+        return executor.activeKeys();
     }
 
 
@@ -1,15 +1,17 @@
 package run.ikaros.plugin.bgmtv.listener;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 import run.ikaros.api.core.setting.ConfigMap;
 import run.ikaros.api.plugin.event.PluginConfigMapChangeEvent;
 import run.ikaros.plugin.bgmtv.DomainNotAccessException;
 import run.ikaros.plugin.bgmtv.constants.BgmTvApiConst;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+import run.ikaros.plugin.bgmtv.repository.BgmTvReactiveRepository;
 import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettings;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
 
-import java.util.Objects;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -17,29 +19,45 @@ import lombok.extern.slf4j.Slf4j;
 public class PluginConfigMapUpdateEventListener
     implements ApplicationListener<PluginConfigMapChangeEvent> {
     private final BgmTvRepository bgmTvRepository;
+    private final BgmTvReactiveRepository bgmTvReactiveRepository;
+    private final BgmTvSettingsHolder settingsHolder;
+    private final BgmTvMetrics.ListenerMetrics listenerMetrics;
 
-    public PluginConfigMapUpdateEventListener(BgmTvRepository bgmTvRepository) {
+    public PluginConfigMapUpdateEventListener(BgmTvRepository bgmTvRepository,
+                                              BgmTvReactiveRepository bgmTvReactiveRepository,
+                                              BgmTvSettingsHolder settingsHolder,
+                                              BgmTvMetrics metrics) {
         this.bgmTvRepository = bgmTvRepository;
+        this.bgmTvReactiveRepository = bgmTvReactiveRepository;
+        this.settingsHolder = settingsHolder;
+        this.listenerMetrics = metrics.listener("config_map_update");
     }
 
     @Override
     public void onApplicationEvent(PluginConfigMapChangeEvent event) {
+        listenerMetrics.received();
         ConfigMap configMap = event.getConfigMap();
-        bgmTvRepository.initRestTemplate(configMap);
-        String token = null;
-        if (Objects.nonNull(configMap.getData()) &&
-            StringUtils.isNotBlank(String.valueOf(configMap.getData().get("token")))) {
-            token = String.valueOf(configMap.getData().get("token"));
+        try {
+            BgmTvSettings settings = settingsHolder.update(configMap);
+            bgmTvRepository.initRestTemplate(configMap);
+            bgmTvReactiveRepository.initWebClient(configMap);
+            String token = settings.token();
+            bgmTvRepository.refreshHttpHeaders(token);
+            bgmTvReactiveRepository.refreshHttpHeaders(token);
+        } catch (RuntimeException e) {
+            listenerMetrics.failed();
+            throw e;
         }
-        bgmTvRepository.refreshHttpHeaders(token);
+        // 配置只在插件内生效，不推送到 bgm.tv
+        listenerMetrics.applied();
 
 //        log.info("Verifying that the domain name is accessible, please wait...");
 //        boolean reachable = bgmTvRepository.assertDomainReachable();
 //        if (!reachable) {
 //            log.warn("The operation failed because the current domain name is not accessible "
-//                + "for domain: [{}].", BgmTvApiConst.BASE);
+//                + "for domain: [{}].", BgmTvApiConst.base());
 //            throw new DomainNotAccessException(
-//                "Current domain can not access: " + BgmTvApiConst.BASE);
+//                "Current domain can not access: " + BgmTvApiConst.base());
 //        }
     }
 }
@@ -2,81 +2,77 @@ package run.ikaros.plugin.bgmtv.listener;
 
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Mono;
 import run.ikaros.api.core.collection.SubjectCollection;
 import run.ikaros.api.core.collection.event.SubjectCollectEvent;
-import run.ikaros.api.core.setting.ConfigMap;
-import run.ikaros.api.core.subject.Subject;
 import run.ikaros.api.core.subject.SubjectOperate;
 import run.ikaros.api.core.subject.SubjectSync;
 import run.ikaros.api.core.subject.SubjectSyncOperate;
-import run.ikaros.api.custom.ReactiveCustomClient;
-import run.ikaros.api.infra.exception.NotFoundException;
 import run.ikaros.api.store.enums.CollectionType;
 import run.ikaros.api.store.enums.SubjectSyncPlatform;
-import run.ikaros.plugin.bgmtv.BgmTvPlugin;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
 import run.ikaros.plugin.bgmtv.model.BgmTVSubCollectionType;
-import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
+import run.ikaros.plugin.bgmtv.repository.BgmTvReactiveRepository;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettings;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
 
 @Slf4j
 @Component
 public class SubjectCollectListener {
-    private final BgmTvRepository bgmTvRepository;
+    private final BgmTvReactiveRepository bgmTvReactiveRepository;
     private final SubjectOperate subjectOperate;
-    private final ReactiveCustomClient customClient;
+    private final BgmTvSettingsHolder settingsHolder;
     private final SubjectSyncOperate subjectSyncOperate;
+    private final BgmTvMetrics.ListenerMetrics listenerMetrics;
 
 
-    public SubjectCollectListener(BgmTvRepository bgmTvRepository, SubjectOperate subjectOperate,
-                                  ReactiveCustomClient customClient,
-                                  SubjectSyncOperate subjectSyncOperate) {
-        this.bgmTvRepository = bgmTvRepository;
+    public SubjectCollectListener(BgmTvReactiveRepository bgmTvReactiveRepository,
+                                  SubjectOperate subjectOperate,
+                                  BgmTvSettingsHolder settingsHolder,
+                                  SubjectSyncOperate subjectSyncOperate,
+                                  BgmTvMetrics metrics) {
+        this.bgmTvReactiveRepository = bgmTvReactiveRepository;
         this.subjectOperate = subjectOperate;
-        this.customClient = customClient;
+        this.settingsHolder = settingsHolder;
         this.subjectSyncOperate = subjectSyncOperate;
-    }
-
-    public Mono<Boolean> getConfigMapIsSync() {
-        return getConfigMap("syncCollectionAndEpisodeFinish");
-    }
-
-    public Mono<Boolean> getConfigMapNsfwIsPrivate() {
-        return getConfigMap("nsfwPrivate");
-    }
-
-    private Mono<Boolean> getConfigMap(String key) {
-        return customClient.findOne(ConfigMap.class, BgmTvPlugin.NAME)
-            .onErrorResume(NotFoundException.class, e -> Mono.empty())
-            .map(ConfigMap::getData)
-            .map(configMap ->
-                StringUtils.isNotBlank(configMap.get(key))
-                    && Boolean.TRUE.toString()
-                    .equalsIgnoreCase(configMap.get(key)));
+        this.listenerMetrics = metrics.listener("subject_collect");
     }
 
     @EventListener(SubjectCollectEvent.class)
     public void onSubjectCollectEvent(SubjectCollectEvent event) {
         log.debug("Receive SubjectCollectEvent: {}", event);
+        listenerMetrics.received();
         SubjectCollection subjectCollection = event.getSubjectCollection();
         final UUID subjectId = subjectCollection.getSubjectId();
         final CollectionType collectionType = subjectCollection.getType();
         final BgmTVSubCollectionType bgmTVSubCollectionType =
             convertToBgmTvSubCollectionType(collectionType);
-        getConfigMapIsSync()
-            .filter(isSync -> isSync)
-            .flatMap(isSync -> subjectSyncOperate.findSubjectSyncBySubjectIdAndPlatform(
+        final BgmTvSettings settings = settingsHolder.get();
+        if (!settings.syncCollectionAndEpisodeFinish()) {
+            listenerMetrics.skipped();
+            return;
+        }
+        subjectSyncOperate.findSubjectSyncBySubjectIdAndPlatform(
                 subjectId, SubjectSyncPlatform.BGM_TV
-            )).map(SubjectSync::getPlatformId)
-
-            .subscribe(bgmTvSubId -> getConfigMapNsfwIsPrivate()
-                .flatMap(nsfwPrivate -> subjectOperate.findById(subjectId)
-                    .map(Subject::getNsfw)
-                    .map(nsfw -> nsfw && nsfwPrivate))
-                .subscribe(isPrivate -> bgmTvRepository.postUserSubjectCollection(
-                    bgmTvSubId, bgmTVSubCollectionType, isPrivate)));
+            ).map(SubjectSync::getPlatformId)
+            .flatMap(bgmTvSubId -> subjectOperate.findById(subjectId)
+                .map(subject -> settings.isPrivate(subject.getNsfw()))
+                .flatMap(isPrivate -> bgmTvReactiveRepository.postUserSubjectCollection(
+                    bgmTvSubId, bgmTVSubCollectionType, isPrivate)))
+            // 条目未关联 bgm.tv 或者没有可用的令牌时不推送
+            .defaultIfEmpty(false)
+            .subscribe(pushed -> {
+                if (pushed) {
+                    listenerMetrics.pushed();
+                } else {
+                    listenerMetrics.skipped();
+                }
+            }, e -> {
+                log.error("Sync subject collection to bgmtv fail, "
+                    + "subject[{}].", subjectId, e);
+                listenerMetrics.failed();
+            });
     }
 
     private BgmTVSubCollectionType convertToBgmTvSubCollectionType(CollectionType collectionType) {
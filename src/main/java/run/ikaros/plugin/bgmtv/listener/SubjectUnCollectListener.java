@@ -3,14 +3,24 @@ package run.ikaros.plugin.bgmtv.listener;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 import run.ikaros.api.core.collection.event.SubjectUnCollectEvent;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Component
 public class SubjectUnCollectListener implements ApplicationListener<SubjectUnCollectEvent> {
+    private final BgmTvMetrics.ListenerMetrics listenerMetrics;
+
+    public SubjectUnCollectListener(BgmTvMetrics metrics) {
+        this.listenerMetrics = metrics.listener("subject_uncollect");
+    }
+
     @Override
     public void onApplicationEvent(SubjectUnCollectEvent event) {
+        listenerMetrics.received();
+        // bgm.tv 接口不支持取消收藏
+        listenerMetrics.skipped();
         // log.debug("Receive SubjectUnCollectEvent subject collection[{}].", event.getSubjectCollection());
         // log.warn("Not support uncollect subject collection by api for bgm.tv");
     }
@@ -0,0 +1,88 @@
+package run.ikaros.plugin.bgmtv.metrics;
+
+import org.springframework.stereotype.Component;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRequestCoalescer;
+import run.ikaros.plugin.bgmtv.search.BgmTvSubjectSearchIndex;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 把缓存、请求合并和限流器已有的统计注册为指标，只在采集时读取，不增加调用路径上的开销.
+ *
+ * <ul>
+ *     <li>{@code bgmtv.cache.requests}：按缓存和 result（hit/miss）区分的查询次数.</li>
+ *     <li>{@code bgmtv.cache.size}：各缓存当前的条目数.</li>
+ *     <li>{@code bgmtv.coalesced.calls}：等待并共用执行中请求的调用次数.</li>
+ *     <li>{@code bgmtv.ratelimit.*}：限流器当前速率、等待令牌的请求数和被限流次数.</li>
+ * </ul>
+ */
+@Component
+public class BgmTvMeterBinder {
+    static final String CACHE_REQUESTS = "bgmtv.cache.requests";
+    static final String CACHE_SIZE = "bgmtv.cache.size";
+    static final String COALESCED_CALLS = "bgmtv.coalesced.calls";
+
+    public BgmTvMeterBinder(BgmTvMetrics metrics,
+                            BgmTvSubjectCache subjectCache,
+                            BgmTvEpisodeIndexCache episodeIndexCache,
+                            BgmTvPersonCache personCache,
+                            BgmTvSearchCache searchCache,
+                            BgmTvSubjectSearchIndex searchIndex,
+                            BgmTvRequestCoalescer coalescer,
+                            BgmTvRateLimiter rateLimiter) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        cacheRequests(metrics, "subject", subjectCache,
+            cache -> cache.stats().hitCount(), cache -> cache.stats().missCount());
+        metrics.gauge(CACHE_SIZE, "bgm.tv plugin cache size", subjectCache,
+            cache -> cache.stats().size(), "cache", "subject");
+
+        cacheRequests(metrics, "episode_index", episodeIndexCache,
+            BgmTvEpisodeIndexCache::getHitCount, BgmTvEpisodeIndexCache::getMissCount);
+        metrics.gauge(CACHE_SIZE, "bgm.tv plugin cache size", episodeIndexCache,
+            BgmTvEpisodeIndexCache::size, "cache", "episode_index");
+
+        cacheRequests(metrics, "person", personCache,
+            cache -> cache.stats().hitCount(), cache -> cache.stats().loadCount());
+        metrics.gauge(CACHE_SIZE, "bgm.tv plugin cache size", personCache,
+            cache -> cache.stats().personSize() + cache.stats().characterSize(),
+            "cache", "person");
+
+        cacheRequests(metrics, "search", searchCache,
+            BgmTvSearchCache::getHitCount, BgmTvSearchCache::getMissCount);
+        metrics.gauge(CACHE_SIZE, "bgm.tv plugin cache size", searchCache,
+            BgmTvSearchCache::size, "cache", "search");
+        metrics.gauge(CACHE_SIZE, "bgm.tv plugin cache size", searchIndex,
+            BgmTvSubjectSearchIndex::size, "cache", "search_index");
+
+        metrics.functionCounter(COALESCED_CALLS, "calls sharing an in-flight bgm.tv request",
+            coalescer, BgmTvRequestCoalescer::getCoalescedSubjectCount, "resource", "subject");
+        metrics.functionCounter(COALESCED_CALLS, "calls sharing an in-flight bgm.tv request",
+            coalescer, BgmTvRequestCoalescer::getCoalescedEpisodePageCount,
+            "resource", "episode_page");
+        metrics.functionCounter(COALESCED_CALLS, "calls sharing an in-flight bgm.tv request",
+            searchCache, BgmTvSearchCache::getCoalescedCount, "resource", "search");
+
+        metrics.gauge("bgmtv.ratelimit.rate", "allowed bgm.tv requests per second",
+            rateLimiter, BgmTvRateLimiter::getRate);
+        metrics.gauge("bgmtv.ratelimit.queue", "requests waiting for a rate limit token",
+            rateLimiter, BgmTvRateLimiter::getQueueLength);
+        metrics.functionCounter("bgmtv.ratelimit.throttled", "429/503 responses from bgm.tv",
+            rateLimiter, BgmTvRateLimiter::getThrottledCount);
+    }
+
+    private static <T> void cacheRequests(BgmTvMetrics metrics, String cache, T obj,
+                                          ToDoubleFunction<T> hits,
+                                          ToDoubleFunction<T> misses) {
+        metrics.functionCounter(CACHE_REQUESTS, "bgm.tv plugin cache lookups", obj, hits,
+            "cache", cache, "result", "hit");
+        metrics.functionCounter(CACHE_REQUESTS, "bgm.tv plugin cache lookups", obj, misses,
+            "cache", cache, "result", "miss");
+    }
+}
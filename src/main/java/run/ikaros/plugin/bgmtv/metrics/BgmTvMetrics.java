@@ -0,0 +1,282 @@
+package run.ikaros.plugin.bgmtv.metrics;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.support.RetrySynchronizationManager;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 插件的运行指标.
+ *
+ * <p>宿主提供了 Micrometer 的 MeterRegistry 时注册到该 registry，否则所有记录方法都直接返回.
+ * 对外的方法不出现 Micrometer 的类型，宿主没有 Micrometer 时也不会加载这些类.</p>
+ *
+ * <ul>
+ *     <li>{@code bgmtv.http.client.requests}：每次请求 bgm.tv（包括重试）到收到响应头的耗时，
+ *     按接口、请求方法、状态码和第几次尝试区分，发布百分位直方图.</li>
+ *     <li>{@code bgmtv.listener.events}：各监听器收到、跳过、推送、本地应用和失败的事件数，
+ *     每个收到的事件最终只计入后四者中的一个.</li>
+ *     <li>缓存、请求合并和限流器的统计，见 {@link BgmTvMeterBinder}.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class BgmTvMetrics implements DisposableBean {
+    public static final String HTTP_REQUESTS = "bgmtv.http.client.requests";
+    public static final String LISTENER_EVENTS = "bgmtv.listener.events";
+    static final String IO_ERROR = "IO_ERROR";
+    static final String OTHER_ENDPOINT = "other";
+
+    private static final String METER_REGISTRY = "io.micrometer.core.instrument.MeterRegistry";
+    private static final String ATTEMPT_KEY = BgmTvMetrics.class.getName() + ".attempt";
+
+    /**
+     * 响应式请求在 retryWhen 之后写入，重试时重新订阅的请求共用同一个计数.
+     */
+    public static final Function<Context, Context> ATTEMPTS =
+        context -> context.put(ATTEMPT_KEY, new AtomicInteger());
+
+    @Nullable
+    private final Recorder recorder;
+
+    /**
+     * 实际写入指标的实现，只有 {@link MicrometerRecorder} 一个.
+     */
+    interface Recorder {
+        void recordRequest(String endpoint, String method, String status, int attempt,
+                           long nanos);
+
+        Runnable counter(String name, String description, String... tags);
+
+        <T> void gauge(String name, String description, T obj, ToDoubleFunction<T> value,
+                       String... tags);
+
+        <T> void functionCounter(String name, String description, T obj,
+                                 ToDoubleFunction<T> value, String... tags);
+
+        void close();
+    }
+
+    public BgmTvMetrics(@Nonnull ApplicationContext applicationContext) {
+        this(findRecorder(applicationContext));
+    }
+
+    BgmTvMetrics(@Nullable Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * 不记录任何指标.
+     */
+    public static BgmTvMetrics noop() {
+        return new BgmTvMetrics((Recorder) null);
+    }
+
+    @Nullable
+    private static Recorder findRecorder(ApplicationContext applicationContext) {
+        Assert.notNull(applicationContext, "'applicationContext' must not null.");
+        if (!ClassUtils.isPresent(METER_REGISTRY, BgmTvMetrics.class.getClassLoader())) {
+            log.debug("Micrometer not present, bgm.tv metrics disabled.");
+            return null;
+        }
+        Recorder recorder = MicrometerRecorder.create(applicationContext);
+        log.info("bgm.tv metrics {}.", recorder == null ? "disabled, no meter registry found"
+            : "enabled");
+        return recorder;
+    }
+
+    /**
+     * 插件停止时移除注册到宿主 registry 的指标，重新启动后由新的实例注册.
+     */
+    @Override
+    public void destroy() {
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * WebClient 过滤器，需要放在限流过滤器之后，只统计请求本身的耗时.
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> {
+            if (recorder == null) {
+                return next.exchange(request);
+            }
+            return Mono.deferContextual(context -> {
+                AtomicInteger attempts = context.getOrDefault(ATTEMPT_KEY, null);
+                int attempt = attempts == null ? 1 : attempts.incrementAndGet();
+                String method = request.method().name();
+                long start = System.nanoTime();
+                return next.exchange(request)
+                    .doOnNext(response -> recordRequest(request.url(), method,
+                        String.valueOf(response.statusCode().value()), attempt, start))
+                    .doOnError(e -> recordRequest(request.url(), method, IO_ERROR, attempt,
+                        start));
+            });
+        };
+    }
+
+    /**
+     * RestTemplate 拦截器，需要放在限流拦截器之后. 重试次数取自 @Retryable 的重试上下文.
+     */
+    public ClientHttpRequestInterceptor interceptor() {
+        return (request, body, execution) -> {
+            if (recorder == null) {
+                return execution.execute(request, body);
+            }
+            RetryContext retryContext = RetrySynchronizationManager.getContext();
+            int attempt = retryContext == null ? 1 : retryContext.getRetryCount() + 1;
+            String method = request.getMethod().name();
+            long start = System.nanoTime();
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                recordRequest(request.getURI(), method,
+                    String.valueOf(response.getStatusCode().value()), attempt, start);
+                return response;
+            } catch (IOException | RuntimeException e) {
+                recordRequest(request.getURI(), method, IO_ERROR, attempt, start);
+                throw e;
+            }
+        };
+    }
+
+    private void recordRequest(URI uri, String method, String status, int attempt, long start) {
+        recorder.recordRequest(endpoint(uri), method, status, attempt, System.nanoTime() - start);
+    }
+
+    /**
+     * 把请求地址归并为接口模板，避免条目ID、关键词等产生过多的标签值.
+     */
+    static String endpoint(URI uri) {
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            return OTHER_ENDPOINT;
+        }
+        if (path.startsWith("/search/subject/")) {
+            return "/search/subject/{keyword}";
+        }
+        if (path.startsWith("/pic/")) {
+            return "/pic/{image}";
+        }
+        if (!path.startsWith("/v0/")) {
+            return OTHER_ENDPOINT;
+        }
+        StringBuilder endpoint = new StringBuilder(path.length());
+        for (String segment : path.substring(1).split("/")) {
+            endpoint.append('/');
+            endpoint.append(!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)
+                ? "{id}" : segment);
+        }
+        return endpoint.toString();
+    }
+
+    /**
+     * 监听器的事件计数，宿主没有 registry 时计数为空操作.
+     */
+    public ListenerMetrics listener(@Nonnull String listener) {
+        Assert.hasText(listener, "'listener' must has text");
+        if (recorder == null) {
+            return ListenerMetrics.NOOP;
+        }
+        return new ListenerMetrics(
+            listenerCounter(listener, "received"),
+            listenerCounter(listener, "skipped"),
+            listenerCounter(listener, "pushed"),
+            listenerCounter(listener, "applied"),
+            listenerCounter(listener, "failed"));
+    }
+
+    private Runnable listenerCounter(String listener, String outcome) {
+        return recorder.counter(LISTENER_EVENTS, "bgm.tv plugin listener events",
+            "listener", listener, "outcome", outcome);
+    }
+
+    public <T> void gauge(@Nonnull String name, @Nonnull String description, @Nonnull T obj,
+                          @Nonnull ToDoubleFunction<T> value, String... tags) {
+        if (recorder != null) {
+            recorder.gauge(name, description, obj, value, tags);
+        }
+    }
+
+    /**
+     * 注册读取已有累计值的计数器，例如缓存的命中次数.
+     */
+    public <T> void functionCounter(@Nonnull String name, @Nonnull String description,
+                                    @Nonnull T obj, @Nonnull ToDoubleFunction<T> value,
+                                    String... tags) {
+        if (recorder != null) {
+            recorder.functionCounter(name, description, obj, value, tags);
+        }
+    }
+
+    /**
+     * 一个监听器的事件计数.
+     */
+    public static final class ListenerMetrics {
+        public static final ListenerMetrics NOOP =
+            new ListenerMetrics(() -> { }, () -> { }, () -> { }, () -> { }, () -> { });
+
+        private final Runnable received;
+        private final Runnable skipped;
+        private final Runnable pushed;
+        private final Runnable applied;
+        private final Runnable failed;
+
+        private ListenerMetrics(Runnable received, Runnable skipped, Runnable pushed,
+                                Runnable applied, Runnable failed) {
+            this.received = received;
+            this.skipped = skipped;
+            this.pushed = pushed;
+            this.applied = applied;
+            this.failed = failed;
+        }
+
+        public void received() {
+            received.run();
+        }
+
+        /**
+         * 配置未开启同步、条目未关联 bgm.tv 或者没有可用的令牌等原因不推送.
+         */
+        public void skipped() {
+            skipped.run();
+        }
+
+        public void pushed() {
+            pushed.run();
+        }
+
+        /**
+         * 只在插件内处理、不需要推送到 bgm.tv 的事件，例如重新加载配置.
+         */
+        public void applied() {
+            applied.run();
+        }
+
+        public void failed() {
+            failed.run();
+        }
+    }
+}
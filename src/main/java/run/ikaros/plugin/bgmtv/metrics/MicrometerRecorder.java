@@ -0,0 +1,119 @@
+package run.ikaros.plugin.bgmtv.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.context.ApplicationContext;
+import org.springframework.util.Assert;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 写入 Micrometer 的实现，只在宿主有 Micrometer 时由 {@link BgmTvMetrics} 加载.
+ */
+class MicrometerRecorder implements BgmTvMetrics.Recorder {
+    private final MeterRegistry registry;
+    /**
+     * 标签组合有限，缓存 Timer 避免每次请求重新构建.
+     */
+    private final Map<RequestKey, Timer> requestTimers = new ConcurrentHashMap<>();
+    /**
+     * 注册到宿主 registry 的所有指标，插件停止时移除.
+     */
+    private final Set<Meter> meters = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private record RequestKey(String endpoint, String method, String status, int attempt) {
+    }
+
+    MicrometerRecorder(@Nonnull MeterRegistry registry) {
+        Assert.notNull(registry, "'registry' must not null.");
+        this.registry = registry;
+    }
+
+    /**
+     * 优先使用容器中唯一的 MeterRegistry，其次是已经添加了 registry 的全局 registry.
+     *
+     * @return 都没有时返回 null
+     */
+    @Nullable
+    static MicrometerRecorder create(ApplicationContext applicationContext) {
+        MeterRegistry registry =
+            applicationContext.getBeanProvider(MeterRegistry.class).getIfUnique();
+        if (registry == null && !Metrics.globalRegistry.getRegistries().isEmpty()) {
+            registry = Metrics.globalRegistry;
+        }
+        return registry == null ? null : new MicrometerRecorder(registry);
+    }
+
+    @Override
+    public void recordRequest(String endpoint, String method, String status, int attempt,
+                              long nanos) {
+        if (closed) {
+            return;
+        }
+        requestTimers.computeIfAbsent(new RequestKey(endpoint, method, status, attempt),
+                key -> track(Timer.builder(BgmTvMetrics.HTTP_REQUESTS)
+                    .description("bgm.tv http requests, including retries")
+                    .tag("endpoint", key.endpoint())
+                    .tag("method", key.method())
+                    .tag("status", key.status())
+                    .tag("attempt", String.valueOf(key.attempt()))
+                    .publishPercentileHistogram()
+                    .register(registry)))
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Runnable counter(String name, String description, String... tags) {
+        Counter counter = track(Counter.builder(name)
+            .description(description)
+            .tags(tags)
+            .register(registry));
+        return counter::increment;
+    }
+
+    @Override
+    public <T> void gauge(String name, String description, T obj, ToDoubleFunction<T> value,
+                          String... tags) {
+        track(Gauge.builder(name, obj, value)
+            .description(description)
+            .tags(tags)
+            .register(registry));
+    }
+
+    @Override
+    public <T> void functionCounter(String name, String description, T obj,
+                                    ToDoubleFunction<T> value, String... tags) {
+        track(FunctionCounter.builder(name, obj, value)
+            .description(description)
+            .tags(tags)
+            .register(registry));
+    }
+
+    /**
+     * 从宿主 registry 移除本插件注册的指标，之后的请求不再记录.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        meters.forEach(registry::remove);
+        meters.clear();
+        requestTimers.clear();
+    }
+
+    private <M extends Meter> M track(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+}
@@ -0,0 +1,105 @@
+package run.ikaros.plugin.bgmtv.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.List;
+
+/**
+ * 角色，条目关联角色列表和角色详情共用.
+ *
+ * <p>关联列表中只有 relation 和 actors，详情中才有 summary 和 infobox.</p>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BgmTvCharacter {
+    private Integer id;
+    private String name;
+    /**
+     * 1: 角色, 2: 机体, 3: 舰船, 4: 组织
+     */
+    private Integer type;
+    private BgmTvImages images;
+    /**
+     * 与条目的关系，例如 主角、配角
+     */
+    private String relation;
+    /**
+     * 配音演员
+     */
+    private List<BgmTvPerson> actors;
+    private String summary;
+    @JsonDeserialize(using = BgmTvInfoboxDeserializer.class)
+    private String infobox;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public BgmTvCharacter setId(Integer id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BgmTvCharacter setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public Integer getType() {
+        return type;
+    }
+
+    public BgmTvCharacter setType(Integer type) {
+        this.type = type;
+        return this;
+    }
+
+    public BgmTvImages getImages() {
+        return images;
+    }
+
+    public BgmTvCharacter setImages(BgmTvImages images) {
+        this.images = images;
+        return this;
+    }
+
+    public String getRelation() {
+        return relation;
+    }
+
+    public BgmTvCharacter setRelation(String relation) {
+        this.relation = relation;
+        return this;
+    }
+
+    public List<BgmTvPerson> getActors() {
+        return actors;
+    }
+
+    public BgmTvCharacter setActors(List<BgmTvPerson> actors) {
+        this.actors = actors;
+        return this;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public BgmTvCharacter setSummary(String summary) {
+        this.summary = summary;
+        return this;
+    }
+
+    public String getInfobox() {
+        return infobox;
+    }
+
+    public BgmTvCharacter setInfobox(String infobox) {
+        this.infobox = infobox;
+        return this;
+    }
+}
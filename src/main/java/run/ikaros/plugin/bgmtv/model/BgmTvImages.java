@@ -2,9 +2,43 @@ package run.ikaros.plugin.bgmtv.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.function.Function;
+
 /**
  */
 public class BgmTvImages {
+    /**
+     * 图片尺寸，列表等只需要缩略图的场景不必下载原图.
+     */
+    public enum Variant {
+        /**
+         * 原图
+         */
+        LARGE(BgmTvImages::getLarge),
+        /**
+         * 宽 400
+         */
+        COMMON(BgmTvImages::getCommon),
+        /**
+         * 宽 800
+         */
+        MEDIUM(BgmTvImages::getMedium),
+        /**
+         * 宽 200
+         */
+        SMALL(BgmTvImages::getSmall),
+        /**
+         * 宽 100
+         */
+        GRID(BgmTvImages::getGrid);
+
+        private final Function<BgmTvImages, String> getter;
+
+        Variant(Function<BgmTvImages, String> getter) {
+            this.getter = getter;
+        }
+    }
+
     @JsonProperty("large")
     private String large;
     @JsonProperty("common")
@@ -60,4 +94,12 @@ public class BgmTvImages {
         this.grid = grid;
         return this;
     }
+
+    /**
+     * 指定尺寸的图片地址，该尺寸没有图片时返回原图地址.
+     */
+    public String getUrl(Variant variant) {
+        String url = variant == null ? null : variant.getter.apply(this);
+        return url == null || url.isBlank() ? large : url;
+    }
 }
@@ -0,0 +1,93 @@
+package run.ikaros.plugin.bgmtv.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+/**
+ * 在解析条目时直接把 infobox 转成 key: value 的多行文本，无需先解析成树再重新序列化.
+ *
+ * <p>infobox 的格式为 <code>[{"key": "中文名", "value": "..."},
+ * {"key": "别名", "value": [{"v": "..."}, {"k": "...", "v": "..."}]}]</code>，
+ * 数组形式的 value 会把其中所有的 v 以空格拼接. 已经是字符串的 infobox（例如数据存档中的维基文本）会原样返回.</p>
+ */
+public class BgmTvInfoboxDeserializer extends JsonDeserializer<String> {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context)
+        throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String key = null;
+            String value = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken valueToken = parser.nextToken();
+                if ("key".equals(fieldName)) {
+                    key = scalarText(parser, valueToken);
+                } else if ("value".equals(fieldName)) {
+                    value = valueToken == JsonToken.START_ARRAY
+                        ? readValueArray(parser) : scalarText(parser, valueToken);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            result.append(key).append(": ").append(value).append(LINE_SEPARATOR);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 拼接数组中每个对象的 v 字段.
+     */
+    private static String readValueArray(JsonParser parser) throws IOException {
+        StringBuilder valueBuilder = new StringBuilder();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken valueToken = parser.nextToken();
+                if ("v".equals(fieldName)) {
+                    if (!valueBuilder.isEmpty()) {
+                        valueBuilder.append(' ');
+                    }
+                    valueBuilder.append(scalarText(parser, valueToken));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return valueBuilder.toString().trim();
+    }
+
+    /**
+     * 与 JsonNode#asText 保持一致：标量返回文本，null 返回 "null"，对象和数组返回空串.
+     */
+    private static String scalarText(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return "";
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return "null";
+        }
+        return parser.getText();
+    }
+}
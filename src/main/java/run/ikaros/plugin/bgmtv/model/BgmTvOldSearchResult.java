@@ -0,0 +1,43 @@
+package run.ikaros.plugin.bgmtv.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * 旧版搜索接口 /search/subject/{keyword} 的返回结果.
+ * 无结果时接口返回的是带 code 的错误体，而不是空列表.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BgmTvOldSearchResult {
+    private Integer results;
+    private List<BgmTvSubject> list;
+    private Integer code;
+
+    public Integer getResults() {
+        return results;
+    }
+
+    public BgmTvOldSearchResult setResults(Integer results) {
+        this.results = results;
+        return this;
+    }
+
+    public List<BgmTvSubject> getList() {
+        return list;
+    }
+
+    public BgmTvOldSearchResult setList(List<BgmTvSubject> list) {
+        this.list = list;
+        return this;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+
+    public BgmTvOldSearchResult setCode(Integer code) {
+        this.code = code;
+        return this;
+    }
+}
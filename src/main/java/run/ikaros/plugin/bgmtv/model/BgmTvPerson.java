@@ -0,0 +1,105 @@
+package run.ikaros.plugin.bgmtv.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.List;
+
+/**
+ * 人物，条目关联人物列表和人物详情共用.
+ *
+ * <p>关联列表中只有 relation，详情中才有 summary 和 infobox.</p>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BgmTvPerson {
+    private Integer id;
+    private String name;
+    /**
+     * 1: 个人, 2: 公司, 3: 组合
+     */
+    private Integer type;
+    /**
+     * 职业，例如 producer, mangaka, seiyu
+     */
+    private List<String> career;
+    private BgmTvImages images;
+    /**
+     * 与条目的关系，例如 导演、原作
+     */
+    private String relation;
+    private String summary;
+    @JsonDeserialize(using = BgmTvInfoboxDeserializer.class)
+    private String infobox;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public BgmTvPerson setId(Integer id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BgmTvPerson setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public Integer getType() {
+        return type;
+    }
+
+    public BgmTvPerson setType(Integer type) {
+        this.type = type;
+        return this;
+    }
+
+    public List<String> getCareer() {
+        return career;
+    }
+
+    public BgmTvPerson setCareer(List<String> career) {
+        this.career = career;
+        return this;
+    }
+
+    public BgmTvImages getImages() {
+        return images;
+    }
+
+    public BgmTvPerson setImages(BgmTvImages images) {
+        this.images = images;
+        return this;
+    }
+
+    public String getRelation() {
+        return relation;
+    }
+
+    public BgmTvPerson setRelation(String relation) {
+        this.relation = relation;
+        return this;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public BgmTvPerson setSummary(String summary) {
+        this.summary = summary;
+        return this;
+    }
+
+    public String getInfobox() {
+        return infobox;
+    }
+
+    public BgmTvPerson setInfobox(String infobox) {
+        this.infobox = infobox;
+        return this;
+    }
+}
@@ -2,6 +2,7 @@ package run.ikaros.plugin.bgmtv.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.util.List;
 import java.util.Map;
@@ -69,6 +70,12 @@ public class BgmTvSubject {
     private String date;
     private String platform;
     private String url;
+    /**
+     * key: value 形式的多行文本
+     *
+     * @see BgmTvInfoboxDeserializer
+     */
+    @JsonDeserialize(using = BgmTvInfoboxDeserializer.class)
     private String infobox;
     private Boolean nsfw;
     private BgmTvImages images;
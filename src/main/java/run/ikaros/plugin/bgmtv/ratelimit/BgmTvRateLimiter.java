@@ -0,0 +1,276 @@
+package run.ikaros.plugin.bgmtv.ratelimit;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 所有对 bgm.tv 的请求共用的令牌桶限流器.
+ *
+ * <p>令牌按当前速率补充，最多积攒 burst 个，取不到令牌的请求预支令牌并等待相应时间，
+ * 响应式调用通过 {@link Mono#delay(Duration)} 等待，不占用线程.
+ * 收到 429/503 时速率减半并暂停到 Retry-After 指定的时间（没有该响应头时按连续被限流次数指数退避，
+ * 最长 {@link #MAX_BACKOFF}），之后每次成功响应线性恢复速率，直到配置的上限.
+ * 在暂停之前已经预支令牌的请求等待结束后重新检查，仍在暂停中时退还令牌并重新排队.</p>
+ */
+@Slf4j
+@Component
+public class BgmTvRateLimiter {
+    public static final double DEFAULT_MAX_RATE = 4;
+    public static final double DEFAULT_MIN_RATE = 0.5;
+    public static final int DEFAULT_BURST = 8;
+    public static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(1);
+    /**
+     * 没有 Retry-After 时指数退避的上限，服务端指定的时间不受限制.
+     */
+    public static final Duration MAX_BACKOFF = Duration.ofSeconds(60);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+    private final double minRate;
+    private final int burst;
+    private final LongSupplier nanoTime;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private int consecutiveThrottles;
+
+    private final AtomicInteger queueLength = new AtomicInteger();
+    private final LongAdder throttledCount = new LongAdder();
+
+    public BgmTvRateLimiter() {
+        this(DEFAULT_MAX_RATE, DEFAULT_MIN_RATE, DEFAULT_BURST, System::nanoTime);
+    }
+
+    /**
+     * 指定速率上下限，例如压测本地的替身服务时.
+     */
+    public BgmTvRateLimiter(double maxRate, double minRate, int burst) {
+        this(maxRate, minRate, burst, System::nanoTime);
+    }
+
+    BgmTvRateLimiter(double maxRate, double minRate, int burst, @Nonnull LongSupplier nanoTime) {
+        Assert.isTrue(maxRate > 0 && minRate > 0 && minRate <= maxRate,
+            "'minRate' and 'maxRate' must be positive and 'minRate' <= 'maxRate'");
+        Assert.isTrue(burst > 0, "'burst' must be positive");
+        Assert.notNull(nanoTime, "'nanoTime' must not null.");
+        this.maxRate = maxRate;
+        this.minRate = minRate;
+        this.burst = burst;
+        this.nanoTime = nanoTime;
+        this.rate = maxRate;
+        this.tokens = burst;
+        this.lastRefillNanos = nanoTime.getAsLong();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * 取一个令牌，需要等待时在定时器上延迟完成，不阻塞线程.
+     */
+    public Mono<Void> acquire() {
+        return Mono.defer(() -> {
+            long waitNanos = reserve();
+            if (waitNanos <= 0) {
+                return Mono.empty();
+            }
+            queueLength.incrementAndGet();
+            // 在下游收到完成信号之前出队
+            return await(waitNanos)
+                .doOnTerminate(queueLength::decrementAndGet)
+                .doOnCancel(queueLength::decrementAndGet);
+        });
+    }
+
+    private Mono<Void> await(long waitNanos) {
+        return Mono.delay(Duration.ofNanos(waitNanos))
+            .then(Mono.defer(() -> {
+                long moreNanos = recheck();
+                return moreNanos > 0 ? await(moreNanos) : Mono.empty();
+            }));
+    }
+
+    /**
+     * 取一个令牌，需要等待时阻塞当前线程，供 RestTemplate 使用.
+     */
+    public void acquireBlocking() {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) {
+            return;
+        }
+        queueLength.incrementAndGet();
+        try {
+            while (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                waitNanos = recheck();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queueLength.decrementAndGet();
+        }
+    }
+
+    /**
+     * 预支一个令牌.
+     *
+     * @return 需要等待的纳秒数，0 表示立即可用
+     */
+    synchronized long reserve() {
+        long now = nanoTime.getAsLong();
+        refill(now);
+        long pauseNanos = Math.max(0, pausedUntilNanos - now);
+        tokens -= 1;
+        if (tokens >= 0) {
+            return pauseNanos;
+        }
+        // 暂停期间不补充令牌，排队的请求在暂停结束后按速率依次放行
+        return pauseNanos + (long) (-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    /**
+     * 等待结束后调用. 预支令牌之后才收到 429/503 的请求，此时可能仍在暂停中，
+     * 退还原来的令牌并重新预支，排在暂停结束之后.
+     *
+     * @return 还需要等待的纳秒数，0 表示可以发出请求
+     */
+    synchronized long recheck() {
+        if (pausedUntilNanos - nanoTime.getAsLong() <= 0) {
+            return 0;
+        }
+        tokens += 1;
+        return reserve();
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * rate / NANOS_PER_SECOND);
+            lastRefillNanos = now;
+        }
+    }
+
+    /**
+     * 根据响应状态调整速率.
+     *
+     * @param retryAfter 响应头 Retry-After，秒数或者 HTTP 日期
+     */
+    public void onResponse(@Nonnull HttpStatusCode statusCode, @Nullable String retryAfter) {
+        if (statusCode.value() == HttpStatus.TOO_MANY_REQUESTS.value()
+            || statusCode.value() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+            onThrottled(parseRetryAfter(retryAfter));
+        } else if (!statusCode.isError()) {
+            onSuccess();
+        }
+    }
+
+    synchronized void onThrottled(@Nullable Duration retryAfter) {
+        throttledCount.increment();
+        long now = nanoTime.getAsLong();
+        refill(now);
+        rate = Math.max(minRate, rate / 2);
+        consecutiveThrottles++;
+        Duration pause = retryAfter;
+        if (pause == null) {
+            int shift = Math.min(consecutiveThrottles - 1, 6);
+            pause = DEFAULT_BACKOFF.multipliedBy(1L << shift);
+            if (pause.compareTo(MAX_BACKOFF) > 0) {
+                pause = MAX_BACKOFF;
+            }
+        }
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + pause.toNanos());
+        lastRefillNanos = pausedUntilNanos;
+        tokens = Math.min(tokens, 0);
+        log.warn("Throttled by bgm.tv, lower rate to [{}] req/s and pause [{}].", rate, pause);
+    }
+
+    synchronized void onSuccess() {
+        consecutiveThrottles = 0;
+        if (rate < maxRate) {
+            refill(nanoTime.getAsLong());
+            rate = Math.min(maxRate, rate + maxRate / 20);
+        }
+    }
+
+    @Nullable
+    static Duration parseRetryAfter(@Nullable String retryAfter) {
+        if (StringUtils.isBlank(retryAfter)) {
+            return null;
+        }
+        String value = retryAfter.trim();
+        if (NumberUtils.isDigits(value)) {
+            return Duration.ofSeconds(NumberUtils.toLong(value));
+        }
+        try {
+            Duration duration = Duration.between(ZonedDateTime.now(),
+                ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+            return duration.isNegative() ? Duration.ZERO : duration;
+        } catch (DateTimeParseException e) {
+            log.debug("Ignore invalid Retry-After header [{}].", retryAfter);
+            return null;
+        }
+    }
+
+    /**
+     * 当前每秒允许的请求数.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * 正在等待令牌的请求数.
+     */
+    public int getQueueLength() {
+        return queueLength.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    /**
+     * WebClient 过滤器，每次请求（包括重试）前取令牌，并根据响应调整速率.
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> acquire()
+            .then(Mono.defer(() -> next.exchange(request)))
+            .doOnNext(response -> onResponse(response.statusCode(),
+                response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER)));
+    }
+
+    /**
+     * RestTemplate 拦截器，每次请求前取令牌，并根据响应调整速率.
+     */
+    public ClientHttpRequestInterceptor interceptor() {
+        return (request, body, execution) -> {
+            acquireBlocking();
+            ClientHttpResponse response = execution.execute(request, body);
+            onResponse(response.getStatusCode(),
+                response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            return response;
+        };
+    }
+}
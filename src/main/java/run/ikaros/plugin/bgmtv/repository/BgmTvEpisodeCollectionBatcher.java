@@ -0,0 +1,208 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import jakarta.annotation.Nonnull;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按条目合并剧集完成状态的变更，窗口结束后用一次 PATCH 推送所有变更的剧集.
+ *
+ * <p>窗口从条目的第一个事件开始计时，窗口内同一剧集多次变更只保留最后一次，
+ * 标记完成和取消完成的剧集各用一次请求，因此整季标记为看过只需要一次请求.</p>
+ *
+ * <p>同一条目的推送排在上一次推送之后执行，后提交的变更不会被先提交的覆盖.
+ * 插件停止时推送所有未到期的批次.</p>
+ *
+ * @see BgmTvReactiveRepository#patchSubjectEpisodeFinish
+ */
+@Slf4j
+@Component
+public class BgmTvEpisodeCollectionBatcher implements DisposableBean {
+    public static final Duration DEFAULT_WINDOW = Duration.ofSeconds(2);
+    /**
+     * 停止时等待剩余批次推送完成的最长时间.
+     */
+    static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BgmTvReactiveRepository bgmTvReactiveRepository;
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    /**
+     * 每个条目最后一次推送的完成信号，下一次推送在它完成后开始.
+     */
+    private final Map<String, Mono<Void>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 一个条目在当前窗口内累积的变更，访问时需持有该对象的锁.
+     */
+    private static final class Batch {
+        private final Map<Float, Boolean> finishBySort = new LinkedHashMap<>();
+        private boolean isPrivate;
+        /**
+         * 合并进该批次的事件数，推送完成或失败后按事件计数.
+         */
+        private int events;
+        private BgmTvMetrics.ListenerMetrics listenerMetrics;
+    }
+
+    public BgmTvEpisodeCollectionBatcher(BgmTvReactiveRepository bgmTvReactiveRepository) {
+        this.bgmTvReactiveRepository = bgmTvReactiveRepository;
+    }
+
+    /**
+     * 记录一次剧集完成状态变更，条目没有未推送的批次时开启新的窗口.
+     *
+     * @param window 窗口长度，为 0 时仍会合并同一时刻到达的事件
+     */
+    public void submit(@Nonnull String bgmTvSubId, float sort, boolean isFinish,
+                       boolean isPrivate, @Nonnull Duration window) {
+        submit(bgmTvSubId, sort, isFinish, isPrivate, window, BgmTvMetrics.ListenerMetrics.NOOP);
+    }
+
+    /**
+     * 记录一次剧集完成状态变更，所在批次推送成功后计为已推送，推送失败后计为失败.
+     *
+     * @param listenerMetrics 提交事件的监听器的指标
+     */
+    public void submit(@Nonnull String bgmTvSubId, float sort, boolean isFinish,
+                       boolean isPrivate, @Nonnull Duration window,
+                       @Nonnull BgmTvMetrics.ListenerMetrics listenerMetrics) {
+        Assert.hasText(bgmTvSubId, "'bgmTvSubId' must has text.");
+        Assert.notNull(window, "'window' must not null.");
+        Assert.notNull(listenerMetrics, "'listenerMetrics' must not null.");
+        boolean[] created = new boolean[1];
+        batches.compute(bgmTvSubId, (key, batch) -> {
+            if (batch == null) {
+                batch = new Batch();
+                created[0] = true;
+            }
+            synchronized (batch) {
+                batch.finishBySort.remove(sort);
+                batch.finishBySort.put(sort, isFinish);
+                batch.isPrivate = isPrivate;
+                batch.events++;
+                batch.listenerMetrics = listenerMetrics;
+            }
+            return batch;
+        });
+        if (created[0]) {
+            Mono.delay(window.isNegative() ? Duration.ZERO : window)
+                .subscribe(tick -> startFlush(bgmTvSubId));
+        }
+    }
+
+    /**
+     * 立即推送条目当前批次，推送在上一次推送完成后开始.
+     * 没有批次时等待正在进行的推送，都没有时直接完成.
+     */
+    public Mono<Void> flush(@Nonnull String bgmTvSubId) {
+        return Mono.defer(() -> startFlush(bgmTvSubId));
+    }
+
+    /**
+     * 取出条目当前批次并排到上一次推送之后，推送不依赖调用方订阅，取消等待也不会中断.
+     *
+     * @return 本次推送的完成信号
+     */
+    private Mono<Void> startFlush(String bgmTvSubId) {
+        Batch batch = batches.remove(bgmTvSubId);
+        if (batch == null) {
+            Mono<Void> running = inFlight.get(bgmTvSubId);
+            return running == null ? Mono.empty() : running.onErrorResume(e -> Mono.empty());
+        }
+        List<Float> finished = new ArrayList<>();
+        List<Float> unfinished = new ArrayList<>();
+        boolean isPrivate;
+        int events;
+        BgmTvMetrics.ListenerMetrics listenerMetrics;
+        synchronized (batch) {
+            batch.finishBySort.forEach((sort, isFinish) ->
+                (isFinish ? finished : unfinished).add(sort));
+            isPrivate = batch.isPrivate;
+            events = batch.events;
+            listenerMetrics = batch.listenerMetrics;
+        }
+
+        Sinks.Empty<Void> done = Sinks.empty();
+        Mono<Void> completion = done.asMono();
+        Mono<Void> previous = inFlight.put(bgmTvSubId, completion);
+        (previous == null ? Mono.<Void>empty() : previous.onErrorResume(e -> Mono.empty()))
+            .then(Mono.defer(() -> {
+                log.debug("Flush episode collection batch for subject[{}], "
+                    + "finished{} unfinished{}.", bgmTvSubId, finished, unfinished);
+                return Flux.concat(
+                        patch(bgmTvSubId, true, isPrivate, finished),
+                        patch(bgmTvSubId, false, isPrivate, unfinished))
+                    .then();
+            }))
+            .doFinally(signal -> inFlight.remove(bgmTvSubId, completion))
+            .subscribe(null,
+                e -> {
+                    log.error("Flush episode collection batch fail for subject[{}].",
+                        bgmTvSubId, e);
+                    for (int i = 0; i < events; i++) {
+                        listenerMetrics.failed();
+                    }
+                    done.tryEmitError(e);
+                },
+                () -> {
+                    for (int i = 0; i < events; i++) {
+                        listenerMetrics.pushed();
+                    }
+                    done.tryEmitEmpty();
+                });
+        return completion;
+    }
+
+    private Mono<Void> patch(String bgmTvSubId, boolean isFinish, boolean isPrivate,
+                             List<Float> sorts) {
+        if (sorts.isEmpty()) {
+            return Mono.empty();
+        }
+        return bgmTvReactiveRepository.patchSubjectEpisodeFinish(bgmTvSubId, isFinish,
+            isPrivate, sorts);
+    }
+
+    /**
+     * 等待推送的条目数.
+     */
+    public int pendingSize() {
+        return batches.size();
+    }
+
+    /**
+     * 插件停止时推送所有未到期的批次，并等待正在进行的推送完成.
+     */
+    @Override
+    public void destroy() {
+        Set<String> keys = new HashSet<>(batches.keySet());
+        keys.addAll(inFlight.keySet());
+        if (keys.isEmpty()) {
+            return;
+        }
+        log.info("Flush [{}] pending episode collection batches before stop.", keys.size());
+        try {
+            Flux.fromIterable(keys)
+                .flatMap(key -> flush(key).onErrorResume(e -> Mono.empty()))
+                .then()
+                .block(SHUTDOWN_TIMEOUT);
+        } catch (IllegalStateException e) {
+            log.warn("Timeout flushing episode collection batches, pending subjects{}.",
+                batches.keySet());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.model.*;
+
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * 基于 WebClient 的非阻塞仓库，方法与 {@link BgmTvRepository} 一一对应，
+ * 供返回 Mono/Flux 的拓展点和事件监听器使用，避免阻塞调用方线程.
+ *
+ * @see BgmTvRepository
+ * @see run.ikaros.plugin.bgmtv.constants.BgmTvApiConst
+ */
+public interface BgmTvReactiveRepository {
+
+    void initWebClient(ConfigMap configMap);
+
+    void refreshHttpHeaders(@Nullable String accessToken);
+
+    Mono<BgmTvSubject> getSubject(@Nonnull Long subjectId);
+
+    /**
+     * 还无法使用
+     */
+    @Deprecated
+    Mono<BgmTvPagingData<BgmTvSubject>> searchSubjectWithNextApi(@Nonnull String keyword,
+                                                                 @Nullable Integer offset,
+                                                                 @Nullable Integer limit);
+
+    Flux<BgmTvSubject> searchSubjectWithOldApi(@Nonnull String keyword,
+                                               @Nullable Integer type);
+
+    default Flux<BgmTvSubject> searchSubjectWithOldApi(@Nonnull String keyword) {
+        Assert.hasText(keyword, "'keyword' must has text.");
+        return searchSubjectWithOldApi(keyword, null);
+    }
+
+    /**
+     * 读取封面的全部字节，经 {@link #downloadCoverFile(String)} 的磁盘缓存.
+     */
+    Mono<byte[]> downloadCover(@Nonnull String url);
+
+    /**
+     * 流式下载封面到磁盘缓存，缓存未过期时不发请求，过期后用条件请求重新校验.
+     *
+     * @return 缓存的图片文件，图片不存在时为空，超过
+     *     {@link BgmTvCoverCache#getMaxBytes()} 时以 DataBufferLimitException 结束
+     */
+    Mono<Path> downloadCoverFile(@Nonnull String url);
+
+    /**
+     * 下载指定尺寸的封面，列表等场景使用缩略图即可.
+     */
+    default Mono<Path> downloadCoverFile(@Nonnull BgmTvImages images,
+                                         @Nonnull BgmTvImages.Variant variant) {
+        Assert.notNull(images, "'images' must not null.");
+        Assert.notNull(variant, "'variant' must not null.");
+        return downloadCoverFile(images.getUrl(variant));
+    }
+
+    Flux<BgmTvEpisode> findEpisodesBySubjectId(@Nonnull Long subjectId,
+                                               @Nullable BgmTvEpisodeType episodeType,
+                                               @Nullable Integer offset,
+                                               @Nullable Integer limit);
+
+    /**
+     * 拉取条目的全部剧集，先请求第一页得到 total，剩余分页并发拉取，
+     * 按分页顺序依次发出，调用方可以边拉取边处理.
+     *
+     * @param episodeType 为空时拉取所有类型
+     * @see run.ikaros.plugin.bgmtv.constants.BgmTvApiConst#EPISODE_PAGE_CONCURRENCY
+     */
+    Flux<BgmTvEpisode> findAllEpisodesBySubjectId(@Nonnull Long subjectId,
+                                                  @Nullable BgmTvEpisodeType episodeType);
+
+    /**
+     * 条目关联的人物，同一人物有多个关系时会出现多次.
+     */
+    Flux<BgmTvPerson> findPersonsBySubjectId(@Nonnull Long subjectId);
+
+    /**
+     * 条目关联的角色.
+     */
+    Flux<BgmTvCharacter> findCharactersBySubjectId(@Nonnull Long subjectId);
+
+    /**
+     * 人物详情，经 {@link run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache} 缓存，不存在时返回空.
+     */
+    Mono<BgmTvPerson> getPerson(@Nonnull Long personId);
+
+    /**
+     * 角色详情，经 {@link run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache} 缓存，不存在时返回空.
+     */
+    Mono<BgmTvCharacter> getCharacter(@Nonnull Long characterId);
+
+    /**
+     * 未配置令牌或者令牌失效时返回空.
+     */
+    Mono<BgmTvUserInfo> getMe();
+
+    /**
+     * 收藏条目，推送成功返回 true，没有可用的令牌时不请求并返回 false.
+     * 请求失败以错误结束，由调用方记录.
+     */
+    Mono<Boolean> postUserSubjectCollection(String bgmTvSubId,
+                                            BgmTVSubCollectionType bgmTVSubCollectionType,
+                                            Boolean isPrivate);
+
+    Mono<Void> putUserEpisodeCollection(String bgmTvSubId, float sort, boolean isFinish,
+                                        boolean isPrivate);
+
+    /**
+     * 一次请求批量更新条目下多个剧集的完成状态，条目未收藏时先收藏为在看.
+     * 其余请求失败以错误结束，由调用方记录.
+     *
+     * @param bgmTvEpSorts 正篇剧集的序号
+     * @see BgmTvEpisodeCollectionBatcher
+     */
+    Mono<Void> patchSubjectEpisodeFinish(String bgmTvSubId, boolean isFinish,
+                                         boolean isPrivate, Collection<Float> bgmTvEpSorts);
+}
@@ -0,0 +1,769 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.api.custom.ReactiveCustomClient;
+import run.ikaros.api.infra.exception.NotFoundException;
+import run.ikaros.plugin.bgmtv.BgmTvPlugin;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndex;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.constants.BgmTvApiConst;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+import run.ikaros.plugin.bgmtv.model.*;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.utils.HttpClientUtils;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+
+import static run.ikaros.plugin.bgmtv.constants.BgmTvConst.REST_TEMPLATE_USER_AGENT;
+import static run.ikaros.plugin.bgmtv.constants.BgmTvConst.TOKEN_PREFIX;
+import static run.ikaros.plugin.bgmtv.model.BgmTVSubCollectionType.DOING;
+
+@Slf4j
+@Component
+public class BgmTvReactiveRepositoryImpl
+    implements BgmTvReactiveRepository, InitializingBean {
+    /**
+     * 与 {@link org.springframework.retry.annotation.Retryable} 默认的三次尝试保持一致，
+     * 指数退避，除 429 外的客户端错误和超过大小上限的下载不重试，
+     * 429 的等待由 {@link BgmTvRateLimiter} 负责.
+     */
+    private static final Retry RETRY = Retry.backoff(2, Duration.ofMillis(500))
+        .maxBackoff(Duration.ofSeconds(5))
+        .filter(e -> !(e instanceof DataBufferLimitException)
+            && (!(e instanceof WebClientResponseException ex)
+            || !ex.getStatusCode().is4xxClientError()
+            || ex.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()))
+        .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+
+    private final ReactiveCustomClient reactiveCustomClient;
+    private final BgmTvSubjectCache subjectCache;
+    private final BgmTvEpisodeIndexCache episodeIndexCache;
+    private final BgmTvPersonCache personCache;
+    private final BgmTvCoverCache coverCache;
+    private final BgmTvSearchCache searchCache;
+    private final BgmTvArchive archive;
+    private final BgmTvRateLimiter rateLimiter;
+    private final BgmTvRequestCoalescer coalescer;
+    private final BgmTvMetrics metrics;
+    private volatile WebClient webClient;
+    /**
+     * 当前 webClient 使用的连接池配置，切换配置时释放旧的连接池.
+     */
+    private HttpClientUtils.Options httpClientOptions = HttpClientUtils.Options.defaults();
+    /**
+     * 接口地址，构建时读取 {@link BgmTvApiConst#base()}.
+     */
+    private volatile String apiBase = BgmTvApiConst.base();
+    private volatile HttpHeaders headers = new HttpHeaders();
+    /**
+     * 当前令牌对应的用户信息，并发调用共用一次请求，出错或未授权时不缓存.
+     */
+    private volatile CachedUserInfo cachedMe;
+
+    /**
+     * @param authorization 获取用户信息时使用的 Authorization 请求头
+     */
+    private record CachedUserInfo(String authorization, Mono<BgmTvUserInfo> userInfo) {
+    }
+
+    public BgmTvReactiveRepositoryImpl(ReactiveCustomClient reactiveCustomClient,
+                                       BgmTvSubjectCache subjectCache,
+                                       BgmTvEpisodeIndexCache episodeIndexCache,
+                                       BgmTvPersonCache personCache,
+                                       BgmTvCoverCache coverCache,
+                                       BgmTvSearchCache searchCache,
+                                       BgmTvArchive archive,
+                                       BgmTvRateLimiter rateLimiter,
+                                       BgmTvRequestCoalescer coalescer,
+                                       BgmTvMetrics metrics) {
+        this.reactiveCustomClient = reactiveCustomClient;
+        this.subjectCache = subjectCache;
+        this.episodeIndexCache = episodeIndexCache;
+        this.personCache = personCache;
+        this.coverCache = coverCache;
+        this.searchCache = searchCache;
+        this.archive = archive;
+        this.rateLimiter = rateLimiter;
+        this.coalescer = coalescer;
+        this.metrics = metrics;
+        this.webClient = buildWebClient(httpClientOptions);
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        reactiveCustomClient.findOne(ConfigMap.class, BgmTvPlugin.NAME)
+            .onErrorResume(NotFoundException.class, e -> Mono.empty())
+            .subscribe(configMap -> {
+                log.debug("init web client when app ready and config exits, configmap: {}",
+                    configMap);
+
+                initWebClient(configMap);
+
+                String token = null;
+                if (Objects.nonNull(configMap.getData())) {
+                    token = String.valueOf(configMap.getData().get("token"));
+                }
+                refreshHttpHeaders(token);
+            });
+    }
+
+    @Override
+    public synchronized void initWebClient(ConfigMap configMap) {
+        log.debug("init web client by config map : {}", configMap);
+        HttpClientUtils.Options options = HttpClientUtils.Options.fromConfigMap(configMap);
+        webClient = buildWebClient(options);
+        HttpClientUtils.release(httpClientOptions);
+        httpClientOptions = options;
+        if (options.proxy() == null) {
+            log.info("config web client by no proxy.");
+        } else {
+            log.info("config web client by proxy [{}]", options.proxy());
+        }
+    }
+
+    /**
+     * 改为请求指定的接口地址，例如本地的替身服务.
+     */
+    public synchronized void setApiBase(@Nonnull String apiBase) {
+        Assert.hasText(apiBase, "'apiBase' must has text.");
+        this.apiBase = StringUtils.removeEnd(apiBase.trim(), "/");
+        webClient = webClient.mutate().baseUrl(this.apiBase).build();
+    }
+
+    private WebClient buildWebClient(HttpClientUtils.Options options) {
+        return WebClient.builder()
+            .baseUrl(apiBase)
+            .clientConnector(new ReactorClientHttpConnector(
+                HttpClientUtils.getHttpClient(options)))
+            .filter(rateLimiter.filter())
+            .filter(metrics.filter())
+            .build();
+    }
+
+    /**
+     * 需要设置bgmTv API 要求的 User Agent
+     *
+     * @see <a href="https://github.com/bangumi/api/blob/master/docs-raw/user%20agent.md">bgmtv api user aget</a>
+     */
+    @Override
+    public void refreshHttpHeaders(@Nullable String accessToken) {
+        log.info("refresh web client headers...");
+        HttpHeaders newHeaders = new HttpHeaders();
+        newHeaders.set(HttpHeaders.USER_AGENT, REST_TEMPLATE_USER_AGENT);
+        newHeaders.set(HttpHeaders.COOKIE, "chii_searchDateLine=0");
+        newHeaders.set(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        newHeaders.setContentType(MediaType.APPLICATION_JSON);
+        if (StringUtils.isNotBlank(accessToken) && !"null".equals(accessToken)) {
+            log.info("update http head access token");
+            newHeaders.set(HttpHeaders.AUTHORIZATION, TOKEN_PREFIX + accessToken);
+        }
+        headers = newHeaders;
+        cachedMe = null;
+        searchCache.clear();
+    }
+
+    private void applyHeaders(HttpHeaders requestHeaders) {
+        requestHeaders.addAll(headers);
+    }
+
+    @Override
+    public Mono<BgmTvSubject> getSubject(@Nonnull Long subjectId) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        // https://api.bgm.tv/v0/subjects/373267
+        final String url = BgmTvApiConst.SUBJECTS + "/" + subjectId;
+        Mono<BgmTvSubject> fromApi = Mono.defer(() -> {
+            BgmTvSubject cached = subjectCache.getIfFresh(subjectId);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return coalescer.getSubjectAsync(subjectId,
+                () -> fetchSubject(subjectId, url, subjectCache.getEntry(subjectId)));
+        });
+        return Mono.defer(() -> {
+            if (!archive.isEnabled()) {
+                return fromApi;
+            }
+            return Mono.fromCallable(() -> Optional.ofNullable(archive.getSubject(subjectId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(archived -> archived.isPresent() || archive.isOffline()
+                    ? Mono.justOrEmpty(archived) : fromApi);
+        });
+    }
+
+    /**
+     * 缓存已过期时带上条件请求头，304 时直接续期缓存.
+     *
+     * @param staleEntry 已过期的缓存，为空时不带条件请求头
+     */
+    private Mono<BgmTvSubject> fetchSubject(Long subjectId, String url,
+                                            @Nullable BgmTvSubjectCache.Entry staleEntry) {
+        return webClient.get().uri(url)
+            .headers(this::applyHeaders)
+            .headers(requestHeaders -> {
+                if (staleEntry == null) {
+                    return;
+                }
+                if (staleEntry.etag() != null) {
+                    requestHeaders.setIfNoneMatch(staleEntry.etag());
+                }
+                if (staleEntry.lastModified() != null) {
+                    requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, staleEntry.lastModified());
+                }
+            })
+            .exchangeToMono(response -> {
+                if (response.statusCode() == HttpStatus.NOT_MODIFIED) {
+                    BgmTvSubject revalidated = subjectCache.revalidated(subjectId);
+                    if (revalidated != null) {
+                        return response.releaseBody().thenReturn(revalidated);
+                    }
+                    // 请求期间缓存被淘汰，304 没有响应体，去掉条件请求头重新获取
+                    log.debug("Subject [{}] evicted before 304, fetch again.", subjectId);
+                    return response.releaseBody()
+                        .then(Mono.defer(() -> fetchSubject(subjectId, url, null)));
+                }
+                if (response.statusCode() == HttpStatus.NOT_FOUND) {
+                    log.warn("subject not found for subjectId={}", subjectId);
+                    subjectCache.invalidate(subjectId);
+                    return response.releaseBody().then(Mono.empty());
+                }
+                if (response.statusCode().isError()) {
+                    return response.createError();
+                }
+                final String etag = response.headers().asHttpHeaders().getETag();
+                final String lastModified = response.headers().asHttpHeaders()
+                    .getFirst(HttpHeaders.LAST_MODIFIED);
+                return response.bodyToMono(byte[].class)
+                    .doOnNext(result -> log.debug("Pull [{}] result bytes [{}].",
+                        url, result.length))
+                    .mapNotNull(result -> JsonUtils.bytes2obj(result, BgmTvSubject.class))
+                    .doOnNext(bgmTvSubject ->
+                        subjectCache.put(subjectId, bgmTvSubject, etag, lastModified));
+            })
+            .retryWhen(RETRY)
+            .contextWrite(BgmTvMetrics.ATTEMPTS);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Mono<BgmTvPagingData<BgmTvSubject>> searchSubjectWithNextApi(
+        @Nonnull String keyword, @Nullable Integer offset, @Nullable Integer limit) {
+        Assert.hasText(keyword, "'keyword' must has text");
+        if (offset == null || offset < 0) {
+            offset = BgmTvApiConst.DEFAULT_OFFSET;
+        }
+        if (limit == null || limit < 0) {
+            limit = BgmTvApiConst.DEFAULT_LIMIT;
+        }
+
+        // https://api.bgm.tv/v0/search/subjects?limit=50&offset=1
+        String url = UriComponentsBuilder.fromUriString(BgmTvApiConst.NEXT_SEARCH_SUBJECTS)
+            .queryParam("limit", limit)
+            .queryParam("offset", offset)
+            .toUriString();
+
+        BgmTvSearchRequest bgmTvSearchRequest = new BgmTvSearchRequest()
+            .setKeyword(keyword);
+
+        return webClient.post().uri(url)
+            .headers(this::applyHeaders)
+            .bodyValue(JsonUtils.obj2Json(bgmTvSearchRequest))
+            .retrieve()
+            .bodyToMono(byte[].class)
+            .map(result -> {
+                BgmTvPagingData<BgmTvSubject> bgmTvPagingData =
+                    JsonUtils.bytes2obj(result, BgmTvRepositoryImpl.SUBJECT_PAGING_TYPE);
+                Assert.notNull(bgmTvPagingData, "response body");
+                if (bgmTvPagingData.getData() == null) {
+                    bgmTvPagingData.setData(List.of());
+                }
+                return bgmTvPagingData;
+            })
+            .retryWhen(RETRY)
+            .contextWrite(BgmTvMetrics.ATTEMPTS);
+    }
+
+    @Override
+    public Flux<BgmTvSubject> searchSubjectWithOldApi(@Nonnull String keyword,
+                                                      @Nullable Integer type) {
+        Assert.hasText(keyword, "'keyword' must has text");
+        // https://api.bgm.tv/search/subject/air?type=2&responseGroup=large
+        String url = BgmTvApiConst.OLD_SEARCH_SUBJECT + "/" + keyword + "?responseGroup=large";
+        if (type != null) {
+            url = url + "&type=" + type;
+        }
+
+        String searchUrl = url;
+        return searchCache.searchAsync(keyword, type, () -> webClient.get().uri(searchUrl)
+                .headers(this::applyHeaders)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .map(result -> {
+                    BgmTvOldSearchResult body =
+                        JsonUtils.bytes2obj(result, BgmTvOldSearchResult.class);
+                    Assert.notNull(body, "'request body' must not null.");
+                    if (body.getCode() != null) {
+                        return List.<BgmTvSubject>of();
+                    }
+                    Integer results = body.getResults();
+                    if (results == null || results <= 0 || body.getList() == null) {
+                        return List.<BgmTvSubject>of();
+                    }
+                    return body.getList();
+                })
+                .retryWhen(RETRY)
+                .contextWrite(BgmTvMetrics.ATTEMPTS))
+            .flatMapIterable(subjects -> subjects);
+    }
+
+    @Override
+    public Mono<byte[]> downloadCover(@Nonnull String url) {
+        return downloadCoverFile(url)
+            .publishOn(Schedulers.boundedElastic())
+            .map(file -> {
+                try {
+                    return Files.readAllBytes(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    @Override
+    public Mono<Path> downloadCoverFile(@Nonnull String url) {
+        Assert.hasText(url, "'url' must has text");
+        return Mono.fromCallable(() -> Optional.ofNullable(coverCache.get(url)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(cached -> {
+                if (cached.isPresent() && coverCache.isFresh(cached.get())) {
+                    return Mono.just(cached.get().file());
+                }
+                if (archive.isOffline()) {
+                    return Mono.justOrEmpty(cached.map(BgmTvCoverCache.Entry::file));
+                }
+                return webClient.get().uri(url)
+                    .headers(requestHeaders -> {
+                        applyHeaders(requestHeaders);
+                        BgmTvRepositoryImpl.applyConditionalHeaders(requestHeaders,
+                            cached.orElse(null));
+                    })
+                    .exchangeToMono(response -> {
+                        if (response.statusCode().value() == HttpStatus.NOT_MODIFIED.value()
+                            && cached.isPresent()) {
+                            return Mono.fromCallable(() ->
+                                    coverCache.revalidated(url, cached.get()).file())
+                                .subscribeOn(Schedulers.boundedElastic());
+                        }
+                        if (response.statusCode().value() == HttpStatus.NOT_FOUND.value()) {
+                            log.warn("cover not found for url={}", url);
+                            return response.releaseBody().then(Mono.empty());
+                        }
+                        if (response.statusCode().isError()) {
+                            return response.createError();
+                        }
+                        // 数据块直接写入缓存文件，不在内存中聚合
+                        return coverCache.store(url, response.bodyToFlux(DataBuffer.class),
+                                response.headers().asHttpHeaders())
+                            .map(BgmTvCoverCache.Entry::file);
+                    })
+                    .retryWhen(RETRY)
+                    .contextWrite(BgmTvMetrics.ATTEMPTS);
+            });
+    }
+
+    @Override
+    public Flux<BgmTvEpisode> findEpisodesBySubjectId(@Nonnull Long subjectId,
+                                                      @Nullable BgmTvEpisodeType episodeType,
+                                                      @Nullable Integer offset,
+                                                      @Nullable Integer limit) {
+        return withArchivedEpisodes(subjectId, episodeType,
+            archived -> BgmTvRepositoryImpl.slice(archived, offset, limit),
+            findEpisodePage(subjectId, episodeType, offset, limit)
+                .flatMapIterable(BgmTvPagingData::getData));
+    }
+
+    /**
+     * 开启了数据存档并且存档中有该条目时从存档读取，否则使用 fromApi.
+     */
+    private Flux<BgmTvEpisode> withArchivedEpisodes(
+        Long subjectId, @Nullable BgmTvEpisodeType episodeType,
+        UnaryOperator<List<BgmTvEpisode>> page, Flux<BgmTvEpisode> fromApi) {
+        return Mono.defer(() -> {
+                if (!archive.isEnabled()) {
+                    return Mono.just(Optional.<List<BgmTvEpisode>>empty());
+                }
+                return Mono.fromCallable(() -> Optional.ofNullable(
+                        BgmTvRepositoryImpl.findArchivedEpisodes(archive, subjectId, episodeType)))
+                    .subscribeOn(Schedulers.boundedElastic());
+            })
+            .flatMapMany(archived -> archived.isPresent()
+                ? Flux.fromIterable(page.apply(archived.get())) : fromApi);
+    }
+
+    @Override
+    public Flux<BgmTvEpisode> findAllEpisodesBySubjectId(@Nonnull Long subjectId,
+                                                         @Nullable BgmTvEpisodeType episodeType) {
+        return withArchivedEpisodes(subjectId, episodeType, archived -> archived,
+            findAllEpisodesFromApi(subjectId, episodeType));
+    }
+
+    private Flux<BgmTvEpisode> findAllEpisodesFromApi(@Nonnull Long subjectId,
+                                                      @Nullable BgmTvEpisodeType episodeType) {
+        return findEpisodePage(subjectId, episodeType,
+            BgmTvApiConst.DEFAULT_OFFSET, BgmTvApiConst.DEFAULT_LIMIT)
+            .flatMapMany(firstPage -> {
+                Flux<BgmTvEpisode> episodes = Flux.fromIterable(firstPage.getData());
+                List<Integer> remainingOffsets =
+                    BgmTvRepositoryImpl.remainingOffsets(firstPage);
+                if (remainingOffsets.isEmpty()) {
+                    return episodes;
+                }
+                int limit = firstPage.getData().size();
+                return episodes.concatWith(Flux.fromIterable(remainingOffsets)
+                    .flatMapSequential(offset ->
+                            findEpisodesBySubjectId(subjectId, episodeType, offset, limit),
+                        BgmTvApiConst.EPISODE_PAGE_CONCURRENCY));
+            });
+    }
+
+    private Mono<BgmTvPagingData<BgmTvEpisode>> findEpisodePage(
+        @Nonnull Long subjectId, @Nullable BgmTvEpisodeType episodeType,
+        @Nullable Integer offset, @Nullable Integer limit) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        String url = BgmTvRepositoryImpl.episodesUrl(subjectId, episodeType, offset, limit);
+        return coalescer.getEpisodePageAsync(url, () -> webClient.get()
+                .uri(url)
+                .headers(this::applyHeaders)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .<BgmTvPagingData<BgmTvEpisode>>mapNotNull(result ->
+                    JsonUtils.bytes2obj(result, BgmTvRepositoryImpl.EPISODE_PAGING_TYPE))
+                .retryWhen(RETRY)
+                .contextWrite(BgmTvMetrics.ATTEMPTS))
+            .filter(body -> body.getData() != null);
+    }
+
+    @Override
+    public Flux<BgmTvPerson> findPersonsBySubjectId(@Nonnull Long subjectId) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        if (archive.isOffline()) {
+            return Flux.empty();
+        }
+        // https://api.bgm.tv/v0/subjects/373267/persons
+        return getForBytes(BgmTvApiConst.SUBJECTS + "/" + subjectId + "/persons")
+            .<List<BgmTvPerson>>mapNotNull(body ->
+                JsonUtils.bytes2obj(body, BgmTvRepositoryImpl.PERSON_LIST_TYPE))
+            .flatMapIterable(persons -> persons);
+    }
+
+    @Override
+    public Flux<BgmTvCharacter> findCharactersBySubjectId(@Nonnull Long subjectId) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        if (archive.isOffline()) {
+            return Flux.empty();
+        }
+        // https://api.bgm.tv/v0/subjects/373267/characters
+        return getForBytes(BgmTvApiConst.SUBJECTS + "/" + subjectId + "/characters")
+            .<List<BgmTvCharacter>>mapNotNull(body ->
+                JsonUtils.bytes2obj(body, BgmTvRepositoryImpl.CHARACTER_LIST_TYPE))
+            .flatMapIterable(characters -> characters);
+    }
+
+    @Override
+    public Mono<BgmTvPerson> getPerson(@Nonnull Long personId) {
+        Assert.isTrue(personId > 0, "'personId' must be positive");
+        // https://api.bgm.tv/v0/persons/1
+        return personCache.getPersonAsync(personId, id ->
+            getForBytes(BgmTvApiConst.PERSONS + "/" + id)
+                .mapNotNull(body -> JsonUtils.bytes2obj(body, BgmTvPerson.class)));
+    }
+
+    @Override
+    public Mono<BgmTvCharacter> getCharacter(@Nonnull Long characterId) {
+        Assert.isTrue(characterId > 0, "'characterId' must be positive");
+        // https://api.bgm.tv/v0/characters/1
+        return personCache.getCharacterAsync(characterId, id ->
+            getForBytes(BgmTvApiConst.CHARACTERS + "/" + id)
+                .mapNotNull(body -> JsonUtils.bytes2obj(body, BgmTvCharacter.class)));
+    }
+
+    /**
+     * GET 请求的响应体，404 或响应体为空时返回空.
+     */
+    private Mono<byte[]> getForBytes(String url) {
+        return webClient.get().uri(url)
+            .headers(this::applyHeaders)
+            .exchangeToMono(response -> {
+                if (response.statusCode().value() == HttpStatus.NOT_FOUND.value()) {
+                    log.warn("Not found for url={}", url);
+                    return response.releaseBody().then(Mono.empty());
+                }
+                if (response.statusCode().isError()) {
+                    return response.createError();
+                }
+                return response.bodyToMono(byte[].class)
+                    .filter(body -> body.length > 0);
+            })
+            .retryWhen(RETRY)
+            .contextWrite(BgmTvMetrics.ATTEMPTS);
+    }
+
+    @Override
+    public Mono<BgmTvUserInfo> getMe() {
+        return Mono.defer(() -> {
+            String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+            if (StringUtils.isBlank(authorization)) {
+                return Mono.empty();
+            }
+            CachedUserInfo cached = cachedMe;
+            if (cached == null || !cached.authorization().equals(authorization)) {
+                cached = new CachedUserInfo(authorization, fetchMe()
+                    .cache(me -> Duration.ofMillis(Long.MAX_VALUE),
+                        e -> Duration.ZERO, () -> Duration.ZERO));
+                cachedMe = cached;
+            }
+            return cached.userInfo();
+        });
+    }
+
+    private Mono<BgmTvUserInfo> fetchMe() {
+        return webClient.get().uri(BgmTvApiConst.ME)
+            .headers(this::applyHeaders)
+            .retrieve()
+            .bodyToMono(byte[].class)
+            .mapNotNull(result -> JsonUtils.bytes2obj(result, BgmTvUserInfo.class))
+            .onErrorResume(WebClientResponseException.Unauthorized.class, e -> Mono.empty())
+            .retryWhen(RETRY)
+            .contextWrite(BgmTvMetrics.ATTEMPTS);
+    }
+
+    /**
+     * 写请求返回 401 说明令牌已失效，丢弃缓存的用户信息.
+     */
+    private void invalidateMe(WebClientResponseException.Unauthorized exception) {
+        log.warn("bgm.tv token is unauthorized, drop cached user info.");
+        cachedMe = null;
+    }
+
+    @Override
+    public Mono<Boolean> postUserSubjectCollection(String bgmTvSubId,
+                                                BgmTVSubCollectionType bgmTVSubCollectionType,
+                                                Boolean isPrivate) {
+        Assert.hasText(bgmTvSubId, "'bgmTvSubId' must has text.");
+        Assert.notNull(bgmTVSubCollectionType, "'bgmTVSubCollectionType' must not null.");
+        final long subjectId = Long.parseLong(bgmTvSubId);
+        final int collectionType = bgmTVSubCollectionType.getCode();
+        final boolean collectionIsPrivate = Optional.ofNullable(isPrivate).orElse(false);
+
+        // https://api.bgm.tv/v0/users/-/collections/{subjectId}
+        final String url = BgmTvApiConst.USER_COLLECTIONS_SUBJECT + '/' + subjectId;
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("type", collectionType);
+        body.put("private", collectionIsPrivate);
+
+        return getMe()
+            .flatMap(me -> webClient.post().uri(url)
+                .headers(this::applyHeaders)
+                .bodyValue(JsonUtils.obj2Json(body))
+                .retrieve()
+                .toBodilessEntity()
+                .retryWhen(RETRY)
+                .contextWrite(BgmTvMetrics.ATTEMPTS)
+                .doOnError(WebClientResponseException.Unauthorized.class, this::invalidateMe)
+                .doOnSuccess(entity -> log.info(
+                    "Mark subject[{}] collection is [{}] with private[{}] for bgmtv user[{}}.",
+                    subjectId, bgmTVSubCollectionType.name(), collectionIsPrivate,
+                    me.getUsername()))
+                .thenReturn(true))
+            .switchIfEmpty(Mono.fromCallable(() -> {
+                log.warn("Skip post subject[{}] collection, bgm.tv token is missing "
+                    + "or unauthorized.", subjectId);
+                return false;
+            }));
+    }
+
+    @Override
+    public Mono<Void> putUserEpisodeCollection(String bgmTvSubId, float sort, boolean isFinish,
+                                               boolean isPrivate) {
+        Assert.hasText(bgmTvSubId, "'bgmTvSubId' must has text.");
+        Assert.isTrue(sort > 0, "'sort' must > 0.");
+
+        Long subjectId = Long.parseLong(bgmTvSubId);
+        // 根据序号从条目的剧集索引中匹配剧集ID，索引未命中时才拉取剧集列表
+        return findEpisodeId(subjectId, sort)
+            .switchIfEmpty(Mono.fromRunnable(() -> log.debug(
+                "Skip put episode collection, not found episode seq[{}] for subject[{}].",
+                sort, subjectId)))
+            .flatMap(episodeId -> putEpisodeCollection(episodeId, isFinish)
+                .doOnSuccess(v -> log.info(
+                    "Mark episode[{}] isFinish[{}] isPrivate[{}] for subject[{}] episode seq[{}].",
+                    episodeId, isFinish, isPrivate, subjectId, sort))
+                .onErrorResume(WebClientResponseException.class, exception -> {
+                    if (BgmTvRepositoryImpl.isAuthFailure(exception.getStatusCode())) {
+                        // 令牌无效或没有权限，交给调用方处理
+                        return Mono.error(exception);
+                    }
+                    if (exception.getStatusCode().is4xxClientError()
+                        && BgmTvRepositoryImpl.isSubjectNotCollected(
+                        exception.getResponseBodyAsByteArray())) {
+                        // 收藏条目，更新状态为在看
+                        return postUserSubjectCollection(bgmTvSubId, DOING, isPrivate)
+                            .then(putEpisodeCollection(episodeId, isFinish));
+                    }
+                    if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
+                        // 索引中的剧集ID已失效，下次重新拉取剧集列表
+                        episodeIndexCache.invalidate(subjectId);
+                    }
+                    log.error("Put user episode collection fail, "
+                            + "episode[{}] isFinish[{}] isPrivate[{}] for subject[{}] "
+                            + "episode seq[{}].",
+                        episodeId, isFinish, isPrivate, subjectId, sort, exception);
+                    return Mono.empty();
+                }));
+    }
+
+    @Override
+    public Mono<Void> patchSubjectEpisodeFinish(String bgmTvSubId, boolean isFinish,
+                                                boolean isPrivate,
+                                                Collection<Float> bgmTvEpSorts) {
+        Assert.hasText(bgmTvSubId, "'bgmTvSubId' must has text.");
+        if (bgmTvEpSorts == null || bgmTvEpSorts.isEmpty()) {
+            log.warn("Skip patch, 'bgmTvEpSorts' is null nor empty: {}", bgmTvEpSorts);
+            return Mono.empty();
+        }
+
+        Long subjectId = Long.parseLong(bgmTvSubId);
+        return findEpisodeIds(subjectId, bgmTvEpSorts)
+            .switchIfEmpty(Mono.fromRunnable(() -> log.debug(
+                "Skip patch episode collection, not found episode seqs{} for subject[{}].",
+                bgmTvEpSorts, subjectId)))
+            .flatMap(epIds -> patchEpisodeCollections(subjectId, epIds, isFinish)
+                .doOnSuccess(v -> log.info(
+                    "Mark subject[{}] isFinish=[{}] isPrivate=[{}] for episodes={}.",
+                    subjectId, isFinish, isPrivate, epIds))
+                .onErrorResume(WebClientResponseException.class, exception -> {
+                    if (exception.getStatusCode().is4xxClientError()
+                        && BgmTvRepositoryImpl.isSubjectNotCollected(
+                        exception.getResponseBodyAsByteArray())) {
+                        // 收藏条目，更新状态为在看
+                        return postUserSubjectCollection(bgmTvSubId, DOING, isPrivate)
+                            .then(patchEpisodeCollections(subjectId, epIds, isFinish));
+                    }
+                    if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
+                        // 索引中的剧集ID已失效，下次重新拉取剧集列表
+                        episodeIndexCache.invalidate(subjectId);
+                    }
+                    // 交给调用方记录失败
+                    return Mono.error(exception);
+                }));
+    }
+
+    private Mono<List<Integer>> findEpisodeIds(Long subjectId, Collection<Float> sorts) {
+        return Mono.defer(() -> {
+            BgmTvEpisodeIndex cached = episodeIndexCache.get(subjectId);
+            if (cached != null && (cached.containsAll(sorts)
+                || !episodeIndexCache.tryMissRefetch(subjectId))) {
+                return Mono.just(cached);
+            }
+            // 缓存的索引可能早于新剧集的发布，重新拉取一次
+            return loadEpisodeIndex(subjectId);
+        })
+            .map(episodeIndex -> episodeIndex.findEpisodeIds(sorts))
+            .filter(epIds -> !epIds.isEmpty());
+    }
+
+    private Mono<Void> patchEpisodeCollections(Long subjectId, List<Integer> epIds,
+                                               boolean isFinish) {
+        // https://api.bgm.tv/v0/users/-/collections/{subjectId}/episodes
+        final String url =
+            BgmTvApiConst.USER_COLLECTIONS_SUBJECT + '/' + subjectId + "/episodes";
+        return webClient.patch().uri(url)
+            .headers(this::applyHeaders)
+            .bodyValue(JsonUtils.obj2Json(
+                BgmTvRepositoryImpl.episodeCollectionsBody(epIds, isFinish)))
+            .retrieve()
+            .toBodilessEntity()
+            .retryWhen(RETRY)
+            .contextWrite(BgmTvMetrics.ATTEMPTS)
+            .doOnError(WebClientResponseException.Unauthorized.class, this::invalidateMe)
+            .then();
+    }
+
+    private Mono<Integer> findEpisodeId(Long subjectId, float sort) {
+        return Mono.defer(() -> {
+            BgmTvEpisodeIndex cached = episodeIndexCache.get(subjectId);
+            if (cached == null) {
+                return loadEpisodeIndex(subjectId)
+                    .map(episodeIndex -> episodeIndex.findEpisodeId(sort));
+            }
+            int episodeId = cached.findEpisodeId(sort);
+            if (episodeId != BgmTvEpisodeIndex.NOT_FOUND
+                || !episodeIndexCache.tryMissRefetch(subjectId)) {
+                return Mono.just(episodeId);
+            }
+            // 缓存的索引可能早于新剧集的发布，重新拉取一次
+            return loadEpisodeIndex(subjectId)
+                .map(episodeIndex -> episodeIndex.findEpisodeId(sort));
+        }).filter(episodeId -> episodeId != BgmTvEpisodeIndex.NOT_FOUND);
+    }
+
+    private Mono<BgmTvEpisodeIndex> loadEpisodeIndex(Long subjectId) {
+        return findAllEpisodesBySubjectId(subjectId, BgmTvEpisodeType.POSITIVE)
+            .collectList()
+            .map(BgmTvEpisodeIndex::of)
+            .doOnNext(episodeIndex -> episodeIndexCache.put(subjectId, episodeIndex));
+    }
+
+    private Mono<Void> putEpisodeCollection(Integer episodeId, boolean isFinish) {
+        // https://api.bgm.tv/v0/users/-/collections/-/episodes/{episodeId}
+        final String url =
+            BgmTvApiConst.USER_COLLECTIONS_SUBJECT + "/-/episodes" + '/' + episodeId;
+
+        Map<String, Object> body = new HashMap<>();
+        // 2: 看过
+        // 0: 未收藏
+        body.put("type", isFinish ? 2 : 0);
+
+        return webClient.put().uri(url)
+            .headers(this::applyHeaders)
+            .bodyValue(JsonUtils.obj2Json(body))
+            .retrieve()
+            .toBodilessEntity()
+            .retryWhen(RETRY)
+            .contextWrite(BgmTvMetrics.ATTEMPTS)
+            .doOnError(WebClientResponseException.Unauthorized.class, this::invalidateMe)
+            .then();
+    }
+}
@@ -2,12 +2,18 @@ package run.ikaros.plugin.bgmtv.repository;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.util.Assert;
 import org.springframework.web.client.RestTemplate;
 import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.constants.BgmTvApiConst;
 import run.ikaros.plugin.bgmtv.model.*;
 
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
 
@@ -25,13 +31,13 @@ public interface BgmTvRepository {
     void refreshHttpHeaders(@Nullable String accessToken);
 
     @Nullable
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     BgmTvSubject getSubject(@Nonnull Long subjectId);
 
     /**
      * 还无法使用
      */
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     @Deprecated
     BgmTvPagingData<BgmTvSubject> searchSubjectWithNextApi(@Nonnull String keyword,
                                                            @Nullable Integer offset,
@@ -40,7 +46,7 @@ public interface BgmTvRepository {
     /**
      * 还无法使用
      */
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     @Deprecated
     default BgmTvPagingData<BgmTvSubject> searchSubjectWithNextApi(@Nonnull String keyword) {
         Assert.hasText(keyword, "'keyword' must has text.");
@@ -48,37 +54,105 @@ public interface BgmTvRepository {
     }
 
 
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     List<BgmTvSubject> searchSubjectWithOldApi(@Nonnull String keyword,
                                                @Nullable Integer type);
 
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     default List<BgmTvSubject> searchSubjectWithOldApi(@Nonnull String keyword) {
         Assert.hasText(keyword, "'keyword' must has text.");
         return searchSubjectWithOldApi(keyword, null);
     }
 
-    @Retryable
+    /**
+     * 读取封面的全部字节，经 {@link #downloadCoverFile(String)} 的磁盘缓存.
+     */
+    @Nullable
+    @Retryable(noRetryFor = DataBufferLimitException.class,
+        backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     byte[] downloadCover(@Nonnull String url);
 
-    @Retryable
+    /**
+     * 流式下载封面到磁盘缓存，缓存未过期时不发请求，过期后用条件请求重新校验.
+     *
+     * @return 缓存的图片文件，图片不存在时为 null
+     * @throws DataBufferLimitException 图片超过 {@link BgmTvCoverCache#getMaxBytes()}
+     */
+    @Nullable
+    @Retryable(noRetryFor = DataBufferLimitException.class,
+        backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
+    Path downloadCoverFile(@Nonnull String url);
+
+    /**
+     * 下载指定尺寸的封面，列表等场景使用缩略图即可.
+     */
+    @Nullable
+    default Path downloadCoverFile(@Nonnull BgmTvImages images,
+                                   @Nonnull BgmTvImages.Variant variant) {
+        Assert.notNull(images, "'images' must not null.");
+        Assert.notNull(variant, "'variant' must not null.");
+        return downloadCoverFile(images.getUrl(variant));
+    }
+
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     List<BgmTvEpisode> findEpisodesBySubjectId(@Nonnull Long subjectId,
                                                @Nullable BgmTvEpisodeType episodeType,
                                                @Nullable Integer offset,
                                                @Nullable Integer limit);
 
-    @Retryable
+    /**
+     * 拉取条目的全部剧集，先请求第一页得到 total，剩余分页并发拉取.
+     *
+     * @param episodeType 为空时拉取所有类型
+     * @return 按类型和 sort 排序的剧集
+     * @see BgmTvApiConst#EPISODE_PAGE_CONCURRENCY
+     */
+    List<BgmTvEpisode> findAllEpisodesBySubjectId(@Nonnull Long subjectId,
+                                                  @Nullable BgmTvEpisodeType episodeType);
+
+    /**
+     * 条目关联的人物，同一人物有多个关系时会出现多次.
+     */
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
+    List<BgmTvPerson> findPersonsBySubjectId(@Nonnull Long subjectId);
+
+    /**
+     * 条目关联的角色.
+     */
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
+    List<BgmTvCharacter> findCharactersBySubjectId(@Nonnull Long subjectId);
+
+    /**
+     * 人物详情，经 {@link run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache} 缓存.
+     */
+    @Nullable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
+    BgmTvPerson getPerson(@Nonnull Long personId);
+
+    /**
+     * 角色详情，经 {@link run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache} 缓存.
+     */
+    @Nullable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
+    BgmTvCharacter getCharacter(@Nonnull Long characterId);
+
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     BgmTvUserInfo getMe();
 
 
 
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     void postUserSubjectCollection(String bgmTvSubId, BgmTVSubCollectionType bgmTVSubCollectionType, Boolean isPrivate);
 
-    // @Retryable
-    // void patchSubjectEpisodeFinish(String bgmTvSubId, boolean isFinish,
-    //                                boolean isPrivate, List<Integer> bgmTvEpSorts);
+    /**
+     * 一次请求批量更新条目下多个剧集的完成状态.
+     *
+     * @param bgmTvEpSorts 正篇剧集的序号
+     */
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
+    void patchSubjectEpisodeFinish(String bgmTvSubId, boolean isFinish,
+                                   boolean isPrivate, Collection<Float> bgmTvEpSorts);
 
-    @Retryable
+    @Retryable(backoff = @Backoff(delay = 500, multiplier = 2, maxDelay = 5000))
     void putUserEpisodeCollection(String bgmTvSubId, float sort, boolean isFinish, boolean isPrivate);
 }
@@ -1,33 +1,43 @@
 package run.ikaros.plugin.bgmtv.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JavaType;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.DefaultUriBuilderFactory;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import run.ikaros.api.core.setting.ConfigMap;
 import run.ikaros.api.custom.ReactiveCustomClient;
 import run.ikaros.api.infra.exception.NotFoundException;
 import run.ikaros.plugin.bgmtv.BgmTvPlugin;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndex;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
 import run.ikaros.plugin.bgmtv.constants.BgmTvApiConst;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
 import run.ikaros.plugin.bgmtv.model.*;
-import run.ikaros.plugin.bgmtv.utils.BeanUtils;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.utils.HttpClientUtils;
 import run.ikaros.plugin.bgmtv.utils.JsonUtils;
 import run.ikaros.plugin.bgmtv.utils.RestTemplateUtils;
 
-import java.net.InetSocketAddress;
-import java.net.Proxy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,12 +49,81 @@ import static run.ikaros.plugin.bgmtv.model.BgmTVSubCollectionType.DOING;
 @Component
 public class BgmTvRepositoryImpl
     implements BgmTvRepository, InitializingBean {
+    static final JavaType SUBJECT_PAGING_TYPE =
+        JsonUtils.constructParametricType(BgmTvPagingData.class, BgmTvSubject.class);
+    static final JavaType EPISODE_PAGING_TYPE =
+        JsonUtils.constructParametricType(BgmTvPagingData.class, BgmTvEpisode.class);
+    static final JavaType ERROR_BODY_TYPE =
+        JsonUtils.constructParametricType(Map.class, String.class, Object.class);
+    static final JavaType PERSON_LIST_TYPE =
+        JsonUtils.constructParametricType(List.class, BgmTvPerson.class);
+    static final JavaType CHARACTER_LIST_TYPE =
+        JsonUtils.constructParametricType(List.class, BgmTvCharacter.class);
+    /**
+     * 剧集先按类型再按 sort 排序，与接口单页返回的顺序一致.
+     */
+    static final Comparator<BgmTvEpisode> EPISODE_ORDER = Comparator
+        .comparing(BgmTvEpisode::getType,
+            Comparator.nullsLast(Comparator.comparingInt(BgmTvEpisodeType::getCode)))
+        .thenComparing(BgmTvEpisode::getSort, Comparator.nullsLast(Comparator.naturalOrder()));
+
     private RestTemplate restTemplate;
+    /**
+     * 未加拦截器的原始实例，切换接口地址时从它重新构建，避免拦截器叠加.
+     */
+    private RestTemplate baseRestTemplate;
+    /**
+     * 当前 restTemplate 使用的连接池配置，切换配置时释放旧的连接池.
+     */
+    private HttpClientUtils.Options httpClientOptions = HttpClientUtils.Options.defaults();
+    /**
+     * 接口地址，构建时读取 {@link BgmTvApiConst#base()}.
+     */
+    private volatile String apiBase = BgmTvApiConst.base();
     private final ReactiveCustomClient reactiveCustomClient;
-    private final HttpHeaders headers = new HttpHeaders();
+    private final BgmTvSubjectCache subjectCache;
+    private final BgmTvEpisodeIndexCache episodeIndexCache;
+    private final BgmTvPersonCache personCache;
+    private final BgmTvCoverCache coverCache;
+    private final BgmTvSearchCache searchCache;
+    private final BgmTvArchive archive;
+    private final BgmTvRateLimiter rateLimiter;
+    private final BgmTvRequestCoalescer coalescer;
+    private final BgmTvMetrics metrics;
+    private volatile HttpHeaders headers = new HttpHeaders();
+    /**
+     * 当前令牌对应的用户信息，写收藏前只需确认令牌有效，不必每次请求 /v0/me.
+     */
+    private volatile CachedUserInfo cachedMe;
 
-    public BgmTvRepositoryImpl(ReactiveCustomClient reactiveCustomClient) {
+    /**
+     * @param authorization 获取用户信息时使用的 Authorization 请求头
+     */
+    record CachedUserInfo(String authorization, BgmTvUserInfo userInfo) {
+    }
+
+    public BgmTvRepositoryImpl(ReactiveCustomClient reactiveCustomClient,
+                               BgmTvSubjectCache subjectCache,
+                               BgmTvEpisodeIndexCache episodeIndexCache,
+                               BgmTvPersonCache personCache,
+                               BgmTvCoverCache coverCache,
+                               BgmTvSearchCache searchCache,
+                               BgmTvArchive archive,
+                               BgmTvRateLimiter rateLimiter,
+                               BgmTvRequestCoalescer coalescer,
+                               BgmTvMetrics metrics) {
         this.reactiveCustomClient = reactiveCustomClient;
+        this.subjectCache = subjectCache;
+        this.episodeIndexCache = episodeIndexCache;
+        this.personCache = personCache;
+        this.coverCache = coverCache;
+        this.searchCache = searchCache;
+        this.archive = archive;
+        this.rateLimiter = rateLimiter;
+        this.coalescer = coalescer;
+        this.metrics = metrics;
+        this.baseRestTemplate = RestTemplateUtils.buildRestTemplate(httpClientOptions);
+        this.restTemplate = withRateLimiter(baseRestTemplate);
     }
 
     @Override
@@ -67,57 +146,24 @@ public class BgmTvRepositoryImpl
 //                boolean reachable = assertDomainReachable();
 //                if (!reachable) {
 //                    log.warn("The operation failed because the current domain name is not accessible "
-//                        + "for domain: [{}].", BgmTvApiConst.BASE);
+//                        + "for domain: [{}].", apiBase);
 //                    throw new DomainNotAccessException(
-//                        "Current domain can not access: " + BgmTvApiConst.BASE);
+//                        "Current domain can not access: " + apiBase);
 //                }
             });
     }
 
-    public void initRestTemplate(ConfigMap configMap) {
+    public synchronized void initRestTemplate(ConfigMap configMap) {
         log.debug("init rest template by config map : {}", configMap);
-        if (configMap == null || configMap.getData() == null) {
-            restTemplate = RestTemplateUtils.buildRestTemplate(3000, 3000);
+        HttpClientUtils.Options options = HttpClientUtils.Options.fromConfigMap(configMap);
+        baseRestTemplate = RestTemplateUtils.buildRestTemplate(options);
+        restTemplate = withRateLimiter(baseRestTemplate);
+        HttpClientUtils.release(httpClientOptions);
+        httpClientOptions = options;
+        if (options.proxy() == null) {
             log.info("config rest template by no proxy.");
-            return;
-        }
-        Map<String, String> map = configMap.getData();
-        String enableProxy = String.valueOf(map.get("enableProxy"));
-        if (StringUtils.isBlank(enableProxy) ||
-            !Boolean.parseBoolean(enableProxy)) {
-            restTemplate = RestTemplateUtils.buildRestTemplate(3000, 3000);
-            log.info("config rest template by no proxy.");
-            return;
-        }
-        String proxyType = String.valueOf(map.get("proxyType"));
-        String host = String.valueOf(map.get("host"));
-        String port = String.valueOf(map.get("port"));
-        if (StringUtils.isNotBlank(enableProxy)
-            && Boolean.parseBoolean(enableProxy)
-            && StringUtils.isNotBlank(proxyType)
-            && StringUtils.isNotBlank(host)
-            && StringUtils.isNotBlank(port)
-            && NumberUtils.isDigits(port)) {
-            InetSocketAddress inetSocketAddress =
-                new InetSocketAddress(host, Integer.parseInt(port));
-            switch (proxyType) {
-                case "http" -> {
-                    Proxy proxy = new Proxy(Proxy.Type.HTTP, inetSocketAddress);
-                    restTemplate =
-                        RestTemplateUtils.buildProxyRestTemplate(proxy, 3000, 3000);
-                    log.info("config rest template by [{}://{}:{}]", proxyType, host, port);
-                }
-                case "socks" -> {
-                    Proxy proxy = new Proxy(Proxy.Type.SOCKS, inetSocketAddress);
-                    restTemplate =
-                        RestTemplateUtils.buildProxyRestTemplate(proxy, 3000, 3000);
-                    log.info("config rest template by [{}://{}:{}]", proxyType, host, port);
-                }
-                default -> {
-                    restTemplate = RestTemplateUtils.buildRestTemplate(3000, 3000);
-                    log.info("config rest template by no proxy.");
-                }
-            }
+        } else {
+            log.info("config rest template by proxy [{}]", options.proxy());
         }
     }
 
@@ -126,7 +172,7 @@ public class BgmTvRepositoryImpl
     public boolean assertDomainReachable() {
         try {
             restTemplate
-                .exchange(BgmTvApiConst.BASE, HttpMethod.GET,
+                .exchange("/", HttpMethod.GET,
                     new HttpEntity<>(null, headers), Map.class);
             return true;
         } catch (HttpClientErrorException exception) {
@@ -134,10 +180,36 @@ public class BgmTvRepositoryImpl
         }
     }
 
-    public void setRestTemplate(
+    /**
+     * 改为请求指定的接口地址，例如本地的替身服务.
+     */
+    public synchronized void setApiBase(@Nonnull String apiBase) {
+        Assert.hasText(apiBase, "'apiBase' must has text.");
+        this.apiBase = StringUtils.removeEnd(apiBase.trim(), "/");
+        restTemplate = withRateLimiter(baseRestTemplate);
+    }
+
+    public synchronized void setRestTemplate(
         @Nonnull RestTemplate restTemplate) {
         Assert.notNull(restTemplate, "'restTemplate' must not null.");
-        this.restTemplate = restTemplate;
+        this.baseRestTemplate = restTemplate;
+        this.restTemplate = withRateLimiter(restTemplate);
+    }
+
+    /**
+     * RestTemplateUtils 返回的实例按配置共享，这里复制一份再加上限流和指标拦截器，
+     * 原实例已有的拦截器保留在其 RequestFactory 中. 相对路径拼接在 apiBase 之后，
+     * 编码方式与 RestTemplate 默认的一致.
+     */
+    private RestTemplate withRateLimiter(RestTemplate source) {
+        RestTemplate limited = new RestTemplate(source.getRequestFactory());
+        limited.setMessageConverters(source.getMessageConverters());
+        limited.setErrorHandler(source.getErrorHandler());
+        DefaultUriBuilderFactory uriBuilderFactory = new DefaultUriBuilderFactory(apiBase);
+        uriBuilderFactory.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.URI_COMPONENT);
+        limited.setUriTemplateHandler(uriBuilderFactory);
+        limited.setInterceptors(List.of(rateLimiter.interceptor(), metrics.interceptor()));
+        return limited;
     }
 
     /**
@@ -148,15 +220,19 @@ public class BgmTvRepositoryImpl
     @Override
     public void refreshHttpHeaders(@Nullable String accessToken) {
         log.info("refresh rest template headers...");
-        headers.clear();
-        headers.set(HttpHeaders.USER_AGENT, REST_TEMPLATE_USER_AGENT);
-        headers.set(HttpHeaders.COOKIE, "chii_searchDateLine=0");
-        headers.set(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        if (StringUtils.isNotBlank(accessToken)) {
+        HttpHeaders newHeaders = new HttpHeaders();
+        newHeaders.set(HttpHeaders.USER_AGENT, REST_TEMPLATE_USER_AGENT);
+        newHeaders.set(HttpHeaders.COOKIE, "chii_searchDateLine=0");
+        newHeaders.set(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        newHeaders.setContentType(MediaType.APPLICATION_JSON);
+        // 配置中没有令牌时读到的是字符串 "null"
+        if (StringUtils.isNotBlank(accessToken) && !"null".equals(accessToken)) {
             log.info("update http head access token");
-            headers.set(HttpHeaders.AUTHORIZATION, TOKEN_PREFIX + accessToken);
+            newHeaders.set(HttpHeaders.AUTHORIZATION, TOKEN_PREFIX + accessToken);
         }
+        headers = newHeaders;
+        cachedMe = null;
+        searchCache.clear();
     }
 
 
@@ -166,64 +242,72 @@ public class BgmTvRepositoryImpl
         Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
         // https://api.bgm.tv/v0/subjects/373267
         final String url = BgmTvApiConst.SUBJECTS + "/" + subjectId;
+        if (archive.isEnabled()) {
+            BgmTvSubject archived = archive.getSubject(subjectId);
+            if (archived != null || archive.isOffline()) {
+                return archived;
+            }
+        }
+        BgmTvSubject cached = subjectCache.getIfFresh(subjectId);
+        if (cached != null) {
+            return cached;
+        }
+        return coalescer.getSubject(subjectId,
+            () -> fetchSubject(subjectId, url, subjectCache.getEntry(subjectId)));
+    }
+
+    /**
+     * 缓存已过期时带上条件请求头，304 时直接续期缓存.
+     *
+     * @param staleEntry 已过期的缓存，为空时不带条件请求头
+     */
+    @Nullable
+    private BgmTvSubject fetchSubject(Long subjectId, String url,
+                                      @Nullable BgmTvSubjectCache.Entry staleEntry) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.addAll(headers);
+        if (staleEntry != null) {
+            if (staleEntry.etag() != null) {
+                requestHeaders.setIfNoneMatch(staleEntry.etag());
+            }
+            if (staleEntry.lastModified() != null) {
+                requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, staleEntry.lastModified());
+            }
+        }
         try {
-            String result = restTemplate
+            ResponseEntity<byte[]> responseEntity = restTemplate
                 .exchange(url, HttpMethod.GET,
-                    new HttpEntity<>(null, headers), String.class)
-                .getBody();
-            log.debug("Pull [{}] result is [{}].", url, result);
-            if (StringUtils.isBlank(result)) {
+                    new HttpEntity<>(null, requestHeaders), byte[].class);
+            if (responseEntity.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                BgmTvSubject revalidated = subjectCache.revalidated(subjectId);
+                if (revalidated != null) {
+                    return revalidated;
+                }
+                // 请求期间缓存被淘汰，304 没有响应体，去掉条件请求头重新获取
+                log.debug("Subject [{}] evicted before 304, fetch again.", subjectId);
+                return fetchSubject(subjectId, url, null);
+            }
+            byte[] result = responseEntity.getBody();
+            if (result == null || result.length == 0) {
                 return null;
             }
-            Map map = JsonUtils.json2obj(result, Map.class);
-            Object infobox = map.remove("infobox");
-            log.debug("Pull [{}] result infobox is [{}].", url, infobox);
-
-            BgmTvSubject bgmTvSubject =
-                JsonUtils.json2obj(JsonUtils.obj2Json(map), BgmTvSubject.class);
-
-            if (Objects.nonNull(infobox)) {
-                bgmTvSubject.setInfobox(convertInfoBox(JsonUtils.obj2Json(infobox)));
+            BgmTvSubject bgmTvSubject = JsonUtils.bytes2obj(result, BgmTvSubject.class);
+            if (bgmTvSubject == null) {
+                return null;
             }
+            log.debug("Pull [{}] result bytes [{}].", url, result.length);
+            subjectCache.put(subjectId, bgmTvSubject,
+                responseEntity.getHeaders().getETag(),
+                responseEntity.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
             return bgmTvSubject;
         } catch (HttpClientErrorException exception) {
             if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
                 log.warn("subject not found for subjectId={}", subjectId);
+                subjectCache.invalidate(subjectId);
                 return null;
             }
             throw exception;
-        } catch (JsonProcessingException e) {
-            log.error("convert infobox exception for subjectId={}", subjectId, e);
-            throw new RuntimeException(e);
-        }
-    }
-
-    private String convertInfoBox(String originalStr) throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode = objectMapper.readTree(originalStr);
-
-        StringBuilder result = new StringBuilder();
-        for (JsonNode node : jsonNode) {
-            String key = node.get("key").asText();
-            JsonNode valueNode = node.get("value");
-            String value;
-
-            if (valueNode.isArray()) {
-                StringBuilder valueBuilder = new StringBuilder();
-                for (JsonNode subNode : valueNode) {
-                    if (subNode.has("v")) {
-                        valueBuilder.append(subNode.get("v").asText()).append(" ");
-                    }
-                }
-                value = valueBuilder.toString().trim();
-            } else {
-                value = valueNode.asText();
-            }
-
-            String line = key + ": " + value;
-            result.append(line).append(System.lineSeparator());
         }
-        return result.toString();
     }
 
     @Override
@@ -250,19 +334,18 @@ public class BgmTvRepositoryImpl
 
         HttpEntity<BgmTvSearchRequest> httpEntity = new HttpEntity<>(bgmTvSearchRequest, headers);
 
-        ResponseEntity<BgmTvPagingData> responseEntity =
+        ResponseEntity<byte[]> responseEntity =
             restTemplate.exchange(uriComponentsBuilder.toUriString(), HttpMethod.POST, httpEntity,
-                BgmTvPagingData.class);
-        BgmTvPagingData body = responseEntity.getBody();
+                byte[].class);
+        byte[] body = responseEntity.getBody();
         Assert.notNull(body, "response body");
 
-        BgmTvPagingData<BgmTvSubject> bgmTvPagingData = new BgmTvPagingData<>();
-        BeanUtils.copyProperties(body, bgmTvPagingData, Set.of("data"));
-
-        BgmTvSubject[] bgmTvSubjects =
-            JsonUtils.obj2Arr(body.getData(), new TypeReference<>() {
-            });
-        bgmTvPagingData.setData(List.of(bgmTvSubjects));
+        BgmTvPagingData<BgmTvSubject> bgmTvPagingData =
+            JsonUtils.bytes2obj(body, SUBJECT_PAGING_TYPE);
+        Assert.notNull(bgmTvPagingData, "response body");
+        if (bgmTvPagingData.getData() == null) {
+            bgmTvPagingData.setData(List.of());
+        }
         return bgmTvPagingData;
     }
 
@@ -270,6 +353,10 @@ public class BgmTvRepositoryImpl
     public List<BgmTvSubject> searchSubjectWithOldApi(@Nonnull String keyword,
                                                       @Nullable Integer type) {
         Assert.hasText(keyword, "'keyword' must has text");
+        return searchCache.search(keyword, type, () -> requestOldSearch(keyword, type));
+    }
+
+    private List<BgmTvSubject> requestOldSearch(String keyword, @Nullable Integer type) {
         // https://api.bgm.tv/search/subject/air?type=2&responseGroup=large
         UriComponentsBuilder uriComponentsBuilder =
             UriComponentsBuilder.fromUriString(BgmTvApiConst.OLD_SEARCH_SUBJECT + "/" + keyword)
@@ -284,34 +371,84 @@ public class BgmTvRepositoryImpl
             url = url + "&type=" + type;
         }
 
-        ResponseEntity<Map> responseEntity =
+        ResponseEntity<byte[]> responseEntity =
             restTemplate.exchange(url, HttpMethod.GET,
-                new HttpEntity<>(null, headers), Map.class);
-        Map body = responseEntity.getBody();
+                new HttpEntity<>(null, headers), byte[].class);
+        byte[] bytes = responseEntity.getBody();
+        Assert.notNull(bytes, "'request body' must not null.");
+        BgmTvOldSearchResult body = JsonUtils.bytes2obj(bytes, BgmTvOldSearchResult.class);
         Assert.notNull(body, "'request body' must not null.");
-        if (body.get("code") != null) {
+        if (body.getCode() != null) {
             return List.of();
         }
-        Integer results = (Integer) body.get("results");
-        if (results <= 0) {
+        Integer results = body.getResults();
+        if (results == null || results <= 0 || body.getList() == null) {
             return List.of();
         }
 
-        Object list = body.get("list");
-        BgmTvSubject[] bgmTvSubjects = JsonUtils.obj2Arr(list, new TypeReference<BgmTvSubject[]>() {
-        });
-
-        return List.of(bgmTvSubjects);
+        return body.getList();
     }
 
     @Override
     public byte[] downloadCover(@Nonnull String url) {
+        Path file = downloadCoverFile(url);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Path downloadCoverFile(@Nonnull String url) {
         Assert.hasText(url, "'url' must has text");
-        ResponseEntity<byte[]> responseEntity = restTemplate
-                .exchange(url, HttpMethod.GET,
-                        new HttpEntity<>(null, headers),
-                        byte[].class);
-        return responseEntity.getBody();
+        BgmTvCoverCache.Entry cached = coverCache.get(url);
+        if (cached != null && coverCache.isFresh(cached)) {
+            return cached.file();
+        }
+        if (archive.isOffline()) {
+            return cached == null ? null : cached.file();
+        }
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.addAll(headers);
+        applyConditionalHeaders(requestHeaders, cached);
+        try {
+            // 响应体直接写入缓存文件，不在内存中聚合
+            return restTemplate.execute(url, HttpMethod.GET,
+                request -> request.getHeaders().addAll(requestHeaders),
+                response -> {
+                    if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached != null) {
+                        return coverCache.revalidated(url, cached).file();
+                    }
+                    return coverCache.store(url, response.getBody(), response.getHeaders())
+                        .file();
+                });
+        } catch (HttpClientErrorException exception) {
+            if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
+                log.warn("cover not found for url={}", url);
+                return null;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * 缓存已过期时带上条件请求头.
+     */
+    static void applyConditionalHeaders(HttpHeaders requestHeaders,
+                                        @Nullable BgmTvCoverCache.Entry cached) {
+        if (cached == null) {
+            return;
+        }
+        if (cached.etag() != null) {
+            requestHeaders.setIfNoneMatch(cached.etag());
+        }
+        if (cached.lastModified() != null) {
+            requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+        }
     }
 
     @Override
@@ -319,7 +456,115 @@ public class BgmTvRepositoryImpl
                                                       @Nullable BgmTvEpisodeType episodeType,
                                                       @Nullable Integer offset,
                                                       @Nullable Integer limit) {
+        List<BgmTvEpisode> archived = findArchivedEpisodes(archive, subjectId, episodeType);
+        if (archived != null) {
+            return slice(archived, offset, limit);
+        }
+        BgmTvPagingData<BgmTvEpisode> page =
+            findEpisodePage(subjectId, episodeType, offset, limit);
+        return page == null || page.getData() == null ? List.of() : page.getData();
+    }
+
+    @Override
+    public List<BgmTvEpisode> findAllEpisodesBySubjectId(@Nonnull Long subjectId,
+                                                         @Nullable BgmTvEpisodeType episodeType) {
+        List<BgmTvEpisode> archived = findArchivedEpisodes(archive, subjectId, episodeType);
+        if (archived != null) {
+            return archived;
+        }
+        BgmTvPagingData<BgmTvEpisode> firstPage = findEpisodePage(subjectId, episodeType,
+            BgmTvApiConst.DEFAULT_OFFSET, BgmTvApiConst.DEFAULT_LIMIT);
+        if (firstPage == null || firstPage.getData() == null) {
+            return List.of();
+        }
+        List<BgmTvEpisode> episodes = new ArrayList<>(firstPage.getData());
+        List<Integer> remainingOffsets = remainingOffsets(firstPage);
+        if (!remainingOffsets.isEmpty()) {
+            int limit = firstPage.getData().size();
+            Flux.fromIterable(remainingOffsets)
+                .flatMapSequential(offset -> Mono.fromCallable(() ->
+                            findEpisodesBySubjectId(subjectId, episodeType, offset, limit))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                    BgmTvApiConst.EPISODE_PAGE_CONCURRENCY)
+                .doOnNext(episodes::addAll)
+                .blockLast();
+        }
+        episodes.sort(EPISODE_ORDER);
+        log.debug("Pull [{}] episodes for subjectId={} in [{}] pages.",
+            episodes.size(), subjectId, remainingOffsets.size() + 1);
+        return episodes;
+    }
+
+    /**
+     * 从数据存档中获取剧集，按类型过滤并排序.
+     *
+     * @return 未开启存档或存档中没有该条目时返回 null，离线模式下返回空列表
+     */
+    @Nullable
+    static List<BgmTvEpisode> findArchivedEpisodes(BgmTvArchive archive, @Nonnull Long subjectId,
+                                                   @Nullable BgmTvEpisodeType episodeType) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        if (!archive.isEnabled()) {
+            return null;
+        }
+        List<BgmTvEpisode> episodes = archive.findEpisodes(subjectId);
+        if (episodes == null) {
+            return archive.isOffline() ? List.of() : null;
+        }
+        return episodes.stream()
+            .filter(episode -> episodeType == null || episodeType == episode.getType())
+            .sorted(EPISODE_ORDER)
+            .toList();
+    }
+
+    static <T> List<T> slice(List<T> list, @Nullable Integer offset, @Nullable Integer limit) {
+        int from = offset == null || offset < 0 ? BgmTvApiConst.DEFAULT_OFFSET : offset;
+        int size = limit == null || limit < 0 ? BgmTvApiConst.DEFAULT_LIMIT : limit;
+        if (from >= list.size()) {
+            return List.of();
+        }
+        return list.subList(from, (int) Math.min(list.size(), (long) from + size));
+    }
+
+    /**
+     * 根据第一页的 total 和实际返回的条数计算剩余分页的 offset，
+     * 服务端可能会把 limit 限制得比请求的更小.
+     */
+    static List<Integer> remainingOffsets(BgmTvPagingData<?> firstPage) {
+        int pageSize = firstPage.getData() == null ? 0 : firstPage.getData().size();
+        int total = firstPage.getTotal() == null ? 0 : firstPage.getTotal();
+        int offset = firstPage.getOffset() == null ? 0 : firstPage.getOffset();
+        if (pageSize == 0 || offset + pageSize >= total) {
+            return List.of();
+        }
+        List<Integer> offsets = new ArrayList<>((total - offset - 1) / pageSize);
+        for (int next = offset + pageSize; next < total; next += pageSize) {
+            offsets.add(next);
+        }
+        return offsets;
+    }
+
+    @Nullable
+    private BgmTvPagingData<BgmTvEpisode> findEpisodePage(@Nonnull Long subjectId,
+                                                          @Nullable BgmTvEpisodeType episodeType,
+                                                          @Nullable Integer offset,
+                                                          @Nullable Integer limit) {
         Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        String url = episodesUrl(subjectId, episodeType, offset, limit);
+        return coalescer.getEpisodePage(url, () -> {
+            ResponseEntity<byte[]> responseEntity = restTemplate
+                .exchange(url, HttpMethod.GET, new HttpEntity<>(null, headers), byte[].class);
+
+            byte[] bytes = responseEntity.getBody();
+            if (bytes == null || bytes.length == 0) {
+                return null;
+            }
+            return JsonUtils.bytes2obj(bytes, EPISODE_PAGING_TYPE);
+        });
+    }
+
+    static String episodesUrl(@Nonnull Long subjectId, @Nullable BgmTvEpisodeType episodeType,
+                              @Nullable Integer offset, @Nullable Integer limit) {
         if (offset == null) {
             offset = BgmTvApiConst.DEFAULT_OFFSET;
         }
@@ -336,33 +581,97 @@ public class BgmTvRepositoryImpl
         if (Objects.nonNull(episodeType)) {
             uriComponentsBuilder.queryParam("type", episodeType.getCode());
         }
+        return uriComponentsBuilder.toUriString();
+    }
+
+    @Override
+    public List<BgmTvPerson> findPersonsBySubjectId(@Nonnull Long subjectId) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        if (archive.isOffline()) {
+            return List.of();
+        }
+        // https://api.bgm.tv/v0/subjects/373267/persons
+        byte[] body = getForBytes(BgmTvApiConst.SUBJECTS + "/" + subjectId + "/persons");
+        List<BgmTvPerson> persons =
+            body == null ? null : JsonUtils.bytes2obj(body, PERSON_LIST_TYPE);
+        return persons == null ? List.of() : persons;
+    }
 
+    @Override
+    public List<BgmTvCharacter> findCharactersBySubjectId(@Nonnull Long subjectId) {
+        Assert.isTrue(subjectId > 0, "'subjectId' must be positive");
+        if (archive.isOffline()) {
+            return List.of();
+        }
+        // https://api.bgm.tv/v0/subjects/373267/characters
+        byte[] body = getForBytes(BgmTvApiConst.SUBJECTS + "/" + subjectId + "/characters");
+        List<BgmTvCharacter> characters =
+            body == null ? null : JsonUtils.bytes2obj(body, CHARACTER_LIST_TYPE);
+        return characters == null ? List.of() : characters;
+    }
 
-        ResponseEntity<BgmTvPagingData> responseEntity = restTemplate
-            .exchange(uriComponentsBuilder.toUriString(), HttpMethod.GET,
-                new HttpEntity<>(null, headers),
-                BgmTvPagingData.class);
+    @Override
+    public BgmTvPerson getPerson(@Nonnull Long personId) {
+        Assert.isTrue(personId > 0, "'personId' must be positive");
+        // https://api.bgm.tv/v0/persons/1
+        return personCache.getPerson(personId, id -> {
+            byte[] body = getForBytes(BgmTvApiConst.PERSONS + "/" + id);
+            return body == null ? null : JsonUtils.bytes2obj(body, BgmTvPerson.class);
+        });
+    }
 
-        BgmTvPagingData body = responseEntity.getBody();
-        BgmTvEpisode[] bgmTvEpisodes = JsonUtils.obj2Arr(body.getData(), new TypeReference<>() {
+    @Override
+    public BgmTvCharacter getCharacter(@Nonnull Long characterId) {
+        Assert.isTrue(characterId > 0, "'characterId' must be positive");
+        // https://api.bgm.tv/v0/characters/1
+        return personCache.getCharacter(characterId, id -> {
+            byte[] body = getForBytes(BgmTvApiConst.CHARACTERS + "/" + id);
+            return body == null ? null : JsonUtils.bytes2obj(body, BgmTvCharacter.class);
         });
+    }
 
-        return List.of(bgmTvEpisodes);
+    /**
+     * GET 请求的响应体，404 或响应体为空时返回 null.
+     */
+    @Nullable
+    private byte[] getForBytes(String url) {
+        try {
+            ResponseEntity<byte[]> responseEntity = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(null, headers), byte[].class);
+            byte[] body = responseEntity.getBody();
+            if (body == null || body.length == 0) {
+                return null;
+            }
+            return body;
+        } catch (HttpClientErrorException exception) {
+            if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
+                log.warn("Not found for url={}", url);
+                return null;
+            }
+            throw exception;
+        }
     }
 
     @Override
     public BgmTvUserInfo getMe() {
-        List<String> authList = headers.get(HttpHeaders.AUTHORIZATION);
-        if (authList == null || authList.isEmpty()) {
+        String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.isBlank(authorization)) {
             return null;
         }
-        ResponseEntity<BgmTvUserInfo> responseEntity =
-            restTemplate.exchange(BgmTvApiConst.ME, HttpMethod.GET, new HttpEntity<>(null, headers),
-                BgmTvUserInfo.class);
-        if (responseEntity.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+        CachedUserInfo cached = cachedMe;
+        if (cached != null && cached.authorization().equals(authorization)) {
+            return cached.userInfo();
+        }
+        ResponseEntity<BgmTvUserInfo> responseEntity;
+        try {
+            responseEntity = restTemplate.exchange(BgmTvApiConst.ME, HttpMethod.GET,
+                new HttpEntity<>(null, headers), BgmTvUserInfo.class);
+        } catch (HttpClientErrorException.Unauthorized exception) {
             return null;
         }
-        if (responseEntity.getStatusCode() == HttpStatus.OK) {
+        if (responseEntity.getStatusCode() == HttpStatus.OK
+            && responseEntity.getBody() != null) {
+            cachedMe = new CachedUserInfo(authorization, responseEntity.getBody());
             return responseEntity.getBody();
         }
         return null;
@@ -401,6 +710,10 @@ public class BgmTvRepositoryImpl
             log.info("Mark subject[{}] collection is [{}] with private[{}] for bgmtv user[{}}.",
                 subjectId, bgmTVSubCollectionType.name(), collectionIsPrivate, username);
         } catch (HttpClientErrorException exception) {
+            if (exception.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                // 令牌已失效，下次重新获取用户信息
+                cachedMe = null;
+            }
             log.error("Post user subject collection stage fail", exception);
         }
     }
@@ -412,108 +725,183 @@ public class BgmTvRepositoryImpl
         Assert.isTrue(sort > 0, "'sort' must > 0.");
 
         Long subjectId = Long.parseLong(bgmTvSubId);
-        // 先获取条目的所有剧集
-        List<BgmTvEpisode> bgmTvEpisodes =
-            findEpisodesBySubjectId(subjectId, BgmTvEpisodeType.POSITIVE, 0, 100);
-
-        // 根据序号匹配过滤
-        Optional<Integer> epIdOp = bgmTvEpisodes.stream()
-            .filter(bgmTvEpisode -> sort == bgmTvEpisode.getSort().intValue())
-            .map(BgmTvEpisode::getId)
-            .findFirst();
-
-        if (epIdOp.isEmpty()) {
+        // 根据序号从条目的剧集索引中匹配剧集ID，索引未命中时才拉取剧集列表
+        BgmTvEpisodeIndex episodeIndex = episodeIndexCache.get(subjectId);
+        boolean fromCache = episodeIndex != null;
+        if (!fromCache) {
+            episodeIndex = loadEpisodeIndex(subjectId);
+        }
+        int episodeId = episodeIndex.findEpisodeId(sort);
+        if (episodeId == BgmTvEpisodeIndex.NOT_FOUND && fromCache
+            && episodeIndexCache.tryMissRefetch(subjectId)) {
+            // 缓存的索引可能早于新剧集的发布，重新拉取一次
+            episodeId = loadEpisodeIndex(subjectId).findEpisodeId(sort);
+        }
+        if (episodeId == BgmTvEpisodeIndex.NOT_FOUND) {
+            log.debug("Skip put episode collection, not found episode seq[{}] for subject[{}].",
+                sort, subjectId);
             return;
         }
 
-
-        Integer episodeId = epIdOp.get();
         // 更新剧集状态
         try {
+            putEpisodeCollection(episodeId, isFinish);
+            log.info("Mark episode[{}] isFinish[{}] isPrivate[{}] for subject[{}] episode seq[{}].",
+                episodeId, isFinish, isPrivate, subjectId, sort);
+        } catch (HttpClientErrorException exception) {
+            if (!isAuthFailure(exception.getStatusCode())
+                && isSubjectNotCollected(exception.getResponseBodyAsByteArray())) {
+                // 收藏条目，更新状态为在看，只重试一次
+                try {
+                    postUserSubjectCollection(bgmTvSubId, DOING, isPrivate);
+                    putEpisodeCollection(episodeId, isFinish);
+                    log.info("Mark episode[{}] isFinish[{}] for subject[{}] after collecting it.",
+                        episodeId, isFinish, subjectId);
+                    return;
+                } catch (HttpClientErrorException retryException) {
+                    exception = retryException;
+                }
+            }
+            onEpisodeCollectionFailure(subjectId, exception);
+            log.error("Put user episode collection fail, "
+                    + "episode[{}] isFinish[{}] isPrivate[{}] for subject[{}] episode seq[{}].",
+                episodeId, isFinish, isPrivate, subjectId, sort, exception);
+        }
 
-            // https://api.bgm.tv/v0/users/-/collections/-/episodes/{episodeId}
-            final String url =
-                BgmTvApiConst.USER_COLLECTIONS_SUBJECT + "/-/episodes" + '/' + episodeId;
+    }
 
-            Map<String, Object> body = new HashMap<>();
-            // 2: 看过
-            // 0: 未收藏
-            body.put("type", isFinish ? 2 : 0);
+    private void putEpisodeCollection(int episodeId, boolean isFinish) {
+        // https://api.bgm.tv/v0/users/-/collections/-/episodes/{episodeId}
+        final String url =
+            BgmTvApiConst.USER_COLLECTIONS_SUBJECT + "/-/episodes" + '/' + episodeId;
 
-            HttpEntity<String> request = new HttpEntity<>(JsonUtils.obj2Json(body), headers);
+        Map<String, Object> body = new HashMap<>();
+        // 2: 看过
+        // 0: 未收藏
+        body.put("type", isFinish ? 2 : 0);
 
-            restTemplate.exchange(url, HttpMethod.PUT, request, Map.class);
-            log.info("Mark episode[{}] isFinish[{}] isPrivate[{}] for subject[{}] episode seq[{}].",
-                episodeId, isFinish, isPrivate, subjectId, sort);
+        HttpEntity<String> request = new HttpEntity<>(JsonUtils.obj2Json(body), headers);
+        restTemplate.exchange(url, HttpMethod.PUT, request, Map.class);
+    }
+
+    /**
+     * 与响应式实现一致：令牌无效或没有权限时交给调用方处理，401 时丢弃缓存的用户信息；
+     * 剧集不存在说明索引已过期，下次重新拉取剧集列表.
+     */
+    private void onEpisodeCollectionFailure(Long subjectId, HttpClientErrorException exception) {
+        if (isAuthFailure(exception.getStatusCode())) {
+            if (exception.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                cachedMe = null;
+            }
+            throw exception;
+        }
+        if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
+            episodeIndexCache.invalidate(subjectId);
+        }
+    }
+
+    private BgmTvEpisodeIndex loadEpisodeIndex(Long subjectId) {
+        BgmTvEpisodeIndex episodeIndex = BgmTvEpisodeIndex.of(
+            findAllEpisodesBySubjectId(subjectId, BgmTvEpisodeType.POSITIVE));
+        episodeIndexCache.put(subjectId, episodeIndex);
+        return episodeIndex;
+    }
+
+    @Override
+    public void patchSubjectEpisodeFinish(String bgmTvSubId, boolean isFinish,
+                                          boolean isPrivate, Collection<Float> bgmTvEpSorts) {
+        Assert.hasText(bgmTvSubId, "'bgmTvSubId' must has text.");
+
+        if (bgmTvEpSorts == null || bgmTvEpSorts.isEmpty()) {
+            log.warn("Skip patch, 'bgmTvEpSorts' is null nor empty: {}", bgmTvEpSorts);
+            return;
+        }
+        Long subjectId = Long.parseLong(bgmTvSubId);
+
+        // 根据序号从条目的剧集索引中匹配剧集ID
+        BgmTvEpisodeIndex episodeIndex = episodeIndexCache.get(subjectId);
+        if (episodeIndex == null || (!episodeIndex.containsAll(bgmTvEpSorts)
+            && episodeIndexCache.tryMissRefetch(subjectId))) {
+            // 缓存的索引可能早于新剧集的发布，重新拉取一次
+            episodeIndex = loadEpisodeIndex(subjectId);
+        }
+        List<Integer> epIds = episodeIndex.findEpisodeIds(bgmTvEpSorts);
+        if (epIds.isEmpty()) {
+            log.debug("Skip patch episode collection, not found episode seqs{} for subject[{}].",
+                bgmTvEpSorts, subjectId);
+            return;
+        }
+
+        // 更新所有的剧集状态
+        try {
+            patchEpisodeCollections(subjectId, epIds, isFinish);
+            log.info("Mark subject[{}] isFinish=[{}] isPrivate=[{}] for episodes={}.",
+                subjectId, isFinish, isPrivate, epIds);
         } catch (HttpClientErrorException exception) {
-            if (exception.getStatusCode().is4xxClientError()) {
-                Map map = exception.getResponseBodyAs(Map.class);
-                Object description = map.get("description");
-                if (description instanceof String
-                    && "you need to add subject to your collection first".equalsIgnoreCase(
-                    (String) description)) {
-                    // 收藏条目，更新状态为在看
+            if (!isAuthFailure(exception.getStatusCode())
+                && isSubjectNotCollected(exception.getResponseBodyAsByteArray())) {
+                // 收藏条目，更新状态为在看，只重试一次
+                try {
                     postUserSubjectCollection(bgmTvSubId, DOING, isPrivate);
-                    putUserEpisodeCollection(bgmTvSubId, sort, isFinish, isPrivate);
+                    patchEpisodeCollections(subjectId, epIds, isFinish);
+                    log.info("Mark subject[{}] isFinish=[{}] for episodes={} after collecting it.",
+                        subjectId, isFinish, epIds);
+                    return;
+                } catch (HttpClientErrorException retryException) {
+                    exception = retryException;
                 }
-            } else {
-                log.error("Put user episode collection fail, "
-                        + "episode[{}] isFinish[{}] isPrivate[{}] for subject[{}] episode seq[{}].",
-                    episodeId, isFinish, isPrivate, subjectId, sort, exception);
             }
+            onEpisodeCollectionFailure(subjectId, exception);
+            log.error("Patch user subject collection episodes stage fail", exception);
         }
+    }
 
+    private void patchEpisodeCollections(Long subjectId, List<Integer> epIds, boolean isFinish) {
+        // https://api.bgm.tv/v0/users/-/collections/{subjectId}/episodes
+        final String url =
+            BgmTvApiConst.USER_COLLECTIONS_SUBJECT + '/' + subjectId + "/episodes";
+        HttpEntity<String> request =
+            new HttpEntity<>(JsonUtils.obj2Json(episodeCollectionsBody(epIds, isFinish)),
+                headers);
+        restTemplate.exchange(url, HttpMethod.PATCH, request, Void.class);
     }
 
-    // @Override
-    // public void patchSubjectEpisodeFinish(String bgmTvSubId, boolean isFinish,
-    //                                       boolean isPrivate, List<Integer> bgmTvEpSorts) {
-    //     Assert.hasText(bgmTvSubId, "'bgmTvSubId' must has text.");
-    //
-    //     if (bgmTvEpSorts == null || bgmTvEpSorts.isEmpty()) {
-    //         log.warn("Skip patch, 'bgmTvEpSorts' is null nor empty: {}", bgmTvEpSorts);
-    //         return;
-    //     }
-    //     Long subjectId = Long.parseLong(bgmTvSubId);
-    //
-    //     // 先获取条目的所有剧集
-    //     List<BgmTvEpisode> bgmTvEpisodes =
-    //         findEpisodesBySubjectId(subjectId, BgmTvEpisodeType.POSITIVE, 0, 100);
-    //
-    //     // 根据序号匹配过滤
-    //     List<Integer> epIds = bgmTvEpisodes.stream()
-    //         .filter(bgmTvEpisode -> bgmTvEpSorts.contains(bgmTvEpisode.getSort().intValue()))
-    //         .map(BgmTvEpisode::getId)
-    //         .toList();
-    //
-    //     // 收藏条目，更新状态为在看
-    //     postUserSubjectCollection(String.valueOf(subjectId), BgmTVSubCollectionType.DOING, isPrivate);
-    //
-    //     // 更新所有的剧集状态
-    //     try {
-    //
-    //         // https://api.bgm.tv/v0/users/-/collections/{subjectId}/episodes
-    //         final String url =
-    //             BgmTvApiConst.USER_COLLECTIONS_SUBJECT + '/' + subjectId + "/episodes";
-    //
-    //         Map<String, Object> body = new HashMap<>();
-    //         // 2: 看过
-    //         // 0: 未收藏
-    //         body.put("type", isFinish ? 2 : 0);
-    //         body.put("episode_id", epIds);
-    //
-    //         HttpEntity<String> request = new HttpEntity<>(JsonUtils.obj2Json(body), headers);
-    //
-    //         RestTemplate template =
-    //             RestTemplateUtils.buildHttpComponentRestTemplate(null, null);
-    //         template.exchange(url, HttpMethod.PATCH, request, Map.class);
-    //         log.info("Mark subject[{}] isFinish=[{}] for episodes=[{}].",
-    //             subjectId, isFinish, epIds);
-    //     } catch (HttpClientErrorException exception) {
-    //         log.error("Patch user subject collection episodes stage fail", exception);
-    //     }
-    //
-    // }
+    static Map<String, Object> episodeCollectionsBody(List<Integer> epIds, boolean isFinish) {
+        Map<String, Object> body = new HashMap<>();
+        // 2: 看过
+        // 0: 未收藏
+        body.put("type", isFinish ? 2 : 0);
+        body.put("episode_id", epIds);
+        return body;
+    }
+
+    /**
+     * 剧集收藏接口要求条目已经收藏，否则返回 400 及对应描述.
+     */
+    static boolean isSubjectNotCollected(@Nullable byte[] responseBody) {
+        if (responseBody == null || responseBody.length == 0) {
+            return false;
+        }
+        Map<String, Object> map;
+        try {
+            map = JsonUtils.bytes2obj(responseBody, ERROR_BODY_TYPE);
+        } catch (UncheckedIOException e) {
+            // 代理等返回的错误页不是 json
+            return false;
+        }
+        Object description = map == null ? null : map.get("description");
+        return description instanceof String
+            && "you need to add subject to your collection first".equalsIgnoreCase(
+            (String) description);
+    }
+
+    /**
+     * 令牌无效或没有权限，重试和失效缓存都无济于事.
+     */
+    static boolean isAuthFailure(HttpStatusCode statusCode) {
+        return statusCode.isSameCodeAs(HttpStatus.UNAUTHORIZED)
+            || statusCode.isSameCodeAs(HttpStatus.FORBIDDEN);
+    }
 
 
     //@Override
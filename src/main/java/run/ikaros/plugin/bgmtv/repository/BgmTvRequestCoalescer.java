@@ -0,0 +1,81 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvPagingData;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.utils.SingleFlight;
+
+import java.util.function.Supplier;
+
+/**
+ * 合并阻塞和响应式仓库对同一资源的并发请求.
+ *
+ * <p>添加条目时元数据服务、条目同步和收藏监听器常常同时请求同一个条目或剧集列表，
+ * 同一个条目ID或剧集分页请求已在执行时，后来的调用等待并共用这次请求解码后的结果，
+ * 不再各自请求 bgm.tv. 请求结束后不保留结果，缓存仍由各自的缓存负责.</p>
+ */
+@Component
+public class BgmTvRequestCoalescer {
+    private final SingleFlight<Long, BgmTvSubject> subjects = new SingleFlight<>();
+    /**
+     * 以剧集分页的请求地址为键，地址包含条目ID、类型、offset 和 limit.
+     */
+    private final SingleFlight<String, BgmTvPagingData<BgmTvEpisode>> episodePages =
+        new SingleFlight<>();
+
+    @Nullable
+    public BgmTvSubject getSubject(long subjectId, @Nonnull Supplier<BgmTvSubject> loader) {
+        Assert.notNull(loader, "'loader' must not null.");
+        return subjects.execute(subjectId, loader);
+    }
+
+    @Nonnull
+    public Mono<BgmTvSubject> getSubjectAsync(long subjectId,
+                                              @Nonnull Supplier<Mono<BgmTvSubject>> loader) {
+        Assert.notNull(loader, "'loader' must not null.");
+        return subjects.executeMono(subjectId, loader);
+    }
+
+    @Nullable
+    public BgmTvPagingData<BgmTvEpisode> getEpisodePage(
+        @Nonnull String url, @Nonnull Supplier<BgmTvPagingData<BgmTvEpisode>> loader) {
+        Assert.hasText(url, "'url' must has text");
+        Assert.notNull(loader, "'loader' must not null.");
+        return episodePages.execute(url, loader);
+    }
+
+    @Nonnull
+    public Mono<BgmTvPagingData<BgmTvEpisode>> getEpisodePageAsync(
+        @Nonnull String url, @Nonnull Supplier<Mono<BgmTvPagingData<BgmTvEpisode>>> loader) {
+        Assert.hasText(url, "'url' must has text");
+        Assert.notNull(loader, "'loader' must not null.");
+        return episodePages.executeMono(url, loader);
+    }
+
+    /**
+     * 执行中的请求数.
+     */
+    public int inFlight() {
+        return subjects.inFlight() + episodePages.inFlight();
+    }
+
+    /**
+     * 等待并共用执行中请求的调用次数.
+     */
+    public long getCoalescedCount() {
+        return getCoalescedSubjectCount() + getCoalescedEpisodePageCount();
+    }
+
+    public long getCoalescedSubjectCount() {
+        return subjects.getCoalescedCount();
+    }
+
+    public long getCoalescedEpisodePageCount() {
+        return episodePages.getCoalescedCount();
+    }
+}
@@ -0,0 +1,99 @@
+package run.ikaros.plugin.bgmtv.search;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 条目名称分词.
+ *
+ * <p>先做 NFKC 归一化并转小写，全角字母数字和半角片假名会统一成常见形式.
+ * 汉字、假名和谚文连续出现的部分按二元组切分，只有一个字时保留单字；
+ * 其余字母和数字按单词切分，标点和空白作为分隔符.</p>
+ */
+public final class BgmTvSearchTokenizer {
+
+    private BgmTvSearchTokenizer() {
+    }
+
+    @Nonnull
+    public static String normalize(@Nullable String text) {
+        if (text == null) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC)
+            .toLowerCase(Locale.ROOT)
+            .trim();
+    }
+
+    /**
+     * 按出现顺序返回去重后的词.
+     *
+     * @param withUnigrams 是否同时输出汉字、假名的单字，建索引时需要以支持单字查询
+     */
+    @Nonnull
+    public static Set<String> tokenize(@Nullable String text, boolean withUnigrams) {
+        Set<String> tokens = new LinkedHashSet<>();
+        String normalized = normalize(text);
+        int length = normalized.length();
+        int index = 0;
+        while (index < length) {
+            int codePoint = normalized.codePointAt(index);
+            if (isCjk(codePoint)) {
+                int end = index;
+                while (end < length && isCjk(normalized.codePointAt(end))) {
+                    end += Character.charCount(normalized.codePointAt(end));
+                }
+                addCjkTokens(tokens, normalized.substring(index, end), withUnigrams);
+                index = end;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int end = index;
+                while (end < length) {
+                    int next = normalized.codePointAt(end);
+                    if (!Character.isLetterOrDigit(next) || isCjk(next)) {
+                        break;
+                    }
+                    end += Character.charCount(next);
+                }
+                tokens.add(normalized.substring(index, end));
+                index = end;
+            } else {
+                index += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addCjkTokens(Set<String> tokens, String run, boolean withUnigrams) {
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1 || withUnigrams) {
+            for (int codePoint : codePoints) {
+                tokens.add(Character.toString(codePoint));
+            }
+        }
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            tokens.add(new String(codePoints, i, 2));
+        }
+    }
+
+    public static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL
+            // 长音符号ー属于 COMMON
+            || codePoint == 0x30FC;
+    }
+
+    /**
+     * 是否包含汉字、假名或谚文.
+     */
+    public static boolean containsCjk(@Nullable String text) {
+        return text != null && text.codePoints().anyMatch(BgmTvSearchTokenizer::isCjk);
+    }
+}
@@ -0,0 +1,318 @@
+package run.ikaros.plugin.bgmtv.search;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 本地条目搜索索引，弥补 bgm.tv 搜索接口不支持中文日文查询.
+ *
+ * <p>对条目的 name、name_cn 以及 infobox 中的中文名、别名等建立倒排索引，分词见
+ * {@link BgmTvSearchTokenizer}. 从 bgm.tv 拉取到的条目经 {@link BgmTvSubjectCache} 增量加入，
+ * 数据存档导入后在后台加载其中的动画条目. 查询只访问内存中的倒排表，不访问网络.</p>
+ *
+ * <p>至少匹配查询中 {@link #MIN_COVERAGE} 比例的词才会返回，得分为匹配的词所占比例，
+ * 加上名称与查询完全相同、前缀相同或包含查询时的加分，以及名称长度与查询越接近越高的加分.</p>
+ */
+@Slf4j
+@Component
+public class BgmTvSubjectSearchIndex {
+    /**
+     * 动画条目类型，数据存档中只加载动画条目，与 BgmTvMetaService 的搜索范围一致.
+     */
+    public static final int ANIME = 2;
+    public static final int DEFAULT_LIMIT = 20;
+    static final double MIN_COVERAGE = 0.6;
+    /**
+     * 作为别名建索引的 infobox 字段.
+     */
+    private static final Set<String> ALIAS_KEYS =
+        Set.of("中文名", "简体中文名", "别名", "英文名", "日文名", "罗马字");
+
+    private final BgmTvArchive archive;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    /**
+     * 按加入顺序编号的文档，条目名称变化后旧文档置为 null.
+     */
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<Integer, Integer> ordinals = new HashMap<>();
+    private final AtomicBoolean archiveLoading = new AtomicBoolean();
+    private volatile long loadedArchiveGeneration;
+
+    /**
+     * @param subject 只保留搜索结果需要的字段
+     * @param names   归一化后的名称和别名
+     */
+    private record Document(BgmTvSubject subject, List<String> names) {
+    }
+
+    private record Hit(Document document, double score) {
+    }
+
+    public BgmTvSubjectSearchIndex(@Nonnull BgmTvSubjectCache subjectCache,
+                                   @Nonnull BgmTvArchive archive) {
+        Assert.notNull(subjectCache, "'subjectCache' must not null.");
+        Assert.notNull(archive, "'archive' must not null.");
+        this.archive = archive;
+        subjectCache.addPutListener(this::index);
+    }
+
+    /**
+     * 加入或更新条目，名称没有变化时只替换保存的条目.
+     */
+    public void index(@Nullable BgmTvSubject subject) {
+        if (subject == null || subject.getId() == null) {
+            return;
+        }
+        List<String> names = names(subject);
+        if (names.isEmpty()) {
+            return;
+        }
+        Document document = new Document(compact(subject), names);
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinals.get(subject.getId());
+            if (existing != null && documents.get(existing).names().equals(names)) {
+                documents.set(existing, document);
+                return;
+            }
+            if (existing != null) {
+                documents.set(existing, null);
+            }
+            int ordinal = documents.size();
+            documents.add(document);
+            ordinals.put(subject.getId(), ordinal);
+            Set<String> tokens = new LinkedHashSet<>();
+            for (String name : names) {
+                tokens.addAll(BgmTvSearchTokenizer.tokenize(name, true));
+            }
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, key -> new Postings()).add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按得分从高到低返回匹配的条目.
+     *
+     * @param type 条目类型，为空时不限
+     */
+    @Nonnull
+    public List<BgmTvSubject> search(@Nullable String keyword, @Nullable Integer type, int limit) {
+        Assert.isTrue(limit > 0, "'limit' must be positive");
+        loadArchiveIfChanged();
+        String query = BgmTvSearchTokenizer.normalize(keyword);
+        Set<String> tokens = BgmTvSearchTokenizer.tokenize(query, false);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        int required = (int) Math.ceil(tokens.size() * MIN_COVERAGE);
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Map<Integer, int[]> matches = new HashMap<>();
+            for (String token : tokens) {
+                Postings list = postings.get(token);
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size; i++) {
+                    matches.computeIfAbsent(list.ordinals[i], key -> new int[1])[0]++;
+                }
+            }
+            for (Map.Entry<Integer, int[]> match : matches.entrySet()) {
+                int matched = match.getValue()[0];
+                Document document = documents.get(match.getKey());
+                if (matched < required || document == null
+                    || (type != null && !type.equals(document.subject().getType()))) {
+                    continue;
+                }
+                hits.add(new Hit(document,
+                    (double) matched / tokens.size() + nameBonus(document.names(), query)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return hits.stream()
+            .sorted(Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparing(hit -> hit.document().subject().getId()))
+            .limit(limit)
+            .map(hit -> hit.document().subject())
+            .toList();
+    }
+
+    /**
+     * 索引中是否有名称或别名与查询完全相同的条目，用于判断本地结果是否已经满足查询.
+     *
+     * @param type 条目类型，为空时不限
+     */
+    public boolean hasExactMatch(@Nullable String keyword, @Nullable Integer type) {
+        String query = BgmTvSearchTokenizer.normalize(keyword);
+        Set<String> tokens = BgmTvSearchTokenizer.tokenize(query, false);
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            // 名称与查询相同时一定包含查询的第一个词，只需检查这个词的倒排表
+            Postings list = postings.get(tokens.iterator().next());
+            if (list == null) {
+                return false;
+            }
+            for (int i = 0; i < list.size; i++) {
+                Document document = documents.get(list.ordinals[i]);
+                if (document != null && document.names().contains(query)
+                    && (type == null || type.equals(document.subject().getType()))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double nameBonus(List<String> names, String query) {
+        double best = 0;
+        for (String name : names) {
+            double bonus;
+            if (name.equals(query)) {
+                bonus = 1;
+            } else if (name.startsWith(query)) {
+                bonus = 0.5;
+            } else if (name.contains(query)) {
+                bonus = 0.25;
+            } else {
+                bonus = 0;
+            }
+            bonus += 0.2 * Math.min(name.length(), query.length())
+                / Math.max(name.length(), query.length());
+            best = Math.max(best, bonus);
+        }
+        return best;
+    }
+
+    /**
+     * 当前索引的条目数.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 数据存档重新导入后在后台重新加载，加载期间查询使用已有的索引.
+     */
+    private void loadArchiveIfChanged() {
+        long generation = archive.getSubjectsGeneration();
+        if (generation == 0 || generation == loadedArchiveGeneration
+            || !archiveLoading.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.fromCallable(this::loadArchive)
+            .subscribeOn(Schedulers.boundedElastic())
+            .doFinally(signal -> archiveLoading.set(false))
+            .subscribe(count -> log.info("Load [{}] subjects from bgm.tv archive into "
+                    + "search index.", count),
+                e -> log.error("Load bgm.tv archive into search index fail.", e));
+    }
+
+    /**
+     * 加载数据存档中的动画条目.
+     *
+     * @return 加载的条目数
+     */
+    public int loadArchive() {
+        long generation = archive.getSubjectsGeneration();
+        int[] count = new int[1];
+        archive.forEachSubject(subject -> {
+            if (subject.getType() != null && subject.getType() == ANIME) {
+                index(subject);
+                count[0]++;
+            }
+        });
+        loadedArchiveGeneration = generation;
+        return count[0];
+    }
+
+    private static List<String> names(BgmTvSubject subject) {
+        Set<String> names = new LinkedHashSet<>();
+        addName(names, subject.getName());
+        addName(names, subject.getNameCn());
+        if (subject.getInfobox() != null) {
+            for (String line : subject.getInfobox().split("\\R")) {
+                int separator = line.indexOf(": ");
+                if (separator > 0 && ALIAS_KEYS.contains(line.substring(0, separator).trim())) {
+                    addName(names, line.substring(separator + 2));
+                }
+            }
+        }
+        return List.copyOf(names);
+    }
+
+    private static void addName(Set<String> names, @Nullable String name) {
+        String normalized = BgmTvSearchTokenizer.normalize(name);
+        if (StringUtils.isNotBlank(normalized) && !"null".equals(normalized)) {
+            names.add(normalized);
+        }
+    }
+
+    /**
+     * 索引常驻内存，只保留展示搜索结果需要的字段，不保留 infobox、tags 和简介，
+     * 因此本地搜索结果比接口返回的少这些字段，需要时按条目ID重新获取详情.
+     */
+    private static BgmTvSubject compact(BgmTvSubject subject) {
+        BgmTvSubject compact = new BgmTvSubject();
+        compact.setId(subject.getId());
+        compact.setType(subject.getType());
+        compact.setName(subject.getName());
+        compact.setNameCn(subject.getNameCn());
+        compact.setPlatform(subject.getPlatform());
+        compact.setDate(subject.getDate());
+        compact.setNsfw(subject.getNsfw());
+        compact.setImages(subject.getImages());
+        return compact;
+    }
+
+    /**
+     * 递增的文档编号列表.
+     */
+    private static final class Postings {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        private void add(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package run.ikaros.plugin.bgmtv.settings;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchiveMode;
+import run.ikaros.plugin.bgmtv.repository.BgmTvEpisodeCollectionBatcher;
+import run.ikaros.plugin.bgmtv.utils.HttpClientUtils;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 插件配置的不可变快照，由 {@link BgmTvSettingsHolder} 在配置变更时整体替换.
+ *
+ * @param token                          访问令牌，未配置时为空
+ * @param syncCollectionAndEpisodeFinish 是否单向同步收藏和播放进度
+ * @param nsfwPrivate                    NSFW 条目的操作是否私有
+ * @param episodeSyncWindow              播放进度合并推送的窗口
+ * @param httpOptions                    连接池、超时和代理配置
+ * @param archiveMode                    数据存档的使用方式
+ * @param archivePath                    数据存档所在的目录或 zip 文件，未配置时为空
+ */
+public record BgmTvSettings(@Nullable String token,
+                            boolean syncCollectionAndEpisodeFinish,
+                            boolean nsfwPrivate,
+                            @Nonnull Duration episodeSyncWindow,
+                            @Nonnull HttpClientUtils.Options httpOptions,
+                            @Nonnull BgmTvArchiveMode archiveMode,
+                            @Nullable Path archivePath) {
+
+    public static BgmTvSettings defaults() {
+        return new BgmTvSettings(null, false, false,
+            BgmTvEpisodeCollectionBatcher.DEFAULT_WINDOW, HttpClientUtils.Options.defaults(),
+            BgmTvArchiveMode.DISABLED, null);
+    }
+
+    /**
+     * 解析插件配置，缺失或非法的值使用默认值.
+     */
+    public static BgmTvSettings of(@Nullable ConfigMap configMap) {
+        if (configMap == null || configMap.getData() == null) {
+            return defaults();
+        }
+        Map<String, String> data = configMap.getData();
+        String token = data.get("token");
+        if (StringUtils.isBlank(token) || "null".equals(token)) {
+            token = null;
+        }
+        String window = data.get("episodeSyncWindow");
+        return new BgmTvSettings(token,
+            Boolean.parseBoolean(data.get("syncCollectionAndEpisodeFinish")),
+            Boolean.parseBoolean(data.get("nsfwPrivate")),
+            NumberUtils.isDigits(window) ? Duration.ofMillis(NumberUtils.toLong(window))
+                : BgmTvEpisodeCollectionBatcher.DEFAULT_WINDOW,
+            HttpClientUtils.Options.fromConfigMap(configMap),
+            BgmTvArchiveMode.of(data.get("archiveMode")),
+            parsePath(data.get("archivePath")));
+    }
+
+    @Nullable
+    private static Path parsePath(@Nullable String path) {
+        if (StringUtils.isBlank(path) || "null".equals(path)) {
+            return null;
+        }
+        try {
+            return Path.of(path.trim());
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 开启了数据存档并且配置了存档路径.
+     */
+    public boolean isArchiveEnabled() {
+        return archiveMode != BgmTvArchiveMode.DISABLED && archivePath != null;
+    }
+
+    /**
+     * NSFW 条目在开启了私有配置时操作需要私有.
+     */
+    public boolean isPrivate(@Nullable Boolean nsfw) {
+        return nsfwPrivate && Boolean.TRUE.equals(nsfw);
+    }
+
+    @Override
+    public String toString() {
+        // 不输出令牌
+        return "BgmTvSettings[token=" + (token == null ? "null" : "***")
+            + ", syncCollectionAndEpisodeFinish=" + syncCollectionAndEpisodeFinish
+            + ", nsfwPrivate=" + nsfwPrivate
+            + ", episodeSyncWindow=" + episodeSyncWindow
+            + ", httpOptions=" + httpOptions
+            + ", archiveMode=" + archiveMode
+            + ", archivePath=" + archivePath + ']';
+    }
+}
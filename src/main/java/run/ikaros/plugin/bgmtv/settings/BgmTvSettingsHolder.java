@@ -0,0 +1,103 @@
+package run.ikaros.plugin.bgmtv.settings;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.api.custom.ReactiveCustomClient;
+import run.ikaros.api.infra.exception.NotFoundException;
+import run.ikaros.plugin.bgmtv.BgmTvPlugin;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 持有当前的插件配置快照，启动时加载一次，之后只在配置变更事件中替换，
+ * 事件监听器读取配置时不需要再查询数据库.
+ *
+ * @see run.ikaros.plugin.bgmtv.listener.PluginConfigMapUpdateEventListener
+ */
+@Slf4j
+@Component
+public class BgmTvSettingsHolder implements InitializingBean {
+    private final ReactiveCustomClient reactiveCustomClient;
+    private final BgmTvSettings initial = BgmTvSettings.defaults();
+    private final AtomicReference<BgmTvSettings> settings = new AtomicReference<>(initial);
+    private final List<Consumer<BgmTvSettings>> listeners = new CopyOnWriteArrayList<>();
+
+    public BgmTvSettingsHolder(ReactiveCustomClient reactiveCustomClient) {
+        this.reactiveCustomClient = reactiveCustomClient;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        reactiveCustomClient.findOne(ConfigMap.class, BgmTvPlugin.NAME)
+            .onErrorResume(NotFoundException.class, e -> Mono.empty())
+            .map(BgmTvSettings::of)
+            // 加载完成前已经收到配置变更事件时，以事件中的配置为准
+            .subscribe(loaded -> {
+                synchronized (listeners) {
+                    if (settings.compareAndSet(initial, loaded)) {
+                        notifyListeners(loaded);
+                    }
+                }
+            }, e -> log.error("Load plugin config map fail, use default settings.", e));
+    }
+
+    /**
+     * 注册配置监听器，启动时加载到配置以及之后每次配置变更都会调用.
+     * 注册前配置已经加载时，立即以当前配置调用一次.
+     */
+    public void addListener(@Nonnull Consumer<BgmTvSettings> listener) {
+        Assert.notNull(listener, "'listener' must not null.");
+        synchronized (listeners) {
+            listeners.add(listener);
+            BgmTvSettings current = settings.get();
+            if (current != initial) {
+                notifyListener(listener, current);
+            }
+        }
+    }
+
+    private void notifyListeners(BgmTvSettings newSettings) {
+        for (Consumer<BgmTvSettings> listener : listeners) {
+            notifyListener(listener, newSettings);
+        }
+    }
+
+    private static void notifyListener(Consumer<BgmTvSettings> listener,
+                                       BgmTvSettings newSettings) {
+        try {
+            listener.accept(newSettings);
+        } catch (RuntimeException e) {
+            log.error("Notify plugin settings listener fail.", e);
+        }
+    }
+
+    @Nonnull
+    public BgmTvSettings get() {
+        return settings.get();
+    }
+
+    /**
+     * 用新的配置替换当前快照.
+     *
+     * @return 新的快照
+     */
+    @Nonnull
+    public BgmTvSettings update(@Nullable ConfigMap configMap) {
+        BgmTvSettings newSettings = BgmTvSettings.of(configMap);
+        synchronized (listeners) {
+            settings.set(newSettings);
+            log.debug("Update plugin settings: {}", newSettings);
+            notifyListeners(newSettings);
+        }
+        return newSettings;
+    }
+}
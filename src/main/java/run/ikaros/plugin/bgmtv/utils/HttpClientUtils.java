@@ -0,0 +1,191 @@
+package run.ikaros.plugin.bgmtv.utils;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.ProxyProvider;
+import run.ikaros.api.core.setting.ConfigMap;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 构建共享的连接池化 HTTP 客户端.
+ *
+ * <p>RestTemplate 和 WebClient 使用同一个 reactor-netty {@link HttpClient}，
+ * 连接保持长连接并在池中复用，TLS 上优先协商 HTTP/2，避免批量同步时每个请求都重新握手.
+ * 相同配置只会创建一个连接池，使用方切换配置后需要调用 {@link #release(Options)}，
+ * 最后一个使用方释放后连接池被销毁.</p>
+ */
+@Slf4j
+public class HttpClientUtils {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+    public static final int DEFAULT_READ_TIMEOUT = 5000;
+    public static final int DEFAULT_MAX_IDLE_TIME = 30000;
+
+    private static final String POOL_NAME = "bgmtv";
+
+    private static final Map<Options, PooledHttpClient> httpClientMap = new HashMap<>();
+    /**
+     * 连接池名称的序号，每个连接池的指标按名称区分.
+     */
+    private static final AtomicInteger poolSequence = new AtomicInteger();
+
+    private static final class PooledHttpClient {
+        private final HttpClient httpClient;
+        private final ConnectionProvider connectionProvider;
+        private int references;
+
+        private PooledHttpClient(HttpClient httpClient, ConnectionProvider connectionProvider) {
+            this.httpClient = httpClient;
+            this.connectionProvider = connectionProvider;
+        }
+    }
+
+    /**
+     * 连接池与超时配置，时间单位均为毫秒.
+     *
+     * @param proxy 为空时不使用代理
+     */
+    public record Options(int maxConnections,
+                          int connectTimeout,
+                          int readTimeout,
+                          int maxIdleTime,
+                          @Nullable Proxy proxy) {
+
+        public static Options defaults() {
+            return new Options(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT,
+                DEFAULT_READ_TIMEOUT, DEFAULT_MAX_IDLE_TIME, null);
+        }
+
+        public Options withTimeout(@Nullable Integer readTimeout,
+                                   @Nullable Integer connectTimeout) {
+            return new Options(maxConnections,
+                connectTimeout == null ? this.connectTimeout : connectTimeout,
+                readTimeout == null ? this.readTimeout : readTimeout,
+                maxIdleTime, proxy);
+        }
+
+        public Options withProxy(@Nullable Proxy proxy) {
+            return new Options(maxConnections, connectTimeout, readTimeout, maxIdleTime, proxy);
+        }
+
+        /**
+         * 从插件配置中读取连接池、超时与代理设置，缺失或非法的值使用默认值.
+         */
+        public static Options fromConfigMap(@Nullable ConfigMap configMap) {
+            if (configMap == null || configMap.getData() == null) {
+                return defaults();
+            }
+            Map<String, String> map = configMap.getData();
+            return new Options(
+                positiveInt(map.get("maxConnections"), DEFAULT_MAX_CONNECTIONS),
+                positiveInt(map.get("connectTimeout"), DEFAULT_CONNECT_TIMEOUT),
+                positiveInt(map.get("readTimeout"), DEFAULT_READ_TIMEOUT),
+                positiveInt(map.get("maxIdleTime"), DEFAULT_MAX_IDLE_TIME),
+                parseProxy(map));
+        }
+    }
+
+    /**
+     * 获取配置对应的共享客户端并增加一次引用，不再使用时调用 {@link #release(Options)}.
+     */
+    @Nonnull
+    public static synchronized HttpClient getHttpClient(@Nonnull Options options) {
+        AssertUtils.notNull(options, "options");
+        PooledHttpClient pooled = httpClientMap.get(options);
+        if (pooled == null) {
+            pooled = buildHttpClient(options);
+            httpClientMap.put(options, pooled);
+        }
+        pooled.references++;
+        return pooled.httpClient;
+    }
+
+    /**
+     * 释放一次 {@link #getHttpClient(Options)} 获取的引用，没有引用后销毁连接池.
+     *
+     * <p>销毁时只关闭空闲连接，使用中的连接在请求结束归还时关闭，不会中断进行中的请求.</p>
+     */
+    public static synchronized void release(@Nullable Options options) {
+        if (options == null) {
+            return;
+        }
+        PooledHttpClient pooled = httpClientMap.get(options);
+        if (pooled == null || --pooled.references > 0) {
+            return;
+        }
+        httpClientMap.remove(options);
+        pooled.connectionProvider.disposeLater()
+            .subscribe(null, e -> log.warn("Dispose connection pool fail: {}", options, e));
+        log.debug("Release a pooled http client: {}", options);
+    }
+
+    private static PooledHttpClient buildHttpClient(Options options) {
+        ConnectionProvider connectionProvider = ConnectionProvider
+            .builder(POOL_NAME + "-" + poolSequence.incrementAndGet())
+            .maxConnections(options.maxConnections())
+            .maxIdleTime(Duration.ofMillis(options.maxIdleTime()))
+            .evictInBackground(Duration.ofMillis(Math.max(options.maxIdleTime() / 2, 1000)))
+            .pendingAcquireTimeout(Duration.ofMillis(
+                (long) options.connectTimeout() + options.readTimeout()))
+            .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+            .keepAlive(true)
+            .compress(true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, options.connectTimeout())
+            .responseTimeout(Duration.ofMillis(options.readTimeout()));
+        Proxy proxy = options.proxy();
+        if (proxy != null && proxy.address() instanceof InetSocketAddress address) {
+            ProxyProvider.Proxy type = proxy.type() == Proxy.Type.SOCKS
+                ? ProxyProvider.Proxy.SOCKS5 : ProxyProvider.Proxy.HTTP;
+            httpClient = httpClient.proxy(spec -> spec.type(type)
+                .host(address.getHostString())
+                .port(address.getPort()));
+        }
+        log.debug("Build a pooled http client: {}", options);
+        return new PooledHttpClient(httpClient, connectionProvider);
+    }
+
+    @Nullable
+    private static Proxy parseProxy(Map<String, String> map) {
+        String enableProxy = String.valueOf(map.get("enableProxy"));
+        if (!Boolean.parseBoolean(enableProxy)) {
+            return null;
+        }
+        String proxyType = String.valueOf(map.get("proxyType"));
+        String host = String.valueOf(map.get("host"));
+        String port = String.valueOf(map.get("port"));
+        if (StringUtils.isBlank(host) || !NumberUtils.isDigits(port)) {
+            return null;
+        }
+        InetSocketAddress inetSocketAddress =
+            new InetSocketAddress(host, Integer.parseInt(port));
+        return switch (proxyType) {
+            case "http" -> new Proxy(Proxy.Type.HTTP, inetSocketAddress);
+            case "socks" -> new Proxy(Proxy.Type.SOCKS, inetSocketAddress);
+            default -> null;
+        };
+    }
+
+    private static int positiveInt(@Nullable String value, int defaultValue) {
+        if (!NumberUtils.isDigits(value)) {
+            return defaultValue;
+        }
+        int number = NumberUtils.toInt(value, defaultValue);
+        return number > 0 ? number : defaultValue;
+    }
+}
@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -64,6 +65,57 @@ public class JsonUtils {
         return null;
     }
 
+    /**
+     * 直接从响应字节解析对象，不经过中间字符串
+     *
+     * @param bytes UTF-8编码的json
+     * @param clazz 对象字节码
+     * @param <T>   对象类型
+     * @return 对象实例
+     * @throws UncheckedIOException json格式不正确时抛出，不当作空结果处理
+     */
+    public static <T> T bytes2obj(byte[] bytes, Class<T> clazz) {
+        AssertUtils.notNull(clazz, "'clazz' must not be null");
+        AssertUtils.notNull(bytes, "'bytes' must not be null");
+        try {
+            return objectMapper.readValue(bytes, clazz);
+        } catch (IOException e) {
+            throw new UncheckedIOException("convert json bytes to obj fail.", e);
+        }
+    }
+
+    /**
+     * 按泛型类型直接从响应字节解析对象，例如 BgmTvPagingData&lt;BgmTvEpisode&gt;
+     *
+     * @param bytes    UTF-8编码的json
+     * @param javaType 目标类型，见 {@link #constructParametricType(Class, Class[])}
+     * @param <T>      对象类型
+     * @return 对象实例
+     * @throws UncheckedIOException json格式不正确时抛出
+     */
+    public static <T> T bytes2obj(byte[] bytes, JavaType javaType) {
+        AssertUtils.notNull(javaType, "'javaType' must not be null");
+        AssertUtils.notNull(bytes, "'bytes' must not be null");
+        try {
+            return objectMapper.readValue(bytes, javaType);
+        } catch (IOException e) {
+            throw new UncheckedIOException("convert json bytes to obj fail.", e);
+        }
+    }
+
+    /**
+     * 构造泛型类型，结果可以缓存为常量重复使用
+     *
+     * @param parametrized 泛型类，例如 BgmTvPagingData.class
+     * @param parameters   类型参数，例如 BgmTvEpisode.class
+     * @return 泛型类型
+     */
+    public static JavaType constructParametricType(Class<?> parametrized,
+                                                   Class<?>... parameters) {
+        AssertUtils.notNull(parametrized, "'parametrized' must not be null");
+        return objectMapper.getTypeFactory().constructParametricType(parametrized, parameters);
+    }
+
     /**
      * 转换JSON为对象数组
      *
@@ -90,7 +142,8 @@ public class JsonUtils {
     }
 
     /**
-     * 对象转指定的类型数组
+     * 对象转指定的类型数组，会先序列化再重新解析，
+     * 解析响应时应直接使用 {@link #bytes2obj(byte[], JavaType)}
      *
      * @param obj           待转换的对象
      * @param typeReference 对象类型引用, 如果指定User.class 则传入 User[] 即可
@@ -0,0 +1,130 @@
+package run.ikaros.plugin.bgmtv.utils;
+
+import jakarta.annotation.Nonnull;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按键串行执行响应式任务：同一个键的任务按提交顺序依次执行，前一个任务的 Mono 结束后才订阅下一个，
+ * 不同键之间互不影响，可以并行.
+ *
+ * <p>每个键排队中和执行中的任务数有上限，超过时拒绝提交，避免某个键堆积过多任务.</p>
+ *
+ * @param <K> 键类型，需要正确实现 equals 和 hashCode
+ */
+@Slf4j
+public class KeyedSerialExecutor<K> {
+    private final String name;
+    private final int maxPendingPerKey;
+    private final Map<K, Lane> lanes = new ConcurrentHashMap<>();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * 一个键的任务队列，只在 {@link ConcurrentHashMap#compute} 中访问.
+     */
+    private static final class Lane {
+        private final Queue<Supplier<? extends Mono<?>>> queue = new ArrayDeque<>();
+        private boolean running;
+
+        private int size() {
+            return queue.size() + (running ? 1 : 0);
+        }
+    }
+
+    public KeyedSerialExecutor(@Nonnull String name, int maxPendingPerKey) {
+        AssertUtils.notBlank(name, "name");
+        AssertUtils.isTrue(maxPendingPerKey > 0, "maxPendingPerKey");
+        this.name = name;
+        this.maxPendingPerKey = maxPendingPerKey;
+    }
+
+    /**
+     * 提交任务，键当前空闲时立即在调用线程上订阅.
+     *
+     * @param task 延迟创建的任务，出错只会记录日志，不影响同键的后续任务
+     * @return 该键的任务数已达上限时返回 false，任务不会执行
+     */
+    public boolean submit(@Nonnull K key, @Nonnull Supplier<? extends Mono<?>> task) {
+        AssertUtils.notNull(key, "key");
+        AssertUtils.notNull(task, "task");
+        boolean[] accepted = new boolean[1];
+        boolean[] start = new boolean[1];
+        lanes.compute(key, (k, lane) -> {
+            if (lane == null) {
+                lane = new Lane();
+            }
+            if (lane.size() >= maxPendingPerKey) {
+                return lane;
+            }
+            accepted[0] = true;
+            lane.queue.add(task);
+            if (!lane.running) {
+                lane.running = true;
+                start[0] = true;
+            }
+            return lane;
+        });
+        if (!accepted[0]) {
+            rejectedCount.increment();
+            log.warn("[{}] reject task for key[{}], pending tasks reach the limit [{}].",
+                name, key, maxPendingPerKey);
+            return false;
+        }
+        if (start[0]) {
+            runNext(key);
+        }
+        return true;
+    }
+
+    private void runNext(K key) {
+        AtomicReference<Supplier<? extends Mono<?>>> next = new AtomicReference<>();
+        lanes.compute(key, (k, lane) -> {
+            if (lane == null) {
+                return null;
+            }
+            next.set(lane.queue.poll());
+            if (next.get() == null) {
+                // 队列已空，移除该键
+                return null;
+            }
+            return lane;
+        });
+        if (next.get() == null) {
+            return;
+        }
+        Mono.defer(next.get())
+            .doFinally(signal -> runNext(key))
+            .subscribe(null, e -> log.error("[{}] task fail for key[{}].", name, key, e));
+    }
+
+    /**
+     * 键当前排队中和执行中的任务数.
+     */
+    public int pendingSize(@Nonnull K key) {
+        int[] size = new int[1];
+        lanes.computeIfPresent(key, (k, lane) -> {
+            size[0] = lane.size();
+            return lane;
+        });
+        return size[0];
+    }
+
+    /**
+     * 有任务在执行的键的数量.
+     */
+    public int activeKeys() {
+        return lanes.size();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
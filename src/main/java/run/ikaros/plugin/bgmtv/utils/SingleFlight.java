@@ -0,0 +1,118 @@
+package run.ikaros.plugin.bgmtv.utils;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个键的并发调用：键已有调用在执行时，后来的调用不再执行，等待并共用其结果.
+ *
+ * <p>调用结束后立即移除，结果和异常都不会保留，需要缓存结果时由调用方在加载时写入缓存.
+ * 阻塞调用和响应式调用共用同一组执行中的调用，可以互相合并.</p>
+ *
+ * @param <K> 键类型，需要正确实现 equals 和 hashCode
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * 键没有执行中的调用时在当前线程执行，否则阻塞等待执行中的调用结束.
+     *
+     * @param loader 抛出的运行时异常会原样抛给所有等待的调用方
+     */
+    @Nullable
+    public V execute(@Nonnull K key, @Nonnull Supplier<V> loader) {
+        AssertUtils.notNull(key, "key");
+        AssertUtils.notNull(loader, "loader");
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, call);
+        if (existing != null) {
+            coalescedCount.increment();
+            return join(existing);
+        }
+        try {
+            V value = loader.get();
+            calls.remove(key, call);
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            calls.remove(key, call);
+            call.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 订阅时键没有执行中的调用才订阅 loader 返回的 Mono.
+     *
+     * <p>执行中的调用由所有调用方共用，单个调用方取消订阅不会取消它，结束后结果仍会交给其他调用方.
+     * Mono 为空时所有调用方都得到空.</p>
+     */
+    @Nonnull
+    public Mono<V> executeMono(@Nonnull K key, @Nonnull Supplier<? extends Mono<V>> loader) {
+        AssertUtils.notNull(key, "key");
+        AssertUtils.notNull(loader, "loader");
+        return Mono.defer(() -> {
+            CompletableFuture<V> call = new CompletableFuture<>();
+            CompletableFuture<V> existing = calls.putIfAbsent(key, call);
+            if (existing != null) {
+                coalescedCount.increment();
+                return Mono.fromFuture(existing, true);
+            }
+            Mono<V> source;
+            try {
+                source = loader.get();
+            } catch (RuntimeException | Error e) {
+                calls.remove(key, call);
+                call.completeExceptionally(e);
+                throw e;
+            }
+            source.toFuture().whenComplete((value, e) -> {
+                calls.remove(key, call);
+                if (e != null) {
+                    call.completeExceptionally(e);
+                } else {
+                    call.complete(value);
+                }
+            });
+            return Mono.fromFuture(call, true);
+        });
+    }
+
+    private static <V> V join(CompletableFuture<V> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行中的调用数.
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+    /**
+     * 被合并到执行中调用的次数.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+}
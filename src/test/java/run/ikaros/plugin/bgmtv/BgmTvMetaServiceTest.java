@@ -0,0 +1,77 @@
+package run.ikaros.plugin.bgmtv;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.repository.BgmTvReactiveRepository;
+import run.ikaros.plugin.bgmtv.search.BgmTvSubjectSearchIndex;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvMetaServiceTest {
+
+    private final AtomicInteger remoteSearches = new AtomicInteger();
+    private final BgmTvSubjectSearchIndex searchIndex = new BgmTvSubjectSearchIndex(
+        new BgmTvSubjectCache(), new BgmTvArchive(new BgmTvSettingsHolder(null)));
+
+    /**
+     * 搜索接口对任何关键词都返回条目 1 和 3.
+     */
+    private final BgmTvReactiveRepository repository = (BgmTvReactiveRepository) Proxy
+        .newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {BgmTvReactiveRepository.class},
+            (proxy, method, args) -> {
+                if ("searchSubjectWithOldApi".equals(method.getName())) {
+                    remoteSearches.incrementAndGet();
+                    return Flux.just(subject(1, "Attack on Titan"),
+                        subject(3, "Attack on Titan: Junior High"));
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    private final BgmTvMetaService metaService = new BgmTvMetaService(repository, searchIndex);
+
+    private static BgmTvSubject subject(int id, String name) {
+        BgmTvSubject subject = new BgmTvSubject();
+        subject.setId(id);
+        subject.setType(BgmTvSubjectSearchIndex.ANIME);
+        subject.setName(name);
+        return subject;
+    }
+
+    private List<String> search(String keyword) {
+        return metaService.searchSubjects(keyword)
+            .map(record -> record.subject().getName())
+            .collectList()
+            .block();
+    }
+
+    @Test
+    void mergeWeakLocalMatchesWithRemote() {
+        searchIndex.index(subject(1, "Attack on Titan"));
+        searchIndex.index(subject(2, "Attack on Titan Season 2"));
+
+        // 本地只有部分匹配，仍然请求接口，重复的条目只返回一次
+        assertThat(search("titan")).containsExactly(
+            "Attack on Titan", "Attack on Titan Season 2", "Attack on Titan: Junior High");
+        assertThat(remoteSearches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void skipRemoteWhenLocalSatisfiesQuery() {
+        searchIndex.index(subject(1, "Attack on Titan"));
+        searchIndex.index(subject(2, "進撃の巨人"));
+
+        assertThat(search("attack on titan")).first().isEqualTo("Attack on Titan");
+        assertThat(search("進撃")).containsExactly("進撃の巨人");
+        assertThat(search("海贼王")).isEmpty();
+        assertThat(remoteSearches.get()).isZero();
+    }
+}
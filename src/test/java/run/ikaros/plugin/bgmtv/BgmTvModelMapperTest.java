@@ -0,0 +1,87 @@
+package run.ikaros.plugin.bgmtv;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.api.core.subject.Episode;
+import run.ikaros.api.store.enums.EpisodeGroup;
+import run.ikaros.api.store.enums.SubjectType;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvModelMapperTest {
+
+    @Test
+    void convertAirTime() {
+        assertThat(BgmTvModelMapper.convertAirTime("2009-04-02"))
+            .isEqualTo(LocalDateTime.of(2009, 4, 2, 0, 0));
+        assertThat(BgmTvModelMapper.convertAirTime("1996-02"))
+            .isEqualTo(LocalDateTime.of(1996, 2, 1, 0, 0));
+        assertThat(BgmTvModelMapper.convertAirTime("1996"))
+            .isEqualTo(LocalDateTime.of(1996, 1, 1, 0, 0));
+        // 与原来的格式化器一样，超出当月天数时取当月最后一天
+        assertThat(BgmTvModelMapper.convertAirTime("2021-02-30"))
+            .isEqualTo(LocalDateTime.of(2021, 2, 28, 0, 0));
+        assertThat(BgmTvModelMapper.convertAirTime("2020-02-30"))
+            .isEqualTo(LocalDateTime.of(2020, 2, 29, 0, 0));
+
+        assertThat(BgmTvModelMapper.convertAirTime(null)).isNull();
+        assertThat(BgmTvModelMapper.convertAirTime("")).isNull();
+        assertThat(BgmTvModelMapper.convertAirTime("   ")).isNull();
+        assertThat(BgmTvModelMapper.convertAirTime("0000-00-00")).isNull();
+        assertThat(BgmTvModelMapper.convertAirTime("2009-13-02")).isNull();
+        assertThat(BgmTvModelMapper.convertAirTime("2009/04/02")).isNull();
+        assertThat(BgmTvModelMapper.convertAirTime("unknown")).isNull();
+    }
+
+    @Test
+    void convertType() {
+        assertThat(BgmTvModelMapper.convertType(1, "小说")).isEqualTo(SubjectType.NOVEL);
+        assertThat(BgmTvModelMapper.convertType(1, "漫画")).isEqualTo(SubjectType.COMIC);
+        assertThat(BgmTvModelMapper.convertType(2, "TV")).isEqualTo(SubjectType.ANIME);
+        assertThat(BgmTvModelMapper.convertType(3, null)).isEqualTo(SubjectType.MUSIC);
+        assertThat(BgmTvModelMapper.convertType(4, null)).isEqualTo(SubjectType.GAME);
+        assertThat(BgmTvModelMapper.convertType(6, null)).isEqualTo(SubjectType.REAL);
+        assertThat(BgmTvModelMapper.convertType(5, null)).isEqualTo(SubjectType.OTHER);
+        assertThat(BgmTvModelMapper.convertType(7, null)).isEqualTo(SubjectType.OTHER);
+        assertThat(BgmTvModelMapper.convertType(-1, null)).isEqualTo(SubjectType.OTHER);
+        assertThat(BgmTvModelMapper.convertType(null, "小说")).isEqualTo(SubjectType.OTHER);
+    }
+
+    @Test
+    void convertEpisodeType() {
+        assertThat(BgmTvModelMapper.convertEpisodeType(BgmTvEpisodeType.POSITIVE))
+            .isEqualTo(EpisodeGroup.MAIN);
+        assertThat(BgmTvModelMapper.convertEpisodeType(BgmTvEpisodeType.SPECIAL))
+            .isEqualTo(EpisodeGroup.SPECIAL_PROMOTION);
+        assertThat(BgmTvModelMapper.convertEpisodeType(BgmTvEpisodeType.OP))
+            .isEqualTo(EpisodeGroup.OPENING_SONG);
+        assertThat(BgmTvModelMapper.convertEpisodeType(BgmTvEpisodeType.ED))
+            .isEqualTo(EpisodeGroup.ENDING_SONG);
+        assertThat(BgmTvModelMapper.convertEpisodeType(null)).isEqualTo(EpisodeGroup.OTHER);
+    }
+
+    @Test
+    void convertEpisodes() {
+        BgmTvEpisode first = new BgmTvEpisode()
+            .setName("Track 3").setAirDate("2009-04-22").setType(BgmTvEpisodeType.POSITIVE)
+            .setSort(3D).setDisc("2");
+        BgmTvEpisode second = new BgmTvEpisode()
+            .setName("Track 10").setAirDate("").setType(BgmTvEpisodeType.POSITIVE)
+            .setSort(10D).setDisc("1");
+
+        List<Episode> music = BgmTvModelMapper.convertEpisodes(3, List.of(first, second));
+        assertThat(music).extracting(Episode::getSequence).containsExactly(23F, 110F);
+        assertThat(music.get(0).getAirTime()).isEqualTo(LocalDateTime.of(2009, 4, 22, 0, 0));
+        assertThat(music.get(1).getAirTime()).isNull();
+
+        List<Episode> anime = BgmTvModelMapper.convertEpisodes(2, List.of(first, second));
+        assertThat(anime).extracting(Episode::getSequence).containsExactly(3F, 10F);
+        assertThat(anime).extracting(Episode::getGroup)
+            .containsOnly(EpisodeGroup.MAIN);
+        assertThat(BgmTvModelMapper.convertEpisodes(2, null)).isEmpty();
+    }
+}
@@ -0,0 +1,252 @@
+package run.ikaros.plugin.bgmtv;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.api.core.character.Character;
+import run.ikaros.api.core.person.Person;
+import run.ikaros.api.core.subject.Episode;
+import run.ikaros.api.core.subject.Subject;
+import run.ikaros.api.core.tag.Tag;
+import run.ikaros.api.infra.exception.NotFoundException;
+import run.ikaros.api.store.enums.EpisodeGroup;
+import run.ikaros.api.store.enums.SubjectType;
+import run.ikaros.plugin.bgmtv.model.BgmTvCharacter;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+import run.ikaros.plugin.bgmtv.model.BgmTvImages;
+import run.ikaros.plugin.bgmtv.model.BgmTvPerson;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.model.BgmTvTag;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvSubjectSynchronizerTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger subjectRequests = new AtomicInteger();
+    private final AtomicInteger episodeRequests = new AtomicInteger();
+    private final AtomicInteger personRequests = new AtomicInteger();
+    private final AtomicInteger relationRequests = new AtomicInteger();
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+    private final AtomicInteger maxRequestsInFlight = new AtomicInteger();
+
+    /**
+     * 条目 9 存在并有两集正片，条目 500 请求失败，其余条目都不存在，剧集列表都为空.
+     * 人物 1 有两个关系并且有详情，人物 2 没有详情，角色详情请求失败.
+     */
+    private final BgmTvRepository repository = (BgmTvRepository) Proxy
+        .newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {BgmTvRepository.class},
+            (proxy, method, args) -> {
+                maxRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(),
+                    Math::max);
+                try {
+                    return switch (method.getName()) {
+                        case "getSubject" -> getSubject((Long) args[0]);
+                        case "findAllEpisodesBySubjectId" -> {
+                            episodeRequests.incrementAndGet();
+                            Thread.sleep(50);
+                            yield (Long) args[0] == 9 ? List.of(
+                                new BgmTvEpisode().setId(91).setSort(1D).setName("ep1")
+                                    .setAirDate("2013-04-06").setType(BgmTvEpisodeType.POSITIVE),
+                                new BgmTvEpisode().setId(92).setSort(2D).setName("ep2")
+                                    .setAirDate("2013-04-13").setType(BgmTvEpisodeType.POSITIVE))
+                                : List.of();
+                        }
+                        case "findPersonsBySubjectId" -> {
+                            relationRequests.incrementAndGet();
+                            yield List.of(
+                                new BgmTvPerson().setId(1).setName("p1").setRelation("导演"),
+                                new BgmTvPerson().setId(1).setName("p1").setRelation("脚本"),
+                                new BgmTvPerson().setId(2).setName("p2").setRelation("原作"));
+                        }
+                        case "findCharactersBySubjectId" -> {
+                            relationRequests.incrementAndGet();
+                            yield List.of(new BgmTvCharacter().setId(3).setName("c3"));
+                        }
+                        case "getPerson" -> {
+                            personRequests.incrementAndGet();
+                            yield (Long) args[0] == 1
+                                ? new BgmTvPerson().setId(1).setName("p1").setSummary("summary")
+                                : null;
+                        }
+                        case "getCharacter" -> throw new IllegalStateException("unavailable");
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    };
+                } finally {
+                    requestsInFlight.decrementAndGet();
+                }
+            });
+
+    private BgmTvSubject getSubject(Long id) throws InterruptedException {
+        subjectRequests.incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(50);
+            if (id == 500) {
+                throw new IllegalStateException("bgm.tv unavailable");
+            }
+            if (id == 9) {
+                BgmTvSubject subject = new BgmTvSubject();
+                subject.setId(9);
+                subject.setType(2);
+                subject.setName("進撃の巨人");
+                subject.setNameCn("进击的巨人");
+                subject.setDate("2013-04-06");
+                subject.setNsfw(false);
+                subject.setImages(new BgmTvImages().setLarge("https://lain.bgm.tv/l/9.jpg"));
+                subject.setTags(List.of(new BgmTvTag().setName("TV")));
+                return subject;
+            }
+            return null;
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private final BgmTvSubjectSynchronizer synchronizer =
+        new BgmTvSubjectSynchronizer(repository, null);
+
+    @Test
+    void syncSubjectsReportsFailuresPerItem() {
+        List<String> platformIds = List.of("1", "2", "404", "3", "500", "4", "5", "6");
+
+        List<BgmTvSubjectSynchronizer.SyncResult> results =
+            synchronizer.syncSubjectsWithPlatformIds(platformIds, 3)
+                .collectList()
+                .block();
+
+        assertThat(results).hasSize(platformIds.size());
+        assertThat(results).noneMatch(BgmTvSubjectSynchronizer.SyncResult::isSuccess);
+        assertThat(results.stream()
+            .filter(result -> result.error() instanceof IllegalStateException)
+            .map(BgmTvSubjectSynchronizer.SyncResult::platformId))
+            .containsExactly("500");
+        assertThat(results.stream()
+            .filter(result -> result.error() instanceof NotFoundException))
+            .hasSize(platformIds.size() - 1);
+        assertThat(maxRunning.get()).isBetween(2, 3);
+    }
+
+    @Test
+    void syncSubjectsConvertsSubjectAndEpisodes() {
+        List<BgmTvSubjectSynchronizer.SyncResult> results =
+            synchronizer.syncSubjectsWithPlatformIds(List.of("9")).collectList().block();
+
+        assertThat(results).hasSize(1);
+        BgmTvSubjectSynchronizer.SyncResult result = results.get(0);
+        assertThat(result.isSuccess()).isTrue();
+        Subject subject = result.subject();
+        assertThat(subject.getId()).isNotNull();
+        assertThat(subject.getType()).isEqualTo(SubjectType.ANIME);
+        assertThat(subject.getName()).isEqualTo("進撃の巨人");
+        assertThat(subject.getNameCn()).isEqualTo("进击的巨人");
+        assertThat(subject.getAirTime()).isEqualTo(LocalDateTime.of(2013, 4, 6, 0, 0));
+        assertThat(subject.getCover()).isEqualTo("https://lain.bgm.tv/l/9.jpg");
+        assertThat(result.episodes()).extracting(Episode::getName)
+            .containsExactly("ep1", "ep2");
+        assertThat(result.episodes()).extracting(Episode::getSequence)
+            .containsExactly(1F, 2F);
+        assertThat(result.episodes()).extracting(Episode::getGroup)
+            .containsOnly(EpisodeGroup.MAIN);
+        assertThat(result.tags()).extracting(Tag::getName).containsExactly("TV");
+    }
+
+    @Test
+    void syncSubjectsSkipsDuplicates() {
+        List<BgmTvSubjectSynchronizer.SyncResult> results =
+            synchronizer.syncSubjectsWithPlatformIds(List.of("1", "1", "2"))
+                .collectList()
+                .block();
+
+        assertThat(results)
+            .extracting(BgmTvSubjectSynchronizer.SyncResult::platformId)
+            .containsExactlyInAnyOrder("1", "2");
+    }
+
+    @Test
+    void concurrentFetchesShareOneSubjectRequest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Tag>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> synchronizer.fetchTagsWithPlatformId("7")));
+            }
+            for (Future<List<Tag>> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS)).isEmpty();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(synchronizer.fetchSubjectWithPlatformId("7")).isNull();
+        assertThat(subjectRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void subjectAndEpisodesAreFetchedConcurrently() {
+        assertThat(synchronizer.fetchEpisodesWithPlatformId("7")).isEmpty();
+
+        assertThat(maxRequestsInFlight.get()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void fetchEpisodesOnlyWhenAsked() {
+        assertThat(synchronizer.fetchSubjectWithPlatformId("9")).isNotNull();
+        assertThat(episodeRequests.get()).isZero();
+
+        assertThat(synchronizer.fetchEpisodesWithPlatformId("9")).hasSize(2);
+        assertThat(synchronizer.fetchEpisodesWithPlatformId("9")).hasSize(2);
+        assertThat(episodeRequests.get()).isEqualTo(1);
+        assertThat(subjectRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedFetchIsNotShared() {
+        assertThatThrownBy(() -> synchronizer.fetchTagsWithPlatformId("500"))
+            .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> synchronizer.fetchSubjectWithPlatformId("500"))
+            .isInstanceOf(IllegalStateException.class);
+
+        assertThat(subjectRequests.get()).isEqualTo(2);
+    }
+
+    @Test
+    void fetchPersonsOncePerPersonAndFallBackToRelatedItem() {
+        List<Person> persons = synchronizer.fetchPersonsWithPlatformId("7");
+
+        assertThat(persons).extracting(Person::getName).containsExactly("p1", "p2");
+        assertThat(persons.get(0).getSummary()).isEqualTo("summary");
+        assertThat(personRequests.get()).isEqualTo(2);
+
+        assertThat(synchronizer.fetchCharactersWithPlatformId("7"))
+            .extracting(Character::getName)
+            .containsExactly("c3");
+    }
+
+    @Test
+    void fetchRelationsOnlyWhenAsked() {
+        assertThat(synchronizer.fetchSubjectWithPlatformId("9")).isNotNull();
+        assertThat(synchronizer.fetchEpisodesWithPlatformId("9")).hasSize(2);
+        assertThat(relationRequests.get()).isZero();
+
+        assertThat(synchronizer.fetchPersonsWithPlatformId("9")).hasSize(2);
+        assertThat(synchronizer.fetchPersonsWithPlatformId("9")).hasSize(2);
+        assertThat(relationRequests.get()).isEqualTo(1);
+        assertThat(synchronizer.fetchCharactersWithPlatformId("9")).hasSize(1);
+        assertThat(relationRequests.get()).isEqualTo(2);
+        assertThat(subjectRequests.get()).isEqualTo(1);
+    }
+}
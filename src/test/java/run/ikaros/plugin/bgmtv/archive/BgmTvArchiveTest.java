@@ -0,0 +1,212 @@
+package run.ikaros.plugin.bgmtv.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.api.core.subject.Episode;
+import run.ikaros.api.core.subject.Subject;
+import run.ikaros.api.store.enums.SubjectType;
+import run.ikaros.plugin.bgmtv.BgmTvSubjectSynchronizer;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRepositoryImpl;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRequestCoalescer;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvArchiveTest {
+
+    private static final String SUBJECTS = """
+        {"id":1,"type":2,"name":"進撃の巨人","name_cn":"进击的巨人","platform":1,"nsfw":false,\
+        "infobox":"{{Infobox animanga/TVAnime\\r\\n|中文名= 进击的巨人\\r\\n|别名={\\r\\n\
+        [Attack on Titan]\\r\\n[英文|AoT]\\r\\n}\\r\\n|话数= 25\\r\\n}}",\
+        "tags":[{"name":"TV","count":12}],"date":"2013-04-06"}
+        not json
+        {"id":2,"type":2,"name":"no episodes"}
+        {"id":4,"type":1,"name":"小説","platform":1002}
+        """;
+    private static final String EPISODES = """
+        {"id":12,"subject_id":1,"type":0,"sort":2,"name":"ep2","description":"second"}
+        {"id":10,"subject_id":1,"type":1,"sort":1,"name":"sp1"}
+        {"id":11,"subject_id":1,"type":0,"sort":1,"name":"ep1"}
+        """;
+
+    @TempDir
+    Path dump;
+
+    @TempDir
+    Path directory;
+
+    private final BgmTvSettingsHolder settingsHolder = new BgmTvSettingsHolder(null);
+
+    private void writeDump() throws IOException {
+        Files.writeString(dump.resolve(BgmTvArchive.SUBJECT_FILE), SUBJECTS);
+        Files.writeString(dump.resolve(BgmTvArchive.EPISODE_FILE), EPISODES);
+    }
+
+    private BgmTvArchive ingestedArchive(String mode) throws IOException {
+        writeDump();
+        ConfigMap configMap = new ConfigMap();
+        configMap.setName("PluginBgmTv");
+        configMap.putDataItem("archiveMode", mode);
+        configMap.putDataItem("archivePath", dump.toString());
+        // 在创建存档之前加载配置，注册监听时即触发后台导入
+        settingsHolder.update(configMap);
+        BgmTvArchive archive = new BgmTvArchive(settingsHolder, directory);
+        assertThat(archive.settingsIngest().join())
+            .isEqualTo(new BgmTvArchive.IngestResult(3, 3));
+        return archive;
+    }
+
+    @Test
+    void writerMergesSortedRuns() throws Exception {
+        Path indexFile = directory.resolve("test.idx");
+        Path dataFile = directory.resolve("test.dat");
+        int[] keys = {5, 1, 5, 3, 1, 9, 5};
+        try (BgmTvArchiveTableWriter writer =
+                 new BgmTvArchiveTableWriter(indexFile, dataFile, 3)) {
+            for (int i = 0; i < keys.length; i++) {
+                writer.add(keys[i], (keys[i] + "-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            assertThat(writer.finish()).isEqualTo(keys.length);
+        }
+
+        try (BgmTvArchiveTable table = BgmTvArchiveTable.open(indexFile, dataFile)) {
+            assertThat(table.size()).isEqualTo(keys.length);
+            assertThat(table.getAll(5)).extracting(String::new)
+                .containsExactly("5-0", "5-2", "5-6");
+            assertThat(new String(table.get(1), StandardCharsets.UTF_8)).isEqualTo("1-1");
+            assertThat(table.get(4)).isNull();
+            assertThat(table.contains(9)).isTrue();
+            assertThat(table.getAll(10)).isEmpty();
+        }
+        try (var files = Files.list(directory)) {
+            assertThat(files).hasSize(2);
+        }
+
+        // 关闭时还有查找在进行，查找结束后才关闭数据文件
+        BgmTvArchiveTable table = BgmTvArchiveTable.open(indexFile, dataFile);
+        assertThat(table.retain()).isTrue();
+        table.close();
+        assertThat(new String(table.get(3), StandardCharsets.UTF_8)).isEqualTo("3-3");
+        table.release();
+        assertThat(table.retain()).isFalse();
+        assertThatThrownBy(() -> table.get(3)).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void ingestAndLookup() throws Exception {
+        BgmTvArchive archive = ingestedArchive("preferred");
+
+        BgmTvSubject subject = archive.getSubject(1);
+        assertThat(subject).isNotNull();
+        assertThat(subject.getNameCn()).isEqualTo("进击的巨人");
+        assertThat(subject.getPlatform()).isEqualTo("TV");
+        assertThat(archive.getSubject(4).getPlatform()).isEqualTo("小说");
+        assertThat(subject.getInfobox()).isEqualTo(String.join(System.lineSeparator(),
+            "中文名: 进击的巨人", "别名: Attack on Titan AoT", "话数: 25", ""));
+        assertThat(subject.getTags()).extracting("count").containsExactly("12");
+        assertThat(archive.getSubject(3)).isNull();
+
+        assertThat(archive.findEpisodes(1)).extracting(BgmTvEpisode::getName)
+            .containsExactly("ep2", "sp1", "ep1");
+        assertThat(archive.findEpisodes(1).get(0).getDesc()).isEqualTo("second");
+        assertThat(archive.findEpisodes(2)).isEmpty();
+        assertThat(archive.findEpisodes(3)).isNull();
+        assertThat(archive.isOffline()).isFalse();
+    }
+
+    @Test
+    void ingestOnlyChangedFiles() throws Exception {
+        BgmTvArchive archive = ingestedArchive("preferred");
+
+        assertThat(archive.ingest(dump)).isEqualTo(new BgmTvArchive.IngestResult(-1, -1));
+
+        Files.writeString(dump.resolve(BgmTvArchive.EPISODE_FILE),
+            "{\"id\":20,\"subject_id\":2,\"type\":0,\"sort\":1,\"name\":\"new\"}\n",
+            StandardOpenOption.APPEND);
+        assertThat(archive.ingest(dump)).isEqualTo(new BgmTvArchive.IngestResult(-1, 4));
+        assertThat(archive.findEpisodes(2)).extracting(BgmTvEpisode::getName)
+            .containsExactly("new");
+        archive.destroy();
+
+        // 重新打开上一次导入的索引
+        BgmTvArchive reopened = new BgmTvArchive(settingsHolder, directory);
+        assertThat(reopened.settingsIngest().join())
+            .isEqualTo(new BgmTvArchive.IngestResult(-1, -1));
+        assertThat(reopened.getSubject(2).getName()).isEqualTo("no episodes");
+        assertThat(reopened.findEpisodes(1)).hasSize(3);
+        try (var files = Files.list(directory)) {
+            // 两个表各一代索引和 manifest
+            assertThat(files).hasSize(5);
+        }
+    }
+
+    @Test
+    void repositoryServesFromArchiveInOfflineMode() throws Exception {
+        BgmTvArchive archive = ingestedArchive("OFFLINE");
+        BgmTvRepositoryImpl repository = new BgmTvRepositoryImpl(null,
+            new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(), new BgmTvPersonCache(),
+            new BgmTvCoverCache(directory.resolve("covers"), 1024,
+                BgmTvCoverCache.DEFAULT_TTL, Clock.systemUTC()),
+            new BgmTvSearchCache(), archive, new BgmTvRateLimiter(), new BgmTvRequestCoalescer(),
+            BgmTvMetrics.noop());
+        // 离线模式下不会访问网络
+        repository.refreshHttpHeaders(null);
+
+        assertThat(repository.getSubject(1L).getName()).isEqualTo("進撃の巨人");
+        assertThat(repository.getSubject(404L)).isNull();
+        assertThat(repository.findAllEpisodesBySubjectId(1L, BgmTvEpisodeType.POSITIVE))
+            .extracting(BgmTvEpisode::getName)
+            .containsExactly("ep1", "ep2");
+        assertThat(repository.findEpisodesBySubjectId(1L, null, 1, 1))
+            .extracting(BgmTvEpisode::getName)
+            .containsExactly("ep2");
+        assertThat(repository.findAllEpisodesBySubjectId(404L, null)).isEmpty();
+        assertThat(repository.findPersonsBySubjectId(1L)).isEqualTo(List.of());
+        assertThat(repository.downloadCoverFile("https://lain.bgm.tv/pic/cover/l/1.jpg"))
+            .isNull();
+    }
+
+    @Test
+    void synchronizerConvertsArchivedSubjects() throws Exception {
+        BgmTvArchive archive = ingestedArchive("OFFLINE");
+        BgmTvRepositoryImpl repository = new BgmTvRepositoryImpl(null,
+            new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(), new BgmTvPersonCache(),
+            new BgmTvCoverCache(directory.resolve("covers"), 1024,
+                BgmTvCoverCache.DEFAULT_TTL, Clock.systemUTC()),
+            new BgmTvSearchCache(), archive, new BgmTvRateLimiter(), new BgmTvRequestCoalescer(),
+            BgmTvMetrics.noop());
+        repository.refreshHttpHeaders(null);
+        BgmTvSubjectSynchronizer synchronizer = new BgmTvSubjectSynchronizer(repository, null);
+
+        // 存档中的条目没有封面
+        Subject subject = synchronizer.fetchSubjectWithPlatformId("1");
+        assertThat(subject.getName()).isEqualTo("進撃の巨人");
+        assertThat(subject.getType()).isEqualTo(SubjectType.ANIME);
+        assertThat(subject.getCover()).isNull();
+        assertThat(synchronizer.fetchEpisodesWithPlatformId("1")).extracting(Episode::getName)
+            .containsExactlyInAnyOrder("ep1", "ep2", "sp1");
+        assertThat(synchronizer.fetchSubjectWithPlatformId("4").getType())
+            .isEqualTo(SubjectType.NOVEL);
+    }
+}
@@ -0,0 +1,165 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvCoverCacheTest {
+
+    private static final String URL = "https://lain.bgm.tv/pic/cover/l/c2/0a/2716_4ctvo.jpg";
+
+    @TempDir
+    Path directory;
+
+    private final BgmTvSubjectCacheTest.MutableClock clock =
+        new BgmTvSubjectCacheTest.MutableClock();
+
+    private BgmTvCoverCache cache(long maxBytes) {
+        return new BgmTvCoverCache(directory, maxBytes, Duration.ofDays(7), clock);
+    }
+
+    private static HttpHeaders headers(String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        return headers;
+    }
+
+    @Test
+    void storeAndReloadFromDisk() throws Exception {
+        byte[] image = "fake image".getBytes(StandardCharsets.UTF_8);
+
+        BgmTvCoverCache.Entry entry =
+            cache(1024).store(URL, new ByteArrayInputStream(image), headers("\"v1\""));
+
+        assertThat(Files.readAllBytes(entry.file())).isEqualTo(image);
+        assertThat(entry.etag()).isEqualTo("\"v1\"");
+
+        // 新实例从 refs 目录恢复
+        BgmTvCoverCache reloaded = cache(1024);
+        BgmTvCoverCache.Entry cached = reloaded.get(URL);
+        assertThat(cached).isEqualTo(entry);
+        assertThat(reloaded.isFresh(cached)).isTrue();
+
+        clock.advance(Duration.ofDays(8));
+        assertThat(reloaded.isFresh(cached)).isFalse();
+        assertThat(reloaded.isFresh(reloaded.revalidated(URL, cached))).isTrue();
+    }
+
+    @Test
+    void sameContentIsStoredOnce() throws Exception {
+        BgmTvCoverCache cache = cache(1024);
+        byte[] image = "fake image".getBytes(StandardCharsets.UTF_8);
+
+        Path first = cache.store(URL, new ByteArrayInputStream(image), new HttpHeaders()).file();
+        Path second = cache.store(URL.replace("/l/", "/c/"), new ByteArrayInputStream(image),
+            new HttpHeaders()).file();
+
+        assertThat(second).isEqualTo(first);
+        try (Stream<Path> temp = Files.list(directory.resolve("tmp"))) {
+            assertThat(temp).isEmpty();
+        }
+    }
+
+    @Test
+    void abortWhenExceedsLimit() throws Exception {
+        BgmTvCoverCache cache = cache(4);
+
+        assertThatThrownBy(() -> cache.store(URL,
+            new ByteArrayInputStream(new byte[5]), new HttpHeaders()))
+            .isInstanceOf(DataBufferLimitException.class);
+
+        HttpHeaders declared = new HttpHeaders();
+        declared.setContentLength(5);
+        assertThatThrownBy(() -> cache.store(URL, new ByteArrayInputStream(new byte[0]), declared))
+            .isInstanceOf(DataBufferLimitException.class);
+
+        assertThat(cache.get(URL)).isNull();
+        try (Stream<Path> temp = Files.list(directory.resolve("tmp"))) {
+            assertThat(temp).isEmpty();
+        }
+    }
+
+    @Test
+    void evictOldestWhenOverTotalLimit() throws Exception {
+        BgmTvCoverCache cache =
+            new BgmTvCoverCache(directory, 8, 16, Duration.ofDays(7), clock);
+        String second = URL.replace("/l/", "/c/");
+        String third = URL.replace("/l/", "/m/");
+
+        cache.store(URL, new ByteArrayInputStream(new byte[8]), new HttpHeaders());
+        clock.advance(Duration.ofMinutes(1));
+        cache.store(second, new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}),
+            new HttpHeaders());
+        clock.advance(Duration.ofMinutes(1));
+        cache.store(third, new ByteArrayInputStream(new byte[] {8, 7, 6, 5, 4, 3, 2, 1}),
+            new HttpHeaders());
+
+        // 最早校验的地址被淘汰，图片随之删除
+        assertThat(cache.get(URL)).isNull();
+        assertThat(cache.get(second)).isNotNull();
+        assertThat(cache.get(third)).isNotNull();
+        assertThat(blobCount()).isEqualTo(2);
+        assertThat(new BgmTvCoverCache(directory, 8, 16, Duration.ofDays(7), clock).get(URL))
+            .isNull();
+    }
+
+    @Test
+    void pruneOrphanBlobsAndMalformedRefs() throws Exception {
+        BgmTvCoverCache.Entry entry = cache(1024).store(URL,
+            new ByteArrayInputStream("fake image".getBytes(StandardCharsets.UTF_8)),
+            new HttpHeaders());
+        Path orphan = directory.resolve("blobs").resolve("ab").resolve("ab-orphan");
+        Files.createDirectories(orphan.getParent());
+        Files.write(orphan, new byte[4]);
+        Path malformed = directory.resolve("refs").resolve("malformed.properties");
+        Files.writeString(malformed, "sha256=" + entry.sha256() + "\ncheckedAt=yesterday\n");
+
+        BgmTvCoverCache reloaded = cache(1024);
+        reloaded.prune();
+
+        assertThat(orphan).doesNotExist();
+        assertThat(malformed).doesNotExist();
+        assertThat(reloaded.get(URL)).isEqualTo(entry);
+        assertThat(blobCount()).isEqualTo(1);
+    }
+
+    private long blobCount() throws Exception {
+        try (Stream<Path> blobs = Files.walk(directory.resolve("blobs"))) {
+            return blobs.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void storeDataBuffers() throws Exception {
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        Flux<DataBuffer> body = Flux.just("fake ", "image")
+            .map(chunk -> factory.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+
+        BgmTvCoverCache.Entry entry = cache(1024).store(URL, body, headers("\"v1\"")).block();
+
+        assertThat(entry).isNotNull();
+        assertThat(Files.readString(entry.file())).isEqualTo("fake image");
+        assertThat(entry.sha256()).isEqualTo(
+            BgmTvCoverCache.sha256Hex("fake image".getBytes(StandardCharsets.UTF_8)));
+
+        Flux<DataBuffer> tooLarge = Flux.just("fake ", "image")
+            .map(chunk -> factory.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        assertThatThrownBy(() -> cache(6).store("https://lain.bgm.tv/other.jpg", tooLarge,
+            new HttpHeaders()).block())
+            .isInstanceOf(DataBufferLimitException.class);
+    }
+}
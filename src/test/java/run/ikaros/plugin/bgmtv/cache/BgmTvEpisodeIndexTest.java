@@ -0,0 +1,68 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvEpisodeIndexTest {
+
+    private static BgmTvEpisode episode(int id, Double sort) {
+        return new BgmTvEpisode().setId(id).setSort(sort);
+    }
+
+    @Test
+    void findEpisodeIdWithFractionalSort() {
+        List<BgmTvEpisode> episodes = new ArrayList<>();
+        episodes.add(episode(1013, 13d));
+        episodes.add(episode(1012, 12d));
+        episodes.add(episode(1125, 12.5));
+        episodes.add(episode(9999, null));
+        episodes.add(episode(1001, 1d));
+
+        BgmTvEpisodeIndex index = BgmTvEpisodeIndex.of(episodes);
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.findEpisodeId(1f)).isEqualTo(1001);
+        assertThat(index.findEpisodeId(12f)).isEqualTo(1012);
+        assertThat(index.findEpisodeId(12.5f)).isEqualTo(1125);
+        assertThat(index.findEpisodeId(13f)).isEqualTo(1013);
+        assertThat(index.findEpisodeId(2f)).isEqualTo(BgmTvEpisodeIndex.NOT_FOUND);
+    }
+
+    @Test
+    void keepFirstEpisodeWhenSortDuplicated() {
+        BgmTvEpisodeIndex index = BgmTvEpisodeIndex.of(List.of(
+            episode(2, 1d), episode(1, 1d), episode(3, 0.1)));
+        assertThat(index.findEpisodeId(1f)).isEqualTo(2);
+        assertThat(index.findEpisodeId(0.1f)).isEqualTo(3);
+    }
+
+    @Test
+    void findEpisodeIdsSkipsMissingAndDuplicates() {
+        BgmTvEpisodeIndex index = BgmTvEpisodeIndex.of(List.of(
+            episode(1001, 1d), episode(1002, 2d), episode(1003, 3d)));
+
+        assertThat(index.findEpisodeIds(List.of(3f, 1f, 4f, 1f))).containsExactly(1003, 1001);
+        assertThat(index.containsAll(List.of(1f, 2f))).isTrue();
+        assertThat(index.containsAll(List.of(1f, 4f))).isFalse();
+    }
+
+    @Test
+    void missRefetchOncePerTtl() {
+        BgmTvSubjectCacheTest.MutableClock clock = new BgmTvSubjectCacheTest.MutableClock();
+        BgmTvEpisodeIndexCache cache =
+            new BgmTvEpisodeIndexCache(10, Duration.ofMinutes(30), clock);
+
+        assertThat(cache.tryMissRefetch(1)).isTrue();
+        assertThat(cache.tryMissRefetch(1)).isFalse();
+        assertThat(cache.tryMissRefetch(2)).isTrue();
+
+        clock.advance(Duration.ofMinutes(30));
+        assertThat(cache.tryMissRefetch(1)).isTrue();
+    }
+}
@@ -0,0 +1,132 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.ikaros.plugin.bgmtv.model.BgmTvPerson;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvPersonCacheTest {
+
+    private final BgmTvSubjectCacheTest.MutableClock clock =
+        new BgmTvSubjectCacheTest.MutableClock();
+    private final BgmTvPersonCache cache = new BgmTvPersonCache(2, Duration.ofHours(1), clock);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private BgmTvPerson load(long id) {
+        loads.incrementAndGet();
+        return new BgmTvPerson().setId((int) id).setName("person" + id);
+    }
+
+    @Test
+    void concurrentGetsLoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BgmTvPerson>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.getPerson(1, id -> {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load(id);
+            })));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> cache.getPerson(1, this::load)));
+            }
+            release.countDown();
+            for (Future<BgmTvPerson> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS).getName()).isEqualTo("person1");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.stats()).isEqualTo(new BgmTvPersonCache.Stats(1, 0, 3, 1));
+    }
+
+    @Test
+    void missingAndFailedLoadsAreNotCached() {
+        assertThat(cache.getPerson(1, id -> null)).isNull();
+        assertThatThrownBy(() -> cache.getPerson(1, id -> {
+            throw new IllegalStateException("unavailable");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.getPerson(1, this::load)).isNotNull();
+        assertThat(cache.stats().personSize()).isEqualTo(1);
+    }
+
+    @Test
+    void expireAndEvict() {
+        cache.getPerson(1, this::load);
+        clock.advance(Duration.ofMinutes(59));
+        cache.getPerson(1, this::load);
+        assertThat(loads.get()).isEqualTo(1);
+
+        clock.advance(Duration.ofMinutes(2));
+        cache.getPerson(1, this::load);
+        assertThat(loads.get()).isEqualTo(2);
+
+        cache.getPerson(2, this::load);
+        cache.getPerson(3, this::load);
+        assertThat(cache.stats().personSize()).isEqualTo(2);
+        cache.getPerson(1, this::load);
+        assertThat(loads.get()).isEqualTo(5);
+    }
+
+    @Test
+    void asyncGetsShareOneLoad() {
+        Sinks.One<BgmTvPerson> response = Sinks.one();
+        Mono<BgmTvPerson> first = cache.getPersonAsync(1, id -> {
+            loads.incrementAndGet();
+            return response.asMono();
+        }).cache();
+        first.subscribe();
+        Mono<BgmTvPerson> second = cache.getPersonAsync(1, id -> Mono.fromCallable(() -> load(id)));
+        response.tryEmitValue(new BgmTvPerson().setId(1).setName("person1"));
+
+        assertThat(second.block(Duration.ofSeconds(5)).getName()).isEqualTo("person1");
+        assertThat(first.block(Duration.ofSeconds(5)).getName()).isEqualTo("person1");
+        assertThat(loads.get()).isEqualTo(1);
+
+        assertThat(cache.getPersonAsync(2, id -> Mono.empty()).block()).isNull();
+        assertThat(cache.stats().personSize()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledAsyncGetDoesNotFailOthers() {
+        Sinks.One<BgmTvPerson> response = Sinks.one();
+        Disposable owner = cache.getPersonAsync(1, id -> {
+            loads.incrementAndGet();
+            return response.asMono();
+        }).subscribe();
+        Mono<BgmTvPerson> waiting =
+            cache.getPersonAsync(1, id -> Mono.fromCallable(() -> load(id)));
+
+        // 发起加载的调用方取消，加载继续，其他调用方仍拿到结果
+        owner.dispose();
+        response.tryEmitValue(new BgmTvPerson().setId(1).setName("person1"));
+
+        assertThat(waiting.block(Duration.ofSeconds(5)).getName()).isEqualTo("person1");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.stats().personSize()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,133 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvSearchCacheTest {
+
+    private final BgmTvSubjectCacheTest.MutableClock clock =
+        new BgmTvSubjectCacheTest.MutableClock();
+    private final BgmTvSearchCache cache = new BgmTvSearchCache(2, Duration.ofMinutes(10), clock);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private List<BgmTvSubject> load(String name) {
+        loads.incrementAndGet();
+        BgmTvSubject subject = new BgmTvSubject();
+        subject.setId(loads.get());
+        subject.setName(name);
+        return List.of(subject);
+    }
+
+    @Test
+    void concurrentAsyncSearchesShareOneRequest() {
+        Sinks.One<List<BgmTvSubject>> response = Sinks.one();
+        List<List<BgmTvSubject>> results = new ArrayList<>();
+        // 归一化后是同一个关键词
+        for (String keyword : List.of("Air", "ＡＩＲ", " air ")) {
+            cache.searchAsync(keyword, 2, () -> {
+                loads.incrementAndGet();
+                return response.asMono();
+            }).subscribe(results::add);
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(results).isEmpty();
+
+        response.tryEmitValue(load("AIR"));
+
+        assertThat(results).hasSize(3).allSatisfy(subjects ->
+            assertThat(subjects).extracting(BgmTvSubject::getName).containsExactly("AIR"));
+        assertThat(cache.getCoalescedCount()).isEqualTo(2);
+
+        assertThat(cache.searchAsync("air", 2, () -> Mono.just(load("other"))).block())
+            .extracting(BgmTvSubject::getName).containsExactly("AIR");
+        // 类型不同不共用结果
+        assertThat(cache.searchAsync("air", null, () -> Mono.just(load("other"))).block())
+            .extracting(BgmTvSubject::getName).containsExactly("other");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void failureIsSharedButNotCached() {
+        Sinks.One<List<BgmTvSubject>> response = Sinks.one();
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            cache.searchAsync("air", 2, response::asMono)
+                .subscribe(subjects -> { }, errors::add);
+        }
+        response.tryEmitError(new IllegalStateException("boom"));
+
+        assertThat(errors).hasSize(2).allSatisfy(e ->
+            assertThat(e).isInstanceOf(IllegalStateException.class));
+        assertThat(cache.size()).isZero();
+        assertThat(cache.searchAsync("air", 2, () -> Mono.just(load("AIR"))).block())
+            .hasSize(1);
+
+        assertThatThrownBy(() -> cache.search("clannad", 2, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.search("clannad", 2, () -> load("CLANNAD"))).hasSize(1);
+    }
+
+    @Test
+    void concurrentBlockingSearchesLoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<BgmTvSubject>>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.search("air", 2, () -> {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load("AIR");
+            })));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> cache.search("AIR", 2, () -> load("other"))));
+            }
+            release.countDown();
+            for (Future<List<BgmTvSubject>> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS))
+                    .extracting(BgmTvSubject::getName).containsExactly("AIR");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void expireAndEvict() {
+        cache.search("air", 2, () -> load("AIR"));
+        clock.advance(Duration.ofMinutes(10));
+        assertThat(cache.search("air", 2, () -> load("AIR 2"))).extracting(BgmTvSubject::getName)
+            .containsExactly("AIR 2");
+
+        cache.search("clannad", 2, () -> load("CLANNAD"));
+        cache.search("kanon", 2, () -> load("Kanon"));
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.search("air", 2, () -> load("AIR 3"))).extracting(BgmTvSubject::getName)
+            .containsExactly("AIR 3");
+
+        cache.clear();
+        assertThat(cache.size()).isZero();
+    }
+}
@@ -0,0 +1,83 @@
+package run.ikaros.plugin.bgmtv.cache;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvSubjectCacheTest {
+
+    static class MutableClock extends Clock {
+        private long millis;
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        void advance(Duration duration) {
+            millis += duration.toMillis();
+        }
+    }
+
+    private static BgmTvSubject subject(int id) {
+        BgmTvSubject subject = new BgmTvSubject();
+        subject.setId(id);
+        return subject;
+    }
+
+    @Test
+    void hitUntilExpiredThenRevalidate() {
+        MutableClock clock = new MutableClock();
+        BgmTvSubjectCache cache = new BgmTvSubjectCache(10, Duration.ofMinutes(1), clock);
+
+        assertThat(cache.getIfFresh(1L)).isNull();
+        cache.put(1L, subject(1), "\"etag\"", null);
+        assertThat(cache.getIfFresh(1L)).isNotNull();
+
+        clock.advance(Duration.ofMinutes(2));
+        assertThat(cache.getIfFresh(1L)).isNull();
+        BgmTvSubjectCache.Entry stale = cache.getEntry(1L);
+        assertThat(stale).isNotNull();
+        assertThat(stale.isRevalidatable()).isTrue();
+
+        assertThat(cache.revalidated(1L)).isSameAs(stale.subject());
+        assertThat(cache.getIfFresh(1L)).isSameAs(stale.subject());
+
+        BgmTvSubjectCache.Stats stats = cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(2);
+        assertThat(stats.missCount()).isEqualTo(2);
+        assertThat(stats.revalidatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        BgmTvSubjectCache cache =
+            new BgmTvSubjectCache(2, Duration.ofMinutes(1), new MutableClock());
+        cache.put(1L, subject(1), null, null);
+        cache.put(2L, subject(2), null, null);
+        cache.getIfFresh(1L);
+        cache.put(3L, subject(3), null, null);
+
+        assertThat(cache.getEntry(1L)).isNotNull();
+        assertThat(cache.getEntry(2L)).isNull();
+        assertThat(cache.getEntry(3L)).isNotNull();
+        assertThat(cache.stats().evictionCount()).isEqualTo(1);
+        assertThat(cache.stats().size()).isEqualTo(2);
+    }
+}
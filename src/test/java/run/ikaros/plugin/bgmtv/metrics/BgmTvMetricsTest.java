@@ -0,0 +1,179 @@
+package run.ikaros.plugin.bgmtv.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.util.retry.Retry;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRequestCoalescer;
+import run.ikaros.plugin.bgmtv.search.BgmTvSubjectSearchIndex;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BgmTvMetrics metrics = new BgmTvMetrics(new MicrometerRecorder(registry));
+    private HttpServer server;
+    private String base;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/subjects/12", exchange -> {
+            // 第一次请求失败，重试成功
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(requests.getAndIncrement() == 0 ? 500 : 200,
+                body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/v0/subjects/404", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private double count(String endpoint, String status, String attempt) {
+        return registry.get(BgmTvMetrics.HTTP_REQUESTS)
+            .tag("endpoint", endpoint).tag("status", status).tag("attempt", attempt)
+            .timer().count();
+    }
+
+    @Test
+    void endpointTemplates() {
+        assertThat(BgmTvMetrics.endpoint(URI.create("https://api.bgm.tv/v0/subjects/373267")))
+            .isEqualTo("/v0/subjects/{id}");
+        assertThat(BgmTvMetrics.endpoint(
+            URI.create("https://api.bgm.tv/v0/subjects/373267/persons")))
+            .isEqualTo("/v0/subjects/{id}/persons");
+        assertThat(BgmTvMetrics.endpoint(
+            URI.create("https://api.bgm.tv/v0/episodes?subject_id=1&limit=100")))
+            .isEqualTo("/v0/episodes");
+        assertThat(BgmTvMetrics.endpoint(
+            URI.create("https://api.bgm.tv/v0/users/-/collections/1")))
+            .isEqualTo("/v0/users/-/collections/{id}");
+        assertThat(BgmTvMetrics.endpoint(
+            URI.create("https://api.bgm.tv/search/subject/air?responseGroup=large")))
+            .isEqualTo("/search/subject/{keyword}");
+        assertThat(BgmTvMetrics.endpoint(URI.create("https://lain.bgm.tv/pic/cover/l/1.jpg")))
+            .isEqualTo("/pic/{image}");
+        assertThat(BgmTvMetrics.endpoint(URI.create("https://example.com/anything")))
+            .isEqualTo(BgmTvMetrics.OTHER_ENDPOINT);
+    }
+
+    @Test
+    void webClientRequestsTaggedByStatusAndAttempt() {
+        WebClient webClient = WebClient.builder().filter(metrics.filter()).build();
+
+        String body = webClient.get().uri(base + "/v0/subjects/12")
+            .retrieve()
+            .bodyToMono(String.class)
+            .retryWhen(Retry.max(1))
+            .contextWrite(BgmTvMetrics.ATTEMPTS)
+            .block();
+
+        assertThat(body).isEqualTo("{}");
+        assertThat(count("/v0/subjects/{id}", "500", "1")).isEqualTo(1);
+        assertThat(count("/v0/subjects/{id}", "200", "2")).isEqualTo(1);
+    }
+
+    @Test
+    void restTemplateRequestsTagged() {
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.setInterceptors(List.of(metrics.interceptor()));
+
+        assertThatThrownBy(() -> restTemplate.getForObject(base + "/v0/subjects/404",
+            String.class)).isInstanceOf(HttpClientErrorException.NotFound.class);
+        assertThat(count("/v0/subjects/{id}", "404", "1")).isEqualTo(1);
+    }
+
+    @Test
+    void listenerCountersAndNoop() {
+        BgmTvMetrics.ListenerMetrics listener = metrics.listener("subject_collect");
+        listener.received();
+        listener.received();
+        listener.skipped();
+        listener.failed();
+        assertThat(registry.get(BgmTvMetrics.LISTENER_EVENTS)
+            .tag("listener", "subject_collect").tag("outcome", "received").counter().count())
+            .isEqualTo(2);
+        assertThat(registry.get(BgmTvMetrics.LISTENER_EVENTS)
+            .tag("outcome", "pushed").counter().count()).isZero();
+
+        BgmTvMetrics noop = BgmTvMetrics.noop();
+        assertThat(noop.isEnabled()).isFalse();
+        assertThat(noop.listener("subject_collect"))
+            .isSameAs(BgmTvMetrics.ListenerMetrics.NOOP);
+    }
+
+    @Test
+    void destroyRemovesRegisteredMeters() {
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.setInterceptors(List.of(metrics.interceptor()));
+        assertThatThrownBy(() -> restTemplate.getForObject(base + "/v0/subjects/404",
+            String.class)).isInstanceOf(HttpClientErrorException.NotFound.class);
+        metrics.listener("subject_collect").received();
+        metrics.gauge("bgmtv.test.size", "test", List.of(1), List::size);
+        assertThat(registry.getMeters()).isNotEmpty();
+
+        metrics.destroy();
+
+        assertThat(registry.getMeters()).isEmpty();
+        // 停止后的请求不再注册指标
+        assertThatThrownBy(() -> restTemplate.getForObject(base + "/v0/subjects/404",
+            String.class)).isInstanceOf(HttpClientErrorException.NotFound.class);
+        assertThat(registry.getMeters()).isEmpty();
+    }
+
+    @Test
+    void binderReadsExistingStatistics() {
+        BgmTvSubjectCache subjectCache = new BgmTvSubjectCache();
+        BgmTvSearchCache searchCache = new BgmTvSearchCache();
+        new BgmTvMeterBinder(metrics, subjectCache, new BgmTvEpisodeIndexCache(),
+            new BgmTvPersonCache(), searchCache,
+            new BgmTvSubjectSearchIndex(subjectCache,
+                new BgmTvArchive(new BgmTvSettingsHolder(null))),
+            new BgmTvRequestCoalescer(), new BgmTvRateLimiter());
+
+        searchCache.search("air", 2, List::of);
+        searchCache.search("air", 2, List::of);
+
+        assertThat(registry.get(BgmTvMeterBinder.CACHE_REQUESTS)
+            .tag("cache", "search").tag("result", "miss").functionCounter().count())
+            .isEqualTo(1);
+        assertThat(registry.get(BgmTvMeterBinder.CACHE_REQUESTS)
+            .tag("cache", "search").tag("result", "hit").functionCounter().count())
+            .isEqualTo(1);
+        assertThat(registry.get(BgmTvMeterBinder.CACHE_SIZE).tag("cache", "search")
+            .gauge().value()).isEqualTo(1);
+        assertThat(registry.get("bgmtv.ratelimit.rate").gauge().value())
+            .isEqualTo(BgmTvRateLimiter.DEFAULT_MAX_RATE);
+    }
+}
@@ -0,0 +1,55 @@
+package run.ikaros.plugin.bgmtv.model;
+
+import com.fasterxml.jackson.databind.JavaType;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.nio.charset.StandardCharsets;
+
+class BgmTvPagingDataJsonTest {
+
+    @Test
+    void decodeEpisodePage() {
+        String json = """
+            {
+              "data": [
+                {"id": 1075440, "type": 0, "name": "ep1", "sort": 1, "ep": 1},
+                {"id": 1075441, "type": 0, "name": "ep2", "sort": 2, "ep": 2}
+              ],
+              "total": 2,
+              "limit": 100,
+              "offset": 0
+            }
+            """;
+        JavaType javaType =
+            JsonUtils.constructParametricType(BgmTvPagingData.class, BgmTvEpisode.class);
+
+        BgmTvPagingData<BgmTvEpisode> pagingData =
+            JsonUtils.bytes2obj(json.getBytes(StandardCharsets.UTF_8), javaType);
+
+        Assertions.assertThat(pagingData).isNotNull();
+        Assertions.assertThat(pagingData.getTotal()).isEqualTo(2);
+        Assertions.assertThat(pagingData.getLimit()).isEqualTo(100);
+        Assertions.assertThat(pagingData.getData())
+            .hasSize(2)
+            .allSatisfy(episode -> Assertions.assertThat(episode).isInstanceOf(BgmTvEpisode.class))
+            .extracting(BgmTvEpisode::getId)
+            .containsExactly(1075440, 1075441);
+    }
+
+    @Test
+    void decodeOldSearchResult() {
+        String json = """
+            {"results": 1, "list": [{"id": 2716, "type": 2, "name": "けいおん！"}]}
+            """;
+
+        BgmTvOldSearchResult result = JsonUtils.bytes2obj(
+            json.getBytes(StandardCharsets.UTF_8), BgmTvOldSearchResult.class);
+
+        Assertions.assertThat(result).isNotNull();
+        Assertions.assertThat(result.getCode()).isNull();
+        Assertions.assertThat(result.getList()).singleElement()
+            .extracting(BgmTvSubject::getId).isEqualTo(2716);
+    }
+}
@@ -4,6 +4,8 @@ import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import run.ikaros.plugin.bgmtv.utils.JsonUtils;
 
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class BgmTvSubjectJsonTest {
@@ -65,4 +67,42 @@ public class BgmTvSubjectJsonTest {
         Assertions.assertThat(bgmTvSubject.getType()).isEqualTo(6);
 
     }
+
+    @Test
+    void decodeInfobox() {
+        String json = """
+            {
+              "id": 2716,
+              "name": "テスト",
+              "infobox": [
+                {"key": "中文名", "value": "测试"},
+                {"key": "别名", "value": [{"v": "Test"}, {"k": "罗马字", "v": "Tesuto"}]},
+                {"key": "话数", "value": 12}
+              ],
+              "type": 2
+            }
+            """;
+
+        BgmTvSubject bgmTvSubject = JsonUtils.bytes2obj(
+            json.getBytes(StandardCharsets.UTF_8), BgmTvSubject.class);
+        Assertions.assertThat(bgmTvSubject).isNotNull();
+        Assertions.assertThat(bgmTvSubject.getId()).isEqualTo(2716);
+        Assertions.assertThat(bgmTvSubject.getInfobox()).isEqualTo(
+            "中文名: 测试" + System.lineSeparator()
+                + "别名: Test Tesuto" + System.lineSeparator()
+                + "话数: 12" + System.lineSeparator());
+
+        // 序列化后的 infobox 为字符串，可以原样读回
+        BgmTvSubject roundTrip =
+            JsonUtils.json2obj(JsonUtils.obj2Json(bgmTvSubject), BgmTvSubject.class);
+        Assertions.assertThat(roundTrip.getInfobox()).isEqualTo(bgmTvSubject.getInfobox());
+    }
+
+    @Test
+    void malformedJsonThrows() {
+        // 响应体损坏时不能当作条目不存在
+        Assertions.assertThatThrownBy(() -> JsonUtils.bytes2obj(
+                "{\"id\": 1, \"name\": ".getBytes(StandardCharsets.UTF_8), BgmTvSubject.class))
+            .isInstanceOf(UncheckedIOException.class);
+    }
 }
@@ -0,0 +1,126 @@
+package run.ikaros.plugin.bgmtv.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    void burstThenRate() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(2, 0.5, 2, now::get);
+
+        assertThat(limiter.reserve()).isZero();
+        assertThat(limiter.reserve()).isZero();
+        // 令牌耗尽后按 2 req/s 排队
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        advance(1000);
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void throttledHonorsRetryAfterAndRecovers() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(4, 0.5, 4, now::get);
+
+        limiter.onResponse(HttpStatus.TOO_MANY_REQUESTS, "3");
+
+        assertThat(limiter.getRate()).isEqualTo(2);
+        assertThat(limiter.getThrottledCount()).isEqualTo(1);
+        // 暂停 3 秒，暂停期间不补充令牌
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(3500));
+
+        advance(5000);
+        for (int i = 0; i < 20; i++) {
+            limiter.onResponse(HttpStatus.OK, null);
+        }
+        assertThat(limiter.getRate()).isEqualTo(4);
+    }
+
+    @Test
+    void throttledWithoutRetryAfterBacksOffExponentially() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(4, 0.5, 4, now::get);
+
+        limiter.onResponse(HttpStatus.SERVICE_UNAVAILABLE, null);
+        limiter.onResponse(HttpStatus.SERVICE_UNAVAILABLE, null);
+        limiter.onResponse(HttpStatus.SERVICE_UNAVAILABLE, null);
+        limiter.onResponse(HttpStatus.SERVICE_UNAVAILABLE, null);
+
+        assertThat(limiter.getRate()).isEqualTo(0.5);
+        // 1s, 2s, 4s, 8s 取最大值
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.SECONDS.toNanos(8 + 2));
+    }
+
+    @Test
+    void retryAfterIsNotCapped() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(4, 0.5, 4, now::get);
+
+        limiter.onResponse(HttpStatus.TOO_MANY_REQUESTS, "120");
+
+        // 服务端指定的暂停时间超过本地退避上限时照常等待
+        assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(120_500));
+    }
+
+    @Test
+    void reservedRequestsRecheckPause() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(2, 0.5, 1, now::get);
+
+        assertThat(limiter.reserve()).isZero();
+        long waitNanos = limiter.reserve();
+        assertThat(waitNanos).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+
+        // 等待期间收到 429
+        advance(100);
+        limiter.onResponse(HttpStatus.TOO_MANY_REQUESTS, "3");
+        advance(400);
+
+        // 退还令牌后排在暂停结束之后，按减半后的速率补齐欠下的 0.8 个令牌
+        assertThat(limiter.recheck()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(2600 + 800));
+        advance(3400);
+        assertThat(limiter.recheck()).isZero();
+    }
+
+    @Test
+    void clientErrorsDoNotChangeRate() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(4, 0.5, 4, now::get);
+
+        limiter.onResponse(HttpStatus.NOT_FOUND, null);
+
+        assertThat(limiter.getRate()).isEqualTo(4);
+        assertThat(limiter.getThrottledCount()).isZero();
+    }
+
+    @Test
+    void acquireWaitsWithoutBlocking() {
+        BgmTvRateLimiter limiter = new BgmTvRateLimiter(20, 0.5, 1, System::nanoTime);
+
+        long start = System.nanoTime();
+        limiter.acquire().block();
+        limiter.acquire().block();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start))
+            .isGreaterThanOrEqualTo(Duration.ofMillis(40));
+        assertThat(limiter.getQueueLength()).isZero();
+    }
+
+    @Test
+    void parseRetryAfter() {
+        assertThat(BgmTvRateLimiter.parseRetryAfter("120")).isEqualTo(Duration.ofMinutes(2));
+        assertThat(BgmTvRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"))
+            .isEqualTo(Duration.ZERO);
+        assertThat(BgmTvRateLimiter.parseRetryAfter("soon")).isNull();
+        assertThat(BgmTvRateLimiter.parseRetryAfter(null)).isNull();
+    }
+}
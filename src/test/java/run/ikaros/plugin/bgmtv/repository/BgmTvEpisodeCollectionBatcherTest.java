@@ -0,0 +1,187 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvEpisodeCollectionBatcherTest {
+
+    record Patch(String bgmTvSubId, boolean isFinish, boolean isPrivate, List<Float> sorts) {
+    }
+
+    private final List<Patch> patches = new ArrayList<>();
+    private volatile Function<Patch, Mono<Void>> response = patch -> Mono.empty();
+
+    /**
+     * 只记录 patchSubjectEpisodeFinish 调用的仓库.
+     */
+    @SuppressWarnings("unchecked")
+    private final BgmTvReactiveRepository repository = (BgmTvReactiveRepository) Proxy
+        .newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {BgmTvReactiveRepository.class},
+            (proxy, method, args) -> {
+                if ("patchSubjectEpisodeFinish".equals(method.getName())) {
+                    Patch patch = new Patch((String) args[0], (boolean) args[1],
+                        (boolean) args[2], List.copyOf((Collection<Float>) args[3]));
+                    synchronized (patches) {
+                        patches.add(patch);
+                    }
+                    return response.apply(patch);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    private final BgmTvEpisodeCollectionBatcher batcher =
+        new BgmTvEpisodeCollectionBatcher(repository);
+
+    @Test
+    void coalesceEventsOfSubjectIntoOnePatch() {
+        Duration window = Duration.ofMinutes(1);
+        for (int seq = 1; seq <= 12; seq++) {
+            batcher.submit("373267", seq, true, false, window);
+        }
+        batcher.submit("2716", 1, true, true, window);
+        assertThat(batcher.pendingSize()).isEqualTo(2);
+
+        batcher.flush("373267").block();
+        batcher.flush("2716").block();
+
+        assertThat(patches).hasSize(2);
+        assertThat(patches.get(0).bgmTvSubId()).isEqualTo("373267");
+        assertThat(patches.get(0).sorts()).hasSize(12);
+        assertThat(patches.get(1)).isEqualTo(new Patch("2716", true, true, List.of(1f)));
+        assertThat(batcher.pendingSize()).isZero();
+    }
+
+    @Test
+    void latestChangeOfEpisodeWins() {
+        Duration window = Duration.ofMinutes(1);
+        batcher.submit("373267", 1, true, false, window);
+        batcher.submit("373267", 2, true, false, window);
+        batcher.submit("373267", 1, false, false, window);
+
+        batcher.flush("373267").block();
+
+        assertThat(patches).containsExactly(
+            new Patch("373267", true, false, List.of(2f)),
+            new Patch("373267", false, false, List.of(1f)));
+    }
+
+    @Test
+    void flushWhenWindowElapsed() throws InterruptedException {
+        batcher.submit("373267", 1, true, false, Duration.ofMillis(20));
+        batcher.submit("373267", 2, true, false, Duration.ofMillis(20));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (patches) {
+                if (!patches.isEmpty()) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+
+        synchronized (patches) {
+            assertThat(patches).containsExactly(
+                new Patch("373267", true, false, List.of(1f, 2f)));
+        }
+        assertThat(batcher.pendingSize()).isZero();
+    }
+
+    @Test
+    void flushWaitsForPreviousPatchOfSubject() {
+        Sinks.Empty<Void> firstPatch = Sinks.empty();
+        response = patch -> patch.sorts().contains(1f) ? firstPatch.asMono() : Mono.empty();
+        Duration window = Duration.ofMinutes(1);
+        batcher.submit("373267", 1, true, false, window);
+        Mono<Void> first = batcher.flush("373267");
+        first.subscribe();
+        batcher.submit("373267", 1, false, false, window);
+        Mono<Void> second = batcher.flush("373267");
+        second.subscribe();
+
+        // 第一次 PATCH 没有完成前不会发出第二次
+        assertThat(patches).containsExactly(new Patch("373267", true, false, List.of(1f)));
+
+        firstPatch.tryEmitEmpty();
+        second.block(Duration.ofSeconds(5));
+        assertThat(patches).containsExactly(
+            new Patch("373267", true, false, List.of(1f)),
+            new Patch("373267", false, false, List.of(1f)));
+    }
+
+    @Test
+    void failedPatchDoesNotBlockNextFlush() {
+        response = patch -> patch.isFinish()
+            ? Mono.error(new IllegalStateException("boom")) : Mono.empty();
+        Duration window = Duration.ofMinutes(1);
+        batcher.submit("373267", 1, true, false, window);
+        Mono<Void> first = batcher.flush("373267").cache();
+        first.subscribe(null, e -> { });
+        batcher.submit("373267", 2, false, false, window);
+        batcher.flush("373267").block(Duration.ofSeconds(5));
+
+        assertThatThrownBy(() -> first.block(Duration.ofSeconds(5)))
+            .hasMessageContaining("boom");
+        assertThat(patches).containsExactly(
+            new Patch("373267", true, false, List.of(1f)),
+            new Patch("373267", false, false, List.of(2f)));
+    }
+
+    @Test
+    void destroyFlushesPendingBatches() {
+        Duration window = Duration.ofMinutes(1);
+        batcher.submit("373267", 1, true, false, window);
+        batcher.submit("2716", 3, false, true, window);
+
+        batcher.destroy();
+
+        assertThat(patches).containsExactlyInAnyOrder(
+            new Patch("373267", true, false, List.of(1f)),
+            new Patch("2716", false, true, List.of(3f)));
+        assertThat(batcher.pendingSize()).isZero();
+    }
+
+    @Test
+    void countEventsWhenPatchCompletes() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean(SimpleMeterRegistry.class, () -> registry);
+        context.refresh();
+        BgmTvMetrics.ListenerMetrics listenerMetrics =
+            new BgmTvMetrics(context).listener("episode_collection_finish");
+        response = patch -> "2716".equals(patch.bgmTvSubId())
+            ? Mono.error(new IllegalStateException("boom")) : Mono.empty();
+        Duration window = Duration.ofMinutes(1);
+        batcher.submit("373267", 1, true, false, window, listenerMetrics);
+        batcher.submit("373267", 2, true, false, window, listenerMetrics);
+        batcher.submit("2716", 1, true, false, window, listenerMetrics);
+
+        // 提交时还没有推送
+        assertThat(registry.find(BgmTvMetrics.LISTENER_EVENTS).counters()).allSatisfy(
+            counter -> assertThat(counter.count()).isZero());
+
+        batcher.flush("373267").block(Duration.ofSeconds(5));
+        assertThatThrownBy(() -> batcher.flush("2716").block(Duration.ofSeconds(5)))
+            .hasMessageContaining("boom");
+        assertThat(registry.get(BgmTvMetrics.LISTENER_EVENTS)
+            .tag("outcome", "pushed").counter().count()).isEqualTo(2);
+        assertThat(registry.get(BgmTvMetrics.LISTENER_EVENTS)
+            .tag("outcome", "failed").counter().count()).isEqualTo(1);
+        context.close();
+    }
+}
@@ -0,0 +1,319 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndex;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+import run.ikaros.plugin.bgmtv.model.BgmTVSubCollectionType;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.model.BgmTvUserInfo;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+import run.ikaros.plugin.bgmtv.standin.BgmTvStandInServer;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvReactiveRepositoryImplTest {
+
+    /**
+     * 接口测试请求本地的替身服务，每个条目 300 集，正片超过单页上限.
+     */
+    static BgmTvStandInServer standIn;
+
+    @BeforeAll
+    static void startStandIn() throws Exception {
+        standIn = BgmTvStandInServer.start(new BgmTvStandInServer.Options(
+            Duration.ZERO, 0, 0, 0, 300));
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        standIn.close();
+    }
+
+    @TempDir
+    Path coverDirectory;
+
+    BgmTvReactiveRepositoryImpl bgmTvReactiveRepository;
+
+    @BeforeEach
+    void createRepository() {
+        bgmTvReactiveRepository =
+            repository(new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(), coverCache());
+    }
+
+    private BgmTvCoverCache coverCache() {
+        return new BgmTvCoverCache(coverDirectory, BgmTvCoverCache.DEFAULT_MAX_BYTES,
+            BgmTvCoverCache.DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    private static BgmTvReactiveRepositoryImpl repository(
+        BgmTvSubjectCache subjectCache, BgmTvEpisodeIndexCache episodeIndexCache,
+        BgmTvCoverCache coverCache) {
+        return new BgmTvReactiveRepositoryImpl(null, subjectCache, episodeIndexCache,
+            new BgmTvPersonCache(), coverCache, new BgmTvSearchCache(),
+            new BgmTvArchive(new BgmTvSettingsHolder(null)),
+            new BgmTvRateLimiter(), new BgmTvRequestCoalescer(), BgmTvMetrics.noop());
+    }
+
+    @Test
+    void getSubject() {
+        bgmTvReactiveRepository.initWebClient(null);
+        bgmTvReactiveRepository.setApiBase(standIn.base());
+        bgmTvReactiveRepository.refreshHttpHeaders(null);
+        BgmTvSubject subject = bgmTvReactiveRepository.getSubject(2716L).block();
+        assertThat(subject).isNotNull();
+    }
+
+    @Test
+    void findEpisodesBySubjectId() {
+        bgmTvReactiveRepository.initWebClient(null);
+        bgmTvReactiveRepository.setApiBase(standIn.base());
+        bgmTvReactiveRepository.refreshHttpHeaders(null);
+        List<BgmTvEpisode> episodes = bgmTvReactiveRepository.findEpisodesBySubjectId(373267L,
+            BgmTvEpisodeType.POSITIVE, 0, 100).collectList().block();
+        assertThat(episodes).isNotEmpty();
+    }
+
+    @Test
+    void getMe() {
+        bgmTvReactiveRepository.initWebClient(null);
+        bgmTvReactiveRepository.setApiBase(standIn.base());
+        bgmTvReactiveRepository.refreshHttpHeaders("stand-in");
+        BgmTvUserInfo userInfo = bgmTvReactiveRepository.getMe().block();
+        assertThat(userInfo).isNotNull();
+    }
+
+    @Test
+    void searchSubjectWithOldApi() {
+        bgmTvReactiveRepository.initWebClient(null);
+        bgmTvReactiveRepository.setApiBase(standIn.base());
+        bgmTvReactiveRepository.refreshHttpHeaders(null);
+        List<BgmTvSubject> subjects =
+            bgmTvReactiveRepository.searchSubjectWithOldApi("MyGo", 2).collectList().block();
+        assertThat(subjects).isNotEmpty();
+    }
+
+    @Test
+    void refetchWhenEvictedBeforeNotModified() throws Exception {
+        BgmTvSubjectCache subjectCache = new BgmTvSubjectCache() {
+            @Override
+            public BgmTvSubject getIfFresh(long subjectId) {
+                // 始终视为过期，每次都带条件请求
+                return null;
+            }
+        };
+        byte[] body = "{\"id\":7,\"name\":\"subject\"}".getBytes(StandardCharsets.UTF_8);
+        List<String> conditions = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/subjects/7", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            conditions.add(String.valueOf(ifNoneMatch));
+            if (ifNoneMatch != null) {
+                // 请求期间缓存被淘汰
+                subjectCache.invalidate(7);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            BgmTvReactiveRepositoryImpl repository =
+                repository(subjectCache, new BgmTvEpisodeIndexCache(), coverCache());
+            repository.setApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+            repository.refreshHttpHeaders(null);
+
+            assertThat(repository.getSubject(7L).block()).isNotNull();
+            BgmTvSubject subject = repository.getSubject(7L).block();
+            assertThat(subject).isNotNull();
+            assertThat(subject.getName()).isEqualTo("subject");
+            assertThat(conditions).containsExactly("null", "\"v1\"", "null");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void putEpisodeCollectionErrorStatuses() throws Exception {
+        BgmTvEpisodeIndexCache episodeIndexCache = new BgmTvEpisodeIndexCache();
+        AtomicInteger status = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/users/-/collections/-/episodes/70", exchange -> {
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            BgmTvReactiveRepositoryImpl repository =
+                repository(new BgmTvSubjectCache(), episodeIndexCache, coverCache());
+            repository.setApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+            repository.refreshHttpHeaders("stand-in");
+            BgmTvEpisodeIndex index = BgmTvEpisodeIndex.of(List.of(
+                new BgmTvEpisode().setId(70).setSort(1D).setType(BgmTvEpisodeType.POSITIVE)));
+            episodeIndexCache.put(7, index);
+
+            // 没有权限时交给调用方，剧集索引仍然有效
+            status.set(403);
+            assertThatThrownBy(() ->
+                repository.putUserEpisodeCollection("7", 1, true, false).block())
+                .isInstanceOf(WebClientResponseException.Forbidden.class);
+            assertThat(episodeIndexCache.get(7)).isSameAs(index);
+
+            // 剧集不存在说明索引已过期
+            status.set(404);
+            repository.putUserEpisodeCollection("7", 1, true, false).block();
+            assertThat(episodeIndexCache.get(7)).isNull();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void missingSortRefetchesEpisodesOnce() throws Exception {
+        BgmTvEpisodeIndexCache episodeIndexCache = new BgmTvEpisodeIndexCache();
+        byte[] episodes = "{\"data\":[{\"id\":70,\"sort\":1,\"type\":0}],\"total\":1}"
+            .getBytes(StandardCharsets.UTF_8);
+        AtomicInteger episodeRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/episodes", exchange -> {
+            episodeRequests.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, episodes.length);
+            exchange.getResponseBody().write(episodes);
+            exchange.close();
+        });
+        server.start();
+        try {
+            BgmTvReactiveRepositoryImpl repository =
+                repository(new BgmTvSubjectCache(), episodeIndexCache, coverCache());
+            repository.setApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+            repository.refreshHttpHeaders("stand-in");
+            episodeIndexCache.put(7, BgmTvEpisodeIndex.of(List.of(
+                new BgmTvEpisode().setId(70).setSort(1D).setType(BgmTvEpisodeType.POSITIVE))));
+
+            // 服务端没有的序号只重新拉取一次剧集列表
+            repository.putUserEpisodeCollection("7", 99, true, false).block();
+            repository.patchSubjectEpisodeFinish("7", true, false, List.of(98f)).block();
+            repository.putUserEpisodeCollection("7", 99, true, false).block();
+            assertThat(episodeRequests.get()).isEqualTo(1);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void postUserSubjectCollectionOutcome() throws Exception {
+        byte[] me = "{\"username\":\"stand-in\"}".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger status = new AtomicInteger(204);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/me", exchange -> {
+            exchange.sendResponseHeaders(200, me.length);
+            exchange.getResponseBody().write(me);
+            exchange.close();
+        });
+        server.createContext("/v0/users/-/collections/7", exchange -> {
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            BgmTvReactiveRepositoryImpl repository =
+                repository(new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(), coverCache());
+            repository.setApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+
+            // 没有令牌时不请求
+            repository.refreshHttpHeaders(null);
+            assertThat(repository.postUserSubjectCollection("7", BgmTVSubCollectionType.DOING,
+                false).block()).isFalse();
+
+            repository.refreshHttpHeaders("stand-in");
+            assertThat(repository.postUserSubjectCollection("7", BgmTVSubCollectionType.DOING,
+                false).block()).isTrue();
+
+            // 请求失败交给调用方记录
+            status.set(400);
+            assertThatThrownBy(() -> repository.postUserSubjectCollection("7",
+                BgmTVSubCollectionType.DOING, false).block())
+                .isInstanceOf(WebClientResponseException.BadRequest.class);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void downloadCoverFile() throws Exception {
+        byte[] image = "fake image".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cover.jpg", exchange -> {
+            requests.incrementAndGet();
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, image.length);
+                exchange.getResponseBody().write(image);
+            }
+            exchange.close();
+        });
+        server.createContext("/large.jpg", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write(new byte[2048]);
+            exchange.close();
+        });
+        server.createContext("/missing.jpg", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            BgmTvReactiveRepositoryImpl repository = repository(new BgmTvSubjectCache(),
+                new BgmTvEpisodeIndexCache(),
+                new BgmTvCoverCache(coverDirectory, 1024, Duration.ZERO, Clock.systemUTC()));
+            repository.refreshHttpHeaders(null);
+
+            Path file = repository.downloadCoverFile(base + "/cover.jpg").block();
+            assertThat(file).isNotNull();
+            assertThat(Files.readAllBytes(file)).isEqualTo(image);
+            assertThat(repository.downloadCoverFile(base + "/cover.jpg").block()).isEqualTo(file);
+            assertThat(repository.downloadCover(base + "/cover.jpg").block()).isEqualTo(image);
+            assertThat(requests.get()).isEqualTo(3);
+
+            assertThatThrownBy(() -> repository.downloadCoverFile(base + "/large.jpg").block())
+                .isInstanceOf(DataBufferLimitException.class);
+            assertThat(repository.downloadCoverFile(base + "/missing.jpg").block()).isNull();
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -1,38 +1,111 @@
 package run.ikaros.plugin.bgmtv.repository;
 
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
-import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.web.client.HttpClientErrorException;
 import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndex;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.constants.BgmTvApiConst;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
 import run.ikaros.plugin.bgmtv.model.BgmTVSubCollectionType;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+import run.ikaros.plugin.bgmtv.model.BgmTvPagingData;
 import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
 import run.ikaros.plugin.bgmtv.model.BgmTvUserInfo;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+import run.ikaros.plugin.bgmtv.standin.BgmTvStandInServer;
 
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class BgmTvRepositoryImplTest {
 
-    BgmTvRepositoryImpl bgmTvRepository = new BgmTvRepositoryImpl(null);
+    /**
+     * 接口测试请求本地的替身服务，每个条目 300 集，正片超过单页上限.
+     */
+    static BgmTvStandInServer standIn;
+
+    @BeforeAll
+    static void startStandIn() throws Exception {
+        standIn = BgmTvStandInServer.start(new BgmTvStandInServer.Options(
+            Duration.ZERO, 0, 0, 0, 300));
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        standIn.close();
+    }
+
+    @TempDir
+    Path coverDirectory;
+
+    BgmTvRepositoryImpl bgmTvRepository;
+
+    @BeforeEach
+    void createRepository() {
+        bgmTvRepository = repository(new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(),
+            coverCache(), BgmTvMetrics.noop());
+    }
+
+    private BgmTvCoverCache coverCache() {
+        return new BgmTvCoverCache(coverDirectory, BgmTvCoverCache.DEFAULT_MAX_BYTES,
+            BgmTvCoverCache.DEFAULT_TTL, Clock.systemUTC());
+    }
+
+    private static BgmTvRepositoryImpl repository(BgmTvSubjectCache subjectCache,
+                                                  BgmTvEpisodeIndexCache episodeIndexCache,
+                                                  BgmTvCoverCache coverCache,
+                                                  BgmTvMetrics metrics) {
+        return new BgmTvRepositoryImpl(null, subjectCache, episodeIndexCache,
+            new BgmTvPersonCache(), coverCache, new BgmTvSearchCache(),
+            new BgmTvArchive(new BgmTvSettingsHolder(null)), new BgmTvRateLimiter(),
+            new BgmTvRequestCoalescer(), metrics);
+    }
 
     @Test
-    @Disabled
     void getSubject() {
         bgmTvRepository.initRestTemplate(null);
+        bgmTvRepository.setApiBase(standIn.base());
         bgmTvRepository.refreshHttpHeaders(null);
         BgmTvSubject subject = bgmTvRepository.getSubject(2716L);
         assertThat(subject).isNotNull();
     }
 
     @Test
-    @Disabled
     void getMe() {
         ConfigMap configMap = new ConfigMap();
         configMap.setName("PluginBgmTv");
         configMap.putDataItem("enableProxy", "false");
         bgmTvRepository.initRestTemplate(configMap);
-        bgmTvRepository.refreshHttpHeaders(System.getenv("IKAROS_TEST_TOKEN"));
+        bgmTvRepository.setApiBase(standIn.base());
+        bgmTvRepository.refreshHttpHeaders("stand-in");
         BgmTvUserInfo userInfo = bgmTvRepository.getMe();
         assertThat(userInfo).isNotNull();
         BgmTvSubject subject = bgmTvRepository.getSubject(74446L);
@@ -40,49 +113,286 @@ class BgmTvRepositoryImplTest {
     }
 
     @Test
-    @Disabled
     void postUserSubjectCollection() {
         final long subjectId = 405198;
         bgmTvRepository.initRestTemplate(null);
-        bgmTvRepository.refreshHttpHeaders(System.getenv("IKAROS_TEST_TOKEN"));
+        bgmTvRepository.setApiBase(standIn.base());
+        bgmTvRepository.refreshHttpHeaders("stand-in");
         bgmTvRepository.postUserSubjectCollection(String.valueOf(subjectId),
                 BgmTVSubCollectionType.DONE, true);
+        assertThat(standIn.requestCount("POST /v0/users/-/collections/{id}")).isPositive();
     }
 
-    // @Test
-    // @Disabled
-    // void patchSubjectEpisodeFinish() {
-    //     final long subjectId = 107671;
-    //     bgmTvRepository.initRestTemplate(null);
-    //     bgmTvRepository.refreshHttpHeaders(System.getenv("IKAROS_TEST_TOKEN"));
-    //
-    //     List<Integer> sortIds = new ArrayList<>();
-    //     sortIds.add(1);
-    //     sortIds.add(2);
-    //     sortIds.add(3);
-    //     sortIds.add(4);
-    //
-    //     bgmTvRepository.patchSubjectEpisodeFinish(String.valueOf(subjectId), true, false, sortIds);
-    //
-    // }
+    @Test
+    void patchSubjectEpisodeFinish() {
+        final long subjectId = 107671;
+        bgmTvRepository.initRestTemplate(null);
+        bgmTvRepository.setApiBase(standIn.base());
+        bgmTvRepository.refreshHttpHeaders("stand-in");
+
+        bgmTvRepository.patchSubjectEpisodeFinish(String.valueOf(subjectId), true, false,
+            List.of(1f, 2f, 3f, 4f));
+        assertThat(standIn.requestCount("PATCH /v0/users/-/collections/{id}/episodes"))
+            .isPositive();
+    }
 
 
     @Test
-    @Disabled
     void putUserEpisodeCollection() {
         final long subjectId = 373787;
         bgmTvRepository.initRestTemplate(null);
-        bgmTvRepository.refreshHttpHeaders(System.getenv("IKAROS_TEST_TOKEN"));
+        bgmTvRepository.setApiBase(standIn.base());
+        bgmTvRepository.refreshHttpHeaders("stand-in");
 
         bgmTvRepository.putUserEpisodeCollection(String.valueOf(subjectId), 1, true, false);
+        assertThat(standIn.requestCount("PUT /v0/users/-/collections/-/episodes/{id}"))
+            .isPositive();
     }
 
     @Test
-    @Disabled
     void searchSubjectWithOldApi() {
         final String keyword = "MyGo";
         bgmTvRepository.initRestTemplate(null);
+        bgmTvRepository.setApiBase(standIn.base());
         List<BgmTvSubject> bgmTvSubjects = bgmTvRepository.searchSubjectWithOldApi(keyword, 2);
         Assertions.assertThat(bgmTvSubjects).isNotEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void findAllEpisodesBySubjectId() {
+        // 名侦探柯南，剧集数远超单页上限
+        final long subjectId = 899;
+        bgmTvRepository.initRestTemplate(null);
+        bgmTvRepository.setApiBase(standIn.base());
+        bgmTvRepository.refreshHttpHeaders(null);
+        List<BgmTvEpisode> episodes =
+            bgmTvRepository.findAllEpisodesBySubjectId(subjectId, BgmTvEpisodeType.POSITIVE);
+        Assertions.assertThat(episodes).hasSizeGreaterThan(BgmTvApiConst.DEFAULT_LIMIT);
+    }
+
+    @Test
+    void setApiBaseKeepsSingleInterceptorChain() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean(SimpleMeterRegistry.class, () -> registry);
+        context.refresh();
+        BgmTvRepositoryImpl repository = repository(new BgmTvSubjectCache(),
+            new BgmTvEpisodeIndexCache(), coverCache(), new BgmTvMetrics(context));
+        repository.setApiBase("http://127.0.0.1:1");
+        repository.setApiBase(standIn.base());
+        repository.refreshHttpHeaders(null);
+
+        assertThat(repository.getSubject(2716L)).isNotNull();
+        // 多次切换接口地址后每个请求仍只记录一次
+        assertThat(registry.get(BgmTvMetrics.HTTP_REQUESTS).timers())
+            .extracting(Timer::count)
+            .containsExactly(1L);
+    }
+
+    @Test
+    void remainingOffsets() {
+        BgmTvPagingData<BgmTvEpisode> firstPage = new BgmTvPagingData<BgmTvEpisode>()
+            .setData(episodes(100))
+            .setTotal(250)
+            .setOffset(0)
+            .setLimit(100);
+        Assertions.assertThat(BgmTvRepositoryImpl.remainingOffsets(firstPage))
+            .containsExactly(100, 200);
+
+        // 服务端把 limit 压到了 50
+        firstPage.setData(episodes(50));
+        Assertions.assertThat(BgmTvRepositoryImpl.remainingOffsets(firstPage))
+            .containsExactly(50, 100, 150, 200);
+
+        firstPage.setData(episodes(12)).setTotal(12);
+        Assertions.assertThat(BgmTvRepositoryImpl.remainingOffsets(firstPage)).isEmpty();
+
+        firstPage.setData(List.of()).setTotal(null);
+        Assertions.assertThat(BgmTvRepositoryImpl.remainingOffsets(firstPage)).isEmpty();
+    }
+
+    @Test
+    void episodeOrder() {
+        List<BgmTvEpisode> episodes = new ArrayList<>(List.of(
+            new BgmTvEpisode().setType(BgmTvEpisodeType.SPECIAL).setSort(1.0),
+            new BgmTvEpisode().setType(BgmTvEpisodeType.POSITIVE).setSort(101.0),
+            new BgmTvEpisode().setType(BgmTvEpisodeType.POSITIVE).setSort(2.0),
+            new BgmTvEpisode().setType(BgmTvEpisodeType.POSITIVE).setSort(1.5)));
+
+        episodes.sort(BgmTvRepositoryImpl.EPISODE_ORDER);
+
+        Assertions.assertThat(episodes)
+            .extracting(BgmTvEpisode::getType, BgmTvEpisode::getSort)
+            .containsExactly(
+                Assertions.tuple(BgmTvEpisodeType.POSITIVE, 1.5),
+                Assertions.tuple(BgmTvEpisodeType.POSITIVE, 2.0),
+                Assertions.tuple(BgmTvEpisodeType.POSITIVE, 101.0),
+                Assertions.tuple(BgmTvEpisodeType.SPECIAL, 1.0));
+    }
+
+    private static List<BgmTvEpisode> episodes(int count) {
+        List<BgmTvEpisode> episodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            episodes.add(new BgmTvEpisode().setSort((double) i + 1));
+        }
+        return episodes;
+    }
+
+    @Test
+    void refetchWhenEvictedBeforeNotModified() throws Exception {
+        BgmTvSubjectCache subjectCache = new BgmTvSubjectCache() {
+            @Override
+            public BgmTvSubject getIfFresh(long subjectId) {
+                // 始终视为过期，每次都带条件请求
+                return null;
+            }
+        };
+        byte[] body = "{\"id\":7,\"name\":\"subject\"}".getBytes(StandardCharsets.UTF_8);
+        List<String> conditions = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/subjects/7", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            conditions.add(String.valueOf(ifNoneMatch));
+            if (ifNoneMatch != null) {
+                // 请求期间缓存被淘汰
+                subjectCache.invalidate(7);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            BgmTvRepositoryImpl repository = repository(subjectCache,
+                new BgmTvEpisodeIndexCache(), coverCache(), BgmTvMetrics.noop());
+            repository.setApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+            repository.refreshHttpHeaders(null);
+
+            assertThat(repository.getSubject(7L)).isNotNull();
+            BgmTvSubject subject = repository.getSubject(7L);
+            assertThat(subject).isNotNull();
+            assertThat(subject.getName()).isEqualTo("subject");
+            assertThat(conditions).containsExactly("null", "\"v1\"", "null");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void patchEpisodeFinishErrorStatuses() throws Exception {
+        BgmTvEpisodeIndexCache episodeIndexCache = new BgmTvEpisodeIndexCache();
+        byte[] notCollected =
+            "{\"description\":\"you need to add subject to your collection first\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        AtomicInteger status = new AtomicInteger();
+        AtomicInteger patches = new AtomicInteger();
+        byte[] me = "{\"username\":\"stand-in\"}".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v0/me", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, me.length);
+            exchange.getResponseBody().write(me);
+            exchange.close();
+        });
+        server.createContext("/v0/users/-/collections/7", exchange -> {
+            // 收藏条目失败
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+        });
+        server.createContext("/v0/users/-/collections/7/episodes", exchange -> {
+            patches.incrementAndGet();
+            if (status.get() == 400) {
+                exchange.sendResponseHeaders(400, notCollected.length);
+                exchange.getResponseBody().write(notCollected);
+            } else {
+                exchange.sendResponseHeaders(status.get(), -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            BgmTvRepositoryImpl repository = repository(new BgmTvSubjectCache(),
+                episodeIndexCache, coverCache(), BgmTvMetrics.noop());
+            repository.setApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+            repository.refreshHttpHeaders("stand-in");
+            BgmTvEpisodeIndex index = BgmTvEpisodeIndex.of(List.of(
+                new BgmTvEpisode().setId(70).setSort(1D).setType(BgmTvEpisodeType.POSITIVE)));
+            episodeIndexCache.put(7, index);
+
+            // 没有权限时交给调用方，剧集索引仍然有效
+            status.set(403);
+            assertThatThrownBy(() ->
+                repository.patchSubjectEpisodeFinish("7", true, false, List.of(1f)))
+                .isInstanceOf(HttpClientErrorException.Forbidden.class);
+            assertThat(episodeIndexCache.get(7)).isSameAs(index);
+
+            // 收藏条目失败后只重试一次，第二次失败不抛出
+            status.set(400);
+            patches.set(0);
+            repository.patchSubjectEpisodeFinish("7", true, false, List.of(1f));
+            assertThat(patches.get()).isEqualTo(2);
+            assertThat(episodeIndexCache.get(7)).isSameAs(index);
+
+            // 剧集不存在说明索引已过期
+            status.set(404);
+            repository.patchSubjectEpisodeFinish("7", true, false, List.of(1f));
+            assertThat(episodeIndexCache.get(7)).isNull();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void downloadCoverFile() throws Exception {
+        byte[] image = "fake image".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cover.jpg", exchange -> {
+            requests.incrementAndGet();
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, image.length);
+                exchange.getResponseBody().write(image);
+            }
+            exchange.close();
+        });
+        server.createContext("/large.jpg", exchange -> {
+            // 不声明长度，分块传输
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write(new byte[2048]);
+            exchange.close();
+        });
+        server.createContext("/missing.jpg", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            // 有效期为 0，每次都带条件请求重新校验
+            BgmTvRepositoryImpl repository = repository(new BgmTvSubjectCache(),
+                new BgmTvEpisodeIndexCache(),
+                new BgmTvCoverCache(coverDirectory, 1024, Duration.ZERO, Clock.systemUTC()),
+                BgmTvMetrics.noop());
+            repository.refreshHttpHeaders(null);
+
+            Path file = repository.downloadCoverFile(base + "/cover.jpg");
+            assertThat(file).isNotNull();
+            assertThat(Files.readAllBytes(file)).isEqualTo(image);
+            assertThat(repository.downloadCoverFile(base + "/cover.jpg")).isEqualTo(file);
+            assertThat(repository.downloadCover(base + "/cover.jpg")).isEqualTo(image);
+            assertThat(requests.get()).isEqualTo(3);
+
+            assertThatThrownBy(() -> repository.downloadCoverFile(base + "/large.jpg"))
+                .isInstanceOf(DataBufferLimitException.class);
+            assertThat(repository.downloadCoverFile(base + "/missing.jpg")).isNull();
+        } finally {
+            server.stop(0);
+        }
+    }
+}
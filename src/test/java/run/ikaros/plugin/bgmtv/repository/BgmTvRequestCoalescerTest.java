@@ -0,0 +1,77 @@
+package run.ikaros.plugin.bgmtv.repository;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvPagingData;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BgmTvRequestCoalescerTest {
+
+    private final BgmTvRequestCoalescer coalescer = new BgmTvRequestCoalescer();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private static BgmTvSubject subject(int id) {
+        BgmTvSubject subject = new BgmTvSubject();
+        subject.setId(id);
+        return subject;
+    }
+
+    @Test
+    void blockingCallerJoinsReactiveRequest() throws Exception {
+        Sinks.One<BgmTvSubject> response = Sinks.one();
+        List<BgmTvSubject> results = new ArrayList<>();
+        coalescer.getSubjectAsync(1, () -> {
+            requests.incrementAndGet();
+            return response.asMono();
+        }).subscribe(results::add);
+        coalescer.getSubjectAsync(1, () -> Mono.just(subject(-1))).subscribe(results::add);
+        CompletableFuture<BgmTvSubject> blocking = CompletableFuture.supplyAsync(() ->
+            coalescer.getSubject(1, () -> subject(-1)));
+        // 其他条目不受影响
+        assertThat(coalescer.getSubject(2, () -> subject(2)).getId()).isEqualTo(2);
+
+        while (coalescer.getCoalescedSubjectCount() < 2) {
+            Thread.onSpinWait();
+        }
+        response.tryEmitValue(subject(1));
+
+        assertThat(blocking.get(5, TimeUnit.SECONDS)).isSameAs(results.get(0));
+        assertThat(results).extracting(BgmTvSubject::getId).containsExactly(1, 1);
+        assertThat(requests).hasValue(1);
+        assertThat(coalescer.getCoalescedCount()).isEqualTo(2);
+        assertThat(coalescer.inFlight()).isZero();
+    }
+
+    @Test
+    void episodePageFailureIsSharedAndNotKept() {
+        Sinks.One<BgmTvPagingData<BgmTvEpisode>> response = Sinks.one();
+        List<Throwable> errors = new ArrayList<>();
+        String url = BgmTvRepositoryImpl.episodesUrl(1L, null, 0, 100);
+        for (int i = 0; i < 2; i++) {
+            coalescer.getEpisodePageAsync(url, response::asMono)
+                .subscribe(page -> { }, errors::add);
+        }
+        response.tryEmitError(new IllegalStateException("boom"));
+
+        assertThat(errors).hasSize(2);
+        assertThat(coalescer.getCoalescedEpisodePageCount()).isEqualTo(1);
+
+        BgmTvPagingData<BgmTvEpisode> page = new BgmTvPagingData<>();
+        page.setData(List.of());
+        assertThat(coalescer.getEpisodePage(url, () -> page)).isSameAs(page);
+        assertThatThrownBy(() -> coalescer.getEpisodePage(url, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,28 @@
+package run.ikaros.plugin.bgmtv.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvSearchTokenizerTest {
+
+    @Test
+    void cjkBigramsAndLatinWords() {
+        assertThat(BgmTvSearchTokenizer.tokenize("进击的巨人 Season2", false))
+            .containsExactly("进击", "击的", "的巨", "巨人", "season2");
+        assertThat(BgmTvSearchTokenizer.tokenize("ＳＰＹ×ＦＡＭＩＬＹ", false))
+            .containsExactly("spy", "family");
+        assertThat(BgmTvSearchTokenizer.tokenize("ｶｳﾎﾞｰｲ", false))
+            .containsExactly("カウ", "ウボ", "ボー", "ーイ");
+    }
+
+    @Test
+    void singleCharacterAndUnigrams() {
+        assertThat(BgmTvSearchTokenizer.tokenize("海", false)).containsExactly("海");
+        assertThat(BgmTvSearchTokenizer.tokenize("海贼", true))
+            .containsExactly("海", "贼", "海贼");
+        assertThat(BgmTvSearchTokenizer.tokenize(" ・ ", false)).isEmpty();
+        assertThat(BgmTvSearchTokenizer.containsCjk("attack on titan")).isFalse();
+        assertThat(BgmTvSearchTokenizer.containsCjk("進撃")).isTrue();
+    }
+}
@@ -0,0 +1,73 @@
+package run.ikaros.plugin.bgmtv.search;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvSubjectSearchIndexTest {
+
+    private final BgmTvSubjectCache subjectCache = new BgmTvSubjectCache();
+    private final BgmTvSubjectSearchIndex index = new BgmTvSubjectSearchIndex(subjectCache,
+        new BgmTvArchive(new BgmTvSettingsHolder(null)));
+
+    private static BgmTvSubject subject(int id, int type, String name, String nameCn,
+                                        String infobox) {
+        BgmTvSubject subject = new BgmTvSubject();
+        subject.setId(id);
+        subject.setType(type);
+        subject.setName(name);
+        subject.setNameCn(nameCn);
+        subject.setInfobox(infobox);
+        subject.setSummary("not kept");
+        return subject;
+    }
+
+    private void indexSubjects() {
+        index.index(subject(1, 2, "進撃の巨人", "进击的巨人",
+            "中文名: 进击的巨人\n别名: Attack on Titan\n话数: 25\n"));
+        index.index(subject(2, 2, "巨人の星", "巨人之星", null));
+        index.index(subject(3, 2, "進撃の巨人 Season 2", "进击的巨人 第二季", null));
+        index.index(subject(4, 1, "進撃の巨人", "进击的巨人", null));
+    }
+
+    private static int[] ids(List<BgmTvSubject> subjects) {
+        return subjects.stream().mapToInt(BgmTvSubject::getId).toArray();
+    }
+
+    @Test
+    void rankCjkMatches() {
+        indexSubjects();
+
+        assertThat(ids(index.search("进击的巨人", 2, 10))).containsExactly(1, 3);
+        assertThat(ids(index.search("進撃", 2, 10))).containsExactly(1, 3);
+        // 名称以查询开头的排在前面
+        assertThat(ids(index.search("巨人", 2, 10))).containsExactly(2, 1, 3);
+        assertThat(ids(index.search("巨人之星", null, 10))).containsExactly(2);
+        assertThat(ids(index.search("attack titan", null, 10))).containsExactly(1);
+        assertThat(ids(index.search("进击的巨人", null, 1))).containsExactly(1);
+        assertThat(index.search("海贼王", null, 10)).isEmpty();
+        assertThat(index.search(" ", null, 10)).isEmpty();
+        assertThat(index.search("进击", 2, 10).get(0).getSummary()).isNull();
+    }
+
+    @Test
+    void updateWhenSubjectIsFetched() {
+        indexSubjects();
+
+        subjectCache.put(2, subject(2, 2, "巨人の星", "巨人之星", "别名: Kyojin no Hoshi\n"),
+            null, null);
+
+        assertThat(ids(index.search("kyojin", null, 10))).containsExactly(2);
+        assertThat(ids(index.search("巨人之星", null, 10))).containsExactly(2);
+        assertThat(index.size()).isEqualTo(4);
+
+        subjectCache.put(5, subject(5, 2, "海贼王", null, null), null, null);
+        assertThat(ids(index.search("海", null, 10))).containsExactly(5);
+    }
+}
@@ -0,0 +1,86 @@
+package run.ikaros.plugin.bgmtv.settings;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchiveMode;
+import run.ikaros.plugin.bgmtv.repository.BgmTvEpisodeCollectionBatcher;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvSettingsTest {
+
+    @Test
+    void parseConfigMap() {
+        ConfigMap configMap = new ConfigMap();
+        configMap.setName("PluginBgmTv");
+        configMap.putDataItem("token", "abc");
+        configMap.putDataItem("syncCollectionAndEpisodeFinish", "true");
+        configMap.putDataItem("nsfwPrivate", "TRUE");
+        configMap.putDataItem("episodeSyncWindow", "500");
+        configMap.putDataItem("enableProxy", "true");
+        configMap.putDataItem("proxyType", "http");
+        configMap.putDataItem("host", "127.0.0.1");
+        configMap.putDataItem("port", "7890");
+        configMap.putDataItem("archiveMode", "offline");
+        configMap.putDataItem("archivePath", "/data/bangumi");
+
+        BgmTvSettings settings = BgmTvSettings.of(configMap);
+
+        assertThat(settings.token()).isEqualTo("abc");
+        assertThat(settings.syncCollectionAndEpisodeFinish()).isTrue();
+        assertThat(settings.isPrivate(true)).isTrue();
+        assertThat(settings.isPrivate(null)).isFalse();
+        assertThat(settings.episodeSyncWindow()).isEqualTo(Duration.ofMillis(500));
+        assertThat(settings.httpOptions().proxy()).isEqualTo(
+            new Proxy(Proxy.Type.HTTP, new InetSocketAddress("127.0.0.1", 7890)));
+        assertThat(settings.archiveMode()).isEqualTo(BgmTvArchiveMode.OFFLINE);
+        assertThat(settings.isArchiveEnabled()).isTrue();
+        assertThat(settings.toString()).doesNotContain("abc");
+    }
+
+    @Test
+    void defaultsForMissingValues() {
+        ConfigMap configMap = new ConfigMap();
+        configMap.setName("PluginBgmTv");
+        configMap.putDataItem("token", "null");
+        configMap.putDataItem("episodeSyncWindow", "-1");
+
+        BgmTvSettings settings = BgmTvSettings.of(configMap);
+
+        assertThat(settings.token()).isNull();
+        assertThat(settings.syncCollectionAndEpisodeFinish()).isFalse();
+        assertThat(settings.episodeSyncWindow())
+            .isEqualTo(BgmTvEpisodeCollectionBatcher.DEFAULT_WINDOW);
+        assertThat(settings.httpOptions().proxy()).isNull();
+        assertThat(settings.archiveMode()).isEqualTo(BgmTvArchiveMode.DISABLED);
+        assertThat(settings.isArchiveEnabled()).isFalse();
+        assertThat(BgmTvSettings.of(null)).isEqualTo(BgmTvSettings.defaults());
+    }
+
+    @Test
+    void replayLoadedSettingsToLateListener() {
+        BgmTvSettingsHolder holder = new BgmTvSettingsHolder(null);
+        List<BgmTvSettings> notified = new ArrayList<>();
+
+        // 还没有加载配置时不调用
+        holder.addListener(notified::add);
+        assertThat(notified).isEmpty();
+
+        ConfigMap configMap = new ConfigMap();
+        configMap.setName("PluginBgmTv");
+        configMap.putDataItem("archiveMode", "preferred");
+        BgmTvSettings updated = holder.update(configMap);
+        assertThat(notified).containsExactly(updated);
+
+        // 配置加载后才注册的监听器立即收到当前配置
+        List<BgmTvSettings> late = new ArrayList<>();
+        holder.addListener(late::add);
+        assertThat(late).containsExactly(updated);
+    }
+}
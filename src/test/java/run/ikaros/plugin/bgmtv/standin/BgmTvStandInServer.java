@@ -0,0 +1,334 @@
+package run.ikaros.plugin.bgmtv.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地的 bgm.tv 替身服务，用 fixture 中的响应应答条目、剧集、搜索、用户信息和收藏接口，
+ * 可以配置每个请求的延迟以及返回 5xx 和 429 的比例.
+ *
+ * <p>条目和剧集以 src/test/resources/fixtures 下的响应为模板，只替换ID和排序，
+ * 写收藏的请求只计数，直接返回 204.</p>
+ *
+ * @see SyncLoadHarness
+ */
+public class BgmTvStandInServer implements AutoCloseable {
+    static final String SUBJECT_FIXTURE = "/fixtures/subject-899.json";
+    static final String EPISODES_FIXTURE = "/fixtures/episodes-899.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final byte[] EMPTY_LIST = "[]".getBytes(StandardCharsets.UTF_8);
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectNode subject;
+    private final List<ObjectNode> episodes;
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    /**
+     * 替身服务的行为.
+     *
+     * @param latency            每个请求应答前的延迟
+     * @param errorRate          返回 500 的比例
+     * @param throttleRate       返回 429 的比例
+     * @param retryAfterSeconds  429 响应的 Retry-After，为负数时不返回该响应头
+     * @param episodesPerSubject 每个条目的剧集数，不超过 1000
+     */
+    public record Options(Duration latency, double errorRate, double throttleRate,
+                          int retryAfterSeconds, int episodesPerSubject) {
+        public static Options defaults() {
+            return new Options(Duration.ZERO, 0, 0, 0, 26);
+        }
+
+        /**
+         * 读取 standin. 开头的系统属性，没有设置的使用默认值.
+         */
+        public static Options fromSystemProperties() {
+            Options defaults = defaults();
+            return new Options(
+                Duration.ofMillis(Long.getLong("standin.latencyMs", defaults.latency.toMillis())),
+                doubleProperty("standin.errorRate", defaults.errorRate),
+                doubleProperty("standin.throttleRate", defaults.throttleRate),
+                Integer.getInteger("standin.retryAfterSeconds", defaults.retryAfterSeconds),
+                Integer.getInteger("standin.episodesPerSubject", defaults.episodesPerSubject));
+        }
+
+        private static double doubleProperty(String key, double defaultValue) {
+            String value = System.getProperty(key);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+    }
+
+    private BgmTvStandInServer(Options options) throws IOException {
+        this.options = options;
+        this.subject = (ObjectNode) MAPPER.readTree(readFixture(SUBJECT_FIXTURE));
+        this.episodes = episodes(options.episodesPerSubject());
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // 延迟在处理线程上等待，线程数不能限制并发
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "bgmtv-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public static BgmTvStandInServer start(Options options) throws IOException {
+        BgmTvStandInServer standIn = new BgmTvStandInServer(options);
+        standIn.server.start();
+        return standIn;
+    }
+
+    /**
+     * 替身服务的地址，传给仓库的 setApiBase 或者作为 bgmtv.api.base 使用.
+     */
+    public String base() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 按 "方法 接口模板" 统计的请求数，包括返回 429 和 500 的请求.
+     */
+    public Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestCounts.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return counts;
+    }
+
+    public long requestCount(String endpoint) {
+        LongAdder count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            String[] segments = path.substring(1).split("/");
+            requestCounts.computeIfAbsent(method + ' ' + endpoint(segments),
+                key -> new LongAdder()).increment();
+            exchange.getRequestBody().readAllBytes();
+            if (!options.latency().isZero()) {
+                TimeUnit.NANOSECONDS.sleep(options.latency().toNanos());
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < options.throttleRate()) {
+                throttledCount.increment();
+                if (options.retryAfterSeconds() >= 0) {
+                    exchange.getResponseHeaders().set("Retry-After",
+                        String.valueOf(options.retryAfterSeconds()));
+                }
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (random.nextDouble() < options.errorRate()) {
+                errorCount.increment();
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            route(exchange, method, segments);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String[] segments)
+        throws IOException {
+        boolean get = "GET".equals(method);
+        if (get && segments.length >= 3 && "v0".equals(segments[0])
+            && "subjects".equals(segments[1])) {
+            if (segments.length == 3) {
+                subject(exchange, Long.parseLong(segments[2]));
+            } else {
+                // 人物和角色列表，同步时请求但压测不关心
+                send(exchange, 200, EMPTY_LIST);
+            }
+        } else if (get && segments.length == 2 && "v0".equals(segments[0])
+            && "episodes".equals(segments[1])) {
+            episodePage(exchange, query(exchange));
+        } else if (get && segments.length == 3 && "search".equals(segments[0])) {
+            search(exchange, URLDecoder.decode(segments[2], StandardCharsets.UTF_8));
+        } else if (get && segments.length == 2 && "me".equals(segments[1])) {
+            me(exchange);
+        } else if (segments.length >= 4 && "collections".equals(segments[3]) && !get) {
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            send(exchange, 404, "{\"title\":\"Not Found\"}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void subject(HttpExchange exchange, long id) throws IOException {
+        String etag = "\"" + id + "\"";
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        ObjectNode body = subject.deepCopy();
+        body.put("id", id);
+        exchange.getResponseHeaders().set("ETag", etag);
+        send(exchange, 200, MAPPER.writeValueAsBytes(body));
+    }
+
+    private void episodePage(HttpExchange exchange, Map<String, String> query)
+        throws IOException {
+        long subjectId = Long.parseLong(query.getOrDefault("subject_id", "0"));
+        String type = query.get("type");
+        int limit = Integer.parseInt(query.getOrDefault("limit", "100"));
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        List<ObjectNode> matched = type == null ? episodes : episodes.stream()
+            .filter(episode -> type.equals(episode.get("type").asText()))
+            .toList();
+        ArrayNode data = MAPPER.createArrayNode();
+        for (int i = offset; i < Math.min(matched.size(), offset + limit); i++) {
+            ObjectNode episode = matched.get(i).deepCopy();
+            // 剧集ID为 int，条目ID为六位数时也不会溢出
+            episode.put("id", subjectId * 1_000 + i);
+            episode.put("subject_id", subjectId);
+            data.add(episode);
+        }
+        ObjectNode page = MAPPER.createObjectNode();
+        page.set("data", data);
+        page.put("total", matched.size());
+        page.put("limit", limit);
+        page.put("offset", offset);
+        send(exchange, 200, MAPPER.writeValueAsBytes(page));
+    }
+
+    private void search(HttpExchange exchange, String keyword) throws IOException {
+        ArrayNode list = MAPPER.createArrayNode();
+        int base = Math.floorMod(keyword.hashCode(), 100_000) + 1;
+        for (int i = 0; i < 10; i++) {
+            ObjectNode result = MAPPER.createObjectNode();
+            result.put("id", base + i);
+            result.put("type", 2);
+            result.put("name", keyword + ' ' + i);
+            result.put("name_cn", subject.get("name_cn").asText() + ' ' + i);
+            result.put("summary", subject.get("summary").asText());
+            result.put("air_date", subject.get("date").asText());
+            result.set("images", subject.get("images"));
+            list.add(result);
+        }
+        ObjectNode body = MAPPER.createObjectNode();
+        body.put("results", list.size());
+        body.set("list", list);
+        send(exchange, 200, MAPPER.writeValueAsBytes(body));
+    }
+
+    private void me(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+            send(exchange, 401, "{\"title\":\"Unauthorized\"}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        send(exchange, 200, ("{\"id\":1,\"username\":\"stand-in\",\"nickname\":\"stand-in\","
+            + "\"user_group\":10,\"sign\":\"\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0) {
+                query.put(pair.substring(0, index),
+                    URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * 与指标中的接口模板一致，条目ID等数字段归并为 {id}.
+     */
+    private static String endpoint(String[] segments) {
+        if (segments.length >= 2 && "search".equals(segments[0])) {
+            return "/search/subject/{keyword}";
+        }
+        StringBuilder endpoint = new StringBuilder();
+        for (String segment : segments) {
+            endpoint.append('/');
+            endpoint.append(!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)
+                ? "{id}" : segment);
+        }
+        return endpoint.toString();
+    }
+
+    /**
+     * 按顺序重复 fixture 中的剧集，正片的话数和排序依次递增.
+     */
+    private static List<ObjectNode> episodes(int size) throws IOException {
+        JsonNode fixture = MAPPER.readTree(readFixture(EPISODES_FIXTURE)).get("data");
+        List<ObjectNode> episodes = new ArrayList<>(size);
+        int sort = 0;
+        for (int i = 0; i < size; i++) {
+            ObjectNode episode = fixture.get(i % fixture.size()).deepCopy();
+            if (episode.get("type").asInt() == 0) {
+                sort++;
+                episode.put("ep", sort);
+                episode.put("sort", sort);
+            }
+            episodes.add(episode);
+        }
+        return episodes;
+    }
+
+    private static byte[] readFixture(String name) {
+        try (InputStream in = BgmTvStandInServer.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Fixture not found: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
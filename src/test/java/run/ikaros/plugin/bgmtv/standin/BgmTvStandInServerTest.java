@@ -0,0 +1,82 @@
+package run.ikaros.plugin.bgmtv.standin;
+
+import org.junit.jupiter.api.Test;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisode;
+import run.ikaros.plugin.bgmtv.model.BgmTvEpisodeType;
+import run.ikaros.plugin.bgmtv.model.BgmTvOldSearchResult;
+import run.ikaros.plugin.bgmtv.model.BgmTvPagingData;
+import run.ikaros.plugin.bgmtv.model.BgmTvSubject;
+import run.ikaros.plugin.bgmtv.utils.JsonUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgmTvStandInServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private HttpResponse<byte[]> get(BgmTvStandInServer standIn, String path,
+                                     String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(standIn.base() + path));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Test
+    void servesRecordedFixtures() throws Exception {
+        try (BgmTvStandInServer standIn =
+                 BgmTvStandInServer.start(BgmTvStandInServer.Options.defaults())) {
+            HttpResponse<byte[]> response = get(standIn, "/v0/subjects/12");
+            BgmTvSubject subject = JsonUtils.bytes2obj(response.body(), BgmTvSubject.class);
+            assertThat(subject.getId()).isEqualTo(12);
+            assertThat(subject.getInfobox()).contains("名侦探柯南");
+            String etag = response.headers().firstValue("ETag").orElseThrow();
+            assertThat(get(standIn, "/v0/subjects/12", "If-None-Match", etag).statusCode())
+                .isEqualTo(304);
+
+            BgmTvPagingData<BgmTvEpisode> page = JsonUtils.bytes2obj(
+                get(standIn, "/v0/episodes?subject_id=12&type=0&limit=10&offset=10").body(),
+                JsonUtils.constructParametricType(BgmTvPagingData.class, BgmTvEpisode.class));
+            // fixture 的 8 集中有 5 集正片，循环到 26 集后共 17 集正片
+            assertThat(page.getTotal()).isEqualTo(17);
+            assertThat(page.getData()).hasSize(7)
+                .allMatch(episode -> episode.getType() == BgmTvEpisodeType.POSITIVE);
+            assertThat(page.getData().get(0).getSort()).isEqualTo(11);
+
+            BgmTvOldSearchResult search = JsonUtils.bytes2obj(
+                get(standIn, "/search/subject/conan?type=2").body(),
+                BgmTvOldSearchResult.class);
+            assertThat(search.getList()).hasSize(10);
+
+            assertThat(get(standIn, "/v0/me").statusCode()).isEqualTo(401);
+            assertThat(get(standIn, "/v0/me", "Authorization", "Bearer t").statusCode())
+                .isEqualTo(200);
+            assertThat(standIn.requestCounts())
+                .containsEntry("GET /v0/subjects/{id}", 2L)
+                .containsEntry("GET /search/subject/{keyword}", 1L);
+        }
+    }
+
+    @Test
+    void injectsThrottlingAndErrors() throws Exception {
+        try (BgmTvStandInServer standIn = BgmTvStandInServer.start(
+            new BgmTvStandInServer.Options(Duration.ofMillis(5), 0, 1, 3, 26))) {
+            HttpResponse<byte[]> response = get(standIn, "/v0/subjects/1");
+            assertThat(response.statusCode()).isEqualTo(429);
+            assertThat(response.headers().firstValue("Retry-After")).hasValue("3");
+            assertThat(standIn.getThrottledCount()).isEqualTo(1);
+        }
+        try (BgmTvStandInServer standIn = BgmTvStandInServer.start(
+            new BgmTvStandInServer.Options(Duration.ZERO, 1, 0, 0, 26))) {
+            assertThat(get(standIn, "/v0/subjects/1").statusCode()).isEqualTo(500);
+            assertThat(standIn.getErrorCount()).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package run.ikaros.plugin.bgmtv.standin;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import run.ikaros.api.core.collection.SubjectCollection;
+import run.ikaros.api.core.collection.SubjectCollectionOperate;
+import run.ikaros.api.core.collection.event.EpisodeCollectionFinishChangeEvent;
+import run.ikaros.api.core.collection.event.SubjectCollectEvent;
+import run.ikaros.api.core.setting.ConfigMap;
+import run.ikaros.api.core.subject.Episode;
+import run.ikaros.api.core.subject.EpisodeOperate;
+import run.ikaros.api.core.subject.Subject;
+import run.ikaros.api.core.subject.SubjectOperate;
+import run.ikaros.api.core.subject.SubjectSync;
+import run.ikaros.api.core.subject.SubjectSyncOperate;
+import run.ikaros.api.store.enums.CollectionType;
+import run.ikaros.api.store.enums.EpisodeGroup;
+import run.ikaros.plugin.bgmtv.BgmTvSubjectSynchronizer;
+import run.ikaros.plugin.bgmtv.archive.BgmTvArchive;
+import run.ikaros.plugin.bgmtv.cache.BgmTvCoverCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvEpisodeIndexCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvPersonCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSearchCache;
+import run.ikaros.plugin.bgmtv.cache.BgmTvSubjectCache;
+import run.ikaros.plugin.bgmtv.listener.EpisodeCollectionFinishChangeListener;
+import run.ikaros.plugin.bgmtv.listener.SubjectCollectListener;
+import run.ikaros.plugin.bgmtv.metrics.BgmTvMetrics;
+import run.ikaros.plugin.bgmtv.ratelimit.BgmTvRateLimiter;
+import run.ikaros.plugin.bgmtv.repository.BgmTvEpisodeCollectionBatcher;
+import run.ikaros.plugin.bgmtv.repository.BgmTvReactiveRepository;
+import run.ikaros.plugin.bgmtv.repository.BgmTvReactiveRepositoryImpl;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRepository;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRepositoryImpl;
+import run.ikaros.plugin.bgmtv.repository.BgmTvRequestCoalescer;
+import run.ikaros.plugin.bgmtv.settings.BgmTvSettingsHolder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+/**
+ * 对本地替身服务做端到端的同步压测，输出各操作的吞吐量、延迟分位数和替身服务收到的请求数.
+ *
+ * <ol>
+ *     <li>按 harness.concurrency 并行调用 {@link BgmTvSubjectSynchronizer} 拉取条目和剧集</li>
+ *     <li>批量同步另一组条目</li>
+ *     <li>触发收藏事件和剧集看过事件，由监听器推送到替身服务</li>
+ * </ol>
+ *
+ * <p>插件和宿主之间的操作用内存中的假实现代替，仓库的每个方法都单独计时，
+ * 包括限流等待和重试. 通过 ./gradlew loadTest 运行，参数见 {@link Options}
+ * 和 {@link BgmTvStandInServer.Options#fromSystemProperties()}.</p>
+ */
+public class SyncLoadHarness {
+
+    /**
+     * 压测参数，读取 harness. 开头的系统属性.
+     *
+     * @param subjects           拉取和批量同步的条目数
+     * @param concurrency        拉取条目时并行的线程数
+     * @param collectEvents      收藏事件数
+     * @param episodeSubjects    剧集看过事件涉及的条目数，每个条目标记 12 集
+     * @param rate               限流器的速率上限，bgm.tv 实际使用时为 4
+     * @param episodeSyncWindow  剧集看过事件的合并窗口
+     * @param timeout            等待监听器推送完成的时间
+     */
+    record Options(int subjects, int concurrency, int collectEvents, int episodeSubjects,
+                   double rate, Duration episodeSyncWindow, Duration timeout) {
+        static Options fromSystemProperties() {
+            return new Options(
+                Integer.getInteger("harness.subjects", 100),
+                Integer.getInteger("harness.concurrency", 8),
+                Integer.getInteger("harness.collectEvents", 200),
+                Integer.getInteger("harness.episodeSubjects", 50),
+                Double.parseDouble(System.getProperty("harness.rate", "200")),
+                Duration.ofMillis(Long.getLong("harness.episodeSyncWindowMs", 100)),
+                Duration.ofSeconds(Long.getLong("harness.timeoutSeconds", 120)));
+        }
+    }
+
+    static final int EPISODES_PER_EVENT_SUBJECT = 12;
+
+    private final Options options;
+    private final BgmTvStandInServer standIn;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    SyncLoadHarness(Options options, BgmTvStandInServer standIn) {
+        this.options = options;
+        this.standIn = standIn;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.fromSystemProperties();
+        BgmTvStandInServer.Options standInOptions =
+            BgmTvStandInServer.Options.fromSystemProperties();
+        int exitCode;
+        try (BgmTvStandInServer standIn = BgmTvStandInServer.start(standInOptions)) {
+            System.out.println("Stand-in: " + standIn.base() + ' ' + standInOptions);
+            System.out.println("Harness:  " + options);
+            exitCode = new SyncLoadHarness(options, standIn).run() ? 0 : 1;
+        }
+        // reactor-netty 的线程不是守护线程
+        System.exit(exitCode);
+    }
+
+    /**
+     * @return 所有阶段都在超时前完成时返回 true
+     */
+    boolean run() throws Exception {
+        BgmTvRateLimiter rateLimiter = new BgmTvRateLimiter(options.rate(),
+            BgmTvRateLimiter.DEFAULT_MIN_RATE, BgmTvRateLimiter.DEFAULT_BURST);
+        BgmTvArchive archive = new BgmTvArchive(new BgmTvSettingsHolder(null));
+        BgmTvRepositoryImpl repositoryImpl = new BgmTvRepositoryImpl(null,
+            new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(), new BgmTvPersonCache(),
+            new BgmTvCoverCache(), new BgmTvSearchCache(), archive, rateLimiter,
+            new BgmTvRequestCoalescer(), BgmTvMetrics.noop());
+        BgmTvReactiveRepositoryImpl reactiveRepositoryImpl = new BgmTvReactiveRepositoryImpl(
+            null, new BgmTvSubjectCache(), new BgmTvEpisodeIndexCache(),
+            new BgmTvPersonCache(), new BgmTvCoverCache(), new BgmTvSearchCache(), archive,
+            rateLimiter, new BgmTvRequestCoalescer(), BgmTvMetrics.noop());
+        repositoryImpl.setApiBase(standIn.base());
+        reactiveRepositoryImpl.setApiBase(standIn.base());
+        repositoryImpl.refreshHttpHeaders("stand-in");
+        reactiveRepositoryImpl.refreshHttpHeaders("stand-in");
+        BgmTvRepository repository =
+            recorder.timed(BgmTvRepository.class, repositoryImpl, "repository.");
+        BgmTvReactiveRepository reactiveRepository = recorder.timed(
+            BgmTvReactiveRepository.class, reactiveRepositoryImpl, "reactiveRepository.");
+
+        BgmTvSubjectSynchronizer synchronizer = new BgmTvSubjectSynchronizer(repository, null);
+        fetchSubjects(synchronizer, 1);
+        syncSubjects(synchronizer, options.subjects() + 1);
+        boolean completed = collectSubjects(reactiveRepository);
+        completed &= finishEpisodes(reactiveRepository);
+
+        report(rateLimiter);
+        return completed;
+    }
+
+    private void fetchSubjects(BgmTvSubjectSynchronizer synchronizer, int firstId)
+        throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(options.concurrency());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < options.subjects(); i++) {
+                String platformId = String.valueOf(firstId + i);
+                futures.add(executor.submit(() -> {
+                    recorder.time("sync.fetchSubject",
+                        () -> synchronizer.fetchSubjectWithPlatformId(platformId));
+                    recorder.time("sync.fetchEpisodes",
+                        () -> synchronizer.fetchEpisodesWithPlatformId(platformId));
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void syncSubjects(BgmTvSubjectSynchronizer synchronizer, int firstId) {
+        List<String> platformIds = LongStream.range(firstId, firstId + options.subjects())
+            .mapToObj(String::valueOf)
+            .toList();
+        // 批量同步的耗时从批次开始计算，分位数为条目完成时距批次开始的时间
+        long start = System.nanoTime();
+        synchronizer.syncSubjectsWithPlatformIds(platformIds)
+            .doOnNext(result -> recorder.record("sync.batchSubject",
+                start, System.nanoTime(), !result.isSuccess()))
+            .blockLast();
+    }
+
+    private boolean collectSubjects(BgmTvReactiveRepository reactiveRepository)
+        throws InterruptedException {
+        Map<UUID, Long> platformIds = new ConcurrentHashMap<>();
+        SubjectCollectListener listener = new SubjectCollectListener(reactiveRepository,
+            subjectOperate(), settingsHolder(), subjectSyncOperate(platformIds),
+            BgmTvMetrics.noop());
+        for (int i = 0; i < options.collectEvents(); i++) {
+            UUID subjectId = UUID.randomUUID();
+            platformIds.put(subjectId, 100_000L + i);
+            listener.onSubjectCollectEvent(new SubjectCollectEvent(this,
+                new SubjectCollection().setSubjectId(subjectId)
+                    .setType(CollectionType.values()[i % CollectionType.values().length])));
+        }
+        return await("subject collect", () -> recorder.inFlight() == 0
+            && recorder.count("reactiveRepository.postUserSubjectCollection")
+            >= options.collectEvents());
+    }
+
+    private boolean finishEpisodes(BgmTvReactiveRepository reactiveRepository)
+        throws InterruptedException {
+        Map<UUID, Long> platformIds = new ConcurrentHashMap<>();
+        Map<UUID, List<Episode>> episodes = new ConcurrentHashMap<>();
+        BgmTvEpisodeCollectionBatcher batcher =
+            new BgmTvEpisodeCollectionBatcher(reactiveRepository);
+        EpisodeCollectionFinishChangeListener listener =
+            new EpisodeCollectionFinishChangeListener(subjectOperate(), batcher,
+                settingsHolder(), subjectCollectionOperate(),
+                fake(EpisodeOperate.class, Map.of("findAllBySubjectId",
+                    args -> Flux.fromIterable(episodes.get((UUID) args[0])))),
+                subjectSyncOperate(platformIds), BgmTvMetrics.noop());
+        UUID userId = UUID.randomUUID();
+        for (int i = 0; i < options.episodeSubjects(); i++) {
+            UUID subjectId = UUID.randomUUID();
+            platformIds.put(subjectId, 200_000L + i);
+            List<Episode> subjectEpisodes = new ArrayList<>();
+            for (int sequence = 1; sequence <= EPISODES_PER_EVENT_SUBJECT; sequence++) {
+                subjectEpisodes.add(new Episode().setId(UUID.randomUUID())
+                    .setSubjectId(subjectId).setGroup(EpisodeGroup.MAIN)
+                    .setSequence((float) sequence));
+            }
+            episodes.put(subjectId, subjectEpisodes);
+        }
+        episodes.forEach((subjectId, subjectEpisodes) -> {
+            for (Episode episode : subjectEpisodes) {
+                EpisodeCollectionFinishChangeEvent event =
+                    new EpisodeCollectionFinishChangeEvent(this, userId, episode.getId(), true);
+                event.setSubjectId(subjectId);
+                listener.onApplicationReadyEvent(event);
+            }
+        });
+        return await("episode finish", () -> listener.activeEventKeys() == 0
+            && batcher.pendingSize() == 0 && recorder.inFlight() == 0
+            && recorder.count("reactiveRepository.patchSubjectEpisodeFinish")
+            >= options.episodeSubjects());
+    }
+
+    private boolean await(String phase, BooleanSupplier done) throws InterruptedException {
+        long deadline = System.nanoTime() + options.timeout().toNanos();
+        while (!done.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                System.out.println("Timed out waiting for " + phase + " events.");
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return true;
+    }
+
+    private BgmTvSettingsHolder settingsHolder() {
+        ConfigMap configMap = new ConfigMap();
+        configMap.setData(Map.of("token", "stand-in",
+            "syncCollectionAndEpisodeFinish", "true",
+            "episodeSyncWindow", String.valueOf(options.episodeSyncWindow().toMillis())));
+        BgmTvSettingsHolder settingsHolder = new BgmTvSettingsHolder(null);
+        settingsHolder.update(configMap);
+        return settingsHolder;
+    }
+
+    private static SubjectOperate subjectOperate() {
+        return fake(SubjectOperate.class,
+            Map.of("findById", args -> Mono.just(new Subject().setNsfw(false))));
+    }
+
+    private static SubjectSyncOperate subjectSyncOperate(Map<UUID, Long> platformIds) {
+        return fake(SubjectSyncOperate.class, Map.of("findSubjectSyncBySubjectIdAndPlatform",
+            args -> Mono.justOrEmpty(platformIds.get((UUID) args[0]))
+                .map(platformId -> new SubjectSync().setSubjectId((UUID) args[0])
+                    .setPlatformId(String.valueOf(platformId)))));
+    }
+
+    private static SubjectCollectionOperate subjectCollectionOperate() {
+        return fake(SubjectCollectionOperate.class, Map.of("findCollection",
+            args -> Mono.just(new SubjectCollection().setUserId((UUID) args[0])
+                .setSubjectId((UUID) args[1]).setType(CollectionType.DOING))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+            (proxy, method, args) -> {
+                Function<Object[], Object> handler = methods.get(method.getName());
+                if (handler == null) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                return handler.apply(args);
+            });
+    }
+
+    private void report(BgmTvRateLimiter rateLimiter) {
+        System.out.println();
+        System.out.printf("%-52s %7s %6s %9s %8s %8s %8s %8s%n", "operation", "count",
+            "errors", "ops/s", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)");
+        recorder.snapshot().forEach((operation, stats) -> System.out.printf(
+            "%-52s %7d %6d %9.1f %8.1f %8.1f %8.1f %8.1f%n", operation, stats.count(),
+            stats.errors(), stats.throughput(), stats.percentile(0.5), stats.percentile(0.95),
+            stats.percentile(0.99), stats.percentile(1)));
+        System.out.println();
+        System.out.printf("%-52s %7s%n", "stand-in endpoint", "count");
+        standIn.requestCounts().forEach((endpoint, count) ->
+            System.out.printf("%-52s %7d%n", endpoint, count));
+        System.out.printf("%nStand-in 429: %d, 500: %d, rate limiter throttled: %d%n",
+            standIn.getThrottledCount(), standIn.getErrorCount(),
+            rateLimiter.getThrottledCount());
+    }
+
+    /**
+     * 按操作记录每次调用的耗时.
+     */
+    static final class LatencyRecorder {
+        private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        interface Call {
+            Object call() throws Exception;
+        }
+
+        void time(String operation, Call call) {
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                call.call();
+            } catch (Exception e) {
+                failed = true;
+            } finally {
+                record(operation, start, System.nanoTime(), failed);
+            }
+        }
+
+        void record(String operation, long start, long end, boolean failed) {
+            operations.computeIfAbsent(operation, key -> new Operation())
+                .record(start, end, failed);
+        }
+
+        long count(String operation) {
+            Operation stats = operations.get(operation);
+            return stats == null ? 0 : stats.snapshot().count();
+        }
+
+        int inFlight() {
+            return inFlight.get();
+        }
+
+        Map<String, Stats> snapshot() {
+            Map<String, Stats> snapshot = new TreeMap<>();
+            operations.forEach((operation, stats) -> snapshot.put(operation, stats.snapshot()));
+            return snapshot;
+        }
+
+        /**
+         * 为接口的每个方法计时，Mono 和 Flux 从订阅计时到结束.
+         */
+        @SuppressWarnings("unchecked")
+        <T> T timed(Class<T> type, T target, String prefix) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    String operation = prefix + method.getName();
+                    if (Mono.class.equals(method.getReturnType())) {
+                        return Mono.defer(() -> {
+                            long start = start();
+                            return ((Mono<?>) invoke(target, method, args))
+                                .doFinally(signal -> end(operation, start, signal));
+                        });
+                    }
+                    if (Flux.class.equals(method.getReturnType())) {
+                        return Flux.defer(() -> {
+                            long start = start();
+                            return ((Flux<?>) invoke(target, method, args))
+                                .doFinally(signal -> end(operation, start, signal));
+                        });
+                    }
+                    long start = start();
+                    boolean failed = true;
+                    try {
+                        Object result = method.invoke(target, args);
+                        failed = false;
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        record(operation, start, System.nanoTime(), failed);
+                        inFlight.decrementAndGet();
+                    }
+                });
+        }
+
+        private long start() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        private void end(String operation, long start, SignalType signal) {
+            record(operation, start, System.nanoTime(), signal == SignalType.ON_ERROR);
+            inFlight.decrementAndGet();
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                return Mono.error(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Operation {
+        private long[] nanos = new long[64];
+        private int count;
+        private int errors;
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd = Long.MIN_VALUE;
+
+        synchronized void record(long start, long end, boolean failed) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = end - start;
+            if (failed) {
+                errors++;
+            }
+            firstStart = Math.min(firstStart, start);
+            lastEnd = Math.max(lastEnd, end);
+        }
+
+        synchronized Stats snapshot() {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return new Stats(sorted, errors, lastEnd - firstStart);
+        }
+    }
+
+    /**
+     * @param elapsedNanos 第一次调用开始到最后一次调用结束的时间
+     */
+    record Stats(long[] sortedNanos, int errors, long elapsedNanos) {
+        int count() {
+            return sortedNanos.length;
+        }
+
+        double throughput() {
+            return elapsedNanos <= 0 ? 0 : count() * 1e9 / elapsedNanos;
+        }
+
+        double percentile(double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package run.ikaros.plugin.bgmtv.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.netty.http.client.HttpClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpClientUtilsTest {
+
+    @Test
+    void sharesClientUntilLastRelease() {
+        HttpClientUtils.Options options = HttpClientUtils.Options.defaults()
+            .withTimeout(1234, null);
+        HttpClient first = HttpClientUtils.getHttpClient(options);
+        HttpClient second = HttpClientUtils.getHttpClient(options);
+        assertThat(second).isSameAs(first);
+
+        HttpClientUtils.release(options);
+        assertThat(HttpClientUtils.getHttpClient(options)).isSameAs(first);
+
+        HttpClientUtils.release(options);
+        HttpClientUtils.release(options);
+        // 连接池已经销毁，再次获取时重新创建
+        HttpClient rebuilt = HttpClientUtils.getHttpClient(options);
+        assertThat(rebuilt).isNotSameAs(first);
+        HttpClientUtils.release(options);
+    }
+
+    @Test
+    void restTemplateUsesSameDefaults() {
+        assertThat(RestTemplateUtils.DEFAULT_CONNECT_TIMEOUT)
+            .isEqualTo(HttpClientUtils.Options.defaults().connectTimeout());
+        assertThat(RestTemplateUtils.DEFAULT_READ_TIMEOUT)
+            .isEqualTo(HttpClientUtils.Options.defaults().readTimeout());
+    }
+}
@@ -0,0 +1,68 @@
+package run.ikaros.plugin.bgmtv.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedSerialExecutorTest {
+
+    private final KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>("test", 3);
+
+    @Test
+    void sameKeyRunsInOrderAfterPreviousCompletes() {
+        List<String> started = new ArrayList<>();
+        Sinks.Empty<Void> first = Sinks.empty();
+
+        executor.submit("a", () -> {
+            started.add("a1");
+            return first.asMono();
+        });
+        executor.submit("a", () -> Mono.fromRunnable(() -> started.add("a2")));
+        // 其他键不受 a 的阻塞
+        executor.submit("b", () -> Mono.fromRunnable(() -> started.add("b1")));
+
+        assertThat(started).containsExactly("a1", "b1");
+        assertThat(executor.pendingSize("a")).isEqualTo(2);
+        assertThat(executor.activeKeys()).isEqualTo(1);
+
+        first.tryEmitEmpty();
+
+        assertThat(started).containsExactly("a1", "b1", "a2");
+        assertThat(executor.pendingSize("a")).isZero();
+        assertThat(executor.activeKeys()).isZero();
+    }
+
+    @Test
+    void failedTaskDoesNotBlockNext() {
+        List<String> started = new ArrayList<>();
+
+        executor.submit("a", () -> Mono.error(new IllegalStateException("boom")));
+        executor.submit("a", () -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.submit("a", () -> Mono.fromRunnable(() -> started.add("a3")));
+
+        assertThat(started).containsExactly("a3");
+        assertThat(executor.activeKeys()).isZero();
+    }
+
+    @Test
+    void rejectWhenPendingReachLimit() {
+        Sinks.Empty<Void> blocker = Sinks.empty();
+        executor.submit("a", blocker::asMono);
+        assertThat(executor.submit("a", Mono::empty)).isTrue();
+        assertThat(executor.submit("a", Mono::empty)).isTrue();
+
+        assertThat(executor.submit("a", Mono::empty)).isFalse();
+        assertThat(executor.getRejectedCount()).isEqualTo(1);
+        assertThat(executor.submit("b", Mono::empty)).isTrue();
+
+        blocker.tryEmitEmpty();
+        assertThat(executor.pendingSize("a")).isZero();
+    }
+}
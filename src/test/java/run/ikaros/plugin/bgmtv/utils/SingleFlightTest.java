@@ -0,0 +1,48 @@
+package run.ikaros.plugin.bgmtv.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void cancelledCallerDoesNotCancelSharedCall() {
+        Sinks.One<String> response = Sinks.one();
+        List<String> results = new ArrayList<>();
+
+        Disposable first = singleFlight.executeMono("a", response::asMono)
+            .subscribe(results::add);
+        singleFlight.executeMono("a", response::asMono).subscribe(results::add);
+        assertThat(singleFlight.inFlight()).isEqualTo(1);
+        assertThat(response.currentSubscriberCount()).isEqualTo(1);
+
+        first.dispose();
+        assertThat(response.currentSubscriberCount()).isEqualTo(1);
+        response.tryEmitValue("done");
+
+        assertThat(results).containsExactly("done");
+        assertThat(singleFlight.inFlight()).isZero();
+        assertThat(singleFlight.getCoalescedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void emptyMonoAndBlockingCallsFinish() {
+        Sinks.Empty<String> empty = Sinks.empty();
+        List<String> signals = new ArrayList<>();
+        singleFlight.executeMono("a", empty::asMono)
+            .subscribe(signals::add, e -> signals.add("error"), () -> signals.add("complete"));
+        empty.tryEmitEmpty();
+        assertThat(signals).containsExactly("complete");
+
+        assertThat(singleFlight.execute("a", () -> "value")).isEqualTo("value");
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+}